@@ -21,11 +21,27 @@
 package org.restcomm.connect.rvd;
 
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.restcomm.connect.rvd.capture.TrafficCapture;
 import org.restcomm.connect.rvd.commons.http.CustomHttpClientBuilder;
 import org.restcomm.connect.rvd.concurrency.ProjectRegistry;
 import org.restcomm.connect.rvd.configuration.RestcommLocationResolver;
+import org.restcomm.connect.rvd.health.HealthMonitor;
 import org.restcomm.connect.rvd.interpreter.serialization.RcmlSerializer;
 import org.restcomm.connect.rvd.stats.AggregateStats;
+import org.restcomm.connect.rvd.stats.ApiStats;
+import org.restcomm.connect.rvd.stats.LatencyStats;
+import org.restcomm.connect.rvd.stats.MetricsExporter;
+import org.restcomm.connect.rvd.stats.StatsRecorder;
+import org.restcomm.connect.rvd.storage.CompiledProjectCache;
+import org.restcomm.connect.rvd.storage.EmbeddedStore;
+import org.restcomm.connect.rvd.storage.MediaMetadataCache;
+import org.restcomm.connect.rvd.storage.ProjectMetadataIndex;
+import org.restcomm.connect.rvd.storage.Workspace;
+import org.restcomm.connect.rvd.storage.ShardMigrator;
+import org.restcomm.connect.rvd.storage.StorageStats;
+import org.restcomm.connect.rvd.storage.TrashReaper;
+import org.restcomm.connect.rvd.storage.WorkspaceBackup;
+import org.restcomm.connect.rvd.warmup.HotSetTracker;
 
 /**
  * This class holds all objects whose lifecycle follows the rvd application.
@@ -41,11 +57,30 @@ public class ApplicationContext {
     CloseableHttpClient externaltHttpClient;
     ProjectRegistry projectRegistry;
     AggregateStats globalStats;
+    LatencyStats globalLatency;
+    ApiStats apiStats;
+    StorageStats storageStats;
+    EmbeddedStore workspaceStore;
+    Workspace workspace;
     RestcommLocationResolver restcommResolver;
     RcmlSerializer rcmlSerializer;
+    CompiledProjectCache compiledProjectCache;
+    TrafficCapture trafficCapture;
+    StatsRecorder statsRecorder;
+    MetricsExporter metricsExporter;
+    HealthMonitor healthMonitor;
+    ShardMigrator shardMigrator;
+    ProjectMetadataIndex projectMetadataIndex;
+    TrashReaper trashReaper;
+    WorkspaceBackup workspaceBackup;
+    HotSetTracker hotSetTracker;
+    MediaMetadataCache mediaMetadataCache;
 
     public ApplicationContext() {
         globalStats = new AggregateStats();
+        globalLatency = new LatencyStats();
+        apiStats = new ApiStats();
+        mediaMetadataCache = new MediaMetadataCache();
     }
 
     public RvdConfiguration getConfiguration() {
@@ -68,6 +103,43 @@ public class ApplicationContext {
         this.globalStats = globalStats;
     }
 
+    public LatencyStats getGlobalLatency() {
+        return globalLatency;
+    }
+
+    public void setGlobalLatency(LatencyStats globalLatency) {
+        this.globalLatency = globalLatency;
+    }
+
+    /**
+     * @return latency, status and payload sizes of designer API requests
+     */
+    public ApiStats getApiStats() {
+        return apiStats;
+    }
+
+    /**
+     * @return workspace storage I/O by entity type or null if storage instrumentation is disabled
+     */
+    public StorageStats getStorageStats() {
+        return storageStats;
+    }
+
+    /**
+     * @return the store that keeps workspace entities or null if the file system backend is used
+     */
+    public EmbeddedStore getWorkspaceStore() {
+        return workspaceStore;
+    }
+
+    /**
+     * @return journal, locks, trash etc. of the workspace shared by all storage instances, or null if there is no
+     * workspace (i.e. in tests)
+     */
+    public Workspace getWorkspace() {
+        return workspace;
+    }
+
     public CloseableHttpClient getDefaultHttpClient() {
         return defaultHttpClient;
     }
@@ -83,4 +155,66 @@ public class ApplicationContext {
     public RcmlSerializer getRcmlSerializer() {
         return rcmlSerializer;
     }
+
+    public CompiledProjectCache getCompiledProjectCache() {
+        return compiledProjectCache;
+    }
+
+    public TrafficCapture getTrafficCapture() {
+        return trafficCapture;
+    }
+
+    /**
+     * @return the recorder of persisted stats or null if stats persistence is disabled
+     */
+    public StatsRecorder getStatsRecorder() {
+        return statsRecorder;
+    }
+
+    public MetricsExporter getMetricsExporter() {
+        return metricsExporter;
+    }
+
+    public HealthMonitor getHealthMonitor() {
+        return healthMonitor;
+    }
+
+    /**
+     * @return the migrator of projects to workspace shards or null if sharding is disabled
+     */
+    public ShardMigrator getShardMigrator() {
+        return shardMigrator;
+    }
+
+    /**
+     * @return the project metadata index or null if indexing is disabled
+     */
+    public ProjectMetadataIndex getProjectMetadataIndex() {
+        return projectMetadataIndex;
+    }
+
+    /**
+     * @return the reaper of removed projects or null if there is no workspace (i.e. in tests)
+     */
+    public TrashReaper getTrashReaper() {
+        return trashReaper;
+    }
+
+    /**
+     * @return the workspace snapshot facility or null if backups are disabled
+     */
+    public WorkspaceBackup getWorkspaceBackup() {
+        return workspaceBackup;
+    }
+
+    /**
+     * @return the tracker of the most requested applications or null if cache warm-up is disabled
+     */
+    public HotSetTracker getHotSetTracker() {
+        return hotSetTracker;
+    }
+
+    public MediaMetadataCache getMediaMetadataCache() {
+        return mediaMetadataCache;
+    }
 }
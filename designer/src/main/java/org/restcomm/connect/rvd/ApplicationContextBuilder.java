@@ -20,11 +20,30 @@
 
 package org.restcomm.connect.rvd;
 
+import java.io.File;
+
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.restcomm.connect.rvd.capture.TrafficCapture;
 import org.restcomm.connect.rvd.commons.http.CustomHttpClientBuilder;
 import org.restcomm.connect.rvd.concurrency.ProjectRegistry;
 import org.restcomm.connect.rvd.configuration.RestcommLocationResolver;
+import org.restcomm.connect.rvd.configuration.StatsRetention;
+import org.restcomm.connect.rvd.configuration.WorkspaceBackupPolicy;
+import org.restcomm.connect.rvd.health.HealthMonitor;
 import org.restcomm.connect.rvd.interpreter.serialization.RcmlSerializer;
+import org.restcomm.connect.rvd.stats.MetricsExporter;
+import org.restcomm.connect.rvd.stats.StatsRecorder;
+import org.restcomm.connect.rvd.stats.StatsSeriesStore;
+import org.restcomm.connect.rvd.storage.CompiledProjectCache;
+import org.restcomm.connect.rvd.storage.EmbeddedStore;
+import org.restcomm.connect.rvd.storage.ProjectMetadataIndex;
+import org.restcomm.connect.rvd.storage.ShardMigrator;
+import org.restcomm.connect.rvd.storage.WorkspaceLayout;
+import org.restcomm.connect.rvd.storage.StorageStats;
+import org.restcomm.connect.rvd.storage.TrashReaper;
+import org.restcomm.connect.rvd.storage.WorkspaceBackup;
+import org.restcomm.connect.rvd.storage.Workspace;
+import org.restcomm.connect.rvd.warmup.HotSetTracker;
 
 /**
  * @author otsakir@gmail.com - Orestis Tsakiridis
@@ -37,6 +56,10 @@ public class ApplicationContextBuilder {
     ProjectRegistry projectRegistry;
     RestcommLocationResolver restcommResolver;
     RcmlSerializer rcmlSerializer;
+    CompiledProjectCache compiledProjectCache;
+    TrafficCapture trafficCapture;
+    StatsSeriesStore statsSeriesStore;
+    EmbeddedStore workspaceStore;
 
     public ApplicationContextBuilder setConfiguration(RvdConfiguration configuration) {
         this.configuration = configuration;
@@ -72,18 +95,78 @@ public class ApplicationContextBuilder {
         return this;
     }
 
+    public ApplicationContextBuilder setCompiledProjectCache(CompiledProjectCache compiledProjectCache) {
+        this.compiledProjectCache = compiledProjectCache;
+        return this;
+    }
+
+    public ApplicationContextBuilder setTrafficCapture(TrafficCapture trafficCapture) {
+        this.trafficCapture = trafficCapture;
+        return this;
+    }
+
+    public ApplicationContextBuilder setStatsSeriesStore(StatsSeriesStore statsSeriesStore) {
+        this.statsSeriesStore = statsSeriesStore;
+        return this;
+    }
+
+    public ApplicationContextBuilder setWorkspaceStore(EmbeddedStore workspaceStore) {
+        this.workspaceStore = workspaceStore;
+        return this;
+    }
+
     public ApplicationContext build() {
         ApplicationContext instance = new ApplicationContext();
         instance.configuration = this.configuration;
+        if (configuration != null)
+            instance.workspace = new Workspace(new File(configuration.getWorkspaceBasePath()));
         instance.httpClientBuilder = this.httpClientBuilder;
         instance.projectRegistry = this.projectRegistry;
         instance.defaultHttpClient = this.defaultHttpClient;
         instance.externaltHttpClient = this.externaltHttpClient;
         instance.restcommResolver = this.restcommResolver;
+        instance.workspaceStore = this.workspaceStore;
         if (this.rcmlSerializer != null)
             instance.rcmlSerializer = this.rcmlSerializer;
         else
             instance.rcmlSerializer = new RcmlSerializer(); // default value if not explicitly set
+        if (this.compiledProjectCache != null)
+            instance.compiledProjectCache = this.compiledProjectCache;
+        else
+            instance.compiledProjectCache = new CompiledProjectCache();
+        if (this.trafficCapture != null)
+            instance.trafficCapture = this.trafficCapture;
+        else
+        if (configuration != null && configuration.getTrafficCaptureSampleRate() > 0)
+            instance.trafficCapture = new TrafficCapture(configuration.getTrafficCaptureSampleRate(), new File(configuration.getTrafficCaptureFile()),
+                    configuration.getTrafficCaptureMaxMegabytes() * 1024L * 1024L, configuration.getCallTraceRedactPattern(), configuration.isTrafficCapturePii());
+        else
+            instance.trafficCapture = new TrafficCapture(0, null); // disabled
+        if (this.statsSeriesStore != null)
+            instance.statsRecorder = new StatsRecorder(this.statsSeriesStore, instance);
+        else
+        if (configuration != null && Boolean.TRUE.equals(configuration.getStatsRetention().getEnabled())) {
+            StatsRetention retention = configuration.getStatsRetention();
+            File directory = new File(configuration.getWorkspaceBasePath(), RvdConfiguration.STATS_DIRECTORY_NAME);
+            instance.statsRecorder = new StatsRecorder(new StatsSeriesStore(directory, retention.getMinuteHours(), retention.getHourlyDays()), instance);
+        }
+        if (configuration != null && configuration.isStorageInstrumentation())
+            instance.storageStats = new StorageStats();
+        instance.metricsExporter = new MetricsExporter(configuration != null ? configuration.getMetricsMaxApplications() : RvdConfiguration.DEFAULT_METRICS_MAX_APPLICATIONS);
+        if (configuration != null && configuration.isWorkspaceSharding())
+            instance.shardMigrator = new ShardMigrator(WorkspaceLayout.forWorkspace(instance.workspace.getDir()), instance.workspace.getLocks());
+        if (configuration != null && configuration.isProjectMetadataIndex())
+            instance.projectMetadataIndex = new ProjectMetadataIndex(instance.workspace);
+        if (configuration != null)
+            instance.trashReaper = new TrashReaper(instance.workspace.getTrash());
+        if (configuration != null && configuration.getWorkspaceBackup().getEnabled()) {
+            WorkspaceBackupPolicy policy = configuration.getWorkspaceBackup();
+            instance.workspaceBackup = new WorkspaceBackup(instance.workspace, new File(configuration.getWorkspaceBackupPath()),
+                    workspaceStore, policy.getRetention(), policy.getIncludeLogs(), policy.getMaxMegabytesPerSecond() * 1024L * 1024L);
+        }
+        if (configuration != null && configuration.isCacheWarmup() && projectRegistry != null)
+            instance.hotSetTracker = new HotSetTracker(projectRegistry, new File(configuration.getWorkspaceBasePath()), configuration.getHotSetSize());
+        instance.healthMonitor = new HealthMonitor(configuration != null ? new File(configuration.getWorkspaceBasePath()) : null, defaultHttpClient);
         return instance;
     }
 }
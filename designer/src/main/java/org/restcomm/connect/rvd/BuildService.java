@@ -19,11 +19,15 @@
 
 package org.restcomm.connect.rvd;
 
+import org.restcomm.connect.rvd.exceptions.project.FlowCostExceeded;
+import org.restcomm.connect.rvd.interpreter.serialization.RcmlPrecompiler;
+import org.restcomm.connect.rvd.interpreter.serialization.RcmlTemplate;
 import org.restcomm.connect.rvd.model.StepJsonDeserializer;
 import org.restcomm.connect.rvd.model.StepJsonSerializer;
 import org.restcomm.connect.rvd.model.project.Node;
 import org.restcomm.connect.rvd.model.project.ProjectState;
 import org.restcomm.connect.rvd.model.project.Step;
+import org.restcomm.connect.rvd.model.server.FlowCostReport;
 import org.restcomm.connect.rvd.model.server.NodeName;
 import org.restcomm.connect.rvd.model.server.ProjectIndex;
 import org.restcomm.connect.rvd.storage.ProjectDao;
@@ -32,6 +36,13 @@ import org.restcomm.connect.rvd.storage.exceptions.StorageException;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * This class is responsible for breaking the project state from a big JSON object to separate files per node/step. The
  * resulting files will be easily processed from the interpreter when the application is run.
@@ -40,6 +51,12 @@ import com.google.gson.GsonBuilder;
  */
 public class BuildService {
 
+    // last build time handed out (millis). Keeps generations unique even for builds within the same millisecond.
+    private static final AtomicLong lastGeneration = new AtomicLong();
+    static final int NODE_BITS = 20; // leaves room for build times well into the future
+    // tells apart generations handed out by different nodes sharing the workspace at the same millisecond
+    static final long NODE_ID = new SecureRandom().nextInt(1 << NODE_BITS);
+
     protected Gson gson;
     private ProjectDao projectDao;
 
@@ -67,16 +84,37 @@ public class BuildService {
         // Use the start node name as a default target. We could use a more specialized target too here
 
         // Build the nodes one by one
+        List<Node> builtNodes = new ArrayList<Node>();
         for (Node node : projectState.getNodes()) {
-            buildNode(node, projectName);
+            builtNodes.add(buildNode(node, projectName));
             NodeName nodeName = new NodeName();
             nodeName.setName(node.getName());
             nodeName.setLabel(node.getLabel());
+            if (isStaticModule(node))
+                nodeName.setStaticRcml(true);
             projectOptions.getNodeNames().add( nodeName );
         }
 
         projectOptions.setDefaultTarget(projectState.getHeader().getStartNodeName());
-        projectDao.storeProjectOptions(projectName, projectOptions);
+        projectOptions.setBuildGeneration(nextGeneration());
+        projectDao.storeBuiltProject(projectName, builtNodes, projectOptions);
+    }
+
+    /**
+     * Builds a project after checking its flow against the configured cost limits. Nothing is stored if a limit is
+     * exceeded.
+     *
+     * @return the worst-case cost of the project flow
+     * @throws FlowCostExceeded if a limit is exceeded. The report is included.
+     * @throws StorageException
+     */
+    public FlowCostReport buildProject(String projectName, ProjectState projectState, RvdConfiguration configuration) throws StorageException, FlowCostExceeded {
+        FlowCostReport report = new FlowCostAnalyzer(configuration.getExternalServiceTimeout()).analyze(projectState);
+        report.setViolations(FlowCostAnalyzer.checkLimits(report, configuration.getFlowCostLimits()));
+        if (!report.getViolations().isEmpty())
+            throw new FlowCostExceeded(report);
+        buildProject(projectName, projectState);
+        return report;
     }
 
     public void buildProject(String projectName) throws StorageException {
@@ -84,8 +122,63 @@ public class BuildService {
         buildProject(projectName, state);
     }
 
-    private void buildNode(Node node, String projectName) throws StorageException {
+    /**
+     * A module is static if all its steps are constant. Such modules render the same RCML for every request and their
+     * response can be cached until the project is built again.
+     *
+     * @param node
+     * @return true if the module is static
+     */
+    static boolean isStaticModule(Node node) {
+        if (node.getSteps() == null)
+            return false;
+        for (Step step: node.getSteps()) {
+            if (step == null || !step.isConstant())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns a new build generation: the build time in millis followed by NODE_BITS that are random for each node.
+     * Generations grow within a node. Two nodes building the same project within the same millisecond get different
+     * ones unless their random bits match, which is one chance in a million, the same way GenerationStamp tells
+     * concurrent bumps apart.
+     */
+    static long nextGeneration() {
+        while (true) {
+            long last = lastGeneration.get();
+            long next = Math.max(System.currentTimeMillis(), last + 1);
+            if (lastGeneration.compareAndSet(last, next))
+                return (next << NODE_BITS) | NODE_ID;
+        }
+    }
+
+    private Node buildNode(Node node, String projectName) {
         // TODO sanitize node name!
-        projectDao.storeNode(projectName, node);
+        return compileNode(node, projectName);
+    }
+
+    /**
+     * Returns a copy of the node to be stored as a built module. Steps that can be precompiled get an RcmlTemplate
+     * so that the interpreter won't have to render them. The node itself (that is part of the project state) is not
+     * touched.
+     */
+    Node compileNode(Node node, String projectName) {
+        Node built = new Node().setName(node.getName()).setLabel(node.getLabel()).setKind(node.getKind()).setSteps(node.getSteps());
+        if (node.getSteps() == null)
+            return built;
+        RcmlPrecompiler precompiler = new RcmlPrecompiler(projectName);
+        Map<String, RcmlTemplate> templates = new HashMap<String, RcmlTemplate>();
+        for (Step step: node.getSteps()) {
+            if (step == null || step.getName() == null)
+                continue;
+            RcmlTemplate template = precompiler.precompile(step);
+            if (template != null)
+                templates.put(step.getName(), template);
+        }
+        if (!templates.isEmpty())
+            built.setRcmlTemplates(templates);
+        return built;
     }
 }
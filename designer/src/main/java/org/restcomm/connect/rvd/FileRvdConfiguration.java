@@ -4,7 +4,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import com.google.gson.Gson;
 import org.apache.log4j.Level;
@@ -20,10 +23,16 @@ import org.restcomm.connect.rvd.exceptions.XmlParserException;
 import org.restcomm.connect.rvd.logging.system.LoggingHelper;
 import org.restcomm.connect.rvd.logging.system.RvdLoggers;
 import org.restcomm.connect.rvd.configuration.RvdConfig;
+import org.restcomm.connect.rvd.storage.EntityCompression;
+import org.restcomm.connect.rvd.storage.StorageEntityType;
+import org.restcomm.connect.rvd.storage.WorkspaceLayout;
 import org.restcomm.connect.rvd.utils.RvdUtils;
 
 import com.thoughtworks.xstream.XStream;
 import java.util.List;
+import org.restcomm.connect.rvd.configuration.FlowCostLimits;
+import org.restcomm.connect.rvd.configuration.StatsRetention;
+import org.restcomm.connect.rvd.configuration.WorkspaceBackupPolicy;
 import org.restcomm.connect.rvd.configuration.RvdMaxPerHost;
 import org.restcomm.connect.rvd.utils.XmlParser;
 
@@ -52,6 +61,7 @@ public class FileRvdConfiguration extends BaseRvdConfiguration {
     private Integer maxMediaFileSize; // Maximum size allowed for media file uploads (in bytes). If set to null no limit is enforced
 
     private RvdConfig rvdConfig;  // the configuration settings from rvd.xml
+    private Pattern callTraceRedactPattern; // compiled lazily from rvdConfig
     private RestcommConfig restcommConfig;
 
     private String contextRootPath; // e.g. a/path/ending/in/slash/
@@ -69,6 +79,7 @@ public class FileRvdConfiguration extends BaseRvdConfiguration {
     private String welcomeMessage;
     private String rvdInstanceId;
     private Boolean dynamicRestcommResolving;
+    private Double trafficCaptureSampleRate;
 
     public FileRvdConfiguration(ServletContext servletContext) {
         this(servletContext.getContextPath(), servletContext.getRealPath("/"));
@@ -259,7 +270,7 @@ public class FileRvdConfiguration extends BaseRvdConfiguration {
 
     @Override
     public String getProjectBasePath(String projectName) {
-        return this.workspaceBasePath + File.separator + projectName;
+        return WorkspaceLayout.forWorkspace(new File(this.workspaceBasePath)).projectDir(projectName).getPath(); // projects may be in a shard
     }
 
     @Override
@@ -328,6 +339,36 @@ public class FileRvdConfiguration extends BaseRvdConfiguration {
         buffer.append("\n welcomeMessage:\t").append(getWelcomeMessage());
         buffer.append("\n restcommBaseUri:\t").append(getRestcommBaseUri());
         buffer.append("\n dynamicRestcommResolving:\t").append(getDynamicRestcommResolving());
+        buffer.append("\n trafficCaptureSampleRate:\t").append(getTrafficCaptureSampleRate());
+        if (getTrafficCaptureSampleRate() > 0) {
+            buffer.append("\n trafficCaptureFile:\t").append(getTrafficCaptureFile());
+            buffer.append("\n trafficCaptureMaxMegabytes:\t").append(getTrafficCaptureMaxMegabytes());
+            buffer.append("\n trafficCapturePii:\t").append(isTrafficCapturePii());
+        }
+        if (getFlowCostLimits() != null)
+            buffer.append("\n flowCostLimits:\t").append(getFlowCostLimits());
+        buffer.append("\n statsRetention:\t").append(getStatsRetention());
+        buffer.append("\n metricsMaxApplications:\t").append(getMetricsMaxApplications());
+        buffer.append("\n callTraceBufferSize:\t").append(getCallTraceBufferSize());
+        if (getCallTraceBufferSize() > 0)
+            buffer.append("\n callTraceRedact:\t").append(getCallTraceRedactPattern());
+        buffer.append("\n slowApiRequestMillis:\t").append(getSlowApiRequestMillis());
+        buffer.append("\n storageInstrumentation:\t").append(isStorageInstrumentation());
+        buffer.append("\n workspaceBackend:\t").append(getWorkspaceBackend());
+        buffer.append("\n sharedWorkspace:\t").append(isSharedWorkspace());
+        buffer.append("\n projectRevalidationMillis:\t").append(getProjectRevalidationMillis());
+        buffer.append("\n workspaceSharding:\t").append(isWorkspaceSharding());
+        buffer.append("\n projectMetadataIndex:\t").append(isProjectMetadataIndex());
+        buffer.append("\n workspaceCompression:\t").append(getWorkspaceCompression());
+        buffer.append("\n workspaceCompressionDictionary:\t").append(isWorkspaceCompressionDictionary());
+        buffer.append("\n workspaceBackupPath:\t").append(getWorkspaceBackupPath());
+        buffer.append("\n workspaceBackup:\t").append(getWorkspaceBackup());
+        buffer.append("\n projectRegistryMaxEntries:\t").append(getProjectRegistryMaxEntries());
+        buffer.append("\n projectRegistryMaxMegabytes:\t").append(getProjectRegistryMaxMegabytes());
+        buffer.append("\n pinnedApplications:\t").append(getPinnedApplications());
+        buffer.append("\n cacheWarmup:\t").append(isCacheWarmup());
+        buffer.append("\n hotSetSize:\t").append(getHotSetSize());
+        buffer.append("\n mediaMaxAgeSeconds:\t").append(getMediaMaxAgeSeconds());
         buffer.append("\n\nNote, restcommBaseUri is the configured value in rvd.xml. Actual value may vary. ");
 
         return buffer.toString();
@@ -453,4 +494,252 @@ public class FileRvdConfiguration extends BaseRvdConfiguration {
         return dynamicRestcommResolving;
     }
 
+    @Override
+    public double getTrafficCaptureSampleRate() {
+        if (trafficCaptureSampleRate == null) {
+            double rate = DEFAULT_TRAFFIC_CAPTURE_SAMPLE_RATE;
+            if (rvdConfig != null && !RvdUtils.isEmpty(rvdConfig.getTrafficCaptureSampleRate())) {
+                try {
+                    rate = Double.parseDouble(rvdConfig.getTrafficCaptureSampleRate().trim());
+                    if (rate < 0 || rate > 1)
+                        throw new NumberFormatException("value should be between 0 and 1");
+                } catch (NumberFormatException e) {
+                    logger.warn(LoggingHelper.buildMessage(getClass(), "getTrafficCaptureSampleRate", null, "Cannot parse rvd.xml:trafficCaptureSampleRate. Traffic capture will be disabled" + (e.getMessage() != null ? " - " + e.getMessage() : "")));
+                    rate = DEFAULT_TRAFFIC_CAPTURE_SAMPLE_RATE;
+                }
+            }
+            trafficCaptureSampleRate = rate;
+        }
+        return trafficCaptureSampleRate;
+    }
+
+    @Override
+    public String getTrafficCaptureFile() {
+        if (rvdConfig != null && !RvdUtils.isEmpty(rvdConfig.getTrafficCaptureFile())) {
+            String path = rvdConfig.getTrafficCaptureFile();
+            return path.startsWith("/") ? path : contextRootPath + path;
+        }
+        return getWorkspaceBasePath() + File.separator + CAPTURE_DIRECTORY_NAME + File.separator + DEFAULT_TRAFFIC_CAPTURE_FILENAME;
+    }
+
+    @Override
+    public int getTrafficCaptureMaxMegabytes() {
+        if (rvdConfig != null && rvdConfig.getTrafficCaptureMaxMegabytes() != null && rvdConfig.getTrafficCaptureMaxMegabytes() >= 0)
+            return rvdConfig.getTrafficCaptureMaxMegabytes();
+        return DEFAULT_TRAFFIC_CAPTURE_MAX_MEGABYTES;
+    }
+
+    @Override
+    public boolean isTrafficCapturePii() {
+        if (rvdConfig != null && rvdConfig.getTrafficCapturePii() != null)
+            return rvdConfig.getTrafficCapturePii();
+        return DEFAULT_TRAFFIC_CAPTURE_PII;
+    }
+
+    @Override
+    public FlowCostLimits getFlowCostLimits() {
+        return rvdConfig != null ? rvdConfig.getFlowCostLimits() : null;
+    }
+
+    @Override
+    public StatsRetention getStatsRetention() {
+        StatsRetention options = rvdConfig != null ? rvdConfig.getStatsRetention() : null;
+        if (options == null)
+            options = new StatsRetention();
+        return new StatsRetention(
+                options.getEnabled() != null ? options.getEnabled() : true,
+                options.getMinuteHours() != null ? options.getMinuteHours() : DEFAULT_STATS_MINUTE_RETENTION_HOURS,
+                options.getHourlyDays() != null ? options.getHourlyDays() : DEFAULT_STATS_HOURLY_RETENTION_DAYS);
+    }
+
+    @Override
+    public int getMetricsMaxApplications() {
+        if (rvdConfig != null && rvdConfig.getMetricsMaxApplications() != null && rvdConfig.getMetricsMaxApplications() >= 0)
+            return rvdConfig.getMetricsMaxApplications();
+        return DEFAULT_METRICS_MAX_APPLICATIONS;
+    }
+
+    @Override
+    public int getCallTraceBufferSize() {
+        if (rvdConfig != null && rvdConfig.getCallTraceBufferSize() != null && rvdConfig.getCallTraceBufferSize() >= 0)
+            return rvdConfig.getCallTraceBufferSize();
+        return DEFAULT_CALL_TRACE_BUFFER_SIZE;
+    }
+
+    @Override
+    public Pattern getCallTraceRedactPattern() {
+        if (callTraceRedactPattern == null) {
+            String regex = rvdConfig != null ? rvdConfig.getCallTraceRedact() : null;
+            Pattern pattern = null;
+            if (!RvdUtils.isEmpty(regex)) {
+                try {
+                    pattern = Pattern.compile(regex);
+                } catch (PatternSyntaxException e) {
+                    logger.warn(LoggingHelper.buildMessage(getClass(), "getCallTraceRedactPattern", null, "invalid callTraceRedact pattern '" + regex + "'. Using default."));
+                }
+            }
+            callTraceRedactPattern = pattern != null ? pattern : Pattern.compile(DEFAULT_CALL_TRACE_REDACT);
+        }
+        return callTraceRedactPattern;
+    }
+
+    @Override
+    public int getSlowApiRequestMillis() {
+        if (rvdConfig != null && rvdConfig.getSlowApiRequestMillis() != null && rvdConfig.getSlowApiRequestMillis() >= 0)
+            return rvdConfig.getSlowApiRequestMillis();
+        return DEFAULT_SLOW_API_REQUEST_MILLIS;
+    }
+
+    @Override
+    public boolean isStorageInstrumentation() {
+        if (rvdConfig != null && rvdConfig.getStorageInstrumentation() != null)
+            return rvdConfig.getStorageInstrumentation();
+        return DEFAULT_STORAGE_INSTRUMENTATION;
+    }
+
+    @Override
+    public String getWorkspaceBackend() {
+        String backend = rvdConfig != null ? rvdConfig.getWorkspaceBackend() : null;
+        if (RvdUtils.isEmpty(backend))
+            return DEFAULT_WORKSPACE_BACKEND;
+        backend = backend.trim();
+        if (WORKSPACE_BACKEND_STORE.equals(backend) && isSharedWorkspace()) {
+            // the store is held open by a single process. Other nodes would neither see its changes nor open it.
+            logger.error(LoggingHelper.buildMessage(getClass(), "getWorkspaceBackend", null, "workspaceBackend 'store' can't be used with sharedWorkspace. Using '" + WORKSPACE_BACKEND_FS + "'."));
+            return WORKSPACE_BACKEND_FS;
+        }
+        if (WORKSPACE_BACKEND_FS.equals(backend) || WORKSPACE_BACKEND_STORE.equals(backend))
+            return backend;
+        logger.warn(LoggingHelper.buildMessage(getClass(), "getWorkspaceBackend", null, "unknown workspaceBackend '" + backend + "'. Using default."));
+        return DEFAULT_WORKSPACE_BACKEND;
+    }
+
+    @Override
+    public boolean isSharedWorkspace() {
+        if (rvdConfig != null && rvdConfig.getSharedWorkspace() != null)
+            return rvdConfig.getSharedWorkspace();
+        return DEFAULT_SHARED_WORKSPACE;
+    }
+
+    @Override
+    public int getProjectRevalidationMillis() {
+        if (rvdConfig != null && rvdConfig.getProjectRevalidationMillis() != null && rvdConfig.getProjectRevalidationMillis() >= 0)
+            return rvdConfig.getProjectRevalidationMillis();
+        return DEFAULT_PROJECT_REVALIDATION_MILLIS;
+    }
+
+    @Override
+    public boolean isWorkspaceSharding() {
+        if (rvdConfig != null && rvdConfig.getWorkspaceSharding() != null)
+            return rvdConfig.getWorkspaceSharding();
+        return DEFAULT_WORKSPACE_SHARDING;
+    }
+
+    @Override
+    public boolean isProjectMetadataIndex() {
+        if (rvdConfig != null && rvdConfig.getProjectMetadataIndex() != null)
+            return rvdConfig.getProjectMetadataIndex();
+        return DEFAULT_PROJECT_METADATA_INDEX;
+    }
+
+    @Override
+    public List<String> getWorkspaceCompression() {
+        String value = rvdConfig != null ? rvdConfig.getWorkspaceCompression() : null;
+        if (RvdUtils.isEmpty(value))
+            value = DEFAULT_WORKSPACE_COMPRESSION;
+        List<String> types = new ArrayList<String>();
+        for (String name: value.split(",")) {
+            name = name.trim();
+            if (name.isEmpty())
+                continue;
+            StorageEntityType type = null;
+            try {
+                type = StorageEntityType.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                // not a type
+            }
+            if (type != null && EntityCompression.COMPRESSIBLE_TYPES.contains(type))
+                types.add(name);
+            else
+                logger.warn(LoggingHelper.buildMessage(getClass(), "getWorkspaceCompression", null, "'" + name + "' can't be compressed. Ignoring it."));
+        }
+        return types;
+    }
+
+    @Override
+    public boolean isWorkspaceCompressionDictionary() {
+        if (rvdConfig != null && rvdConfig.getWorkspaceCompressionDictionary() != null)
+            return rvdConfig.getWorkspaceCompressionDictionary();
+        return DEFAULT_WORKSPACE_COMPRESSION_DICTIONARY;
+    }
+
+    @Override
+    public String getWorkspaceBackupPath() {
+        String location = rvdConfig != null ? rvdConfig.getWorkspaceBackupLocation() : null;
+        if (RvdUtils.isEmpty(location))
+            return contextRootPath + DEFAULT_WORKSPACE_BACKUP_DIRECTORY_NAME;
+        if (location.startsWith("/"))
+            return location; // this is an absolute path
+        return contextRootPath + location; // this is a relative path hooked under RVD context
+    }
+
+    @Override
+    public WorkspaceBackupPolicy getWorkspaceBackup() {
+        WorkspaceBackupPolicy options = rvdConfig != null ? rvdConfig.getWorkspaceBackup() : null;
+        if (options == null)
+            options = new WorkspaceBackupPolicy();
+        return new WorkspaceBackupPolicy(
+                options.getEnabled() != null ? options.getEnabled() : false,
+                options.getIntervalHours() != null && options.getIntervalHours() >= 0 ? options.getIntervalHours() : DEFAULT_WORKSPACE_BACKUP_INTERVAL_HOURS,
+                options.getRetention() != null && options.getRetention() > 0 ? options.getRetention() : DEFAULT_WORKSPACE_BACKUP_RETENTION,
+                options.getMaxMegabytesPerSecond() != null && options.getMaxMegabytesPerSecond() >= 0 ? options.getMaxMegabytesPerSecond() : DEFAULT_WORKSPACE_BACKUP_MAX_MEGABYTES_PER_SECOND,
+                options.getIncludeLogs() != null ? options.getIncludeLogs() : false);
+    }
+
+    @Override
+    public int getProjectRegistryMaxEntries() {
+        if (rvdConfig != null && rvdConfig.getProjectRegistryMaxEntries() != null && rvdConfig.getProjectRegistryMaxEntries() >= 0)
+            return rvdConfig.getProjectRegistryMaxEntries();
+        return DEFAULT_PROJECT_REGISTRY_MAX_ENTRIES;
+    }
+
+    @Override
+    public int getProjectRegistryMaxMegabytes() {
+        if (rvdConfig != null && rvdConfig.getProjectRegistryMaxMegabytes() != null && rvdConfig.getProjectRegistryMaxMegabytes() >= 0)
+            return rvdConfig.getProjectRegistryMaxMegabytes();
+        return DEFAULT_PROJECT_REGISTRY_MAX_MEGABYTES;
+    }
+
+    @Override
+    public List<String> getPinnedApplications() {
+        List<String> applications = new ArrayList<String>();
+        String value = rvdConfig != null ? rvdConfig.getPinnedApplications() : null;
+        if (!RvdUtils.isEmpty(value)) {
+            for (String applicationId: value.split(","))
+                if (!applicationId.trim().isEmpty())
+                    applications.add(applicationId.trim());
+        }
+        return applications;
+    }
+
+    @Override
+    public boolean isCacheWarmup() {
+        if (rvdConfig != null && rvdConfig.getCacheWarmup() != null)
+            return rvdConfig.getCacheWarmup();
+        return DEFAULT_CACHE_WARMUP;
+    }
+
+    @Override
+    public int getHotSetSize() {
+        if (rvdConfig != null && rvdConfig.getHotSetSize() != null && rvdConfig.getHotSetSize() > 0)
+            return rvdConfig.getHotSetSize();
+        return DEFAULT_HOT_SET_SIZE;
+    }
+
+    @Override
+    public int getMediaMaxAgeSeconds() {
+        if (rvdConfig != null && rvdConfig.getMediaMaxAgeSeconds() != null && rvdConfig.getMediaMaxAgeSeconds() >= 0)
+            return rvdConfig.getMediaMaxAgeSeconds();
+        return DEFAULT_MEDIA_MAX_AGE_SECONDS;
+    }
 }
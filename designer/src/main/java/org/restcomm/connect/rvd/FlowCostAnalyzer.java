@@ -0,0 +1,201 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.restcomm.connect.rvd;
+
+import org.restcomm.connect.rvd.configuration.FlowCostLimits;
+import org.restcomm.connect.rvd.model.project.Node;
+import org.restcomm.connect.rvd.model.project.ProjectState;
+import org.restcomm.connect.rvd.model.project.Step;
+import org.restcomm.connect.rvd.model.server.FlowCostReport;
+import org.restcomm.connect.rvd.model.steps.es.ExternalServiceStep;
+import org.restcomm.connect.rvd.utils.RvdUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes the worst-case cost of a controller request for each module of a project without running it. The
+ * modules and the reroutes between them (ES routing, Control 'continue to') form a graph. For every module the
+ * path through this graph with the most ES requests, the largest sum of ES timeouts and the most reroutes is
+ * found. Each figure is maximized separately so they may come from different paths.
+ *
+ * Steps after a reroute are assumed to run too, which keeps the figures an upper bound. Modules that may reach a
+ * reroute cycle have no bound. ES routing by response label can't be followed and is only flagged.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class FlowCostAnalyzer {
+
+    private final int esTimeout; // configured ES timeout. Caps step timeouts.
+
+    private Map<String, Node> modules;
+    private Map<String, Cost> costs;
+    private List<String> path; // modules being analyzed
+    private Set<String> cycles;
+
+    public FlowCostAnalyzer(int esTimeout) {
+        this.esTimeout = esTimeout;
+    }
+
+    static class Cost {
+        int esCalls;
+        long esTimeout;
+        int rerouteDepth;
+        boolean bounded = true;
+        boolean dynamicRouting;
+
+        void max(int esCalls, long esTimeout, int rerouteDepth) {
+            this.esCalls = Math.max(this.esCalls, esCalls);
+            this.esTimeout = Math.max(this.esTimeout, esTimeout);
+            this.rerouteDepth = Math.max(this.rerouteDepth, rerouteDepth);
+        }
+    }
+
+    public synchronized FlowCostReport analyze(ProjectState state) {
+        modules = new LinkedHashMap<String, Node>();
+        for (Node node: state.getNodes())
+            modules.put(node.getName(), node);
+        costs = new HashMap<String, Cost>();
+        path = new ArrayList<String>();
+        cycles = new LinkedHashSet<String>();
+
+        FlowCostReport report = new FlowCostReport();
+        for (Node node: modules.values()) {
+            Cost cost = cost(node.getName());
+            FlowCostReport.ModuleCost moduleCost = new FlowCostReport.ModuleCost(node.getName(), node.getLabel());
+            moduleCost.setBounded(cost.bounded);
+            moduleCost.setDynamicRouting(cost.dynamicRouting);
+            if (cost.bounded) {
+                moduleCost.setEsCalls(cost.esCalls);
+                moduleCost.setEsTimeout(cost.esTimeout);
+                moduleCost.setRerouteDepth(cost.rerouteDepth);
+            }
+            List<String> rerouteTargets = new ArrayList<String>();
+            List<String> inputTargets = new ArrayList<String>();
+            for (Step step: steps(node)) {
+                addAll(rerouteTargets, step.getRerouteTargets());
+                addAll(inputTargets, step.getInputTargets());
+            }
+            moduleCost.setRerouteTargets(rerouteTargets);
+            moduleCost.setInputTargets(inputTargets);
+            report.getModules().add(moduleCost);
+        }
+        report.getCycles().addAll(cycles);
+        return report;
+    }
+
+    private Cost cost(String moduleName) {
+        Cost cost = costs.get(moduleName);
+        if (cost != null)
+            return cost;
+        path.add(moduleName);
+        cost = new Cost();
+        int esCalls = 0; // on the way to the current step
+        long esTimeoutSum = 0;
+        for (Step step: steps(modules.get(moduleName))) {
+            if (step instanceof ExternalServiceStep) {
+                ExternalServiceStep esStep = (ExternalServiceStep) step;
+                esCalls ++;
+                esTimeoutSum += esStep.getEffectiveTimeout(esTimeout);
+                if (esStep.hasDynamicRouting())
+                    cost.dynamicRouting = true;
+            }
+            for (String target: step.getRerouteTargets()) {
+                if (!modules.containsKey(target))
+                    continue; // dangling targets are reported by validation
+                int index = path.indexOf(target);
+                if (index != -1) {
+                    StringBuilder cycle = new StringBuilder();
+                    for (String module: path.subList(index, path.size()))
+                        cycle.append(module).append(" -> ");
+                    cycles.add(cycle.append(target).toString());
+                    cost.bounded = false;
+                    continue;
+                }
+                Cost targetCost = cost(target);
+                if (!targetCost.bounded)
+                    cost.bounded = false;
+                if (targetCost.dynamicRouting)
+                    cost.dynamicRouting = true;
+                cost.max(esCalls + targetCost.esCalls, esTimeoutSum + targetCost.esTimeout, 1 + targetCost.rerouteDepth);
+            }
+        }
+        cost.max(esCalls, esTimeoutSum, 0);
+        path.remove(path.size() - 1);
+        costs.put(moduleName, cost);
+        return cost;
+    }
+
+    private static List<Step> steps(Node node) {
+        List<Step> steps = new ArrayList<Step>();
+        if (node != null && node.getSteps() != null) {
+            for (Step step: node.getSteps()) {
+                if (step != null)
+                    steps.add(step);
+            }
+        }
+        return steps;
+    }
+
+    private static void addAll(List<String> to, List<String> from) {
+        for (String item: from) {
+            if (!to.contains(item))
+                to.add(item);
+        }
+    }
+
+    /**
+     * Checks a report against the configured limits. Numeric limits are checked against bounded modules. Modules that
+     * may reach a cycle exceed any 'maxRerouteDepth' limit.
+     *
+     * @param report
+     * @param limits may be null
+     * @return a description of each exceeded limit or an empty list
+     */
+    public static List<String> checkLimits(FlowCostReport report, FlowCostLimits limits) {
+        List<String> violations = new ArrayList<String>();
+        if (limits == null)
+            return violations;
+        for (FlowCostReport.ModuleCost module: report.getModules()) {
+            String moduleName = module.getLabel() != null ? module.getLabel() : module.getName();
+            if (!module.isBounded()) {
+                if (limits.getMaxRerouteDepth() != null)
+                    violations.add("Module '" + moduleName + "' may reroute endlessly. Reroute depth limit is " + limits.getMaxRerouteDepth());
+                continue;
+            }
+            if (limits.getMaxEsCalls() != null && module.getEsCalls() > limits.getMaxEsCalls())
+                violations.add("Module '" + moduleName + "' may make " + module.getEsCalls() + " ES requests. Limit is " + limits.getMaxEsCalls());
+            if (limits.getMaxEsTimeout() != null && module.getEsTimeout() > limits.getMaxEsTimeout())
+                violations.add("Module '" + moduleName + "' may wait " + module.getEsTimeout() + " ms for ES requests. Limit is " + limits.getMaxEsTimeout() + " ms");
+            if (limits.getMaxRerouteDepth() != null && module.getRerouteDepth() > limits.getMaxRerouteDepth())
+                violations.add("Module '" + moduleName + "' may reroute " + module.getRerouteDepth() + " times. Limit is " + limits.getMaxRerouteDepth());
+        }
+        if (RvdUtils.isTrue(limits.getRejectCycles())) {
+            for (String cycle: report.getCycles())
+                violations.add("Modules reroute in a cycle without waiting for input: " + cycle);
+        }
+        return violations;
+    }
+}
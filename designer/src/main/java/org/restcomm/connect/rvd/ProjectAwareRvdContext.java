@@ -11,6 +11,8 @@ import org.restcomm.connect.rvd.model.ProjectParameters;
 import org.restcomm.connect.rvd.model.ProjectSettings;
 import org.restcomm.connect.rvd.model.server.ProjectIndex;
 import org.restcomm.connect.rvd.storage.ProjectDao;
+import org.restcomm.connect.rvd.storage.ProjectSnapshotCache;
+import org.restcomm.connect.rvd.storage.Workspace;
 import org.restcomm.connect.rvd.storage.exceptions.StorageException;
 
 /**
@@ -27,22 +29,23 @@ public class ProjectAwareRvdContext extends RvdContext {
     private ProjectIndex projectOptions; // project options that is loaded on-demand
     private ProjectParameters projectParameters;
 
-    public ProjectAwareRvdContext(String projectName, ResidentProjectInfo residentInfo, HttpServletRequest request, ServletContext servletContext, RvdConfiguration configuration, LoggingContext loggingPrefix, ProjectDao projectDao) throws ProjectDoesNotExist {
+    public ProjectAwareRvdContext(String projectName, ResidentProjectInfo residentInfo, HttpServletRequest request, ServletContext servletContext, RvdConfiguration configuration, Workspace workspace, LoggingContext loggingPrefix, ProjectDao projectDao) throws ProjectDoesNotExist {
         super(request, servletContext, configuration, loggingPrefix);
         if (projectName == null)
             throw new IllegalArgumentException();
         // setup application logging
         this.projectLogger = new ProjectLogger(projectName, getConfiguration(), getMarshaler(), residentInfo.logRotationSemaphore);
-        // initialize project settings and options (i.e. /data/project file)
+        // initialize project settings and options (i.e. /data/project file). They're reused while the project generation stays the same.
         try {
-            projectOptions = projectDao.loadProjectOptions(projectName);
+            ProjectSnapshotCache.Snapshot snapshot = residentInfo.getSnapshots().get(projectName, workspace, getConfiguration().getProjectRevalidationMillis(), projectDao);
+            projectOptions = snapshot.getOptions();
             if (projectOptions == null) // project index file should be there
                 throw new ProjectDoesNotExist("Project '" + projectName + "' does not exist.");
-            this.projectSettings = projectDao.loadSettings(projectName);
+            this.projectSettings = snapshot.getSettings();
             if (this.projectSettings == null) { // if there are no settings yet, create default settings
                 this.projectSettings = ProjectSettings.createDefault();
             }
-            this.projectParameters = projectDao.loadProjectParameters(projectName);
+            this.projectParameters = snapshot.getParameters();
 
         } catch (StorageException e) {
             throw new RuntimeException(e); // serious error
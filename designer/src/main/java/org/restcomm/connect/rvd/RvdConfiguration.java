@@ -5,7 +5,11 @@ import org.restcomm.connect.rvd.commons.http.SslMode;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.regex.Pattern;
+import org.restcomm.connect.rvd.configuration.FlowCostLimits;
+import org.restcomm.connect.rvd.configuration.StatsRetention;
 import org.restcomm.connect.rvd.configuration.RvdMaxPerHost;
+import org.restcomm.connect.rvd.configuration.WorkspaceBackupPolicy;
 import org.restcomm.connect.rvd.upgrade.UpgradeService;
 
 /**
@@ -64,6 +68,52 @@ public interface RvdConfiguration {
     String DEFAULT_MEDIA_ALLOWED_EXTENSIONS = "wav|mp4"; // only allow upload of media files whose name matches this pattern i.e. file extension ends in .wav or .mp4
     // Security/Authentication options related to Restcomm
     String ADMINISTRATOR_ROLE = "Administrator"; // restcomm role that means _administrator_ access
+    // traffic capture
+    double DEFAULT_TRAFFIC_CAPTURE_SAMPLE_RATE = 0; // capturing is disabled by default
+    String CAPTURE_DIRECTORY_NAME = "@capture";
+    String DEFAULT_TRAFFIC_CAPTURE_FILENAME = "traffic.jsonl";
+    int DEFAULT_TRAFFIC_CAPTURE_MAX_MEGABYTES = 100; // per file. Up to TrafficCapture.ROTATED_FILES older files are kept too.
+    boolean DEFAULT_TRAFFIC_CAPTURE_PII = false; // caller numbers and user input are masked
+    // persisted stats
+    String STATS_DIRECTORY_NAME = "@stats";
+    int DEFAULT_STATS_MINUTE_RETENTION_HOURS = 48;
+    int DEFAULT_STATS_HOURLY_RETENTION_DAYS = 90;
+    // metrics exposition
+    int DEFAULT_METRICS_MAX_APPLICATIONS = 500;
+    // call traces
+    int DEFAULT_CALL_TRACE_BUFFER_SIZE = 0; // tracing is disabled by default
+    String DEFAULT_CALL_TRACE_REDACT = "(?i).*(pass|pin|secret|token|card|cvv|ssn).*";
+    // designer API instrumentation
+    int DEFAULT_SLOW_API_REQUEST_MILLIS = 2000;
+    boolean DEFAULT_STORAGE_INSTRUMENTATION = false;
+    // workspace storage backend
+    String WORKSPACE_BACKEND_FS = "fs"; // an entity per file (default)
+    String WORKSPACE_BACKEND_STORE = "store"; // entities in a single transactional file. See EmbeddedStore.
+    String DEFAULT_WORKSPACE_BACKEND = WORKSPACE_BACKEND_FS;
+    // cluster coherence
+    boolean DEFAULT_SHARED_WORKSPACE = false;
+    int DEFAULT_PROJECT_REVALIDATION_MILLIS = 0; // check the generation stamp on every request
+    // workspace layout
+    boolean DEFAULT_WORKSPACE_SHARDING = false;
+    // project metadata index
+    boolean DEFAULT_PROJECT_METADATA_INDEX = false;
+    // workspace compression
+    String DEFAULT_WORKSPACE_COMPRESSION = ""; // nothing is compressed
+    boolean DEFAULT_WORKSPACE_COMPRESSION_DICTIONARY = false;
+    int COMPRESSION_DICTIONARY_SAMPLE_PROJECTS = 200;
+    // workspace backups
+    String DEFAULT_WORKSPACE_BACKUP_DIRECTORY_NAME = "workspace-backup"; // under the context root
+    int DEFAULT_WORKSPACE_BACKUP_INTERVAL_HOURS = 24;
+    int DEFAULT_WORKSPACE_BACKUP_RETENTION = 7;
+    int DEFAULT_WORKSPACE_BACKUP_MAX_MEGABYTES_PER_SECOND = 20;
+    // resident project data
+    int DEFAULT_PROJECT_REGISTRY_MAX_ENTRIES = 5000;
+    int DEFAULT_PROJECT_REGISTRY_MAX_MEGABYTES = 256;
+    // startup warm-up
+    boolean DEFAULT_CACHE_WARMUP = false;
+    int DEFAULT_HOT_SET_SIZE = 50;
+    // media serving
+    int DEFAULT_MEDIA_MAX_AGE_SECONDS = 60;
 
     String getWorkspaceBasePath();
 
@@ -118,4 +168,144 @@ public interface RvdConfiguration {
      * @return Returns the path string of null TODO
      */
     String getProjectTemplatesWorkspacePath();
+
+    /**
+     * The fraction (0..1) of controller requests that are recorded by traffic capture. 0 disables capturing.
+     */
+    double getTrafficCaptureSampleRate();
+
+    /**
+     * Absolute path of the file captured traffic is appended to. By default, it's @capture/traffic.jsonl under the
+     * workspace.
+     */
+    String getTrafficCaptureFile();
+
+    /**
+     * Size in megabytes the capture file may grow to before it is rotated. 0 means no limit.
+     */
+    int getTrafficCaptureMaxMegabytes();
+
+    /**
+     * True if captured requests keep caller numbers and user input (see TrafficCapture.PII_PARAMS) as they are.
+     * Parameters matching getCallTraceRedactPattern() are masked either way.
+     */
+    boolean isTrafficCapturePii();
+
+    /**
+     * Limits on the worst-case cost of a project flow that are checked when a project is built. Returns null if no
+     * limits are configured.
+     */
+    FlowCostLimits getFlowCostLimits();
+
+    /**
+     * Options of the stats series persisted under @stats in the workspace. Never null. Options missing from
+     * rvd.xml get their default values.
+     */
+    StatsRetention getStatsRetention();
+
+    /**
+     * Maximum number of applications that get their own app_sid label in exported metrics. The rest are summed up
+     * under app_sid="other".
+     */
+    int getMetricsMaxApplications();
+
+    /**
+     * Number of call traces kept per application. 0 disables tracing.
+     */
+    int getCallTraceBufferSize();
+
+    /**
+     * Variables with names matching this pattern have their values masked in call traces. Never null.
+     */
+    Pattern getCallTraceRedactPattern();
+
+    /**
+     * Designer API requests taking longer than this (in milliseconds) are logged as warnings. 0 disables warnings.
+     */
+    int getSlowApiRequestMillis();
+
+    /**
+     * Whether workspace storage I/O is accounted by entity type and request.
+     */
+    boolean isStorageInstrumentation();
+
+    /**
+     * How workspace entities are stored. One of WORKSPACE_BACKEND_FS or WORKSPACE_BACKEND_STORE. The store is only
+     * used by a single process so it is never returned for a shared workspace.
+     */
+    String getWorkspaceBackend();
+
+    /**
+     * Whether several RVD nodes run over the same workspace directory.
+     */
+    boolean isSharedWorkspace();
+
+    /**
+     * How long (in milliseconds) cached project data are used before the generation stamp of the project is checked
+     * again. 0 checks on every request.
+     */
+    int getProjectRevalidationMillis();
+
+    /**
+     * Whether projects are moved into hashed subdirectories of the workspace. See WorkspaceLayout.
+     */
+    boolean isWorkspaceSharding();
+
+    /**
+     * Whether project metadata are indexed for the admin API. See ProjectMetadataIndex.
+     */
+    boolean isProjectMetadataIndex();
+
+    /**
+     * Names of the entity types compressed when written to a file system workspace, e.g. state and mod. Empty if
+     * compression is off. See EntityCompression. Never null.
+     */
+    List<String> getWorkspaceCompression();
+
+    /**
+     * Whether entities are compressed with a dictionary trained out of the workspace.
+     */
+    boolean isWorkspaceCompressionDictionary();
+
+    /**
+     * The directory workspace snapshots are written to. See WorkspaceBackup.
+     */
+    String getWorkspaceBackupPath();
+
+    /**
+     * Options of workspace snapshots with defaults filled in. Never null.
+     */
+    WorkspaceBackupPolicy getWorkspaceBackup();
+
+    /**
+     * How many projects keep their in-memory data (stats, caches, traces) at most. Least recently used ones are
+     * evicted beyond that. 0 for no limit. See ProjectRegistry.
+     */
+    int getProjectRegistryMaxEntries();
+
+    /**
+     * Estimated memory the in-memory data of all projects may take, in megabytes. 0 for no limit.
+     */
+    int getProjectRegistryMaxMegabytes();
+
+    /**
+     * Application sids whose in-memory data are never evicted. Never null.
+     */
+    List<String> getPinnedApplications();
+
+    /**
+     * Whether the caches of the most requested projects are filled before RVD reports ready. See CacheWarmer.
+     */
+    boolean isCacheWarmup();
+
+    /**
+     * How many of the most requested applications are tracked and warmed up on startup.
+     */
+    int getHotSetSize();
+
+    /**
+     * How long (in seconds) clients may use media files they fetched before checking them again (Cache-Control
+     * max-age). 0 makes them check every time.
+     */
+    int getMediaMaxAgeSeconds();
 }
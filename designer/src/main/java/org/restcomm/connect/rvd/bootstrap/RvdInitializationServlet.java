@@ -1,5 +1,10 @@
 package org.restcomm.connect.rvd.bootstrap;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -15,13 +20,27 @@ import org.restcomm.connect.rvd.commons.http.CustomHttpClientBuilder;
 import org.restcomm.connect.rvd.concurrency.ProjectRegistry;
 import org.restcomm.connect.rvd.configuration.RestcommLocationResolver;
 import org.restcomm.connect.rvd.exceptions.BootstrappingException;
+import org.restcomm.connect.rvd.health.HealthMonitor;
+import org.restcomm.connect.rvd.health.InitializationStatus;
 import org.restcomm.connect.rvd.interpreter.serialization.RcmlSerializer;
 import org.restcomm.connect.rvd.logging.system.RvdLoggers;
 import org.restcomm.connect.rvd.model.StepMarshaler;
+import org.restcomm.connect.rvd.storage.EmbeddedStore;
+import org.restcomm.connect.rvd.storage.EntityCompression;
+import org.restcomm.connect.rvd.storage.FsProjectDao;
 import org.restcomm.connect.rvd.storage.FsWorkspaceStorage;
 import org.restcomm.connect.rvd.storage.JsonModelStorage;
+import org.restcomm.connect.rvd.storage.ProjectDao;
+import org.restcomm.connect.rvd.storage.StorageEntityType;
+import org.restcomm.connect.rvd.storage.StoreProjectDao;
+import org.restcomm.connect.rvd.storage.StoreWorkspaceStorage;
+import org.restcomm.connect.rvd.storage.Workspace;
+import org.restcomm.connect.rvd.storage.WorkspaceStorage;
+import org.restcomm.connect.rvd.storage.WorkspaceStoreMigrator;
 import org.restcomm.connect.rvd.storage.exceptions.StorageException;
 import org.restcomm.connect.rvd.upgrade.UpgradeService;
+import org.restcomm.connect.rvd.warmup.CacheWarmer;
+import org.restcomm.connect.rvd.warmup.HotSet;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -52,37 +71,138 @@ public class RvdInitializationServlet extends HttpServlet {
         CustomHttpClientBuilder httpClientBuilder = new CustomHttpClientBuilder(rvdConfiguration);
         CloseableHttpClient buildHttpClient = httpClientBuilder.buildHttpClient();
         RestcommLocationResolver restcommResolver = new RestcommLocationResolver(rvdConfiguration);
+        EmbeddedStore workspaceStore = null;
+        String workspaceStoreError = null;
+        if (RvdConfiguration.WORKSPACE_BACKEND_STORE.equals(rvdConfiguration.getWorkspaceBackend())) {
+            File storeFile = new File(rvdConfiguration.getWorkspaceBasePath(), EmbeddedStore.FILENAME);
+            try {
+                workspaceStore = EmbeddedStore.open(storeFile);
+                logger.info("Workspace entities are kept in " + storeFile + " (" + workspaceStore.getEntryCount() + " entries)");
+            } catch (IOException e) {
+                logger.log(Level.ERROR, "Error opening workspace store " + storeFile + ". Falling back to file system storage.", e);
+                workspaceStoreError = e.getMessage();
+            }
+        }
         ApplicationContext appContext = new ApplicationContextBuilder()
                 .setConfiguration(rvdConfiguration)
                 .setHttpClientBuilder(httpClientBuilder)
                 .setDefaultHttpClient(buildHttpClient)
                 .setExternalHttpClient(httpClientBuilder.buildExternalHttpClient())
-                .setProjectRegistry(new ProjectRegistry())
+                .setProjectRegistry(new ProjectRegistry(rvdConfiguration.getProjectRegistryMaxEntries(),
+                        rvdConfiguration.getProjectRegistryMaxMegabytes() * 1024L * 1024L, rvdConfiguration.getPinnedApplications()))
                 .setRestcommResolver(restcommResolver)
+                .setWorkspaceStore(workspaceStore)
                 .setRcmlSerializer(new RcmlSerializer()).build();
         servletContext.setAttribute(ApplicationContext.class.getName(), appContext);
+        if (appContext.getStatsRecorder() != null)
+            appContext.getProjectRegistry().addListener(appContext.getStatsRecorder()); // stats outlive eviction
+        appContext.getProjectRegistry().addListener(appContext.getMetricsExporter()); // after the recorder
+        HealthMonitor healthMonitor = appContext.getHealthMonitor();
+        InitializationStatus initialization = healthMonitor.getInitialization();
+        healthMonitor.start();
 
-        JsonModelStorage storage = new JsonModelStorage(new FsWorkspaceStorage(rvdConfiguration.getWorkspaceBasePath()), new StepMarshaler());
+        initialization.enter(InitializationStatus.Phase.maintenance);
+        if (workspaceStoreError != null)
+            initialization.failed("cannot open workspace store: " + workspaceStoreError);
+        Workspace workspace = appContext.getWorkspace();
+        // complete or drop file writes interrupted by a crash before anything reads the workspace
+        try {
+            workspace.getJournal().recover();
+        } catch (IOException e) {
+            logger.log(Level.ERROR, "Error recovering interrupted writes in workspace " + rvdConfiguration.getWorkspaceBasePath(), e);
+            initialization.failed(e.getMessage());
+        }
+        if (workspaceStore == null && !rvdConfiguration.getWorkspaceCompression().isEmpty()) {
+            EntityCompression compression = workspace.getCompression();
+            List<StorageEntityType> types = new ArrayList<StorageEntityType>();
+            for (String name: rvdConfiguration.getWorkspaceCompression())
+                types.add(StorageEntityType.valueOf(name));
+            compression.setTypes(types);
+            if (rvdConfiguration.isWorkspaceCompressionDictionary()) {
+                try {
+                    compression.useDictionary(RvdConfiguration.COMPRESSION_DICTIONARY_SAMPLE_PROJECTS);
+                } catch (IOException e) {
+                    logger.log(Level.WARN, "Error training compression dictionary for workspace " + rvdConfiguration.getWorkspaceBasePath() + ". Compressing without one.", e);
+                }
+            }
+        }
+        WorkspaceStorage workspaceStorage;
+        if (workspaceStore != null) {
+            WorkspaceStoreMigrator migrator = new WorkspaceStoreMigrator(workspace, workspaceStore);
+            if (!migrator.isMigrated()) {
+                try {
+                    migrator.migrate();
+                } catch (StorageException e) {
+                    logger.log(Level.ERROR, "Error migrating workspace to " + workspaceStore.getFile(), e);
+                    initialization.failed(e.getMessage());
+                }
+            }
+            workspaceStorage = new StoreWorkspaceStorage(workspaceStore, workspace);
+        } else
+            workspaceStorage = new FsWorkspaceStorage(workspace);
+        JsonModelStorage storage = new JsonModelStorage(workspaceStorage, new StepMarshaler());
+        ProjectDao projectDao;
+        if (workspaceStore != null)
+            projectDao = new StoreProjectDao(storage, (StoreWorkspaceStorage) workspaceStorage, appContext.getCompiledProjectCache());
+        else
+            projectDao = new FsProjectDao(storage, appContext.getCompiledProjectCache());
         WorkspaceMaintainer workspaceMaintainer = new WorkspaceMaintainer(storage, servletContext.getRealPath("/"));
         try {
             workspaceMaintainer.checkWorkspace();
         } catch (StorageException e) {
             logger.log(Level.ERROR,"Errors in workspace maintainance!", e);
+            initialization.failed(e.getMessage());
         }
 
+        initialization.enter(InitializationStatus.Phase.bootstrap);
         WorkspaceBootstrapper workspaceBootstrapper = new WorkspaceBootstrapper(rvdConfiguration.getWorkspaceBasePath(), rvdConfiguration.getProjectTemplatesWorkspacePath());
         try {
             workspaceBootstrapper.run();
         } catch (BootstrappingException e) {
             logger.log(Level.ERROR,"Error bootstrapping workspace at " + rvdConfiguration.getWorkspaceBasePath(), e);
+            initialization.failed(e.getMessage());
         }
 
-        UpgradeService upgradeService = new UpgradeService(storage);
+        initialization.enter(InitializationStatus.Phase.upgrade);
+        UpgradeService upgradeService = new UpgradeService(storage, projectDao);
         try {
             upgradeService.upgradeWorkspace();
         } catch (StorageException e) {
             logger.log(Level.ERROR,"Error upgrading workspace at " + rvdConfiguration.getWorkspaceBasePath(), e);
+            initialization.failed(e.getMessage());
         }
+
+        if (appContext.getStatsRecorder() != null)
+            appContext.getStatsRecorder().start();
+        if (appContext.getShardMigrator() != null)
+            appContext.getShardMigrator().start();
+        if (appContext.getTrashReaper() != null)
+            appContext.getTrashReaper().start(); // picks up projects removed before a crash too
+        if (appContext.getWorkspaceBackup() != null)
+            appContext.getWorkspaceBackup().start(rvdConfiguration.getWorkspaceBackup().getIntervalHours());
+        if (appContext.getProjectMetadataIndex() != null) {
+            try {
+                appContext.getProjectMetadataIndex().open(storage);
+            } catch (IOException | StorageException e) {
+                logger.log(Level.ERROR, "Error opening project metadata index of workspace " + rvdConfiguration.getWorkspaceBasePath(), e);
+            }
+        }
+        if (appContext.getHotSetTracker() != null) {
+            initialization.enter(InitializationStatus.Phase.warmup);
+            HotSet hotSet = HotSet.load(new File(rvdConfiguration.getWorkspaceBasePath()));
+            if (hotSet != null) {
+                appContext.getHotSetTracker().resume(hotSet);
+                try {
+                    CacheWarmer.Report report = new CacheWarmer(appContext, projectDao, servletContext.getContextPath()).warm(hotSet, CacheWarmer.DEFAULT_BUDGET_MILLIS);
+                    logger.info("Cache warm-up: " + report);
+                } catch (RuntimeException e) {
+                    // not fatal. Projects will be loaded by the first requests as usual.
+                    logger.log(Level.WARN, "Error warming up caches", e);
+                }
+            }
+            appContext.getHotSetTracker().start();
+        }
+        initialization.enter(InitializationStatus.Phase.ready);
     }
 
     @Override
@@ -91,6 +211,33 @@ public class RvdInitializationServlet extends HttpServlet {
         ApplicationContext appCtx = (ApplicationContext) this.getServletContext().getAttribute(ApplicationContext.class.getName());
         HttpClientUtils.closeQuietly(appCtx.getDefaultHttpClient());
         HttpClientUtils.closeQuietly(appCtx.getExternaltHttpClient());
+        appCtx.getTrafficCapture().stop();
+        appCtx.getHealthMonitor().stop();
+        if (appCtx.getStatsRecorder() != null)
+            appCtx.getStatsRecorder().stop();
+        if (appCtx.getShardMigrator() != null)
+            appCtx.getShardMigrator().stop();
+        if (appCtx.getTrashReaper() != null)
+            appCtx.getTrashReaper().stop();
+        if (appCtx.getWorkspaceBackup() != null)
+            appCtx.getWorkspaceBackup().stop();
+        if (appCtx.getHotSetTracker() != null)
+            appCtx.getHotSetTracker().stop(); // saves the hot set for the next start
+        appCtx.getProjectRegistry().stop();
+        if (appCtx.getProjectMetadataIndex() != null) {
+            try {
+                appCtx.getProjectMetadataIndex().close();
+            } catch (IOException e) {
+                logger.log(Level.WARN, "Error closing project metadata index", e);
+            }
+        }
+        if (appCtx.getWorkspaceStore() != null) {
+            try {
+                appCtx.getWorkspaceStore().close();
+            } catch (IOException e) {
+                logger.log(Level.WARN, "Error closing workspace store", e);
+            }
+        }
         super.destroy();
     }
 
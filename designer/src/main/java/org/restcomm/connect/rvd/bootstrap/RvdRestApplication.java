@@ -3,15 +3,19 @@ package org.restcomm.connect.rvd.bootstrap;
 import javax.ws.rs.core.Application;
 
 //import org.restcomm.connect.rvd.http.GenericExceptionMapper;
+import org.restcomm.connect.rvd.http.ApiStatsFilterFactory;
 import org.restcomm.connect.rvd.http.GenericExceptionMapper;
 import org.restcomm.connect.rvd.http.ResourceNotFoundMapper;
 import org.restcomm.connect.rvd.http.ResponseWrapperExceptionMapper;
+import org.restcomm.connect.rvd.http.resources.AdminRestService;
+import org.restcomm.connect.rvd.http.resources.CallTracesRestService;
 import org.restcomm.connect.rvd.http.resources.ConfigurationRestService;
 import org.restcomm.connect.rvd.http.resources.NotificationsRestService;
 import org.restcomm.connect.rvd.http.AuthorizationExceptionMapper;
 import org.restcomm.connect.rvd.http.ProjectDoesNotExistMapper;
 import org.restcomm.connect.rvd.http.StorageExceptionMapper;
 import org.restcomm.connect.rvd.http.resources.DesignerRestService;
+import org.restcomm.connect.rvd.http.resources.HealthRestService;
 import org.restcomm.connect.rvd.http.resources.LoginRestService;
 import org.restcomm.connect.rvd.http.resources.ProjectRestService;
 import org.restcomm.connect.rvd.http.resources.RvdController;
@@ -40,7 +44,10 @@ public class RvdRestApplication extends Application {
         classes.add(NotificationsRestService.class);
         classes.add(ConfigurationRestService.class);
         classes.add(StatsRestService.class);
+        classes.add(CallTracesRestService.class);
+        classes.add(HealthRestService.class);
         classes.add(TemplatesRestService.class);
+        classes.add(AdminRestService.class);
         // and exception mappers
         classes.add(ProjectDoesNotExistMapper.class);
         classes.add(StorageExceptionMapper.class);
@@ -48,6 +55,8 @@ public class RvdRestApplication extends Application {
         classes.add(ResponseWrapperExceptionMapper.class);
         classes.add(GenericExceptionMapper.class);
         classes.add(ResourceNotFoundMapper.class);
+        // and filters
+        classes.add(ApiStatsFilterFactory.class);
         return classes;
     }
 
@@ -0,0 +1,52 @@
+package org.restcomm.connect.rvd.capture;
+
+/**
+ * An External Service request and the response it got, as recorded by traffic capture.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class CapturedEsCall {
+
+    private String method;
+    private String url;
+    private String requestBody;
+    private Integer status; // null if no response was received (i.e. timeout)
+    private String responseBody;
+    private long durationMillis;
+
+    public CapturedEsCall() {
+    }
+
+    public CapturedEsCall(String method, String url, String requestBody, Integer status, String responseBody, long durationMillis) {
+        this.method = method;
+        this.url = url;
+        this.requestBody = requestBody;
+        this.status = status;
+        this.responseBody = responseBody;
+        this.durationMillis = durationMillis;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getRequestBody() {
+        return requestBody;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public String getResponseBody() {
+        return responseBody;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+}
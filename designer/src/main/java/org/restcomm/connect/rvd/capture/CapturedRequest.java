@@ -0,0 +1,155 @@
+package org.restcomm.connect.rvd.capture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.restcomm.connect.rvd.trace.CallTrace;
+
+/**
+ * A controller request recorded by traffic capture along with the RCML it produced. Each captured request is stored
+ * as a single JSON line in the capture file.
+ *
+ * ES calls are appended while the interpreter runs. A single request is handled by a single thread so no
+ * synchronization is needed.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class CapturedRequest {
+
+    private String appSid;
+    private String method;
+    private long timestamp; // when the request arrived (epoch millis)
+    private String contextPath;
+    private String scheme;
+    private String serverName;
+    private int serverPort;
+    private Map<String, List<String>> params;
+    private String rcml;
+    private long durationMillis;
+    private boolean cached; // was served from the static RCML cache
+    private List<CapturedEsCall> esCalls = new ArrayList<CapturedEsCall>();
+
+    public CapturedRequest() {
+    }
+
+    public CapturedRequest(String appSid, HttpServletRequest httpRequest, MultivaluedMap<String, String> requestParams) {
+        this.appSid = appSid;
+        this.timestamp = System.currentTimeMillis();
+        this.method = httpRequest.getMethod();
+        this.contextPath = httpRequest.getContextPath();
+        this.scheme = httpRequest.getScheme();
+        this.serverName = httpRequest.getServerName();
+        this.serverPort = httpRequest.getServerPort();
+        // copy parameters. The map passed may be reused by the container.
+        this.params = new LinkedHashMap<String, List<String>>();
+        for (Map.Entry<String, List<String>> entry: requestParams.entrySet())
+            this.params.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+    }
+
+    // a request made up by RVD itself. See ReplayEngine.dryRun().
+    CapturedRequest(String appSid, String contextPath, Map<String, List<String>> params) {
+        this.appSid = appSid;
+        this.timestamp = System.currentTimeMillis();
+        this.method = "POST";
+        this.contextPath = contextPath;
+        this.scheme = "http";
+        this.serverName = "localhost";
+        this.params = params;
+    }
+
+    /**
+     * Marks the request as completed.
+     *
+     * @param rcml the RCML returned
+     * @param cached true if it was served from the static RCML cache
+     */
+    public void complete(String rcml, boolean cached) {
+        this.rcml = rcml;
+        this.cached = cached;
+        this.durationMillis = System.currentTimeMillis() - timestamp;
+    }
+
+    public void addEsCall(CapturedEsCall esCall) {
+        esCalls.add(esCall);
+    }
+
+    /**
+     * Masks the values of parameters whose name matches redactPattern or is in maskedParams. Strips credentials,
+     * query string and fragment from ES call urls (see CallTrace.stripUrl()).
+     */
+    void redact(Pattern redactPattern, Set<String> maskedParams) {
+        if (params != null) {
+            for (Map.Entry<String, List<String>> entry: params.entrySet()) {
+                String name = entry.getKey();
+                if (maskedParams.contains(name) || (redactPattern != null && name != null && redactPattern.matcher(name).matches())) {
+                    List<String> masked = new ArrayList<String>();
+                    for (int i = 0; i < entry.getValue().size(); i++)
+                        masked.add(CallTrace.REDACTED);
+                    entry.setValue(masked);
+                }
+            }
+        }
+        if (esCalls != null) {
+            for (int i = 0; i < esCalls.size(); i++) {
+                CapturedEsCall call = esCalls.get(i);
+                esCalls.set(i, new CapturedEsCall(call.getMethod(), CallTrace.stripUrl(call.getUrl()), call.getRequestBody(), call.getStatus(), call.getResponseBody(), call.getDurationMillis()));
+            }
+        }
+    }
+
+    public String getAppSid() {
+        return appSid;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getContextPath() {
+        return contextPath;
+    }
+
+    public String getScheme() {
+        return scheme;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    public int getServerPort() {
+        return serverPort;
+    }
+
+    public Map<String, List<String>> getParams() {
+        return params == null ? Collections.<String, List<String>>emptyMap() : params;
+    }
+
+    public String getRcml() {
+        return rcml;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public boolean isCached() {
+        return cached;
+    }
+
+    public List<CapturedEsCall> getEsCalls() {
+        return esCalls == null ? Collections.<CapturedEsCall>emptyList() : esCalls;
+    }
+}
@@ -0,0 +1,249 @@
+package org.restcomm.connect.rvd.capture;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.ApplicationContext;
+import org.restcomm.connect.rvd.ApplicationContextBuilder;
+import org.restcomm.connect.rvd.RvdConfiguration;
+import org.restcomm.connect.rvd.concurrency.ProjectRegistry;
+import org.restcomm.connect.rvd.interpreter.Interpreter;
+import org.restcomm.connect.rvd.interpreter.serialization.RcmlSerializer;
+import org.restcomm.connect.rvd.logging.system.LoggingContext;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+import org.restcomm.connect.rvd.model.ProjectSettings;
+import org.restcomm.connect.rvd.model.server.ProjectIndex;
+import org.restcomm.connect.rvd.storage.ProjectDao;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+/**
+ * Replays captured traffic (see TrafficCapture) against the projects in a workspace. Each captured request is run
+ * through the interpreter with the recorded ES responses served by a stub. The resulting RCML is compared to the
+ * captured one and interpretation latency is measured.
+ *
+ * Requests are issued at their captured pace divided by 'speed'. A speed of 2 replays twice as fast. A speed of 0
+ * (or less) issues requests back to back and serves ES responses without delay.
+ *
+ * Project logging is disabled during replay and no stats are counted for the running instance. All requests are
+ * interpreted within a single application context of the engine. Its ES client hands each call to the stub of the
+ * request being replayed on the calling thread.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class ReplayEngine {
+
+    static final Logger logger = RvdLoggers.local;
+
+    private final ProjectDao projectDao;
+    private final RcmlSerializer serializer = new RcmlSerializer();
+    private final ReplayEsHttpClient esClient = new ReplayEsHttpClient();
+    private final ApplicationContext applicationContext;
+    private volatile double speed = 1;
+    private int threads = 4;
+
+    public ReplayEngine(RvdConfiguration configuration, ProjectDao projectDao) {
+        this.projectDao = projectDao;
+        this.applicationContext = new ApplicationContextBuilder()
+                .setConfiguration(configuration)
+                .setProjectRegistry(new ProjectRegistry()) // keeps replay stats away from live ones
+                .setExternalHttpClient(esClient)
+                .setRcmlSerializer(serializer)
+                .setTrafficCapture(new TrafficCapture(0, null))
+                .build();
+    }
+
+    public ReplayEngine setSpeed(double speed) {
+        this.speed = speed;
+        return this;
+    }
+
+    public ReplayEngine setThreads(int threads) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("threads should be a positive number");
+        this.threads = threads;
+        return this;
+    }
+
+    public ReplayReport replay(List<CapturedRequest> requests) throws InterruptedException {
+        ReplayReport report = new ReplayReport();
+        report.speed = speed;
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(threads);
+        List<Future<Outcome>> futures = new ArrayList<Future<Outcome>>(requests.size());
+        long started = System.currentTimeMillis();
+        try {
+            long firstTimestamp = requests.isEmpty() ? 0 : requests.get(0).getTimestamp();
+            for (int i = 0; i < requests.size(); i++) {
+                final CapturedRequest request = requests.get(i);
+                long delay = speed > 0 ? (long) ((request.getTimestamp() - firstTimestamp) / speed) : 0;
+                futures.add(executor.schedule(new Callable<Outcome>() {
+                    @Override
+                    public Outcome call() {
+                        return replayOne(request);
+                    }
+                }, Math.max(0, delay), TimeUnit.MILLISECONDS));
+            }
+            List<Long> latencies = new ArrayList<Long>();
+            long[] capturedLatencies = new long[requests.size()];
+            for (int i = 0; i < futures.size(); i++) {
+                CapturedRequest request = requests.get(i);
+                capturedLatencies[i] = request.getDurationMillis();
+                report.total ++;
+                Outcome outcome;
+                try {
+                    outcome = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    logger.log(Level.WARN, LoggingHelper.buildMessage(getClass(), "replay", "[replay]", "request #" + i + " failed"), e.getCause());
+                    report.errors ++;
+                    continue;
+                }
+                if (outcome.rcml == null) {
+                    report.errors ++;
+                    continue;
+                }
+                latencies.add(outcome.latencyMillis);
+                report.unmatchedEsCalls += outcome.unmatchedEsCalls;
+                if (!outcome.rcml.equals(request.getRcml())) {
+                    report.rcmlMismatches ++;
+                    if (report.diffs.size() < ReplayReport.MAX_DIFFS)
+                        report.diffs.add(new ReplayReport.RcmlDiff(i, request.getAppSid(), callSid(request), request.getRcml(), outcome.rcml));
+                }
+            }
+            long[] latencyArray = new long[latencies.size()];
+            for (int i = 0; i < latencyArray.length; i++)
+                latencyArray[i] = latencies.get(i);
+            report.latency = ReplayReport.Percentiles.of(latencyArray);
+            report.capturedLatency = ReplayReport.Percentiles.of(capturedLatencies);
+        } finally {
+            executor.shutdownNow();
+        }
+        report.wallClockMillis = System.currentTimeMillis() - started;
+        return report;
+    }
+
+    /**
+     * Interprets a module of a project for a request that carries nothing but the target. External Services are not
+     * contacted (they all respond with 503), nothing is logged and no stats are counted. Meant to load projects and
+     * exercise the interpreter before real requests arrive (see CacheWarmer).
+     *
+     * @param contextPath the context path RVD is deployed under. It shows up in URLs of the RCML.
+     * @return the RCML or null if the project could not be loaded or interpretation failed
+     */
+    public String dryRun(String appSid, String contextPath, String module) {
+        Map<String, List<String>> params = new LinkedHashMap<String, List<String>>();
+        params.put("target", Collections.singletonList(module));
+        Outcome outcome = replayOne(new CapturedRequest(appSid, contextPath, params));
+        return outcome.failed ? null : outcome.rcml;
+    }
+
+    // the result of replaying a single request. rcml is null if it could not be replayed.
+    static class Outcome {
+        String rcml;
+        boolean failed; // rcml was rendered for an exception
+        long latencyMillis;
+        int unmatchedEsCalls;
+    }
+
+    Outcome replayOne(CapturedRequest request) {
+        Outcome outcome = new Outcome();
+        String appSid = request.getAppSid();
+        ProjectIndex projectOptions;
+        try {
+            projectOptions = projectDao.loadProjectOptions(appSid);
+            if (projectOptions == null) {
+                logger.log(Level.WARN, LoggingHelper.buildMessage(getClass(), "replayOne", "[replay]", "project " + appSid + " is missing or not built"));
+                return outcome;
+            }
+        } catch (StorageException e) {
+            logger.log(Level.WARN, LoggingHelper.buildMessage(getClass(), "replayOne", "[replay]", "error loading project " + appSid), e);
+            return outcome;
+        }
+        StubEsHttpClient stub = new StubEsHttpClient(request.getEsCalls(), speed);
+        MultivaluedMap<String, String> params = new MultivaluedMapImpl();
+        for (Map.Entry<String, List<String>> entry: request.getParams().entrySet())
+            params.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+        LoggingContext logging = new LoggingContext("[replay]");
+        logging.appendApplicationSid(appSid);
+
+        long started = System.nanoTime();
+        String rcml;
+        esClient.setCurrent(stub);
+        try {
+            Interpreter interpreter = new Interpreter(appSid, buildHttpRequest(request), params, applicationContext, logging, null, ProjectSettings.createDefault(), projectOptions, projectDao, projectDao.loadProjectParameters(appSid));
+            rcml = serializer.serialize(interpreter.interpret());
+        } catch (Exception e) {
+            // same as RvdController
+            if (logger.isDebugEnabled())
+                logger.debug(LoggingHelper.buildMessage(getClass(), "replayOne", logging.getPrefix(), e.getMessage()));
+            rcml = serializer.serialize(Interpreter.rcmlOnException());
+            outcome.failed = true;
+        } finally {
+            esClient.clearCurrent();
+        }
+        outcome.latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        outcome.rcml = rcml;
+        outcome.unmatchedEsCalls = stub.getUnmatched();
+        return outcome;
+    }
+
+    static String callSid(CapturedRequest request) {
+        List<String> values = request.getParams().get("CallSid");
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Builds an HttpServletRequest that answers the few things the interpreter asks for (context path and origin)
+     * from the captured request. Anything else returns null/0/false.
+     */
+    static HttpServletRequest buildHttpRequest(final CapturedRequest request) {
+        return (HttpServletRequest) Proxy.newProxyInstance(ReplayEngine.class.getClassLoader(), new Class<?>[] {HttpServletRequest.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if ("getContextPath".equals(name))
+                    return request.getContextPath();
+                if ("getMethod".equals(name))
+                    return request.getMethod();
+                if ("getScheme".equals(name))
+                    return request.getScheme();
+                if ("getServerName".equals(name))
+                    return request.getServerName();
+                if ("getServerPort".equals(name))
+                    return request.getServerPort();
+                if ("toString".equals(name))
+                    return "replayed request of " + request.getAppSid();
+                if ("hashCode".equals(name))
+                    return System.identityHashCode(proxy);
+                if ("equals".equals(name))
+                    return proxy == args[0];
+                Class<?> type = method.getReturnType();
+                if (type == boolean.class)
+                    return false;
+                if (type == int.class)
+                    return 0;
+                if (type == long.class)
+                    return 0L;
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,55 @@
+package org.restcomm.connect.rvd.capture;
+
+import java.io.IOException;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * The External Service client of the application context ReplayEngine interprets requests with. A replay thread
+ * sets the stub of the request it replays (see StubEsHttpClient) and ES calls made on that thread are served by it.
+ * Calls made while no stub is set get a 503 back.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+class ReplayEsHttpClient extends CloseableHttpClient {
+
+    private final ThreadLocal<StubEsHttpClient> current = new ThreadLocal<StubEsHttpClient>();
+
+    void setCurrent(StubEsHttpClient stub) {
+        current.set(stub);
+    }
+
+    void clearCurrent() {
+        current.remove();
+    }
+
+    @Override
+    protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) throws IOException {
+        StubEsHttpClient stub = current.get();
+        if (stub == null)
+            return new StubEsHttpClient.StubResponse(503, null);
+        return stub.doExecute(target, request, context);
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    @Override
+    @Deprecated
+    public HttpParams getParams() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public ClientConnectionManager getConnectionManager() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,185 @@
+package org.restcomm.connect.rvd.capture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Outcome of a replay run. Latencies are in milliseconds. Captured latencies are the ones recorded in production
+ * and are reported for comparison.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class ReplayReport {
+
+    public static final int MAX_DIFFS = 100; // only the first diffs are kept
+
+    int total;
+    int errors; // requests that could not be replayed at all (i.e. missing project)
+    int rcmlMismatches;
+    int unmatchedEsCalls;
+    double speed;
+    long wallClockMillis;
+    Percentiles latency;
+    Percentiles capturedLatency;
+    List<RcmlDiff> diffs = new ArrayList<RcmlDiff>();
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getErrors() {
+        return errors;
+    }
+
+    public int getRcmlMismatches() {
+        return rcmlMismatches;
+    }
+
+    public int getUnmatchedEsCalls() {
+        return unmatchedEsCalls;
+    }
+
+    public long getWallClockMillis() {
+        return wallClockMillis;
+    }
+
+    public Percentiles getLatency() {
+        return latency;
+    }
+
+    public Percentiles getCapturedLatency() {
+        return capturedLatency;
+    }
+
+    public List<RcmlDiff> getDiffs() {
+        return diffs;
+    }
+
+    @Override
+    public String toString() {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append("replayed ").append(total).append(" requests in ").append(wallClockMillis).append(" ms (speed x").append(speed).append(")");
+        buffer.append("\n errors: ").append(errors);
+        buffer.append("\n RCML mismatches: ").append(rcmlMismatches);
+        buffer.append("\n unmatched ES calls: ").append(unmatchedEsCalls);
+        buffer.append("\n latency: ").append(latency);
+        buffer.append("\n captured latency: ").append(capturedLatency);
+        for (RcmlDiff diff: diffs)
+            buffer.append("\n ").append(diff);
+        return buffer.toString();
+    }
+
+    public static class Percentiles {
+        double p50;
+        double p90;
+        double p99;
+        double max;
+        double mean;
+
+        /**
+         * Computes nearest-rank percentiles.
+         */
+        public static Percentiles of(long[] values) {
+            Percentiles percentiles = new Percentiles();
+            if (values.length == 0)
+                return percentiles;
+            long[] sorted = Arrays.copyOf(values, values.length);
+            Arrays.sort(sorted);
+            long sum = 0;
+            for (long value: sorted)
+                sum += value;
+            percentiles.p50 = rank(sorted, 0.50);
+            percentiles.p90 = rank(sorted, 0.90);
+            percentiles.p99 = rank(sorted, 0.99);
+            percentiles.max = sorted[sorted.length - 1];
+            percentiles.mean = (double) sum / sorted.length;
+            return percentiles;
+        }
+
+        static long rank(long[] sorted, double fraction) {
+            int index = (int) Math.ceil(fraction * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP90() {
+            return p90;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        @Override
+        public String toString() {
+            return "p50=" + p50 + " p90=" + p90 + " p99=" + p99 + " max=" + max + " mean=" + mean;
+        }
+    }
+
+    /**
+     * The first line where captured and replayed RCML differ.
+     */
+    public static class RcmlDiff {
+        int index; // position of the request in the capture
+        String appSid;
+        String callSid;
+        int line; // 1-based
+        String captured;
+        String replayed;
+
+        RcmlDiff(int index, String appSid, String callSid, String capturedRcml, String replayedRcml) {
+            this.index = index;
+            this.appSid = appSid;
+            this.callSid = callSid;
+            String[] capturedLines = capturedRcml == null ? new String[0] : capturedRcml.split("\n", -1);
+            String[] replayedLines = replayedRcml == null ? new String[0] : replayedRcml.split("\n", -1);
+            int i = 0;
+            while (i < capturedLines.length && i < replayedLines.length && capturedLines[i].equals(replayedLines[i]))
+                i ++;
+            this.line = i + 1;
+            this.captured = i < capturedLines.length ? capturedLines[i] : null;
+            this.replayed = i < replayedLines.length ? replayedLines[i] : null;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getAppSid() {
+            return appSid;
+        }
+
+        public String getCallSid() {
+            return callSid;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getCaptured() {
+            return captured;
+        }
+
+        public String getReplayed() {
+            return replayed;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + index + " " + appSid + " " + callSid + " line " + line + ": captured '" + captured + "' replayed '" + replayed + "'";
+        }
+    }
+}
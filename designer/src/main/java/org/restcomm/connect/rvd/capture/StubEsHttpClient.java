@@ -0,0 +1,113 @@
+package org.restcomm.connect.rvd.capture;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.restcomm.connect.rvd.trace.CallTrace;
+
+/**
+ * Plays the part of External Service endpoints when a captured request is replayed. Responses are served from the
+ * ES calls recorded along with the request. A call is matched by method and url. If the flow has diverged and
+ * there is no such call, the next unused recorded call is served instead and the mismatch is counted.
+ *
+ * Recorded ES latency is reproduced, divided by the replay speed.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+class StubEsHttpClient extends CloseableHttpClient {
+
+    private final List<CapturedEsCall> calls;
+    private final boolean[] used;
+    private final double speed;
+    private int unmatched = 0;
+
+    StubEsHttpClient(List<CapturedEsCall> calls, double speed) {
+        this.calls = calls;
+        this.used = new boolean[calls.size()];
+        this.speed = speed;
+    }
+
+    @Override
+    protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) throws IOException {
+        String method = request.getRequestLine().getMethod();
+        String url = request instanceof HttpUriRequest ? ((HttpUriRequest) request).getURI().toString() : request.getRequestLine().getUri();
+        CapturedEsCall call = nextCall(method, url);
+        if (call == null)
+            return new StubResponse(503, null);
+        if (speed > 0 && call.getDurationMillis() > 0) {
+            try {
+                Thread.sleep((long) (call.getDurationMillis() / speed));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (call.getStatus() == null)
+            throw new SocketTimeoutException("Replayed timeout for " + url);
+        return new StubResponse(call.getStatus(), call.getResponseBody());
+    }
+
+    private synchronized CapturedEsCall nextCall(String method, String url) {
+        url = CallTrace.stripUrl(url); // the way it was captured
+        for (int i = 0; i < calls.size(); i++) {
+            CapturedEsCall call = calls.get(i);
+            if (!used[i] && method.equals(call.getMethod()) && url.equals(call.getUrl())) {
+                used[i] = true;
+                return call;
+            }
+        }
+        unmatched ++;
+        for (int i = 0; i < calls.size(); i++) {
+            if (!used[i]) {
+                used[i] = true;
+                return calls.get(i);
+            }
+        }
+        return null;
+    }
+
+    synchronized int getUnmatched() {
+        return unmatched;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    @Override
+    @Deprecated
+    public HttpParams getParams() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public ClientConnectionManager getConnectionManager() {
+        throw new UnsupportedOperationException();
+    }
+
+    static class StubResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+        StubResponse(int status, String body) {
+            super(HttpVersion.HTTP_1_1, status, null);
+            if (body != null)
+                setEntity(new StringEntity(body, ContentType.create("application/json", "UTF-8")));
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package org.restcomm.connect.rvd.capture;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+
+import com.google.gson.Gson;
+
+/**
+ * Opt-in recording of controller traffic. A sample of the requests is recorded (see
+ * RvdConfiguration.getTrafficCaptureSampleRate()) and appended as JSON lines to the capture file.
+ *
+ * Writing is done by a background thread so that captured requests are not delayed by disk I/O. If the writer
+ * can't keep up, captured requests are dropped and counted.
+ *
+ * Requests are redacted before they are queued. Values of parameters matching the redact pattern (see
+ * RvdConfiguration.getCallTraceRedactPattern()) are masked and so are PII_PARAMS unless PII is kept (see
+ * RvdConfiguration.isTrafficCapturePii()). ES call urls lose their credentials and query string. Replays of masked
+ * requests see CallTrace.REDACTED instead of the real values.
+ *
+ * Once the capture file grows past maxBytes it is rotated: traffic.jsonl becomes traffic.jsonl.1, traffic.jsonl.1
+ * becomes traffic.jsonl.2 and so on. Up to ROTATED_FILES older files are kept.
+ *
+ * Lives in ApplicationContext.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class TrafficCapture {
+
+    static final Logger logger = RvdLoggers.global;
+    static final int QUEUE_CAPACITY = 1000;
+    static final int ROTATED_FILES = 3;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Gson gson = new Gson();
+    // parameters that identify the caller or carry what they typed or said
+    public static final Set<String> PII_PARAMS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList("From", "To",
+            "Caller", "Called", "CallerName", "ForwardedFrom", "Digits", "SpeechResult", "UnstableSpeechResult", "Body",
+            "RecordingUrl", "PublicRecordingUrl")));
+
+    private final double sampleRate;
+    private final File file;
+    private final long maxBytes; // 0 for no limit
+    private final Pattern redactPattern; // may be null
+    private final boolean keepPii;
+    private final BlockingQueue<CapturedRequest> queue = new ArrayBlockingQueue<CapturedRequest>(QUEUE_CAPACITY);
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private Thread writerThread;
+    private volatile boolean stopped = false;
+
+    public TrafficCapture(double sampleRate, File file) {
+        this(sampleRate, file, 0);
+    }
+
+    /**
+     * @param maxBytes the size the capture file is rotated at. 0 for no limit.
+     */
+    public TrafficCapture(double sampleRate, File file, long maxBytes) {
+        this(sampleRate, file, maxBytes, null, false);
+    }
+
+    /**
+     * @param redactPattern values of parameters whose name matches are masked. May be null.
+     * @param keepPii if true PII_PARAMS are captured as they are
+     */
+    public TrafficCapture(double sampleRate, File file, long maxBytes, Pattern redactPattern, boolean keepPii) {
+        this.sampleRate = sampleRate;
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.redactPattern = redactPattern;
+        this.keepPii = keepPii;
+    }
+
+    public boolean isEnabled() {
+        return sampleRate > 0 && file != null;
+    }
+
+    /**
+     * Decides whether a request will be captured. If so, a CapturedRequest is returned for the controller and the
+     * interpreter to fill in. Otherwise null is returned.
+     */
+    public CapturedRequest sample(String appSid, HttpServletRequest httpRequest, MultivaluedMap<String, String> requestParams) {
+        if (!isEnabled() || stopped)
+            return null;
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)
+            return null;
+        return new CapturedRequest(appSid, httpRequest, requestParams);
+    }
+
+    /**
+     * Queues a completed request for writing.
+     */
+    public void record(CapturedRequest request) {
+        request.redact(redactPattern, keepPii ? Collections.<String>emptySet() : PII_PARAMS);
+        ensureWriter();
+        if (queue.offer(request))
+            captured.incrementAndGet();
+        else
+            dropped.incrementAndGet();
+    }
+
+    public long getCapturedCount() {
+        return captured.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of captured requests waiting to be written
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    private synchronized void ensureWriter() {
+        if (writerThread != null)
+            return;
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "rvd-traffic-capture");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    private void writeLoop() {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists())
+            parent.mkdirs();
+        List<CapturedRequest> batch = new ArrayList<CapturedRequest>();
+        while (!stopped || !queue.isEmpty()) {
+            try {
+                CapturedRequest first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+                queue.drainTo(batch);
+                append(batch);
+            } catch (InterruptedException e) {
+                stopped = true;
+            } catch (IOException e) {
+                logger.warn(LoggingHelper.buildMessage(getClass(), "writeLoop", null, "error writing captured traffic to " + file + ". " + batch.size() + " requests lost"), e);
+                dropped.addAndGet(batch.size());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void append(List<CapturedRequest> batch) throws IOException {
+        if (maxBytes > 0 && file.length() >= maxBytes)
+            rotate();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), UTF8);
+        try {
+            for (CapturedRequest request: batch) {
+                writer.write(gson.toJson(request));
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    // the oldest file falls off the end
+    void rotate() throws IOException {
+        File oldest = rotated(ROTATED_FILES);
+        if (oldest.exists() && !oldest.delete())
+            throw new IOException("cannot remove " + oldest);
+        for (int i = ROTATED_FILES - 1; i >= 0; i--) {
+            File from = i == 0 ? file : rotated(i);
+            if (from.exists() && !from.renameTo(rotated(i + 1)))
+                throw new IOException("cannot rename " + from + " to " + rotated(i + 1));
+        }
+    }
+
+    File rotated(int index) {
+        return new File(file.getPath() + "." + index);
+    }
+
+    /**
+     * Stops capturing. Requests already queued are written before the writer thread exits.
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            stopped = true;
+            thread = writerThread;
+        }
+        if (thread != null) {
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Reads a capture file. Lines that can't be parsed are skipped.
+     *
+     * @param file
+     * @return the captured requests in the order they were written
+     * @throws IOException
+     */
+    public static List<CapturedRequest> load(File file) throws IOException {
+        List<CapturedRequest> requests = new ArrayList<CapturedRequest>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty())
+                    continue;
+                try {
+                    requests.add(gson.fromJson(line, CapturedRequest.class));
+                } catch (RuntimeException e) {
+                    logger.warn(LoggingHelper.buildMessage(TrafficCapture.class, "load", null, "skipping malformed line in " + file));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return requests;
+    }
+}
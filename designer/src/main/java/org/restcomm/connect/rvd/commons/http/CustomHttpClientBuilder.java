@@ -5,7 +5,10 @@ import java.net.URL;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.http.client.config.RequestConfig;
@@ -40,7 +43,11 @@ import org.restcomm.connect.rvd.configuration.RvdMaxPerHost;
  */
 public class CustomHttpClientBuilder {
 
+    public static final String EXTERNAL_POOL = "external";
+    public static final String DEFAULT_POOL = "default";
+
     private RvdConfiguration configuration;
+    private final Map<String, PoolingHttpClientConnectionManager> pools = new ConcurrentHashMap<String, PoolingHttpClientConnectionManager>();
 
     public CustomHttpClientBuilder(RvdConfiguration configuration) {
         this.configuration = configuration;
@@ -48,7 +55,7 @@ public class CustomHttpClientBuilder {
 
     // returns an apache http client
     public CloseableHttpClient buildExternalHttpClient() {
-        return buildClient(configuration.getExternalServiceTimeout(),
+        return buildClient(EXTERNAL_POOL, configuration.getExternalServiceTimeout(),
                 configuration.getExternalServiceMaxConns(),
                 configuration.getExternalServiceMaxConnsPerRoute(),
                 configuration.getExternalServiceTTL(),
@@ -56,14 +63,22 @@ public class CustomHttpClientBuilder {
     }
 
     public CloseableHttpClient buildHttpClient() {
-        return buildClient(configuration.getDefaultHttpTimeout(),
+        return buildClient(DEFAULT_POOL, configuration.getDefaultHttpTimeout(),
                 configuration.getDefaultHttpMaxConns(),
                 configuration.getDefaultHttpMaxConnsPerRoute(),
                 configuration.getDefaultHttpTTL(),
                 configuration.getDefaultHttpMaxPerRoute());
     }
 
-    private CloseableHttpClient buildClient(Integer timeout,
+    /**
+     * Returns the connection managers of the clients built so far keyed by pool name (EXTERNAL_POOL, DEFAULT_POOL).
+     * If a client of the same kind is built again, its pool replaces the previous one.
+     */
+    public Map<String, PoolingHttpClientConnectionManager> getConnectionPools() {
+        return Collections.unmodifiableMap(pools);
+    }
+
+    private CloseableHttpClient buildClient(String poolName, Integer timeout,
             Integer maxConns, Integer maxConnsPerRoute, Integer timeToLive,
             List<RvdMaxPerHost> routes) {
         HttpClientBuilder builder = HttpClients.custom();
@@ -85,30 +100,31 @@ public class CustomHttpClientBuilder {
         if (sslsf != null) {
             builder.setSSLSocketFactory(sslsf);
         }
-        if (routes != null && routes.size() > 0) {
-            if (sslsf == null) {
-                //strict mode with no system https properties
-                //taken from apache buider code
-                PublicSuffixMatcher publicSuffixMatcherCopy = PublicSuffixMatcherLoader.getDefault();
-                DefaultHostnameVerifier hostnameVerifierCopy = new DefaultHostnameVerifier(publicSuffixMatcherCopy);
-                sslsf = new SSLConnectionSocketFactory(
-                        SSLContexts.createDefault(),
-                        hostnameVerifierCopy);
-            }
-            Registry<ConnectionSocketFactory> reg = RegistryBuilder.<ConnectionSocketFactory>create()
-                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
-                    .register("https", sslsf)
-                    .build();
-            final PoolingHttpClientConnectionManager poolingmgr = new PoolingHttpClientConnectionManager(
-                    reg,
-                    null,
-                    null,
-                    null,
-                    timeToLive,
-                    TimeUnit.MILLISECONDS);
-            //ensure conn configuration is set again for new conn manager
-            poolingmgr.setMaxTotal(maxConns);
-            poolingmgr.setDefaultMaxPerRoute(maxConnsPerRoute);
+        if (sslsf == null) {
+            //strict mode with no system https properties
+            //taken from apache buider code
+            PublicSuffixMatcher publicSuffixMatcherCopy = PublicSuffixMatcherLoader.getDefault();
+            DefaultHostnameVerifier hostnameVerifierCopy = new DefaultHostnameVerifier(publicSuffixMatcherCopy);
+            sslsf = new SSLConnectionSocketFactory(
+                    SSLContexts.createDefault(),
+                    hostnameVerifierCopy);
+        }
+        // the connection manager is always created here so that its pool can be monitored
+        Registry<ConnectionSocketFactory> reg = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", sslsf)
+                .build();
+        final PoolingHttpClientConnectionManager poolingmgr = new PoolingHttpClientConnectionManager(
+                reg,
+                null,
+                null,
+                null,
+                timeToLive,
+                TimeUnit.MILLISECONDS);
+        //ensure conn configuration is set again for new conn manager
+        poolingmgr.setMaxTotal(maxConns);
+        poolingmgr.setDefaultMaxPerRoute(maxConnsPerRoute);
+        if (routes != null) {
             for (RvdMaxPerHost route : routes) {
                 try {
                     URL url = new URL(route.getUrl());
@@ -118,8 +134,9 @@ public class CustomHttpClientBuilder {
                     throw new RuntimeException(ex);
                 }
             }
-            builder.setConnectionManager(poolingmgr);
         }
+        builder.setConnectionManager(poolingmgr);
+        pools.put(poolName, poolingmgr);
 
         CloseableHttpClient httpclient = builder.build();
         return httpclient;
@@ -20,35 +20,343 @@
 
 package org.restcomm.connect.rvd.concurrency;
 
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Service that holds memory resident data for projects like semaphores for cynchronization etc.
  * All such data are lazy by definition and should be re-initialized if missing (or dumped).
  *
+ * The registry may be bounded by number of entries and by their estimated size (see
+ * ResidentProjectInfo.estimateBytes()). Once over either limit, the least recently accessed entries are evicted.
+ * Pinned entries, entries accessed within MIN_IDLE_MILLIS and entries with pending External Service requests are
+ * never evicted, so the limits may be exceeded for a while under heavy traffic. Listeners are told about admissions and
+ * evictions so that state like stats can be saved and picked up again. They are called outside the registry lock,
+ * holding only a lock striped by application sid, so a slow listener holds up nothing but the applications that share
+ * its stripe.
+ *
+ * Sizes change as caches fill up, so they are checked again every SWEEP_MILLIS, and whenever an admission goes over
+ * maxEntries, on a background thread. Requests never sweep themselves.
+ *
  * MAKE SURE THIS STRUCTURE REMAINS THIN!
  *
  * @author otsakir@gmail.com - Orestis Tsakiridis
  */
 public class ProjectRegistry {
-    private Map<String, ResidentProjectInfo> projects = new ConcurrentHashMap<String, ResidentProjectInfo>();
+
+    static final Logger logger = RvdLoggers.global;
+    static final long MIN_IDLE_MILLIS = 60 * 1000;
+    static final long SWEEP_MILLIS = 10 * 1000;
+    static final int LOCK_STRIPES = 64;
+
+    private final Map<String, ResidentProjectInfo> projects = new ConcurrentHashMap<String, ResidentProjectInfo>();
+    private final int maxEntries; // 0 for no limit
+    private final long maxBytes; // 0 for no limit
+    private final Set<String> pinned = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final List<ResidentProjectListener> listeners = new CopyOnWriteArrayList<ResidentProjectListener>();
+    private final AtomicLong admissions = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final Lock[] admissionLocks = new Lock[LOCK_STRIPES]; // by application sid. See lockOf().
+    private ExecutorService sweeper; // created on the first sweep
+    private boolean stopped;
+    private volatile long estimatedBytes;
+    private volatile long lastSweep = System.currentTimeMillis();
+
+    /**
+     * Creates a registry that never evicts
+     */
+    public ProjectRegistry() {
+        this(0, 0, Collections.<String>emptyList());
+    }
+
+    /**
+     * @param maxEntries the number of entries kept. 0 for no limit.
+     * @param maxBytes estimated memory entries may take. 0 for no limit.
+     * @param pinned application sids that are never evicted
+     */
+    public ProjectRegistry(int maxEntries, long maxBytes, Collection<String> pinned) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.pinned.addAll(pinned);
+        for (int i = 0; i < LOCK_STRIPES; i++)
+            admissionLocks[i] = new ReentrantLock();
+    }
+
+    public void addListener(ResidentProjectListener listener) {
+        listeners.add(listener);
+    }
 
     // Retrieves semaphore for a specific project. In case they do not exists yet they are created.
     public ResidentProjectInfo getResidentProjectInfo(String applicationId) {
         ResidentProjectInfo residentProjectInfo = projects.get(applicationId);
         if (residentProjectInfo == null) {
-            // the synchronized operation is rare. Only once per project per application launch
-            synchronized (projects) {
+            boolean admitted = false;
+            // rare. Only once per project per application launch (or eviction)
+            Lock lock = lockOf(applicationId);
+            lock.lock();
+            try {
                 // retrieve again in case things have changed
                 residentProjectInfo = projects.get(applicationId);
                 if (residentProjectInfo == null) {
                     residentProjectInfo = new ResidentProjectInfo();
+                    for (ResidentProjectListener listener: listeners)
+                        listener.admitted(applicationId, residentProjectInfo);
                     projects.put(applicationId, residentProjectInfo);
+                    admissions.incrementAndGet();
+                    admitted = true;
                 }
+            } finally {
+                lock.unlock();
             }
-        }
+            if (admitted && maxEntries > 0 && projects.size() > maxEntries)
+                scheduleSweep();
+        } else
+            residentProjectInfo.lastAccess = System.currentTimeMillis();
+        if (System.currentTimeMillis() - lastSweep >= SWEEP_MILLIS)
+            scheduleSweep(); // also keeps the estimated size up to date for reporting
         return residentProjectInfo;
     }
 
+    /**
+     * Returns the applications that have resident info, keyed by application sid. The map is a read-only view.
+     */
+    public Map<String, ResidentProjectInfo> getResidentProjects() {
+        return Collections.unmodifiableMap(projects);
+    }
+
+    /**
+     * Keeps an application resident no matter how long it stays idle.
+     */
+    public void pin(String applicationId) {
+        pinned.add(applicationId);
+    }
+
+    public void unpin(String applicationId) {
+        pinned.remove(applicationId);
+    }
+
+    public boolean isPinned(String applicationId) {
+        return pinned.contains(applicationId);
+    }
+
+    // admissions and eviction notices of an application are serialized on its stripe
+    private Lock lockOf(String applicationId) {
+        return admissionLocks[(applicationId.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    /**
+     * Sweeps on the background thread unless a sweep is already under way.
+     */
+    void scheduleSweep() {
+        if (!sweeping.compareAndSet(false, true))
+            return;
+        try {
+            sweeper().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        evict(System.currentTimeMillis());
+                    } catch (RuntimeException e) {
+                        logger.error(LoggingHelper.buildMessage(ProjectRegistry.class, "sweep", null, "error sweeping project registry"), e);
+                    } finally {
+                        sweeping.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            sweeping.set(false); // stopped
+        }
+    }
+
+    private synchronized ExecutorService sweeper() {
+        if (stopped)
+            throw new RejectedExecutionException();
+        if (sweeper == null) {
+            sweeper = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "rvd-registry-sweeper");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sweeper;
+    }
+
+    /**
+     * Waits for the sweep under way, if any, to finish.
+     */
+    void awaitSweeps() throws InterruptedException {
+        ExecutorService running;
+        synchronized (this) {
+            running = sweeper;
+        }
+        if (running == null)
+            return;
+        try {
+            running.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * Stops sweeping in the background. Entries are kept.
+     */
+    public void stop() {
+        ExecutorService running;
+        synchronized (this) {
+            stopped = true;
+            running = sweeper;
+            sweeper = null;
+        }
+        if (running == null)
+            return;
+        running.shutdown();
+        try {
+            running.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Estimates the size of all entries and evicts least recently accessed ones until the registry is within its
+     * limits, in the calling thread. Does nothing if another thread is already sweeping.
+     *
+     * @return the number of entries evicted
+     */
+    public int sweep() {
+        if (!sweeping.compareAndSet(false, true))
+            return 0;
+        try {
+            return evict(System.currentTimeMillis());
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * Evicts entries as if it was 'now'. Callers other than sweeps are tests.
+     *
+     * Listeners are told after the registry is unlocked. The stripes of the evicted applications stay locked until
+     * then so that an application is not admitted again before its eviction has been dealt with.
+     */
+    public int evict(long now) {
+        lastSweep = now;
+        List<String> evictedIds = new ArrayList<String>();
+        List<ResidentProjectInfo> evictedInfos = new ArrayList<ResidentProjectInfo>();
+        List<Lock> held = new ArrayList<Lock>();
+        try {
+            synchronized (projects) {
+                long bytes = 0;
+                Map<String, Long> candidates = new HashMap<String, Long>(); // application sid -> size
+                for (Map.Entry<String, ResidentProjectInfo> entry: projects.entrySet()) {
+                    ResidentProjectInfo info = entry.getValue();
+                    long size = info.estimateBytes();
+                    bytes += size;
+                    if (!pinned.contains(entry.getKey()) && now - info.lastAccess >= MIN_IDLE_MILLIS && !info.isBusy())
+                        candidates.put(entry.getKey(), size);
+                }
+                if (isOverLimits(projects.size(), bytes)) {
+                    final Map<String, Long> lastAccess = new HashMap<String, Long>();
+                    for (String applicationId: candidates.keySet())
+                        lastAccess.put(applicationId, projects.get(applicationId).lastAccess);
+                    List<String> order = new ArrayList<String>(candidates.keySet());
+                    Collections.sort(order, new Comparator<String>() {
+                        @Override
+                        public int compare(String a, String b) {
+                            return Long.compare(lastAccess.get(a), lastAccess.get(b));
+                        }
+                    });
+                    for (String applicationId: order) {
+                        if (!isOverLimits(projects.size(), bytes))
+                            break;
+                        Lock lock = lockOf(applicationId);
+                        lock.lock();
+                        held.add(lock);
+                        evictedIds.add(applicationId);
+                        evictedInfos.add(projects.remove(applicationId));
+                        bytes -= candidates.get(applicationId);
+                    }
+                    evictions.addAndGet(evictedIds.size());
+                    if (!evictedIds.isEmpty() && logger.isDebugEnabled())
+                        logger.debug(LoggingHelper.buildMessage(getClass(), "evict", null, evictedIds.size() + " idle projects evicted. " + projects.size() + " resident, about " + bytes + " bytes"));
+                }
+                estimatedBytes = bytes;
+            }
+            for (int i = 0; i < evictedIds.size(); i++) {
+                for (ResidentProjectListener listener: listeners) {
+                    try {
+                        listener.evicted(evictedIds.get(i), evictedInfos.get(i));
+                    } catch (RuntimeException e) {
+                        logger.error(LoggingHelper.buildMessage(getClass(), "evict", null, "error evicting " + evictedIds.get(i)), e);
+                    }
+                }
+            }
+        } finally {
+            for (Lock lock: held)
+                lock.unlock();
+        }
+        return evictedIds.size();
+    }
+
+    private boolean isOverLimits(int entries, long bytes) {
+        return (maxEntries > 0 && entries > maxEntries) || (maxBytes > 0 && bytes > maxBytes);
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the estimated memory of all entries as of the last sweep
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public long getAdmissions() {
+        return admissions.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int getPinnedCount() {
+        return pinned.size();
+    }
 }
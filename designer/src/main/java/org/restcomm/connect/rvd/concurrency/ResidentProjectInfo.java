@@ -20,16 +20,36 @@
 
 package org.restcomm.connect.rvd.concurrency;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.restcomm.connect.rvd.interpreter.StaticRcmlCache;
 import org.restcomm.connect.rvd.stats.AggregateStats;
+import org.restcomm.connect.rvd.stats.LatencyStats;
+import org.restcomm.connect.rvd.storage.ProjectSnapshotCache;
+import org.restcomm.connect.rvd.trace.CallTraceBuffer;
 
 /**
- * Information for a project that needs to stay in memory. For example semaphores etc.
+ * Information for a project that needs to stay in memory. For example semaphores etc. It may be evicted from
+ * ProjectRegistry once the project is idle, so nothing that can't be recreated (or persisted on eviction) belongs here.
  *
  * @author otsakir@gmail.com - Orestis Tsakiridis
  */
 public class ResidentProjectInfo {
+    static final long BASE_BYTES = 1024; // the info itself, stats and semaphores
+    static final int MAX_COUNTED_MODULES = 64; // targets are request parameters. Don't let them grow the map.
+    static final long MODULE_HIT_BYTES = 96;
     public LogRotationSemaphore logRotationSemaphore = new LogRotationSemaphore(); // application log rotation synchronizes on this
     public AggregateStats stats = new AggregateStats();
+    public LatencyStats latency = new LatencyStats();
+    public StaticRcmlCache rcmlCache = new StaticRcmlCache(); // RCML of static modules for the current build
+    private volatile CallTraceBuffer callTraces; // created on first traced call
+    private final ProjectSnapshotCache snapshots = new ProjectSnapshotCache(); // index, settings and parameters of the current generation
+    volatile long lastAccess = System.currentTimeMillis(); // kept up to date by ProjectRegistry
+    private final ConcurrentMap<String, AtomicLong> moduleHits = new ConcurrentHashMap<String, AtomicLong>(); // requests per target module
 
     public AggregateStats getStats() {
         return stats;
@@ -38,4 +58,84 @@ public class ResidentProjectInfo {
     public void setStats(AggregateStats stats) {
         this.stats = stats;
     }
+
+    public LatencyStats getLatency() {
+        return latency;
+    }
+
+    public void setLatency(LatencyStats latency) {
+        this.latency = latency;
+    }
+
+    public StaticRcmlCache getRcmlCache() {
+        return rcmlCache;
+    }
+
+    public ProjectSnapshotCache getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * Returns the recent call traces of the project or null if no call has been traced yet.
+     */
+    public CallTraceBuffer getCallTraces() {
+        return callTraces;
+    }
+
+    /**
+     * Returns the call trace buffer, creating it if needed. The buffer is replaced (and its traces dropped) if
+     * its capacity differs from the one requested.
+     */
+    public synchronized CallTraceBuffer getOrCreateCallTraces(int capacity) {
+        if (callTraces == null || callTraces.getCapacity() != capacity)
+            callTraces = new CallTraceBuffer(capacity);
+        return callTraces;
+    }
+
+    /**
+     * Counts a request targeting a module. Once MAX_COUNTED_MODULES modules are counted, new ones are ignored.
+     */
+    public void countModule(String module) {
+        AtomicLong hits = moduleHits.get(module);
+        if (hits == null) {
+            if (moduleHits.size() >= MAX_COUNTED_MODULES)
+                return;
+            AtomicLong existing = moduleHits.putIfAbsent(module, hits = new AtomicLong());
+            if (existing != null)
+                hits = existing;
+        }
+        hits.incrementAndGet();
+    }
+
+    /**
+     * @return requests per target module since the project became resident
+     */
+    public Map<String, Long> getModuleHits() {
+        Map<String, Long> hits = new HashMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry: moduleHits.entrySet())
+            hits.put(entry.getKey(), entry.getValue().get());
+        return hits;
+    }
+
+    /**
+     * @return a rough estimate of the heap memory the info takes, including caches, traces and latency histograms
+     */
+    public long estimateBytes() {
+        long bytes = BASE_BYTES + latency.estimateBytes() + rcmlCache.estimateBytes() + snapshots.estimateBytes() + moduleHits.size() * MODULE_HIT_BYTES;
+        CallTraceBuffer traces = callTraces;
+        if (traces != null)
+            bytes += traces.estimateBytes();
+        return bytes;
+    }
+
+    /**
+     * @return true if requests of the project are still waiting for External Services
+     */
+    public boolean isBusy() {
+        return stats.esCallsPending.get() > 0;
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
 }
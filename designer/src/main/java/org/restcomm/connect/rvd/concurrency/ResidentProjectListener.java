@@ -0,0 +1,42 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+
+package org.restcomm.connect.rvd.concurrency;
+
+/**
+ * Gets notified when projects enter or leave ProjectRegistry. Called outside the registry lock but with the lock of the
+ * application's stripe held, so implementations should be quick and never call back into the registry. Notices for an
+ * application never overlap: it is not admitted again before evicted() returns. Listeners are called in the order
+ * they were added.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public interface ResidentProjectListener {
+
+    /**
+     * A project became resident. Called before the info is visible to anyone else.
+     */
+    void admitted(String applicationId, ResidentProjectInfo info);
+
+    /**
+     * A project was evicted. Requests that got the info earlier may still be using it.
+     */
+    void evicted(String applicationId, ResidentProjectInfo info);
+}
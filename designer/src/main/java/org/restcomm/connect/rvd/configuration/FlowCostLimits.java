@@ -0,0 +1,77 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.restcomm.connect.rvd.configuration;
+
+/**
+ * Build time limits on the worst-case cost of a project flow. Loaded from the &lt;flowCostLimits&gt; element of rvd.xml.
+ * Limits that are not set are not checked.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class FlowCostLimits {
+
+    private Integer maxEsCalls;
+    private Integer maxEsTimeout; // milliseconds
+    private Integer maxRerouteDepth;
+    private Boolean rejectCycles;
+
+    public FlowCostLimits() {
+    }
+
+    public FlowCostLimits(Integer maxEsCalls, Integer maxEsTimeout, Integer maxRerouteDepth, Boolean rejectCycles) {
+        this.maxEsCalls = maxEsCalls;
+        this.maxEsTimeout = maxEsTimeout;
+        this.maxRerouteDepth = maxRerouteDepth;
+        this.rejectCycles = rejectCycles;
+    }
+
+    /**
+     * Maximum number of External Service requests a single controller request may make
+     */
+    public Integer getMaxEsCalls() {
+        return maxEsCalls;
+    }
+
+    /**
+     * Maximum sum of ES timeouts (in milliseconds) a single controller request may wait for
+     */
+    public Integer getMaxEsTimeout() {
+        return maxEsTimeout;
+    }
+
+    /**
+     * Maximum number of module-to-module reroutes within a single controller request
+     */
+    public Integer getMaxRerouteDepth() {
+        return maxRerouteDepth;
+    }
+
+    /**
+     * Fail the build if modules can reroute to each other in a cycle that never waits for input
+     */
+    public Boolean getRejectCycles() {
+        return rejectCycles;
+    }
+
+    @Override
+    public String toString() {
+        return "maxEsCalls=" + maxEsCalls + " maxEsTimeout=" + maxEsTimeout + " maxRerouteDepth=" + maxRerouteDepth + " rejectCycles=" + rejectCycles;
+    }
+}
@@ -50,6 +50,31 @@ public class RvdConfig {
     private String ussdSupport;
     private String instanceId;
     private Boolean dynamicRestcommResolving;
+    private String trafficCaptureSampleRate;
+    private String trafficCaptureFile;
+    private Integer trafficCaptureMaxMegabytes;
+    private Boolean trafficCapturePii;
+    private FlowCostLimits flowCostLimits;
+    private StatsRetention statsRetention;
+    private Integer metricsMaxApplications;
+    private Integer callTraceBufferSize;
+    private String callTraceRedact;
+    private Integer slowApiRequestMillis;
+    private Boolean storageInstrumentation;
+    private String workspaceBackend;
+    private Boolean sharedWorkspace;
+    private Integer projectRevalidationMillis;
+    private Boolean workspaceSharding;
+    private Boolean projectMetadataIndex;
+    private String workspaceCompression;
+    private Boolean workspaceCompressionDictionary;
+    private WorkspaceBackupPolicy workspaceBackup;
+    private Integer projectRegistryMaxEntries;
+    private Integer projectRegistryMaxMegabytes;
+    private String pinnedApplications;
+    private Boolean cacheWarmup;
+    private Integer hotSetSize;
+    private Integer mediaMaxAgeSeconds;
 
     private List<String> allowedCorsOrigins;
 
@@ -210,4 +235,104 @@ public class RvdConfig {
     public Boolean getDynamicRestcommResolving() {
         return dynamicRestcommResolving;
     }
+
+    public String getTrafficCaptureSampleRate() {
+        return trafficCaptureSampleRate;
+    }
+
+    public String getTrafficCaptureFile() {
+        return trafficCaptureFile;
+    }
+
+    public Integer getTrafficCaptureMaxMegabytes() {
+        return trafficCaptureMaxMegabytes;
+    }
+
+    public Boolean getTrafficCapturePii() {
+        return trafficCapturePii;
+    }
+
+    public FlowCostLimits getFlowCostLimits() {
+        return flowCostLimits;
+    }
+
+    public StatsRetention getStatsRetention() {
+        return statsRetention;
+    }
+
+    public Integer getMetricsMaxApplications() {
+        return metricsMaxApplications;
+    }
+
+    public Integer getCallTraceBufferSize() {
+        return callTraceBufferSize;
+    }
+
+    public String getCallTraceRedact() {
+        return callTraceRedact;
+    }
+
+    public Integer getSlowApiRequestMillis() {
+        return slowApiRequestMillis;
+    }
+
+    public Boolean getStorageInstrumentation() {
+        return storageInstrumentation;
+    }
+
+    public String getWorkspaceBackend() {
+        return workspaceBackend;
+    }
+
+    public Boolean getSharedWorkspace() {
+        return sharedWorkspace;
+    }
+
+    public Integer getProjectRevalidationMillis() {
+        return projectRevalidationMillis;
+    }
+
+    public Boolean getWorkspaceSharding() {
+        return workspaceSharding;
+    }
+
+    public Boolean getProjectMetadataIndex() {
+        return projectMetadataIndex;
+    }
+
+    public String getWorkspaceCompression() {
+        return workspaceCompression;
+    }
+
+    public Boolean getWorkspaceCompressionDictionary() {
+        return workspaceCompressionDictionary;
+    }
+
+    public WorkspaceBackupPolicy getWorkspaceBackup() {
+        return workspaceBackup;
+    }
+
+    public Integer getProjectRegistryMaxEntries() {
+        return projectRegistryMaxEntries;
+    }
+
+    public Integer getProjectRegistryMaxMegabytes() {
+        return projectRegistryMaxMegabytes;
+    }
+
+    public String getPinnedApplications() {
+        return pinnedApplications;
+    }
+
+    public Boolean getCacheWarmup() {
+        return cacheWarmup;
+    }
+
+    public Integer getHotSetSize() {
+        return hotSetSize;
+    }
+
+    public Integer getMediaMaxAgeSeconds() {
+        return mediaMaxAgeSeconds;
+    }
 }
@@ -0,0 +1,67 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.restcomm.connect.rvd.configuration;
+
+/**
+ * Options of the persisted stats series. Loaded from the &lt;statsRetention&gt; element of rvd.xml.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class StatsRetention {
+
+    private Boolean enabled;
+    private Integer minuteHours;
+    private Integer hourlyDays;
+
+    public StatsRetention() {
+    }
+
+    public StatsRetention(Boolean enabled, Integer minuteHours, Integer hourlyDays) {
+        this.enabled = enabled;
+        this.minuteHours = minuteHours;
+        this.hourlyDays = hourlyDays;
+    }
+
+    /**
+     * Whether stats are persisted at all
+     */
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    /**
+     * How many hours per-minute samples are kept for
+     */
+    public Integer getMinuteHours() {
+        return minuteHours;
+    }
+
+    /**
+     * How many days hourly samples are kept for
+     */
+    public Integer getHourlyDays() {
+        return hourlyDays;
+    }
+
+    @Override
+    public String toString() {
+        return "enabled=" + enabled + " minuteHours=" + minuteHours + " hourlyDays=" + hourlyDays;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.restcomm.connect.rvd.configuration;
+
+/**
+ * Options of workspace snapshots. Loaded from the &lt;workspaceBackup&gt; element of rvd.xml. Snapshots are written
+ * under workspaceBackupLocation.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class WorkspaceBackupPolicy {
+
+    private Boolean enabled;
+    private Integer intervalHours;
+    private Integer retention;
+    private Integer maxMegabytesPerSecond;
+    private Boolean includeLogs;
+
+    public WorkspaceBackupPolicy() {
+    }
+
+    public WorkspaceBackupPolicy(Boolean enabled, Integer intervalHours, Integer retention, Integer maxMegabytesPerSecond, Boolean includeLogs) {
+        this.enabled = enabled;
+        this.intervalHours = intervalHours;
+        this.retention = retention;
+        this.maxMegabytesPerSecond = maxMegabytesPerSecond;
+        this.includeLogs = includeLogs;
+    }
+
+    /**
+     * Whether snapshots are taken at all
+     */
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Hours between scheduled snapshots. 0 takes snapshots only when asked through the admin API.
+     */
+    public Integer getIntervalHours() {
+        return intervalHours;
+    }
+
+    /**
+     * How many snapshots are kept
+     */
+    public Integer getRetention() {
+        return retention;
+    }
+
+    /**
+     * Limit of data copied per second while taking a snapshot. 0 for no limit.
+     */
+    public Integer getMaxMegabytesPerSecond() {
+        return maxMegabytesPerSecond;
+    }
+
+    /**
+     * Whether application logs are included
+     */
+    public Boolean getIncludeLogs() {
+        return includeLogs;
+    }
+
+    @Override
+    public String toString() {
+        return "enabled=" + enabled + " intervalHours=" + intervalHours + " retention=" + retention + " maxMegabytesPerSecond=" + maxMegabytesPerSecond + " includeLogs=" + includeLogs;
+    }
+}
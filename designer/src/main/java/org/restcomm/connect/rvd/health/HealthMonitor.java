@@ -0,0 +1,166 @@
+package org.restcomm.connect.rvd.health;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+
+/**
+ * Keeps track of RVD health. Initialization progress is reported by RvdInitializationServlet. The workspace is
+ * probed on demand by writing, reading back and removing a small file. Restcomm is probed in the background every
+ * RESTCOMM_PROBE_INTERVAL seconds and the last result is served, so that health checks never wait for it.
+ *
+ * Restcomm location may depend on the request (dynamic resolving). The probe targets the last location resolved
+ * by a health check. Until there is one, it reports nothing.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class HealthMonitor {
+
+    static final Logger logger = RvdLoggers.local;
+
+    public static final int RESTCOMM_PROBE_INTERVAL = 30; // seconds
+    static final int RESTCOMM_PROBE_TIMEOUT = 5000; // milliseconds
+    static final String RESTCOMM_PROBE_PATH = "/restcomm/2012-04-24/Accounts.json";
+    static final String WORKSPACE_PROBE_PREFIX = "@health-"; // probe files are named @health-<random>.tmp
+
+    private final InitializationStatus initialization = new InitializationStatus();
+    private final File workspaceDir;
+    private final CloseableHttpClient httpClient;
+    private volatile URI restcommBaseUrl;
+    private volatile ProbeResult restcommResult;
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param workspaceDir the workspace to probe. If null the workspace probe always fails.
+     * @param httpClient client for probing Restcomm. If null Restcomm is not probed.
+     */
+    public HealthMonitor(File workspaceDir, CloseableHttpClient httpClient) {
+        this.workspaceDir = workspaceDir;
+        this.httpClient = httpClient;
+    }
+
+    public InitializationStatus getInitialization() {
+        return initialization;
+    }
+
+    public synchronized void start() {
+        if (executor != null || httpClient == null)
+            return;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "rvd-health-probe");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    probeRestcomm();
+                } catch (RuntimeException e) {
+                    // an exception would cancel all later runs
+                    logger.error(LoggingHelper.buildMessage(HealthMonitor.class, "run", null, "error probing restcomm"), e);
+                }
+            }
+        }, RESTCOMM_PROBE_INTERVAL, RESTCOMM_PROBE_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = executor;
+            executor = null;
+        }
+        if (running != null)
+            running.shutdownNow();
+    }
+
+    /**
+     * Writes, reads back and removes a file at the root of the workspace. Each probe uses a file of its own so that
+     * concurrent probes, or other nodes sharing the workspace, don't read each other's content.
+     */
+    public ProbeResult probeWorkspace() {
+        long started = System.nanoTime();
+        if (workspaceDir == null)
+            return new ProbeResult(false, 0, null, "no workspace configured");
+        File probe = null;
+        String token = Long.toString(System.nanoTime());
+        try {
+            probe = File.createTempFile(WORKSPACE_PROBE_PREFIX, ".tmp", workspaceDir);
+            FileUtils.writeStringToFile(probe, token, "UTF-8");
+            String read = FileUtils.readFileToString(probe, "UTF-8");
+            if (!token.equals(read))
+                return new ProbeResult(false, System.nanoTime() - started, null, "read back different content");
+            return new ProbeResult(true, System.nanoTime() - started, null, null);
+        } catch (IOException e) {
+            return new ProbeResult(false, System.nanoTime() - started, null, e.getMessage());
+        } finally {
+            FileUtils.deleteQuietly(probe);
+        }
+    }
+
+    /**
+     * Sets the Restcomm location to probe. The first time a location is known, it's probed right away.
+     */
+    public void setRestcommBaseUrl(URI restcommBaseUrl) {
+        boolean first = this.restcommBaseUrl == null && restcommBaseUrl != null;
+        this.restcommBaseUrl = restcommBaseUrl;
+        ScheduledExecutorService running = executor;
+        if (first && running != null) {
+            running.execute(new Runnable() {
+                @Override
+                public void run() {
+                    probeRestcomm();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the result of the last Restcomm probe or null if Restcomm hasn't been probed yet
+     */
+    public ProbeResult getRestcommResult() {
+        return restcommResult;
+    }
+
+    /**
+     * Requests the Accounts API without credentials. Any answer short of a server error means Restcomm is there.
+     */
+    void probeRestcomm() {
+        URI baseUrl = restcommBaseUrl;
+        if (baseUrl == null || httpClient == null)
+            return;
+        HttpGet get = new HttpGet(baseUrl.resolve(RESTCOMM_PROBE_PATH));
+        get.setConfig(RequestConfig.custom().setConnectTimeout(RESTCOMM_PROBE_TIMEOUT).setSocketTimeout(RESTCOMM_PROBE_TIMEOUT)
+                .setConnectionRequestTimeout(RESTCOMM_PROBE_TIMEOUT).build());
+        long started = System.nanoTime();
+        try {
+            CloseableHttpResponse response = httpClient.execute(get);
+            try {
+                int status = response.getStatusLine().getStatusCode();
+                EntityUtils.consumeQuietly(response.getEntity());
+                restcommResult = new ProbeResult(status < 500, System.nanoTime() - started, status, null);
+            } finally {
+                response.close();
+            }
+        } catch (IOException e) {
+            restcommResult = new ProbeResult(false, System.nanoTime() - started, null, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.restcomm.connect.rvd.health;
+
+/**
+ * Progress of RvdInitializationServlet. RVD is ready once the workspace upgrade has completed and, if enabled, the
+ * caches have been warmed up. If a phase fails, initialization goes on (as it always did) but RVD never becomes ready.
+ * A failed warm-up is not a failure. It only makes the first requests slower.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class InitializationStatus {
+
+    public enum Phase {starting, maintenance, bootstrap, upgrade, warmup, ready}
+
+    private final long startedAt = System.currentTimeMillis();
+    private volatile Phase phase = Phase.starting;
+    private volatile long phaseStartedAt = startedAt;
+    private volatile Long completedAt;
+    private volatile String error; // first failure, if any
+
+    public void enter(Phase phase) {
+        this.phaseStartedAt = System.currentTimeMillis();
+        this.phase = phase;
+        if (phase == Phase.ready)
+            completedAt = phaseStartedAt;
+    }
+
+    /**
+     * Records the failure of the current phase. Only the first failure is kept.
+     */
+    public void failed(String message) {
+        if (error == null)
+            error = phase + ": " + message;
+    }
+
+    public boolean isReady() {
+        return phase == Phase.ready && error == null;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getPhaseStartedAt() {
+        return phaseStartedAt;
+    }
+
+    /**
+     * @return when initialization completed or null if it's still running
+     */
+    public Long getCompletedAt() {
+        return completedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
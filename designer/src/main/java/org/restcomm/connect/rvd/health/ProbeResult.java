@@ -0,0 +1,43 @@
+package org.restcomm.connect.rvd.health;
+
+/**
+ * Outcome of a single dependency probe. Immutable.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class ProbeResult {
+
+    final boolean ok;
+    final double latencyMillis;
+    final long checkedAt;
+    final Integer status; // HTTP status for HTTP probes
+    final String error;
+
+    ProbeResult(boolean ok, long nanos, Integer status, String error) {
+        this.ok = ok;
+        this.latencyMillis = Math.round(nanos / 1000.0) / 1000.0;
+        this.checkedAt = System.currentTimeMillis();
+        this.status = status;
+        this.error = error;
+    }
+
+    public boolean isOk() {
+        return ok;
+    }
+
+    public double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public long getCheckedAt() {
+        return checkedAt;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
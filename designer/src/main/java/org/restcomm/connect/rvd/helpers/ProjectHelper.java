@@ -24,12 +24,11 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
 import org.apache.commons.io.FileUtils;
 import org.restcomm.connect.rvd.RvdConfiguration;
 import org.restcomm.connect.rvd.RvdContext;
@@ -51,7 +50,6 @@ import org.restcomm.connect.rvd.model.project.RvdProject;
 import org.restcomm.connect.rvd.storage.FsWorkspaceStorage;
 import org.restcomm.connect.rvd.storage.JsonModelStorage;
 import org.restcomm.connect.rvd.storage.ProjectDao;
-import org.restcomm.connect.rvd.storage.exceptions.BadProjectHeader;
 import org.restcomm.connect.rvd.storage.exceptions.ProjectAlreadyExists;
 import org.restcomm.connect.rvd.storage.exceptions.StorageException;
 import org.restcomm.connect.rvd.upgrade.UpgradeService;
@@ -229,6 +227,8 @@ public class ProjectHelper {
 
     public String importProject(File tempProjectDir, String suggestedName, String owner) throws RvdException {
         try {
+            // whatever header entity came with the archive, the state is what counts
+            FileUtils.deleteQuietly(new File(tempProjectDir, JsonModelStorage.HEADER_ENTITY_NAME));
             // check project version for compatibility
             String stateFilename = tempProjectDir.getPath() + "/state";
             FileReader reader = new FileReader(stateFilename);
@@ -284,7 +284,8 @@ public class ProjectHelper {
      * for big projects while only interested for the header of the project. It's also more fault tolerant
      * to old/future kinds of projects.
      *
-     * TODO investigate whether using JsonParse indeed saves any cycles compared to using json models.
+     * The state is only scanned up to the end of the header. If the state is not loaded already, prefer
+     * JsonModelStorage.loadStateHeader() that won't need to read it at all.
      *
      * @param projectName
      * @param rawState
@@ -292,20 +293,7 @@ public class ProjectHelper {
      * @throws StorageException
      */
     public static StateHeader parseHeader(String projectName, String rawState) throws StorageException {
-        JsonParser parser = new JsonParser();
-        JsonElement header_element = null;
-        try {
-            header_element = parser.parse(rawState).getAsJsonObject().get("header");
-        } catch (JsonSyntaxException e) {
-            throw new StorageException("Error loading header for project '" + projectName +"'",e);
-        }
-        if ( header_element == null )
-            throw new BadProjectHeader("No header found. This is probably an old project");
-
-        Gson gson = new Gson();
-        StateHeader header = gson.fromJson(header_element, StateHeader.class);
-
-        return header;
+        return JsonModelStorage.readStateHeader(new StringReader(rawState), projectName);
     }
 
 
@@ -0,0 +1,241 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.restcomm.connect.rvd.http;
+
+import com.sun.jersey.api.model.AbstractMethod;
+import com.sun.jersey.api.model.AbstractResourceMethod;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+import com.sun.jersey.spi.container.ResourceFilter;
+import com.sun.jersey.spi.container.ResourceFilterFactory;
+import org.apache.log4j.Level;
+import org.restcomm.connect.rvd.ApplicationContext;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+import org.restcomm.connect.rvd.stats.ApiOperationStats;
+import org.restcomm.connect.rvd.storage.RequestStorageIo;
+
+import javax.servlet.ServletContext;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Provider;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times designer API requests. Each resource method gets a filter that records latency, status and request/response
+ * sizes into the ApiStats of the application context under 'ResourceClass.method'. Latency is measured up to the
+ * last byte of the response body. Requests slower than 'slowApiRequestMillis' are logged as warnings along with
+ * the application they refer to.
+ *
+ * The storage I/O of the request (see StorageIoRequestFilter) is closed here too. It's added to the operation stats
+ * and logged at DEBUG level.
+ *
+ * Registered in RvdRestApplication.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+@Provider
+public class ApiStatsFilterFactory implements ResourceFilterFactory {
+
+    static final String STARTED_PROPERTY = ApiStatsFilterFactory.class.getName() + ".started";
+    // path parameters that hold the application sid in the various resources
+    static final String[] APPLICATION_PARAMS = {"applicationSid", "appId", "appname"};
+
+    @Context
+    ServletContext servletContext;
+    @Context
+    UriInfo uriInfo;
+
+    @Override
+    public List<ResourceFilter> create(AbstractMethod method) {
+        if (!(method instanceof AbstractResourceMethod))
+            return null; // sub-resource locators are timed by the methods they lead to
+        String operation = method.getResource().getResourceClass().getSimpleName() + "." + method.getMethod().getName();
+        return Collections.<ResourceFilter>singletonList(new ApiStatsFilter(operation));
+    }
+
+    // the application context is put in place by RvdInitializationServlet after Jersey has started
+    ApplicationContext getApplicationContext() {
+        return servletContext == null ? null : (ApplicationContext) servletContext.getAttribute(ApplicationContext.class.getName());
+    }
+
+    String applicationSid() {
+        if (uriInfo == null)
+            return null;
+        MultivaluedMap<String, String> params = uriInfo.getPathParameters();
+        for (String name: APPLICATION_PARAMS) {
+            String value = params.getFirst(name);
+            if (value != null)
+                return value;
+        }
+        return null;
+    }
+
+    class ApiStatsFilter implements ResourceFilter, ContainerRequestFilter, ContainerResponseFilter {
+
+        final String operation;
+
+        ApiStatsFilter(String operation) {
+            this.operation = operation;
+        }
+
+        @Override
+        public ContainerRequestFilter getRequestFilter() {
+            return this;
+        }
+
+        @Override
+        public ContainerResponseFilter getResponseFilter() {
+            return this;
+        }
+
+        @Override
+        public ContainerRequest filter(ContainerRequest request) {
+            request.getProperties().put(STARTED_PROPERTY, System.nanoTime());
+            return request;
+        }
+
+        @Override
+        public ContainerResponse filter(ContainerRequest request, ContainerResponse response) {
+            Object started = request.getProperties().get(STARTED_PROPERTY);
+            ApplicationContext applicationContext = getApplicationContext();
+            if (started == null || applicationContext == null)
+                return response;
+            long requestBytes = -1;
+            String contentLength = request.getHeaderValue("Content-Length");
+            if (contentLength != null) {
+                try {
+                    requestBytes = Long.parseLong(contentLength.trim());
+                } catch (NumberFormatException e) {
+                    // leave it unknown
+                }
+            }
+            response.setContainerResponseWriter(new CountingResponseWriter(response.getContainerResponseWriter(), this,
+                    applicationContext, (Long) started, requestBytes, applicationSid()));
+            return response;
+        }
+
+        /**
+         * @param storageIo storage I/O of the request. Null if there was none accounted.
+         */
+        void record(ApplicationContext applicationContext, int status, long nanos, long requestBytes, long responseBytes, String applicationSid, RequestStorageIo storageIo) {
+            ApiOperationStats stats = applicationContext.getApiStats().operation(operation);
+            stats.record(status, nanos, requestBytes, responseBytes);
+            if (applicationContext.getStorageStats() == null)
+                storageIo = null; // storage instrumentation is disabled. There's nothing in there.
+            if (storageIo != null)
+                stats.recordStorage(storageIo.getOperations(), storageIo.getBytesRead() + storageIo.getBytesWritten(), storageIo.getNanos());
+            String prefix = applicationSid == null ? "[api]" : "[api][" + applicationSid + "]";
+            int threshold = applicationContext.getConfiguration() == null ? 0 : applicationContext.getConfiguration().getSlowApiRequestMillis();
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            if (threshold > 0 && millis > threshold && RvdLoggers.local.isEnabledFor(Level.WARN)) {
+                RvdLoggers.local.log(Level.WARN, LoggingHelper.buildMessage(ApiStatsFilterFactory.class, "record", prefix,
+                        "slow request: " + operation + " took " + millis + " ms (status " + status + ", " + requestBytes + " bytes in, " + responseBytes + " bytes out"
+                        + (storageIo != null ? ", storage: " + storageIo : "") + ")"));
+            } else
+            if (storageIo != null && RvdLoggers.local.isDebugEnabled()) {
+                RvdLoggers.local.log(Level.DEBUG, LoggingHelper.buildMessage(ApiStatsFilterFactory.class, "record", prefix, operation + " storage: " + storageIo));
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes of the response body and records the request once the response is finished. A response with
+     * a Content-Length but no entity has its body sent by the container itself (see MediaResponses). Its length is
+     * counted as is.
+     */
+    static class CountingResponseWriter implements ContainerResponseWriter {
+
+        final ContainerResponseWriter writer;
+        final ApiStatsFilter filter;
+        final ApplicationContext applicationContext;
+        final long started;
+        final long requestBytes;
+        final String applicationSid;
+        int status;
+        long responseBytes;
+        long containerBytes; // of a body the container sends itself
+
+        CountingResponseWriter(ContainerResponseWriter writer, ApiStatsFilter filter, ApplicationContext applicationContext, long started, long requestBytes, String applicationSid) {
+            this.writer = writer;
+            this.filter = filter;
+            this.applicationContext = applicationContext;
+            this.started = started;
+            this.requestBytes = requestBytes;
+            this.applicationSid = applicationSid;
+        }
+
+        @Override
+        public OutputStream writeStatusAndHeaders(long contentLength, ContainerResponse response) throws IOException {
+            status = response.getStatus();
+            containerBytes = containerSentLength(response);
+            final OutputStream out = writer.writeStatusAndHeaders(contentLength, response);
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    responseBytes ++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    responseBytes += len;
+                }
+            };
+        }
+
+        // the Content-Length of a response without an entity, 0 if it has one or is a HEAD response
+        static long containerSentLength(ContainerResponse response) {
+            if (response.getEntity() != null || response.getHttpHeaders() == null)
+                return 0;
+            if (response.getContainerRequest() != null && "HEAD".equals(response.getContainerRequest().getMethod()))
+                return 0;
+            Object length = response.getHttpHeaders().getFirst("Content-Length");
+            if (length == null)
+                return 0;
+            try {
+                return Long.parseLong(length.toString());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (responseBytes == 0)
+                responseBytes = containerBytes;
+            try {
+                writer.finish();
+            } finally {
+                filter.record(applicationContext, status, System.nanoTime() - started, requestBytes, responseBytes, applicationSid, RequestStorageIo.end());
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package org.restcomm.connect.rvd.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.restcomm.connect.rvd.storage.InstrumentedWorkspaceStorage;
+import org.restcomm.connect.rvd.storage.MediaMetadataCache;
+import org.restcomm.connect.rvd.storage.StorageEntityType;
+import org.restcomm.connect.rvd.storage.StorageStats;
+
+/**
+ * Builds responses for media files (wavs and videos) fetched by Restcomm or the designer.
+ *
+ * - ETag and Last-Modified are sent with every response and If-None-Match / If-Modified-Since get a 304 back.
+ * - A single byte range can be requested with Range (If-Range is honored). Multiple ranges get the whole file.
+ * - Cache-Control lets clients keep the file for maxAgeSeconds before revalidating.
+ * - If the container can send files itself (Tomcat's sendfile), the file is handed over to it without going
+ *   through the JVM. Otherwise it is transferred straight from a FileChannel to the response.
+ *
+ * Metadata comes from MediaMetadataCache and may be up to a couple of seconds old. Files handed over to the container
+ * are looked up again first. Files sent through the JVM are checked against the length promised in the headers and
+ * the response is aborted if they changed in the meantime.
+ *
+ * Files are read without a WorkspaceStorage, so the bytes sent are accounted here under 'wavs' when storage
+ * instrumentation is on. Transfer time is known only when the file goes through the JVM. The bytes the container
+ * sends itself are added to the API stats by ApiStatsFilterFactory.CountingResponseWriter out of Content-Length.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class MediaResponses {
+
+    static final int PARTIAL_CONTENT = 206;
+    static final int RANGE_NOT_SATISFIABLE = 416;
+    static final long[] UNSATISFIABLE = new long[0];
+    // request attributes of Tomcat's sendfile support
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * @param metadataCache where the metadata of 'file' are looked up. A 404 is returned if there is no such file.
+     * @param filename the name the file should be saved as by the client
+     * @param storageStats where to account the bytes read. Null if storage instrumentation is disabled.
+     */
+    public static Response build(HttpServletRequest request, File file, MediaMetadataCache metadataCache, String mediaType,
+                                 String filename, int maxAgeSeconds, StorageStats storageStats) throws IOException {
+        boolean sendfile = Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT));
+        // the container sends as many bytes as it's told. They'd better be there.
+        MediaMetadataCache.Metadata metadata = sendfile ? metadataCache.getFresh(file) : metadataCache.get(file);
+        if (metadata == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+        if (isNotModified(request, metadata))
+            return withValidators(Response.notModified(), metadata, maxAgeSeconds).build();
+
+        long length = metadata.getLength();
+        long[] range = null;
+        if (ifRangeMatches(request, metadata))
+            range = parseRange(request.getHeader("Range"), length);
+        if (range == UNSATISFIABLE)
+            return withValidators(Response.status(RANGE_NOT_SATISFIABLE), metadata, maxAgeSeconds)
+                    .header("Content-Range", "bytes */" + length).build();
+        Response.ResponseBuilder builder;
+        long first = 0;
+        long last = length - 1;
+        if (range == null) {
+            builder = Response.ok();
+        } else {
+            first = range[0];
+            last = range[1];
+            builder = Response.status(PARTIAL_CONTENT).header("Content-Range", "bytes " + first + "-" + last + "/" + length);
+        }
+        long count = last - first + 1;
+        withValidators(builder, metadata, maxAgeSeconds)
+                .type(mediaType)
+                .header("Content-Disposition", "attachment; filename = " + filename)
+                .header("Content-Length", count);
+        if (count > 0) {
+            if (sendfile) {
+                // the container writes the body once the response is committed
+                request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+                request.setAttribute(SENDFILE_START, first);
+                request.setAttribute(SENDFILE_END, last + 1);
+                if (storageStats != null)
+                    InstrumentedWorkspaceStorage.recordRead(storageStats, StorageEntityType.wavs, -1, count);
+            } else
+                builder.entity(transfer(file, first, count, metadata, metadataCache, storageStats));
+        }
+        return builder.build();
+    }
+
+    static Response.ResponseBuilder withValidators(Response.ResponseBuilder builder, MediaMetadataCache.Metadata metadata, int maxAgeSeconds) {
+        return builder.header("ETag", metadata.getEtag())
+                .lastModified(new Date(metadata.getLastModified()))
+                .header("Accept-Ranges", "bytes")
+                .header("Cache-Control", maxAgeSeconds > 0 ? "max-age=" + maxAgeSeconds : "no-cache");
+    }
+
+    /**
+     * If-None-Match takes precedence over If-Modified-Since when both are present.
+     */
+    static boolean isNotModified(HttpServletRequest request, MediaMetadataCache.Metadata metadata) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null)
+            return matchesEtag(ifNoneMatch, metadata.getEtag());
+        long ifModifiedSince = dateHeader(request, "If-Modified-Since");
+        // HTTP dates have a resolution of seconds
+        return ifModifiedSince >= 0 && metadata.getLastModified() / 1000 <= ifModifiedSince / 1000;
+    }
+
+    static boolean ifRangeMatches(HttpServletRequest request, MediaMetadataCache.Metadata metadata) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null)
+            return true;
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\""))
+            return ifRange.equals(metadata.getEtag());
+        if (ifRange.startsWith("W/"))
+            return false; // weak tags can't be used with ranges
+        long date = dateHeader(request, "If-Range");
+        return date >= 0 && metadata.getLastModified() / 1000 == date / 1000;
+    }
+
+    // a comma separated list of tags or '*'. Weak comparison.
+    static boolean matchesEtag(String header, String etag) {
+        for (String tag: header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/"))
+                tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag))
+                return true;
+        }
+        return false;
+    }
+
+    // -1 if the header is missing or malformed
+    static long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses a Range header for a file of the given length.
+     *
+     * @return the first and last byte of the range, null if the whole file should be sent (no header, multiple ranges
+     * or a header that can't be parsed) or UNSATISFIABLE if the range lies past the end of the file
+     */
+    static long[] parseRange(String header, long length) {
+        if (header == null || !header.startsWith("bytes="))
+            return null;
+        String spec = header.substring("bytes=".length()).trim();
+        if (spec.indexOf(',') >= 0)
+            return null;
+        int dash = spec.indexOf('-');
+        if (dash < 0)
+            return null;
+        try {
+            String start = spec.substring(0, dash).trim();
+            String end = spec.substring(dash + 1).trim();
+            if (start.isEmpty()) {
+                // the last 'end' bytes
+                if (end.isEmpty())
+                    return null;
+                long suffix = Long.parseLong(end);
+                if (suffix <= 0 || length == 0)
+                    return UNSATISFIABLE;
+                return new long[] {Math.max(0, length - suffix), length - 1};
+            }
+            long first = Long.parseLong(start);
+            long last = end.isEmpty() ? length - 1 : Long.parseLong(end);
+            if (first < 0)
+                return null;
+            if (first >= length)
+                return UNSATISFIABLE;
+            if (last < first)
+                return null;
+            return new long[] {first, Math.min(last, length - 1)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes 'count' bytes of the file starting at 'first'. The file is opened only when the body is written. If its
+     * length is no longer the one in 'metadata' nothing is sent, the cached metadata are dropped and an IOException
+     * aborts the response.
+     */
+    static StreamingOutput transfer(final File file, final long first, final long count, final MediaMetadataCache.Metadata metadata,
+                                    final MediaMetadataCache metadataCache, final StorageStats storageStats) {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                long started = System.nanoTime();
+                long remaining = count;
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    if (channel.size() != metadata.getLength()) {
+                        metadataCache.evict(file);
+                        throw new IOException("media file " + file + " changed after its metadata were read");
+                    }
+                    WritableByteChannel target = Channels.newChannel(output);
+                    long position = first;
+                    while (remaining > 0) {
+                        long sent = channel.transferTo(position, remaining, target);
+                        if (sent <= 0)
+                            throw new IOException("media file " + file + " was truncated while being sent");
+                        position += sent;
+                        remaining -= sent;
+                    }
+                } finally {
+                    // written within the request, before its storage I/O is closed
+                    if (storageStats != null)
+                        InstrumentedWorkspaceStorage.recordRead(storageStats, StorageEntityType.wavs, System.nanoTime() - started, count - remaining);
+                }
+            }
+        };
+    }
+}
@@ -19,9 +19,15 @@ import org.restcomm.connect.rvd.logging.system.RvdLoggers;
 import org.restcomm.connect.rvd.model.callcontrol.CallControlAction;
 import org.restcomm.connect.rvd.model.callcontrol.CallControlStatus;
 import org.restcomm.connect.rvd.model.callcontrol.CreateCallResponse;
+import org.restcomm.connect.rvd.storage.CompiledProjectCache;
 import org.restcomm.connect.rvd.storage.FsProjectDao;
+import org.restcomm.connect.rvd.storage.FsWorkspaceStorage;
+import org.restcomm.connect.rvd.storage.InstrumentedWorkspaceStorage;
 import org.restcomm.connect.rvd.storage.JsonModelStorage;
 import org.restcomm.connect.rvd.storage.ProjectDao;
+import org.restcomm.connect.rvd.storage.StoreProjectDao;
+import org.restcomm.connect.rvd.storage.StoreWorkspaceStorage;
+import org.restcomm.connect.rvd.storage.WorkspaceStorage;
 import org.restcomm.connect.rvd.validation.ValidationReport;
 
 import com.google.gson.Gson;
@@ -50,6 +56,22 @@ public class RestService {
         }
     }
 
+    /**
+     * Builds a storage for the workspace. It keeps I/O accounting if storage instrumentation is enabled.
+     */
+    protected WorkspaceStorage buildWorkspaceStorage() {
+        WorkspaceStorage storage;
+        if (applicationContext.getWorkspaceStore() != null)
+            storage = buildStoreWorkspaceStorage();
+        else
+            storage = new FsWorkspaceStorage(applicationContext.getWorkspace());
+        return InstrumentedWorkspaceStorage.wrap(storage, applicationContext.getStorageStats());
+    }
+
+    StoreWorkspaceStorage buildStoreWorkspaceStorage() {
+        return new StoreWorkspaceStorage(applicationContext.getWorkspaceStore(), applicationContext.getWorkspace());
+    }
+
     protected Response buildErrorResponse(Response.Status httpStatus, RvdResponse.Status rvdStatus, RvdException exception) {
         RvdResponse rvdResponse = new RvdResponse(rvdStatus).setExceptionInfo(exception);
         return Response.status(httpStatus).entity(rvdResponse.asJson()).build();
@@ -135,8 +157,16 @@ public class RestService {
     }
 
     protected ProjectDao buildProjectDao(JsonModelStorage storage) {
-        ProjectDao dao = new FsProjectDao(storage);
-        return dao;
+        return buildProjectDao(storage, null);
+    }
+
+    /**
+     * Builds a project dao for the configured workspace backend. Pass the storage returned by buildWorkspaceStorage().
+     */
+    protected ProjectDao buildProjectDao(JsonModelStorage storage, CompiledProjectCache compiledProjects) {
+        if (applicationContext.getWorkspaceStore() != null)
+            return new StoreProjectDao(storage, buildStoreWorkspaceStorage(), compiledProjects);
+        return new FsProjectDao(storage, compiledProjects);
     }
 
 }
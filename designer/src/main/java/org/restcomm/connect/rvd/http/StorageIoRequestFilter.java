@@ -0,0 +1,42 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.restcomm.connect.rvd.http;
+
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import org.restcomm.connect.rvd.storage.RequestStorageIo;
+
+/**
+ * Opens storage I/O accounting for each request. It's a global filter so that it runs before resources are
+ * created and the storage they access while initializing is accounted too. The request is closed by
+ * ApiStatsFilterFactory once the response is written.
+ *
+ * Registered in web.xml.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class StorageIoRequestFilter implements ContainerRequestFilter {
+
+    @Override
+    public ContainerRequest filter(ContainerRequest request) {
+        RequestStorageIo.begin(); // replaces whatever a previous request on this thread left behind
+        return request;
+    }
+}
@@ -0,0 +1,206 @@
+package org.restcomm.connect.rvd.http.resources;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.log4j.Level;
+import org.restcomm.connect.rvd.RvdConfiguration;
+import org.restcomm.connect.rvd.capture.CapturedRequest;
+import org.restcomm.connect.rvd.capture.ReplayEngine;
+import org.restcomm.connect.rvd.capture.ReplayReport;
+import org.restcomm.connect.rvd.capture.TrafficCapture;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+import org.restcomm.connect.rvd.model.StepMarshaler;
+import org.restcomm.connect.rvd.model.admin.BackupListDto;
+import org.restcomm.connect.rvd.model.admin.ProjectListDto;
+import org.restcomm.connect.rvd.model.admin.WorkspaceUsageDto;
+import org.restcomm.connect.rvd.storage.JsonModelStorage;
+import org.restcomm.connect.rvd.storage.ProjectMetadataIndex;
+import org.restcomm.connect.rvd.storage.WorkspaceBackup;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+import javax.annotation.PostConstruct;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Instance-wide workspace administration. Same access rules as global stats apply.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+@Path("admin")
+public class AdminRestService extends SecuredRestService {
+
+    static final int DEFAULT_PAGE_SIZE = 100;
+
+    RvdConfiguration config;
+
+    @PostConstruct
+    public void init() {
+        super.init();
+        config = applicationContext.getConfiguration();
+    }
+
+    /**
+     * Lists projects from the metadata index in application sid order. All filters are optional.
+     *
+     * @param owner only projects of this owner (email)
+     * @param kind voice, ussd or sms
+     * @param version only projects of this version, e.g. 1.6
+     * @param after start after this project. Use the 'next' value of the previous page.
+     * @param limit page size. Defaults to 100, up to 500.
+     */
+    @GET
+    @Path("projects")
+    public Response listProjects(@QueryParam("owner") String owner, @QueryParam("kind") String kind, @QueryParam("version") String version,
+                                 @QueryParam("after") String after, @QueryParam("limit") Integer limit) {
+        checkGlobalAccess();
+        ProjectMetadataIndex index = applicationContext.getProjectMetadataIndex();
+        if (index == null)
+            return Response.status(Response.Status.NOT_FOUND).build(); // indexing is disabled
+        if (limit == null)
+            limit = DEFAULT_PAGE_SIZE;
+        if (limit <= 0 || limit > ProjectMetadataIndex.MAX_PAGE_SIZE)
+            return Response.status(Response.Status.BAD_REQUEST).build();
+
+        ProjectMetadataIndex.Page page = index.query(new ProjectMetadataIndex.Filter(owner, kind, version), after, limit);
+        ProjectListDto dto = new ProjectListDto(config.getRvdInstanceId(), page);
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        return Response.ok(gson.toJson(dto), MediaType.APPLICATION_JSON).build();
+    }
+
+    /**
+     * Returns the number of projects and the space they take by owner.
+     */
+    @GET
+    @Path("projects/usage")
+    public Response getUsage() {
+        checkGlobalAccess();
+        ProjectMetadataIndex index = applicationContext.getProjectMetadataIndex();
+        if (index == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+
+        WorkspaceUsageDto dto = new WorkspaceUsageDto(config.getRvdInstanceId(), index.usageByOwner());
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        return Response.ok(gson.toJson(dto), MediaType.APPLICATION_JSON).build();
+    }
+
+    /**
+     * Brings the metadata index up to date with the workspace, e.g. after other nodes sharing it made changes.
+     *
+     * @param rebuild read all projects from scratch instead of only those whose generation stamp changed
+     */
+    @POST
+    @Path("projects/index")
+    public Response refreshIndex(@QueryParam("rebuild") Boolean rebuild) throws StorageException {
+        checkGlobalAccess();
+        ProjectMetadataIndex index = applicationContext.getProjectMetadataIndex();
+        if (index == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+
+        JsonModelStorage storage = new JsonModelStorage(buildWorkspaceStorage(), new StepMarshaler());
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        if (Boolean.TRUE.equals(rebuild)) {
+            result.put("indexed", index.rebuild(storage));
+        } else {
+            result.put("refreshed", index.verify(storage));
+            result.put("indexed", index.size());
+        }
+        RvdLoggers.local.log(Level.INFO, "Project metadata index refreshed: " + result);
+        return Response.ok(new Gson().toJson(result), MediaType.APPLICATION_JSON).build();
+    }
+
+    /**
+     * Lists workspace snapshots, oldest first.
+     */
+    @GET
+    @Path("backups")
+    public Response listBackups() {
+        checkGlobalAccess();
+        WorkspaceBackup backup = applicationContext.getWorkspaceBackup();
+        if (backup == null)
+            return Response.status(Response.Status.NOT_FOUND).build(); // backups are disabled
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        return Response.ok(gson.toJson(new BackupListDto(config.getRvdInstanceId(), backup)), MediaType.APPLICATION_JSON).build();
+    }
+
+    /**
+     * Starts taking a snapshot of the workspace in the background. Poll GET backups to see when it's done.
+     */
+    @POST
+    @Path("backups")
+    public Response takeBackup() {
+        checkGlobalAccess();
+        WorkspaceBackup backup = applicationContext.getWorkspaceBackup();
+        if (backup == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+        if (!backup.request())
+            return Response.status(Response.Status.CONFLICT).build(); // one is already being taken
+        RvdLoggers.local.log(Level.INFO, "Workspace snapshot requested");
+        return Response.status(Response.Status.ACCEPTED).build();
+    }
+
+    /**
+     * Puts a single project back the way it was in a snapshot. The current project is removed.
+     */
+    @POST
+    @Path("backups/{snapshot}/projects/{applicationSid}/restore")
+    public Response restoreProject(@PathParam("snapshot") String snapshot, @PathParam("applicationSid") String applicationSid) throws StorageException, IOException {
+        checkGlobalAccess();
+        WorkspaceBackup backup = applicationContext.getWorkspaceBackup();
+        if (backup == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+
+        JsonModelStorage storage = new JsonModelStorage(buildWorkspaceStorage(), new StepMarshaler());
+        if (!backup.restoreProject(snapshot, applicationSid, storage))
+            return Response.status(Response.Status.NOT_FOUND).build();
+        RvdLoggers.local.log(Level.INFO, "Project " + applicationSid + " restored from workspace snapshot " + snapshot);
+        return Response.ok().build();
+    }
+
+    /**
+     * Replays captured traffic against the projects of this workspace and returns a ReplayReport once done.
+     *
+     * @param file a capture file in the directory of the configured one, e.g. traffic.jsonl.1 for a rotated file.
+     *             Defaults to the configured capture file.
+     * @param speed see ReplayEngine. 0 replays requests back to back. Defaults to 1.
+     * @param threads how many requests are replayed at the same time. Defaults to 4.
+     */
+    @POST
+    @Path("capture/replay")
+    public Response replayCapture(@QueryParam("file") String file, @QueryParam("speed") Double speed, @QueryParam("threads") Integer threads) throws IOException, InterruptedException {
+        checkGlobalAccess();
+        File captureFile = new File(config.getTrafficCaptureFile());
+        if (file != null) {
+            if (file.isEmpty() || file.contains("/") || file.contains("\\") || file.equals(".") || file.equals(".."))
+                return Response.status(Response.Status.BAD_REQUEST).build();
+            captureFile = new File(captureFile.getParentFile(), file);
+        }
+        if (!captureFile.isFile())
+            return Response.status(Response.Status.NOT_FOUND).build();
+        if (threads != null && threads <= 0)
+            return Response.status(Response.Status.BAD_REQUEST).build();
+
+        List<CapturedRequest> requests = TrafficCapture.load(captureFile);
+        JsonModelStorage storage = new JsonModelStorage(buildWorkspaceStorage(), new StepMarshaler());
+        ReplayEngine engine = new ReplayEngine(config, buildProjectDao(storage));
+        if (speed != null)
+            engine.setSpeed(speed);
+        if (threads != null)
+            engine.setThreads(threads);
+        RvdLoggers.local.log(Level.INFO, "Replaying " + requests.size() + " captured requests from " + captureFile);
+        ReplayReport report = engine.replay(requests);
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        return Response.ok(gson.toJson(report), MediaType.APPLICATION_JSON).build();
+    }
+}
@@ -0,0 +1,59 @@
+package org.restcomm.connect.rvd.http.resources;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.restcomm.connect.rvd.concurrency.ResidentProjectInfo;
+import org.restcomm.connect.rvd.exceptions.ProjectDoesNotExist;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+import org.restcomm.connect.rvd.trace.CallTrace;
+import org.restcomm.connect.rvd.trace.CallTraceBuffer;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serves the recent call traces of an application. Tracing is enabled with 'callTraceBufferSize' in rvd.xml.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+@Path("traces")
+public class CallTracesRestService extends SecuredRestService {
+
+    static final int DEFAULT_LIMIT = 20;
+
+    /**
+     * Returns the traces of a specific call (oldest request first) or the most recent traces (newest first).
+     *
+     * @param callSid return the traces of this call only. Optional.
+     * @param limit maximum number of recent traces to return. Ignored if callSid is given. Defaults to 20.
+     */
+    @GET
+    @Path("app/{appId}")
+    public Response getApplicationTraces(@PathParam("appId") String appId, @QueryParam("callSid") String callSid, @QueryParam("limit") Integer limit) throws StorageException, ProjectDoesNotExist {
+        checkApplicationAccess(appId);
+        if (applicationContext.getConfiguration().getCallTraceBufferSize() <= 0)
+            return Response.status(Response.Status.NOT_FOUND).build(); // tracing is disabled
+        if (limit != null && limit <= 0)
+            return Response.status(Response.Status.BAD_REQUEST).build();
+
+        // don't make the project resident just to say it has no traces
+        ResidentProjectInfo projectInfo = applicationContext.getProjectRegistry().getResidentProjects().get(appId);
+        CallTraceBuffer buffer = projectInfo == null ? null : projectInfo.getCallTraces();
+        List<CallTrace> traces;
+        if (buffer == null)
+            traces = new ArrayList<CallTrace>();
+        else if (callSid != null)
+            traces = buffer.find(callSid);
+        else
+            traces = buffer.recent(limit != null ? limit : DEFAULT_LIMIT);
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        return Response.ok(gson.toJson(traces), MediaType.APPLICATION_JSON).build();
+    }
+}
@@ -0,0 +1,122 @@
+package org.restcomm.connect.rvd.http.resources;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.log4j.Level;
+import org.restcomm.connect.rvd.ApplicationContext;
+import org.restcomm.connect.rvd.health.HealthMonitor;
+import org.restcomm.connect.rvd.health.InitializationStatus;
+import org.restcomm.connect.rvd.health.ProbeResult;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+import org.restcomm.connect.rvd.model.health.HealthReportDto;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Map;
+
+/**
+ * Liveness and readiness checks for load balancers and orchestrators. No authentication is required.
+ *
+ * Jersey may start serving before RvdInitializationServlet has created the application context. Until then RVD is
+ * alive but not ready.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+@Path("health")
+public class HealthRestService {
+
+    @Context
+    HttpServletRequest request;
+    @Context
+    ServletContext servletContext;
+
+    ApplicationContext getApplicationContext() {
+        return (ApplicationContext) servletContext.getAttribute(ApplicationContext.class.getName());
+    }
+
+    /**
+     * Answers 200 as long as the web application is running.
+     */
+    @GET
+    @Path("live")
+    public Response getLiveness() {
+        HealthReportDto dto = new HealthReportDto(HealthReportDto.UP);
+        ApplicationContext applicationContext = getApplicationContext();
+        if (applicationContext != null) {
+            dto.setInstanceId(applicationContext.getConfiguration().getRvdInstanceId());
+            dto.setInitialization(initializationOf(applicationContext.getHealthMonitor().getInitialization()));
+        } else
+            dto.setInitialization(new HealthReportDto.Initialization(InitializationStatus.Phase.starting.name(), 0, null));
+        return buildResponse(Response.Status.OK, dto);
+    }
+
+    /**
+     * Answers 200 if initialization (including workspace upgrade) has completed and the workspace is writable.
+     * Otherwise 503. Restcomm reachability, HTTP pool saturation and traffic capture backlog are reported but don't
+     * affect readiness.
+     */
+    @GET
+    @Path("ready")
+    public Response getReadiness() {
+        ApplicationContext applicationContext = getApplicationContext();
+        if (applicationContext == null) {
+            HealthReportDto dto = new HealthReportDto(HealthReportDto.DOWN);
+            dto.setInitialization(new HealthReportDto.Initialization(InitializationStatus.Phase.starting.name(), 0, null));
+            return buildResponse(Response.Status.SERVICE_UNAVAILABLE, dto);
+        }
+        HealthMonitor monitor = applicationContext.getHealthMonitor();
+        InitializationStatus initialization = monitor.getInitialization();
+        ProbeResult workspace = monitor.probeWorkspace();
+        boolean ready = initialization.isReady() && workspace.isOk();
+
+        HealthReportDto dto = new HealthReportDto(ready ? HealthReportDto.UP : HealthReportDto.DOWN);
+        dto.setInstanceId(applicationContext.getConfiguration().getRvdInstanceId());
+        dto.setInitialization(initializationOf(initialization));
+        dto.setWorkspace(workspace);
+        updateRestcommLocation(applicationContext, monitor);
+        dto.setRestcomm(monitor.getRestcommResult());
+        if (applicationContext.getHttpClientBuilder() != null) {
+            for (Map.Entry<String, PoolingHttpClientConnectionManager> entry: applicationContext.getHttpClientBuilder().getConnectionPools().entrySet()) {
+                PoolStats stats = entry.getValue().getTotalStats();
+                dto.addHttpPool(entry.getKey(), new HealthReportDto.Pool(stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax()));
+            }
+        }
+        if (applicationContext.getTrafficCapture().isEnabled())
+            dto.setTrafficCaptureBacklog(applicationContext.getTrafficCapture().getQueueSize());
+        return buildResponse(ready ? Response.Status.OK : Response.Status.SERVICE_UNAVAILABLE, dto);
+    }
+
+    // Restcomm location may depend on the request. Let the background probe know where to look.
+    void updateRestcommLocation(ApplicationContext applicationContext, HealthMonitor monitor) {
+        if (applicationContext.getRestcommResolver() == null)
+            return;
+        try {
+            monitor.setRestcommBaseUrl(applicationContext.getRestcommResolver().resolveRestcommBaseUrl(request));
+        } catch (RuntimeException e) {
+            if (RvdLoggers.local.isDebugEnabled())
+                RvdLoggers.local.log(Level.DEBUG, LoggingHelper.buildMessage(getClass(), "updateRestcommLocation", "[health]", "could not resolve restcomm location: " + e.getMessage()));
+        }
+    }
+
+    static HealthReportDto.Initialization initializationOf(InitializationStatus status) {
+        long millis;
+        if (status.getCompletedAt() != null)
+            millis = status.getCompletedAt() - status.getStartedAt();
+        else
+            millis = System.currentTimeMillis() - status.getPhaseStartedAt();
+        return new HealthReportDto.Initialization(status.getPhase().name(), millis, status.getError());
+    }
+
+    Response buildResponse(Response.Status status, HealthReportDto dto) {
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        return Response.status(status).entity(gson.toJson(dto)).type(MediaType.APPLICATION_JSON).header("Cache-Control", "no-store").build();
+    }
+}
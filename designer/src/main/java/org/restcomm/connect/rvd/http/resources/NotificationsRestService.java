@@ -40,7 +40,6 @@ import org.restcomm.connect.rvd.model.project.RvdProject;
 import org.restcomm.connect.rvd.restcomm.RestcommApplicationResponse;
 import org.restcomm.connect.rvd.restcomm.RestcommApplicationsResponse;
 import org.restcomm.connect.rvd.restcomm.RestcommClient;
-import org.restcomm.connect.rvd.storage.FsWorkspaceStorage;
 import org.restcomm.connect.rvd.storage.JsonModelStorage;
 import org.restcomm.connect.rvd.storage.ProjectDao;
 
@@ -82,7 +81,7 @@ public class NotificationsRestService extends SecuredRestService {
         super.init();  // setup userIdentityContext
         logging.appendAccountSid(getUserIdentityContext().getAccountSid());
         RvdContext rvdContext = new RvdContext(request, servletContext,applicationContext.getConfiguration(), logging);
-        storage = new JsonModelStorage(new FsWorkspaceStorage(applicationContext.getConfiguration().getWorkspaceBasePath()), rvdContext.getMarshaler());
+        storage = new JsonModelStorage(buildWorkspaceStorage(), rvdContext.getMarshaler());
         projectService = new ProjectHelper(rvdContext, storage, buildProjectDao(storage) );
     }
 
@@ -20,6 +20,7 @@
 
 package org.restcomm.connect.rvd.http.resources;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -67,8 +68,10 @@ import org.restcomm.connect.rvd.exceptions.InvalidServiceParameters;
 import org.restcomm.connect.rvd.exceptions.ProjectDoesNotExist;
 import org.restcomm.connect.rvd.exceptions.RvdException;
 import org.restcomm.connect.rvd.exceptions.StreamDoesNotFitInFile;
+import org.restcomm.connect.rvd.exceptions.project.FlowCostExceeded;
 import org.restcomm.connect.rvd.exceptions.project.UnsupportedProjectVersion;
 import org.restcomm.connect.rvd.helpers.ProjectParametersHelper;
+import org.restcomm.connect.rvd.http.MediaResponses;
 import org.restcomm.connect.rvd.http.RvdResponse;
 import org.restcomm.connect.rvd.identity.UserIdentityContext;
 import org.restcomm.connect.rvd.jsonvalidation.exceptions.ValidationException;
@@ -84,12 +87,11 @@ import org.restcomm.connect.rvd.model.ProjectSettings;
 import org.restcomm.connect.rvd.model.ProjectTemplate;
 import org.restcomm.connect.rvd.model.project.ProjectState;
 import org.restcomm.connect.rvd.model.project.StateHeader;
+import org.restcomm.connect.rvd.model.server.FlowCostReport;
 import org.restcomm.connect.rvd.model.client.WavItem;
 import org.restcomm.connect.rvd.project.ProjectKind;
 import org.restcomm.connect.rvd.project.ProjectUtils;
-import org.restcomm.connect.rvd.storage.FsProjectDao;
 import org.restcomm.connect.rvd.storage.FsProjectTemplateDao;
-import org.restcomm.connect.rvd.storage.FsWorkspaceStorage;
 import org.restcomm.connect.rvd.storage.JsonModelStorage;
 import org.restcomm.connect.rvd.storage.ProjectDao;
 import org.restcomm.connect.rvd.storage.ProjectTemplateDao;
@@ -132,7 +134,7 @@ public class ProjectRestService extends SecuredRestService {
         rvdContext = new RvdContext(request, servletContext,applicationContext.getConfiguration(), logging);
         configuration = rvdContext.getConfiguration();
         marshaler = rvdContext.getMarshaler();
-        storage = new JsonModelStorage(new FsWorkspaceStorage(configuration.getWorkspaceBasePath()), marshaler);
+        storage = new JsonModelStorage(buildWorkspaceStorage(), marshaler);
         projectService = new ProjectHelper(rvdContext, storage, buildProjectDao(storage)); // TODO this creates duplicate project dao (the other instance is created in each individual method call). We should remove one of them at the end
     }
 
@@ -227,7 +229,7 @@ public class ProjectRestService extends SecuredRestService {
         String applicationId = applicationsApi.createApplication(projectName, kind.toString());
         projectDao.createProjectFromTemplate(applicationId, template.getId(), "main", templateDao, getLoggedUsername() );
         // upgrade project if needed
-        UpgradeService upgradeService = new UpgradeService(storage);
+        UpgradeService upgradeService = new UpgradeService(storage, projectDao);
         upgradeService.upgradeProject(applicationId);
         // build project too
         ProjectState projectState = projectDao.loadProject(applicationId);
@@ -524,7 +526,7 @@ public class ProjectRestService extends SecuredRestService {
         if (!RvdUtils.isEmpty(applicationSid)) {
             try {
                 ProjectDao projectDao = buildProjectDao(storage);
-                UpgradeService upgradeService = new UpgradeService(storage);
+                UpgradeService upgradeService = new UpgradeService(storage, projectDao);
                 upgradeService.upgradeProject(applicationSid);
                 if (RvdLoggers.local.isEnabledFor(Level.INFO))
                     RvdLoggers.local.log(Level.INFO, LoggingHelper.buildMessage(getClass(), "upgradeProject","{0} project {1} upgraded to version {2}", new Object[] {logging.getPrefix(), applicationSid, RvdConfiguration.RVD_PROJECT_VERSION }));
@@ -657,6 +659,7 @@ public class ProjectRestService extends SecuredRestService {
                         }
                         try {
                             projectDao.storeMediaFromStream(applicationSid,filename, item.openStream(),configuration.getMaxMediaFileSize());
+                            evictMediaMetadata(projectDao, applicationSid, filename);
                         } catch (StreamDoesNotFitInFile e) {
                             // Oops, the uploaded file is too big. Back off..
                             Integer maxSize = rvdContext.getConfiguration().getMaxMediaFileSize();
@@ -690,6 +693,13 @@ public class ProjectRestService extends SecuredRestService {
         }
     }
 
+    // media served from now on should reflect the change made by this node
+    private void evictMediaMetadata(ProjectDao projectDao, String applicationSid, String filename) {
+        File file = projectDao.getMediaFile(applicationSid, filename);
+        if (file != null)
+            applicationContext.getMediaMetadataCache().evict(file);
+    }
+
     @DELETE
     @Path("{applicationSid}/wavs")
     public Response removeWavFile(@PathParam("applicationSid") String applicationSid, @QueryParam("filename") String wavname,
@@ -699,6 +709,7 @@ public class ProjectRestService extends SecuredRestService {
         assertProjectStateAvailable(applicationSid, projectDao);
         try {
             projectDao.removeMedia(applicationSid, wavname);
+            evictMediaMetadata(projectDao, applicationSid, wavname);
             return Response.ok().build();
         } catch (WavItemDoesNotExist e) {
             if (RvdLoggers.local.isEnabledFor(Level.INFO))
@@ -736,22 +747,21 @@ public class ProjectRestService extends SecuredRestService {
     @Path("{applicationSid}/{placeholder: (wavs|media)}/{filename}.{ext: (wav|mp4)}")
     public Response getWavNoQueryParams(@PathParam("applicationSid") String applicationSid,
             @PathParam("filename") String filename, @PathParam("ext") String extension) {
-        InputStream wavStream;
         try {
             ProjectDao projectDao = buildProjectDao(storage);
-            wavStream = projectDao.getMediaAsStream(applicationSid, filename + "." + extension);
+            File file = projectDao.getMediaFile(applicationSid, filename + "." + extension);
+            if (file == null)
+                return Response.status(Status.NOT_FOUND).build(); // ordinary error page is returned since this will be consumed
+                                                                  // either from restcomm or directly from user
             String mediaType;
             if ( "mp4".equals(extension))
                 mediaType = "video/mp4";
             else
                 mediaType = "audio/x-wav";
-            return Response.ok(wavStream, mediaType).header("Content-Disposition", "attachment; filename = " + filename + "." + extension)
-                    .build();
-        } catch (WavItemDoesNotExist e) {
-            return Response.status(Status.NOT_FOUND).build(); // ordinary error page is returned since this will be consumed
-                                                              // either from restcomm or directly from user
-        } catch (StorageException e) {
-            // return buildErrorResponse(Status.INTERNAL_SERVER_ERROR, RvdResponse.Status.ERROR, e);
+            return MediaResponses.build(request, file, applicationContext.getMediaMetadataCache(), mediaType, filename + "." + extension, configuration.getMediaMaxAgeSeconds(),
+                    applicationContext.getStorageStats());
+        } catch (IOException e) {
+            RvdLoggers.local.log(Level.ERROR, LoggingHelper.buildMessage(getClass(), "getWavNoQueryParams", logging.getPrefix(), e.getMessage()), e);
             return Response.status(Status.INTERNAL_SERVER_ERROR).build(); // ordinary error page is returned since this will be
                                                                           // consumed either from restcomm or directly from user
         }
@@ -766,8 +776,13 @@ public class ProjectRestService extends SecuredRestService {
         assertProjectStateAvailable(applicationSid, projectDao);
         BuildService buildService = new BuildService(projectDao);
         try {
-            buildService.buildProject(applicationSid, activeProject);
-            return Response.ok().build();
+            FlowCostReport costReport = buildService.buildProject(applicationSid, activeProject, configuration);
+            return Response.ok(new RvdResponse().setOkPayload(costReport).asJson(), MediaType.APPLICATION_JSON).build();
+        } catch (FlowCostExceeded e) {
+            if (RvdLoggers.local.isDebugEnabled())
+                RvdLoggers.local.log(Level.DEBUG, LoggingHelper.buildMessage(getClass(), "buildProject", logging.getPrefix(), "build rejected: " + e.getMessage()));
+            RvdResponse rvdResponse = new RvdResponse().setOkPayload(e.getReport()).setStatus(RvdResponse.Status.INVALID).setExceptionInfo(e);
+            return Response.status(Status.OK).entity(rvdResponse.asJson()).type(MediaType.APPLICATION_JSON).build();
         } catch (StorageException e) {
             RvdLoggers.local.log(Level.ERROR, logging.getPrefix(),e );
             return Response.status(Status.INTERNAL_SERVER_ERROR).build();
@@ -783,7 +798,7 @@ public class ProjectRestService extends SecuredRestService {
         try {
             data = IOUtils.toString(request.getInputStream(), Charset.forName("UTF-8"));
             ProjectSettings projectSettings = marshaler.toModel(data, ProjectSettings.class);
-            ProjectDao projectDao = new FsProjectDao(storage);
+            ProjectDao projectDao = buildProjectDao(storage);
             projectDao.storeSettings(projectSettings, applicationSid);
             if (RvdLoggers.local.isDebugEnabled())
                 RvdLoggers.local.log(Level.DEBUG, logging.getPrefix() + " saved settings for project " + applicationSid);
@@ -1,9 +1,12 @@
 package org.restcomm.connect.rvd.http.resources;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
 import java.util.Enumeration;
 import org.apache.log4j.Level;
 import java.util.regex.Matcher;
@@ -27,8 +30,8 @@ import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriInfo;
 
 import org.apache.http.client.utils.URIBuilder;
+import org.restcomm.connect.rvd.ApplicationContext;
 import org.restcomm.connect.rvd.ProjectAwareRvdContext;
-import org.restcomm.connect.rvd.helpers.ProjectHelper;
 import org.restcomm.connect.rvd.RvdConfiguration;
 import org.restcomm.connect.rvd.exceptions.AccessApiException;
 import org.restcomm.connect.rvd.exceptions.ESRequestException;
@@ -40,9 +43,15 @@ import org.restcomm.connect.rvd.exceptions.callcontrol.UnauthorizedCallControlAc
 import org.restcomm.connect.rvd.exceptions.ResponseWrapperException;
 import org.restcomm.connect.rvd.exceptions.callcontrol.WebTriggerNotApplicable;
 import org.restcomm.connect.rvd.exceptions.callcontrol.WebTriggerNotAvailable;
+import org.restcomm.connect.rvd.http.MediaResponses;
 import org.restcomm.connect.rvd.identity.AccountProvider;
 import org.restcomm.connect.rvd.identity.UserIdentityContext;
+import org.restcomm.connect.rvd.capture.CapturedRequest;
+import org.restcomm.connect.rvd.capture.TrafficCapture;
+import org.restcomm.connect.rvd.concurrency.ResidentProjectInfo;
 import org.restcomm.connect.rvd.interpreter.Interpreter;
+import org.restcomm.connect.rvd.interpreter.StaticRcmlCache;
+import org.restcomm.connect.rvd.interpreter.Target;
 import org.restcomm.connect.rvd.interpreter.exceptions.BadExternalServiceResponse;
 import org.restcomm.connect.rvd.interpreter.exceptions.ESProcessFailed;
 import org.restcomm.connect.rvd.interpreter.exceptions.RemoteServiceError;
@@ -58,6 +67,8 @@ import org.restcomm.connect.rvd.model.callcontrol.CallControlAction;
 import org.restcomm.connect.rvd.model.callcontrol.CallControlStatus;
 import org.restcomm.connect.rvd.model.project.StateHeader;
 import org.restcomm.connect.rvd.model.rcml.RcmlResponse;
+import org.restcomm.connect.rvd.model.server.NodeName;
+import org.restcomm.connect.rvd.model.server.ProjectIndex;
 import org.restcomm.connect.rvd.restcomm.RestcommAccountInfo;
 import org.restcomm.connect.rvd.restcomm.RestcommClient;
 import org.restcomm.connect.rvd.restcomm.RestcommCallArray;
@@ -65,17 +76,18 @@ import org.restcomm.connect.rvd.stats.AggregateStats;
 import org.restcomm.connect.rvd.stats.StatsHelper;
 import org.restcomm.connect.rvd.storage.FsProfileDao;
 import org.restcomm.connect.rvd.storage.FsProjectDao;
-import org.restcomm.connect.rvd.storage.FsWorkspaceStorage;
 import org.restcomm.connect.rvd.storage.JsonModelStorage;
 import org.restcomm.connect.rvd.storage.ProfileDao;
 import org.restcomm.connect.rvd.storage.ProjectDao;
 import org.restcomm.connect.rvd.storage.exceptions.StorageException;
-import org.restcomm.connect.rvd.storage.exceptions.WavItemDoesNotExist;
+import org.restcomm.connect.rvd.trace.CallTrace;
 import org.restcomm.connect.rvd.utils.RvdUtils;
 
 @Path("apps")
 public class RvdController extends SecuredRestService {
     //static final Logger logger = Logger.getLogger(RvdController.class.getName());
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     LoggingContext logging; // contectual information regardin logging including app Id and call Id to be prefixed to log messages.
     Pattern appIdPattern = Pattern.compile("^apps\\/([a-zA-Z0-9]+)(\\/|$)");
 
@@ -99,10 +111,10 @@ public class RvdController extends SecuredRestService {
             logging = new LoggingContext(); // TODO put call ID information here
             logging.appendApplicationSid(applicationId);
             marshaler = new StepMarshaler();
-            this.storage = new JsonModelStorage(new FsWorkspaceStorage(applicationContext.getConfiguration().getWorkspaceBasePath()), marshaler);
-            this.projectDao = new FsProjectDao(this.storage);
+            this.storage = new JsonModelStorage(buildWorkspaceStorage(), marshaler);
+            this.projectDao = buildProjectDao(this.storage, applicationContext.getCompiledProjectCache());
 
-            rvdContext = new ProjectAwareRvdContext(applicationId, applicationContext.getProjectRegistry().getResidentProjectInfo(applicationId),request, servletContext, applicationContext.getConfiguration(), logging, projectDao );
+            rvdContext = new ProjectAwareRvdContext(applicationId, applicationContext.getProjectRegistry().getResidentProjectInfo(applicationId),request, servletContext, applicationContext.getConfiguration(), applicationContext.getWorkspace(), logging, projectDao );
         } catch (ProjectDoesNotExist projectDoesNotExist) {
             throw new ResponseWrapperException( Response.status(Status.NOT_FOUND).build() );
         }
@@ -115,16 +127,105 @@ public class RvdController extends SecuredRestService {
         super(context);
     }
 
+    // used for testing
+    RvdController(ApplicationContext applicationContext, ProjectAwareRvdContext rvdContext, ProjectDao projectDao) {
+        super(applicationContext, null);
+        this.rvdContext = rvdContext;
+        this.projectDao = projectDao;
+        this.logging = rvdContext.logging;
+    }
+
+    /**
+     * Returns the name of the module targeted by the request or the default target. Returns null if there is none.
+     */
+    String targetModule(MultivaluedMap<String, String> requestParams) {
+        String targetParam = requestParams.getFirst("target");
+        if (RvdUtils.isEmpty(targetParam))
+            targetParam = rvdContext.getProjectOptions().getDefaultTarget();
+        if (targetParam == null)
+            return null;
+        return Interpreter.parseTarget(targetParam).getNodename();
+    }
+
+    /**
+     * Returns the name of the module targeted by the request if it is a static one (see BuildService.isStaticModule()).
+     * Only whole-module targets qualify. Returns null if the response can't be served from the cache.
+     */
+    String staticModuleTarget(MultivaluedMap<String, String> requestParams) {
+        ProjectIndex projectOptions = rvdContext.getProjectOptions();
+        if (projectOptions.getBuildGeneration() == null)
+            return null; // built by an older version. Module information is missing.
+        String targetParam = requestParams.getFirst("target");
+        if (RvdUtils.isEmpty(targetParam))
+            targetParam = projectOptions.getDefaultTarget();
+        if (targetParam == null)
+            return null;
+        Target target = Interpreter.parseTarget(targetParam);
+        if (target.getStepname() != null || target.getAction() != null)
+            return null;
+        NodeName nodeName = projectOptions.getNodeName(target.getNodename());
+        if (nodeName != null && Boolean.TRUE.equals(nodeName.getStaticRcml()))
+            return nodeName.getName();
+        return null;
+    }
+
+    // serves a response from the static RCML cache. Application logging works as if the interpreter was run.
+    private Response serveCachedRcml(String moduleName, byte[] rcml) {
+        ProjectSettings projectSettings = rvdContext.getProjectSettings();
+        if (projectSettings.getLogging()) {
+            rvdContext.getProjectLogger().log().message("Running target: " + moduleName).done();
+            if (projectSettings.getLoggingRCML() != null && projectSettings.getLoggingRCML() == true)
+                rvdContext.getProjectLogger().log().tag("RCML").messageNoMarshalling(new String(rcml, UTF8)).done();
+        }
+        if (RvdLoggers.local.isDebugEnabled())
+            RvdLoggers.local.log(Level.DEBUG, LoggingHelper.buildMessage(getClass(),"runInterpreter", logging.getPrefix() + "[RCML][cached]", new String(rcml, UTF8)));
+        return Response.ok(rcml, MediaType.APPLICATION_XML).build();
+    }
+
     // handle both GET and POST request in a single place
-    private Response runInterpreter(String appname, HttpServletRequest httpRequest,
+    Response runInterpreter(String appname, HttpServletRequest httpRequest,
                                     MultivaluedMap<String, String> requestParams) {
+        long started = System.nanoTime();
         RcmlSerializer serializer = applicationContext.getRcmlSerializer();
+        TrafficCapture trafficCapture = applicationContext.getTrafficCapture();
+        CapturedRequest capture = trafficCapture.sample(appname, httpRequest, requestParams); // null if not sampled
+        int traceBufferSize = applicationContext.getConfiguration().getCallTraceBufferSize();
+        CallTrace trace = traceBufferSize > 0 ? new CallTrace(requestParams.getFirst("CallSid"), applicationContext.getConfiguration().getCallTraceRedactPattern()) : null;
+        // static modules render the same RCML for every request. Try the cache first.
+        ResidentProjectInfo residentInfo = applicationContext.getProjectRegistry().getResidentProjectInfo(appname);
+        StaticRcmlCache rcmlCache = residentInfo.getRcmlCache();
+        String module = targetModule(requestParams);
+        if (module != null)
+            residentInfo.countModule(module); // feeds the hot set warmed up on startup
+        String staticModule = staticModuleTarget(requestParams);
+        if (staticModule != null) {
+            byte[] cached = rcmlCache.get(rvdContext.getProjectOptions().getBuildGeneration(), staticModule);
+            if (cached != null) {
+                if (capture != null) {
+                    capture.complete(new String(cached, UTF8), true);
+                    trafficCapture.record(capture);
+                }
+                if (trace != null) {
+                    trace.target(staticModule);
+                    trace.complete("cached");
+                    residentInfo.getOrCreateCallTraces(traceBufferSize).add(trace);
+                }
+                Response response = serveCachedRcml(staticModule, cached);
+                recordLatency(residentInfo, started);
+                return response;
+            }
+        }
         String rcmlResponse;
+        String traceOutcome = "ok";
         try {
             //ProjectDao projectDao = new FsProjectDao(storage);
             Interpreter interpreter = new Interpreter(appname, httpRequest, requestParams, applicationContext, logging, rvdContext.getProjectLogger(), rvdContext.getProjectSettings(), rvdContext.getProjectOptions(), projectDao, rvdContext.getProjectParameters() );
+            interpreter.setCapture(capture);
+            interpreter.setTrace(trace);
             RcmlResponse steplist = interpreter.interpret();
             rcmlResponse = serializer.serialize(steplist);
+            if (staticModule != null)
+                rcmlCache.put(rvdContext.getProjectOptions().getBuildGeneration(), staticModule, rcmlResponse.getBytes(UTF8));
 
             // logging rcml response, if configured
             // make sure logging is enabled before allowing access to sensitive log information
@@ -137,18 +238,41 @@ public class RvdController extends SecuredRestService {
             RvdLoggers.local.log(Level.WARN, LoggingHelper.buildMessage(getClass(),"runInterpreter","{0}{1}{2}", new Object[] {logging.getPrefix(),"[app-error] ", e.getMessage()}));
             if (rvdContext.getProjectSettings().getLogging())
                 rvdContext.getProjectLogger().log().tag("EXCEPTION").message(e.getMessage()).done();
+            if (trace != null) {
+                trace.error(e.getMessage());
+                traceOutcome = "error";
+            }
             rcmlResponse = serializer.serialize(Interpreter.rcmlOnException());
         } catch (Exception e) {
             RvdLoggers.local.log(Level.ERROR, logging.getPrefix(), e);
             if (rvdContext.getProjectSettings().getLogging())
                 rvdContext.getProjectLogger().log().tag("EXCEPTION").message(e.getMessage()).done();
+            if (trace != null) {
+                trace.error(e.getMessage());
+                traceOutcome = "error";
+            }
             rcmlResponse = serializer.serialize(Interpreter.rcmlOnException());
         }
+        if (capture != null) {
+            capture.complete(rcmlResponse, false);
+            trafficCapture.record(capture);
+        }
+        if (trace != null) {
+            trace.complete(traceOutcome);
+            residentInfo.getOrCreateCallTraces(traceBufferSize).add(trace);
+        }
         if (RvdLoggers.local.isDebugEnabled())
             RvdLoggers.local.log(Level.DEBUG, LoggingHelper.buildMessage(getClass(),"runInterpreter", logging.getPrefix() + "[RCML]", rcmlResponse));
+        recordLatency(residentInfo, started);
         return Response.ok(rcmlResponse, MediaType.APPLICATION_XML).build();
     }
 
+    private void recordLatency(ResidentProjectInfo residentInfo, long started) {
+        long elapsed = System.nanoTime() - started;
+        StatsHelper.recordRcmlLatency(residentInfo.latency, elapsed);
+        StatsHelper.recordRcmlLatency(applicationContext.getGlobalLatency(), elapsed);
+    }
+
     @GET
     @Path("{appname}/controller")
     @Produces(MediaType.APPLICATION_XML)
@@ -197,15 +321,14 @@ public class RvdController extends SecuredRestService {
     @GET
     @Path("{appname}/resources/{filename}")
     public Response getWav(@PathParam("filename") String filename) {
-        InputStream wavStream;
         try {
-            wavStream = projectDao.getMediaAsStream(applicationId, filename);
-            return Response.ok(wavStream, "audio/x-wav")
-                    .header("Content-Disposition", "attachment; filename = " + filename).build();
-        } catch (WavItemDoesNotExist e) {
-            return Response.status(Status.NOT_FOUND).build(); // ordinary error page is returned since this will be consumed             // either from restcomm or directly from user
-        } catch (StorageException e) {
-            RvdLoggers.local.log(Level.ERROR, LoggingHelper.buildMessage(getClass(),"getMediaAsStream", logging.getPrefix(), e.getMessage()), e);
+            File file = projectDao.getMediaFile(applicationId, filename);
+            if (file == null)
+                return Response.status(Status.NOT_FOUND).build(); // ordinary error page is returned since this will be consumed             // either from restcomm or directly from user
+            return MediaResponses.build(request, file, applicationContext.getMediaMetadataCache(), "audio/x-wav", filename, applicationContext.getConfiguration().getMediaMaxAgeSeconds(),
+                    applicationContext.getStorageStats());
+        } catch (IOException e) {
+            RvdLoggers.local.log(Level.ERROR, LoggingHelper.buildMessage(getClass(),"getWav", logging.getPrefix(), e.getMessage()), e);
             return Response.status(Status.INTERNAL_SERVER_ERROR).build(); // ordinary error page is returned since this will
                                                                           // be consumed either from restcomm or directly
                                                                           // from user
@@ -222,8 +345,7 @@ public class RvdController extends SecuredRestService {
             rvdContext.getProjectLogger().log().tag("WebTrigger").messageNoMarshalling("WebTrigger incoming request: " + ui.getRequestUri().toString()).done();
 
         // load project header
-        String rawState = projectDao.loadProjectStateRaw(projectName);
-        StateHeader projectHeader = ProjectHelper.parseHeader(projectName, rawState);
+        StateHeader projectHeader = storage.loadStateHeader(projectName);
 
         // load CC/WebTrigger project info
         CallControlInfo info = projectDao.loadWebTriggerInfo(projectName);
@@ -1,12 +1,18 @@
 package org.restcomm.connect.rvd.http.resources;
 
 import org.restcomm.connect.rvd.ApplicationContext;
+import org.restcomm.connect.rvd.RvdConfiguration;
 import org.restcomm.connect.rvd.exceptions.AuthorizationException;
+import org.restcomm.connect.rvd.exceptions.ProjectDoesNotExist;
 import org.restcomm.connect.rvd.http.RestService;
 import org.restcomm.connect.rvd.identity.AccountProvider;
 import org.restcomm.connect.rvd.identity.DefaultAccountProvider;
 import org.restcomm.connect.rvd.identity.UserIdentityContext;
+import org.restcomm.connect.rvd.model.project.StateHeader;
 import org.restcomm.connect.rvd.restcomm.RestcommAccountInfo;
+import org.restcomm.connect.rvd.storage.JsonModelStorage;
+import org.restcomm.connect.rvd.storage.ProjectDao;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
 
 /**
  * @author otsakir@gmail.com - Orestis Tsakiridis
@@ -59,4 +65,56 @@ public class SecuredRestService extends RestService {
     protected String getLoggedUsername() {
         return userIdentityContext.getAccountUsername();
     }
+
+    /**
+     * Check for all prerequisites before allowing access to application runtime information (stats, traces).
+     *
+     * - the application should exist
+     * - accounts with 'Administrator' role or the owner of the application are allowed
+     *
+     * Note that checking for 'Administrator' is correct in strict security terms as we should check for
+     * super-administrator credentials @see #checkGlobalAccess()
+     *
+     * @param appId
+     * @throws ProjectDoesNotExist
+     * @throws StorageException
+     */
+    protected void checkApplicationAccess(String appId) throws ProjectDoesNotExist, StorageException {
+        secure();
+        // make sure the project exists
+        JsonModelStorage storage = new JsonModelStorage(buildWorkspaceStorage(), null); //  no need for marshaller for checking project existence
+        ProjectDao projectDao = buildProjectDao(storage);
+        if (projectDao.projectExists(appId))
+            throw new ProjectDoesNotExist(appId);
+        // get project owner
+        StateHeader projectHeader = storage.loadStateHeader(appId);
+        String owner = projectHeader.getOwner();
+        // get role and email from incoming request
+        String clientEmail = getUserIdentityContext().getAccountInfo().getEmail_address();
+        String clientRole = getUserIdentityContext().getAccountInfo().getRole();
+        // access control - user should be either Administrator or owner of the project
+        if (! (RvdConfiguration.ADMINISTRATOR_ROLE.equals(clientRole) || (clientEmail != null && clientEmail.equals(owner)) ))
+            throw new AuthorizationException();
+
+    }
+
+    /**
+     * Makes sure that everything is in place in order to access instance-wide runtime information (i.e. global stats)
+     *
+     * Note, it checks for 'Administrator' role in the operating account. In strict security terms it should
+     * only allow super-administrators. Since 'super-administrator' account means 'not having a parent' and
+     * currently restcomm api does not return parent account information, there is no way to really tell if
+     * the client is a super-administrator. Thus, we fallback to the check for common 'Admininstrator' role.
+     *
+     * @throws AuthorizationException in case the user is not administrator
+     */
+    protected void checkGlobalAccess() {
+        secure();
+        // get role from incoming request
+        String clientRole = getUserIdentityContext().getAccountInfo().getRole();
+        // access control - user should be Administrator
+        // TODO - checking for 'Administrator' role is not the right way if a user is super-administrator. This has to be fixed
+        if (! "Administrator".equals(clientRole) )
+            throw new AuthorizationException();
+    }
 }
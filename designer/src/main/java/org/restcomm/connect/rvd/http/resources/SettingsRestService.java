@@ -45,7 +45,6 @@ import org.restcomm.connect.rvd.model.SimpleMarshaller;
 import org.restcomm.connect.rvd.model.UserProfile;
 import org.restcomm.connect.rvd.model.client.SettingsModel;
 import org.restcomm.connect.rvd.storage.FsProfileDao;
-import org.restcomm.connect.rvd.storage.FsWorkspaceStorage;
 import org.restcomm.connect.rvd.storage.JsonModelStorage;
 import org.restcomm.connect.rvd.storage.ProfileDao;
 
@@ -73,7 +72,7 @@ public class SettingsRestService extends SecuredRestService {
         logging.appendAccountSid(getUserIdentityContext().getAccountSid());
         settings = applicationContext.getConfiguration();
         marshaler = new SimpleMarshaller();
-        storage = new JsonModelStorage(new FsWorkspaceStorage(settings.getWorkspaceBasePath()), marshaler);
+        storage = new JsonModelStorage(buildWorkspaceStorage(), marshaler);
     }
 
     public SettingsRestService() {
@@ -6,15 +6,20 @@ import org.apache.log4j.Level;
 import org.restcomm.connect.rvd.RvdConfiguration;
 import org.restcomm.connect.rvd.concurrency.ProjectRegistry;
 import org.restcomm.connect.rvd.concurrency.ResidentProjectInfo;
-import org.restcomm.connect.rvd.exceptions.AuthorizationException;
 import org.restcomm.connect.rvd.exceptions.ProjectDoesNotExist;
 import org.restcomm.connect.rvd.logging.system.RvdLoggers;
-import org.restcomm.connect.rvd.model.project.StateHeader;
+import org.restcomm.connect.rvd.model.stats.ApiStatsDto;
 import org.restcomm.connect.rvd.model.stats.AppStatsDto;
+import org.restcomm.connect.rvd.model.stats.LatencyStatsDto;
+import org.restcomm.connect.rvd.model.stats.StatsSeriesDto;
+import org.restcomm.connect.rvd.model.stats.StorageStatsDto;
 import org.restcomm.connect.rvd.stats.AggregateStats;
-import org.restcomm.connect.rvd.storage.FsWorkspaceStorage;
-import org.restcomm.connect.rvd.storage.JsonModelStorage;
-import org.restcomm.connect.rvd.storage.ProjectDao;
+import org.restcomm.connect.rvd.stats.LatencyStats;
+import org.restcomm.connect.rvd.stats.MetricsExporter;
+import org.restcomm.connect.rvd.stats.StatsRecorder;
+import org.restcomm.connect.rvd.stats.StatsSample;
+import org.restcomm.connect.rvd.stats.StatsSeriesStore;
+import org.restcomm.connect.rvd.storage.StorageStats;
 import org.restcomm.connect.rvd.storage.exceptions.StorageException;
 
 import javax.annotation.PostConstruct;
@@ -22,8 +27,17 @@ import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
 
 
 /**
@@ -33,6 +47,8 @@ import javax.ws.rs.core.Response;
 @Path("stats")
 public class StatsRestService extends SecuredRestService {
 
+    static final int MAX_SERIES_POINTS = 1440;
+
     RvdConfiguration config;
 
     @PostConstruct
@@ -72,6 +88,36 @@ public class StatsRestService extends SecuredRestService {
     }
 
 
+    /**
+     * Returns latency percentiles (in milliseconds) of RCML requests, steps by kind and ES requests by host.
+     */
+    @GET
+    @Path("app/{appId}/latency")
+    public Response getApplicationLatency(@PathParam("appId") String appId) throws StorageException, ProjectDoesNotExist {
+        checkApplicationAccess(appId);
+
+        ResidentProjectInfo projectInfo = applicationContext.getProjectRegistry().getResidentProjectInfo(appId);
+        LatencyStatsDto dto = new LatencyStatsDto(config.getRvdInstanceId(), projectInfo.latency);
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().setDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz").create();
+        return Response.ok(gson.toJson(dto), MediaType.APPLICATION_JSON).build();
+    }
+
+    /**
+     * Returns persisted stats of an application over a time range.
+     *
+     * @param from start of the range in milliseconds since 1970 GMT. Defaults to an hour before 'to'.
+     * @param to end of the range (exclusive) in milliseconds since 1970 GMT. Defaults to now.
+     * @param step length of each point in seconds. A positive multiple of 60. Defaults to 60. Hourly samples are
+     *             used if it's a multiple of 3600.
+     */
+    @GET
+    @Path("app/{appId}/series")
+    public Response getApplicationSeries(@PathParam("appId") String appId, @QueryParam("from") Long from, @QueryParam("to") Long to, @QueryParam("step") Long step) throws StorageException, ProjectDoesNotExist, IOException {
+        checkApplicationAccess(appId);
+        return buildSeriesResponse(appId, from, to, step);
+    }
+
     @DELETE
     @Path("app/{appId}")
     public Response resetApplicationStats(@PathParam("appId") String appId) throws StorageException, ProjectDoesNotExist {
@@ -79,6 +125,7 @@ public class StatsRestService extends SecuredRestService {
 
         ResidentProjectInfo projectInfo = applicationContext.getProjectRegistry().getResidentProjectInfo(appId);
         projectInfo.setStats(new AggregateStats());
+        projectInfo.setLatency(new LatencyStats());
         RvdLoggers.local.log(Level.INFO, "Application stats were reset" ); // TODO include application sid in logging statement
         return Response.noContent().build();
     }
@@ -105,67 +152,107 @@ public class StatsRestService extends SecuredRestService {
         return Response.ok(data, MediaType.APPLICATION_JSON).build();
     }
 
+    @GET
+    @Path("global/latency")
+    public Response getGlobalLatency() {
+        checkGlobalAccess();
+
+        LatencyStatsDto dto = new LatencyStatsDto(config.getRvdInstanceId(), applicationContext.getGlobalLatency());
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().setDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz").create();
+        return Response.ok(gson.toJson(dto), MediaType.APPLICATION_JSON).build();
+    }
+
+    /**
+     * Returns latency, status and payload sizes of designer API requests by operation.
+     */
+    @GET
+    @Path("api")
+    public Response getApiStats() {
+        checkGlobalAccess();
+
+        ApiStatsDto dto = new ApiStatsDto(config.getRvdInstanceId(), applicationContext.getApiStats(), applicationContext.getStorageStats() != null);
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().setDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz").create();
+        return Response.ok(gson.toJson(dto), MediaType.APPLICATION_JSON).build();
+    }
+
+    /**
+     * Returns workspace storage I/O by entity type. Available only if storage instrumentation is enabled.
+     */
+    @GET
+    @Path("storage")
+    public Response getStorageStats() {
+        checkGlobalAccess();
+        StorageStats stats = applicationContext.getStorageStats();
+        if (stats == null)
+            return Response.status(Response.Status.NOT_FOUND).build(); // storage instrumentation is disabled
+
+        StorageStatsDto dto = new StorageStatsDto(config.getRvdInstanceId(), stats);
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().setDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz").create();
+        return Response.ok(gson.toJson(dto), MediaType.APPLICATION_JSON).build();
+    }
+
+    /**
+     * Returns persisted stats of all applications over a time range. Parameters are the same as in
+     * getApplicationSeries().
+     */
+    @GET
+    @Path("global/series")
+    public Response getGlobalSeries(@QueryParam("from") Long from, @QueryParam("to") Long to, @QueryParam("step") Long step) throws IOException {
+        checkGlobalAccess();
+        return buildSeriesResponse(StatsSeriesStore.GLOBAL_SCOPE, from, to, step);
+    }
+
+    Response buildSeriesResponse(String scope, Long from, Long to, Long step) throws IOException {
+        StatsRecorder recorder = applicationContext.getStatsRecorder();
+        if (recorder == null)
+            return Response.status(Response.Status.NOT_FOUND).build(); // stats persistence is disabled
+        if (to == null)
+            to = System.currentTimeMillis();
+        if (from == null)
+            from = to - StatsSeriesStore.HOUR;
+        if (step == null)
+            step = 60L;
+        if (step <= 0 || step % 60 != 0 || from >= to || (to - from) / (step * 1000) >= MAX_SERIES_POINTS)
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        List<StatsSample> samples = recorder.getStore().query(scope, from, to, step * 1000);
+
+        StatsSeriesDto dto = new StatsSeriesDto(config.getRvdInstanceId(), from, to, step, samples);
+        Gson gson = new GsonBuilder().setPrettyPrinting().setDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz").create();
+        return Response.ok(gson.toJson(dto), MediaType.APPLICATION_JSON).build();
+    }
+
     @DELETE
     @Path("global")
     public Response resetGlobalStats() {
         checkGlobalAccess();
 
         applicationContext.setGlobalStats(new AggregateStats()); // atomic operation...right ?
+        applicationContext.setGlobalLatency(new LatencyStats());
         RvdLoggers.local.log(Level.INFO, "Global stats were reset" );
         return Response.noContent().build();
     }
 
     /**
-     * Check for all prerequisites before allowing access to the application stats api.
-     *
-     * - the application should exist
-     * - accounts with 'Administrator' role or the owner of the application are allowed
-     *
-     * Note that checking for 'Administrator' is correct in strict security terms as we should check for
-     * super-administrator credentials @see #checkGlobalAccess()
-     *
-     * @param appId
-     * @throws ProjectDoesNotExist
-     * @throws StorageException
+     * Returns runtime metrics of this instance in Prometheus text format. Same access rules as global stats apply.
      */
-    void checkApplicationAccess(String appId) throws ProjectDoesNotExist, StorageException {
-        secure();
-        // make sure the project exists
-        JsonModelStorage storage = new JsonModelStorage(new FsWorkspaceStorage(config.getWorkspaceBasePath()), null); //  no need for marshaller for checking project existence
-        ProjectDao projectDao = buildProjectDao(storage);
-        if (projectDao.projectExists(appId))
-            throw new ProjectDoesNotExist(appId);
-        // get project owner
-        StateHeader projectHeader = storage.loadStateHeader(appId);
-        String owner = projectHeader.getOwner();
-        // get role and email from incoming request
-        String clientEmail = getUserIdentityContext().getAccountInfo().getEmail_address();
-        String clientRole = getUserIdentityContext().getAccountInfo().getRole();
-        // access control - user should be either Administrator or owner of the project
-        if (! (RvdConfiguration.ADMINISTRATOR_ROLE.equals(clientRole) || (clientEmail != null && clientEmail.equals(owner)) ))
-            throw new AuthorizationException();
-
-    }
+    @GET
+    @Path("metrics")
+    @Produces(MetricsExporter.CONTENT_TYPE)
+    public Response getMetrics() {
+        checkGlobalAccess();
 
-    /**
-     * Makes sure that everything is in place in order to access the global stats api
-     *
-     * Note, it checks for 'Administrator' role in the operating account. In strict security terms it should
-     * only allow super-administrators. Since 'super-administrator' account means 'not having a parent' and
-     * currently restcomm api does not return parent account information, there is no way to really tell if
-     * the client is a super-administrator. Thus, we fallback to the check for common 'Admininstrator' role.
-     *
-     * @throws AuthorizationException in case the user is not administrator
-     */
-    void checkGlobalAccess() {
-        secure();
-        // get role from incoming request
-        String clientRole = getUserIdentityContext().getAccountInfo().getRole();
-        // access control - user should be Administrator
-        // TODO - checking for 'Administrator' role is not the right way if a user is super-administrator. This has to be fixed
-        if (! "Administrator".equals(clientRole) )
-            throw new AuthorizationException();
+        StreamingOutput output = new StreamingOutput() {
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"));
+                applicationContext.getMetricsExporter().write(applicationContext, writer);
+                writer.flush();
+            }
+        };
+        return Response.ok(output, MetricsExporter.CONTENT_TYPE).build();
     }
 
-
 }
@@ -7,7 +7,6 @@ import org.restcomm.connect.rvd.logging.system.LoggingContext;
 import org.restcomm.connect.rvd.model.StepMarshaler;
 import org.restcomm.connect.rvd.model.ProjectTemplate;
 import org.restcomm.connect.rvd.storage.FsProjectTemplateDao;
-import org.restcomm.connect.rvd.storage.FsWorkspaceStorage;
 import org.restcomm.connect.rvd.storage.JsonModelStorage;
 import org.restcomm.connect.rvd.storage.ProjectTemplateDao;
 import org.restcomm.connect.rvd.storage.exceptions.StorageException;
@@ -77,7 +76,7 @@ public class TemplatesRestService extends SecuredRestService {
      * @return a ProjectTemplateDao
      */
     private ProjectTemplateDao buildProjectTemplateDao() {
-        JsonModelStorage storage = new JsonModelStorage(new FsWorkspaceStorage(configuration.getWorkspaceBasePath()), new StepMarshaler());
+        JsonModelStorage storage = new JsonModelStorage(buildWorkspaceStorage(), new StepMarshaler());
         FsProjectTemplateDao dao = new FsProjectTemplateDao(storage, configuration);
         return dao;
     }
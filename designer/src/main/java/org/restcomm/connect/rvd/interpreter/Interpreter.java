@@ -5,7 +5,6 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -20,6 +19,7 @@ import java.net.URLEncoder;
 
 import org.apache.http.client.utils.URIBuilder;
 import org.restcomm.connect.rvd.ApplicationContext;
+import org.restcomm.connect.rvd.capture.CapturedRequest;
 import org.restcomm.connect.rvd.RvdConfiguration;
 import org.restcomm.connect.rvd.logging.CustomLogger;
 import org.restcomm.connect.rvd.exceptions.InterpreterException;
@@ -27,6 +27,9 @@ import org.restcomm.connect.rvd.exceptions.RvdException;
 import org.restcomm.connect.rvd.exceptions.UndefinedTarget;
 import org.restcomm.connect.rvd.interpreter.exceptions.BadExternalServiceResponse;
 import org.restcomm.connect.rvd.interpreter.exceptions.InvalidAccessOperationAction;
+import org.restcomm.connect.rvd.interpreter.serialization.RcmlFragment;
+import org.restcomm.connect.rvd.interpreter.serialization.RcmlSerializer;
+import org.restcomm.connect.rvd.interpreter.serialization.RcmlTemplate;
 import org.restcomm.connect.rvd.logging.system.LoggingContext;
 import org.restcomm.connect.rvd.logging.system.LoggingHelper;
 import org.restcomm.connect.rvd.logging.system.RvdLoggers;
@@ -39,6 +42,9 @@ import org.restcomm.connect.rvd.model.rcml.RcmlResponse;
 import org.restcomm.connect.rvd.model.rcml.RcmlStep;
 import org.restcomm.connect.rvd.model.server.NodeName;
 import org.restcomm.connect.rvd.model.server.ProjectIndex;
+import org.restcomm.connect.rvd.stats.LatencyStats;
+import org.restcomm.connect.rvd.stats.StatsHelper;
+import org.restcomm.connect.rvd.trace.CallTrace;
 import org.restcomm.connect.rvd.model.steps.es.AccessOperation;
 import org.restcomm.connect.rvd.model.steps.es.ExternalServiceStep;
 import org.restcomm.connect.rvd.model.steps.es.ValueExtractor;
@@ -55,6 +61,9 @@ import com.google.gson.JsonParser;
 
 public class Interpreter {
 
+    // matches variable expressions like $name in texts that support variables
+    public static final Pattern VARIABLE_PATTERN = Pattern.compile("\\$([A-Za-z]+[A-Za-z0-9_]*)");
+
     private ApplicationContext applicationContext;
     private HttpServletRequest httpRequest;
     private CustomLogger projectLogger;
@@ -71,10 +80,13 @@ public class Interpreter {
     MultivaluedMap<String, String> requestParams;
 
     private String contextPath;
+    private String encodedContextPath; // see getEncodedContextPath()
 
-    private Map<String, String> variables = new HashMap<String, String>();
+    private VariableStore variables = new VariableStore();
     private List<NodeName> nodeNames;
     private RcmlResponse rcmlResult;
+    private CapturedRequest capture; // set when traffic capture has sampled the request
+    private CallTrace trace; // set when call tracing is enabled
 
     public static RcmlResponse rcmlOnException() {
         RcmlResponse response = new RcmlResponse();
@@ -135,13 +147,40 @@ public class Interpreter {
         return applicationContext;
     }
 
+    /**
+     * Returns all variables keyed by their prefixed names (i.e. core_CallSid). The map is a live view of the
+     * variable store.
+     */
     public Map<String, String> getVariables() {
-        return variables;
+        return variables.asMap();
     }
 
+    public VariableStore getVariableStore() {
+        return variables;
+    }
 
+    /**
+     * Replaces all variables. Keys are prefixed variable names.
+     */
     public void setVariables(Map<String, String> variables) {
-        this.variables = variables;
+        this.variables.asMap().clear();
+        this.variables.asMap().putAll(variables);
+    }
+
+    public CapturedRequest getCapture() {
+        return capture;
+    }
+
+    public void setCapture(CapturedRequest capture) {
+        this.capture = capture;
+    }
+
+    public CallTrace getTrace() {
+        return trace;
+    }
+
+    public void setTrace(CallTrace trace) {
+        this.trace = trace;
     }
 
     ProjectDao getProjectDao() {
@@ -164,6 +203,8 @@ public class Interpreter {
                 RvdLoggers.local.log(Level.TRACE, LoggingHelper.buildMessage(getClass(),"interpret", loggingContext.getPrefix(), "override default target to " + targetParam));
         }
 
+        if (trace != null)
+            trace.target(targetParam);
         dispatch(targetParam);
         return rcmlResult;
     }
@@ -215,6 +256,8 @@ public class Interpreter {
         // if we are switching modules, remove module-scoped variables
         if (originModule != null && ! originModule.getName().equals(moduleName) )
             clearModuleVariables();
+        if (trace != null)
+            trace.module(moduleName, module.getLabel());
         // load steps for this module
         List<String> nodeStepnames = module.getStepNames();
         // if no starting step has been specified in the target, use the first step of the node as default
@@ -228,6 +271,8 @@ public class Interpreter {
             this.rcmlResult.steps.add( rcmlStep );
         }
 
+        LatencyStats projectLatency = applicationContext.getProjectRegistry().getResidentProjectInfo(appName).latency;
+        LatencyStats globalLatency = applicationContext.getGlobalLatency();
         boolean startstep_found = false;
         for (String stepname : nodeStepnames) {
 
@@ -237,21 +282,39 @@ public class Interpreter {
             if (startstep_found) {
                 // we found our starting step. Let's start processing
                 Step step = module.getStepByName(stepname); //loadStep(stepname, moduleName);
+                long stepStarted = System.nanoTime();
                 String rerouteTo = step.process(this, httpRequest); // is meaningful only for some of the steps like ExternalService steps
                 // check if we have to break the currently rendered module
                 if ( rerouteTo != null ) {
+                    recordStep(step, stepStarted, projectLatency, globalLatency);
+                    if (trace != null)
+                        trace.route(moduleName, rerouteTo);
                     Node reroutedModule = loadNode(rerouteTo);
                     interpret(reroutedModule, null, null, module);
                     return;
                 }
-                // otherwise continue rendering the current module
-                RcmlStep rcmlStep = step.render(this, moduleName);
+                // otherwise continue rendering the current module. Use precompiled RCML if available.
+                RcmlStep rcmlStep;
+                RcmlTemplate template = module.getRcmlTemplate(stepname);
+                if (template != null)
+                    rcmlStep = new RcmlFragment(fillTemplate(template));
+                else
+                    rcmlStep = step.render(this, moduleName);
                 if ( rcmlStep != null)
                     this.rcmlResult.steps.add(rcmlStep);
+                recordStep(step, stepStarted, projectLatency, globalLatency);
             }
         }
     }
 
+    private void recordStep(Step step, long started, LatencyStats projectLatency, LatencyStats globalLatency) {
+        long elapsed = System.nanoTime() - started;
+        StatsHelper.recordStepLatency(projectLatency, step.getKind(), elapsed);
+        StatsHelper.recordStepLatency(globalLatency, step.getKind(), elapsed);
+        if (trace != null)
+            trace.step(step.getName(), step.getKind(), elapsed);
+    }
+
     /**
      * Loads and interprets module names moduleName. Use it only in case the module has not already been loaded
      * to save some cycles.
@@ -344,8 +407,7 @@ public class Interpreter {
             }
         }
 
-        Pattern pattern = Pattern.compile("\\$([A-Za-z]+[A-Za-z0-9_]*)");
-        Matcher matches = pattern.matcher(sourceText);
+        Matcher matches = VARIABLE_PATTERN.matcher(sourceText);
 
         int searchStart = 0;
         List<VariableInText> variablesInText = new ArrayList<VariableInText>();
@@ -362,20 +424,64 @@ public class Interpreter {
         StringBuffer buffer = new StringBuffer(sourceText);
         Collections.reverse(variablesInText);
         for (VariableInText v : variablesInText) {
-            String replaceValue = "";
-            if (variables.containsKey(v.variableName))
-                replaceValue = variables.get(v.variableName);
+            String replaceValue = resolveVariable(v.variableName);
+            buffer.replace(v.position, v.position + v.variableName.length() + 1, replaceValue == null ? "" : replaceValue); // +1 is for the $ character
+        }
+
+        return buffer.toString();
+    }
+
+    /**
+     * Returns the value a variable expression like $name evaluates to. Plain (or fully prefixed) names are tried
+     * first, then module and application (sticky) scoped variables. Returns an empty string if nothing is found.
+     */
+    String resolveVariable(String variableName) {
+        String replaceValue = variables.resolve(variableName);
+        return replaceValue == null ? "" : replaceValue;
+    }
+
+    /**
+     * Fills the holes of a precompiled step with the current variable values. This is what step.render() followed
+     * by serialization would produce.
+     */
+    public String fillTemplate(RcmlTemplate template) {
+        List<String> parts = template.getParts();
+        if (template.isConstant())
+            return parts.get(0);
+        StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i < parts.size(); i++) {
+            String part = parts.get(i);
+            if (i % 2 == 0)
+                buffer.append(part);
             else
-            if (variables.containsKey(RvdConfiguration.MODULE_PREFIX + v.variableName) )
-                replaceValue = variables.get(RvdConfiguration.MODULE_PREFIX + v.variableName);
+            if (RcmlTemplate.CONTEXT_PATH_HOLE.equals(part))
+                buffer.append(RcmlSerializer.escapeText(getEncodedContextPath()));
             else
-            if (variables.containsKey(RvdConfiguration.STICKY_PREFIX + v.variableName) )
-                replaceValue = variables.get(RvdConfiguration.STICKY_PREFIX + v.variableName);
+                buffer.append(RcmlSerializer.escapeText(resolveVariable(part)));
+        }
+        return buffer.toString();
+    }
 
-            buffer.replace(v.position, v.position + v.variableName.length() + 1, replaceValue == null ? "" : replaceValue); // +1 is for the $ character
+    // the context path encoded the way URIBuilder encodes paths
+    private String getEncodedContextPath() {
+        if (encodedContextPath == null) {
+            try {
+                encodedContextPath = contextPath == null || contextPath.isEmpty() ? "" : new URIBuilder().setPath(contextPath).build().toString();
+            } catch (URISyntaxException e) {
+                encodedContextPath = contextPath; // best effort, as render() does
+            }
         }
+        return encodedContextPath;
+    }
 
-        return buffer.toString();
+    /**
+     * Returns true if sourceText contains variable expressions that populateVariables() would replace. Texts that
+     * don't, render the same way no matter the request.
+     */
+    public static boolean containsVariables(String sourceText) {
+        if (sourceText == null)
+            return false;
+        return VARIABLE_PATTERN.matcher(sourceText).find();
     }
 
     public String buildAction(Map<String, String> pairs) {
@@ -400,15 +506,16 @@ public class Interpreter {
         }
 
         // append sticky parameters and module-scoped variables
-        for ( String variableName : variables.keySet() ) {
-            if( variableName.startsWith(RvdConfiguration.STICKY_PREFIX) || variableName.startsWith(RvdConfiguration.MODULE_PREFIX) ) {
+        for (VariableStore.Scope scope: new VariableStore.Scope[] {VariableStore.Scope.STICKY, VariableStore.Scope.MODULE}) {
+            for (Entry<String, String> variable : variables.scope(scope).entrySet()) {
                 if ("".equals(query))
                     query += "?";
                 else
                     query += "&";
 
+                String variableName = scope.getPrefix() + variable.getKey();
                 String encodedValue = "";
-                String value = variables.get(variableName);
+                String value = variable.getValue();
                 if ( value != null )
                     try {
                         encodedValue = URLEncoder.encode( value, "UTF-8");
@@ -536,7 +643,9 @@ public class Interpreter {
     */
 
     public void putStickyVariable(String name, String value) {
-            variables.put(RvdConfiguration.STICKY_PREFIX + name, value);
+        variables.put(VariableStore.Scope.STICKY, name, value);
+        if (trace != null)
+            trace.variable(RvdConfiguration.STICKY_PREFIX + name, value);
     }
 
     // Build the name for a sticky request parameter. This is needed when we need to pass application (sticky) variables to the controller.
@@ -548,11 +657,27 @@ public class Interpreter {
     }
 
     public void putModuleVariable(String name, String value) {
-        variables.put(RvdConfiguration.MODULE_PREFIX + name, value);
+        variables.put(VariableStore.Scope.MODULE, name, value);
+        if (trace != null)
+            trace.variable(RvdConfiguration.MODULE_PREFIX + name, value);
+    }
+
+    /**
+     * Sets the result of a Restcomm action (i.e. Digits) as a core_ variable.
+     */
+    public void putCoreVariable(String name, String value) {
+        variables.put(VariableStore.Scope.CORE, name, value);
+        if (trace != null)
+            trace.variable(RvdConfiguration.CORE_VARIABLE_PREFIX + name, value);
     }
 
+    /**
+     * Puts a variable by its prefixed name. The prefix (if any) decides the scope.
+     */
     public void putVariable(String name, String value) {
-        variables.put(name, value);
+        variables.asMap().put(name, value);
+        if (trace != null)
+            trace.variable(name, value);
     }
 
     /**
@@ -564,16 +689,16 @@ public class Interpreter {
         for ( String anyVariableName : getRequestParams().keySet() ) {
             if ( RvdConfiguration.builtinRestcommParameters.contains(anyVariableName) ) {
                 String variableValue = getRequestParams().getFirst(anyVariableName);
-                getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + anyVariableName, variableValue );
+                variables.put(VariableStore.Scope.CORE, anyVariableName, variableValue );
             } else
             if (isCustomRestcommHttpHeader(anyVariableName)) {
                 String variableValue = getRequestParams().getFirst(anyVariableName);
-                getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + normalizeHTTPHeaderName(anyVariableName), variableValue);
+                variables.put(VariableStore.Scope.CORE, normalizeHTTPHeaderName(anyVariableName), variableValue);
             } else
             if ( anyVariableName.startsWith(RvdConfiguration.STICKY_PREFIX) || anyVariableName.startsWith(RvdConfiguration.MODULE_PREFIX) ) {
                 // set up sticky variables
                 String variableValue = getRequestParams().getFirst(anyVariableName);
-                getVariables().put(anyVariableName, variableValue );
+                putVariable(anyVariableName, variableValue );
 
                 // make local copies
                 // First, rip off the sticky_prefix
@@ -582,7 +707,7 @@ public class Interpreter {
             } else {
                 //for the rest of the parameters simply create a variable with the same name
                 String variableValue = getRequestParams().getFirst(anyVariableName);
-                getVariables().put(anyVariableName, variableValue );
+                putVariable(anyVariableName, variableValue );
             }
         }
     }
@@ -590,7 +715,7 @@ public class Interpreter {
     private void processProjectParameters() {
         if (projectParameters != null && projectParameters.getParameters() != null) {
             for (ProjectParameters.Parameter parameter: projectParameters.getParameters()) {
-                getVariables().put(parameter.getName(), parameter.getValue());
+                putVariable(parameter.getName(), parameter.getValue());
             }
         }
     }
@@ -677,7 +802,7 @@ public class Interpreter {
                         String value;
                         if ( valueElement.isJsonPrimitive() && valueElement.getAsJsonPrimitive().isString() ) {
                             value = valueElement.getAsJsonPrimitive().getAsString();
-                            getVariables().put(name, value);
+                            putVariable(name, value);
                             if (RvdLoggers.local.isTraceEnabled())
                                 RvdLoggers.local.log(Level.TRACE, LoggingHelper.buildMessage(getClass(),"processBootstrapParameters", loggingContext.getPrefix(),"loaded bootstrap parameter: " + name + " - " + value));
                         } else
@@ -692,12 +817,6 @@ public class Interpreter {
      * When switching from one module to the next clears module-scoped variables.
      */
     public void clearModuleVariables() {
-        Iterator<String> it = variables.keySet().iterator();
-        while (it.hasNext()) {
-          String variableName = it.next();
-          if( variableName.startsWith(RvdConfiguration.MODULE_PREFIX) ) {
-              it.remove();
-          }
-        }
+        variables.clear(VariableStore.Scope.MODULE);
     }
 }
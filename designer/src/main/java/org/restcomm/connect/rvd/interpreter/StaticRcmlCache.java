@@ -0,0 +1,60 @@
+package org.restcomm.connect.rvd.interpreter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the serialized RCML of static modules of a project (see BuildService.isStaticModule()). Entries are bound to
+ * the build generation of the project. Once a different generation is seen, all entries are dropped.
+ *
+ * One instance per project lives in ResidentProjectInfo.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class StaticRcmlCache {
+
+    private volatile long generation = -1;
+    private final Map<String, byte[]> responses = new ConcurrentHashMap<String, byte[]>();
+
+    /**
+     * Returns the cached RCML for moduleName or null if there is nothing cached for this build generation.
+     */
+    public byte[] get(long generation, String moduleName) {
+        if (generation != this.generation)
+            return null;
+        return responses.get(moduleName);
+    }
+
+    public void put(long generation, String moduleName, byte[] rcml) {
+        if (generation != this.generation) {
+            synchronized (this) {
+                if (generation != this.generation) {
+                    responses.clear();
+                    this.generation = generation;
+                }
+            }
+        }
+        responses.put(moduleName, rcml);
+    }
+
+    public void clear() {
+        synchronized (this) {
+            responses.clear();
+            generation = -1;
+        }
+    }
+
+    public int size() {
+        return responses.size();
+    }
+
+    /**
+     * @return a rough estimate of the heap memory the cached responses take
+     */
+    public long estimateBytes() {
+        long bytes = 64;
+        for (Map.Entry<String, byte[]> entry: responses.entrySet())
+            bytes += 64 + 2 * entry.getKey().length() + entry.getValue().length;
+        return bytes;
+    }
+}
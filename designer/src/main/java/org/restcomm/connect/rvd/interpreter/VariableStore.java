@@ -0,0 +1,240 @@
+package org.restcomm.connect.rvd.interpreter;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.restcomm.connect.rvd.RvdConfiguration;
+
+/**
+ * Holds the RVD variables of a request, one map per scope. Variables are kept under their bare name. Scopes are:
+ *
+ *  CORE - Restcomm request parameters and step results like Digits. Known as core_name.
+ *  LOCAL - variables without a prefix i.e. custom request parameters, project and bootstrap parameters and local copies
+ *          of collected input.
+ *  MODULE - live while the current module runs and are passed on with action urls. Known as module_name.
+ *  STICKY - application scoped variables. They're passed on with action urls too. Known as sticky_name.
+ *
+ * A bare $name resolves to the LOCAL variable first, then to MODULE and STICKY ones. Prefixed names like $core_name
+ * go straight to their scope.
+ *
+ * asMap() gives a view with all variables under their prefixed names, the way they were kept before scopes got
+ * separate maps.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class VariableStore {
+
+    public enum Scope {
+        CORE(RvdConfiguration.CORE_VARIABLE_PREFIX),
+        LOCAL(""),
+        MODULE(RvdConfiguration.MODULE_PREFIX),
+        STICKY(RvdConfiguration.STICKY_PREFIX);
+
+        private final String prefix;
+
+        Scope(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        /**
+         * Returns the scope a prefixed variable name belongs to. Names without a known prefix are LOCAL.
+         */
+        public static Scope ofName(String prefixedName) {
+            if (prefixedName.startsWith(RvdConfiguration.CORE_VARIABLE_PREFIX))
+                return CORE;
+            if (prefixedName.startsWith(RvdConfiguration.MODULE_PREFIX))
+                return MODULE;
+            if (prefixedName.startsWith(RvdConfiguration.STICKY_PREFIX))
+                return STICKY;
+            return LOCAL;
+        }
+    }
+
+    private static final Scope[] SCOPES = Scope.values();
+
+    private final Map<String, String>[] scopes;
+    private final Map<String, String> view = new PrefixedView();
+
+    @SuppressWarnings("unchecked")
+    public VariableStore() {
+        scopes = new Map[SCOPES.length];
+        for (Scope scope: SCOPES)
+            scopes[scope.ordinal()] = new HashMap<String, String>();
+    }
+
+    public String get(Scope scope, String name) {
+        return scopes[scope.ordinal()].get(name);
+    }
+
+    public boolean contains(Scope scope, String name) {
+        return scopes[scope.ordinal()].containsKey(name);
+    }
+
+    public void put(Scope scope, String name, String value) {
+        scopes[scope.ordinal()].put(name, value);
+    }
+
+    /**
+     * Returns the variables of a scope under their bare names. The map is live.
+     */
+    public Map<String, String> scope(Scope scope) {
+        return scopes[scope.ordinal()];
+    }
+
+    /**
+     * Drops all variables of a scope.
+     */
+    public void clear(Scope scope) {
+        scopes[scope.ordinal()] = new HashMap<String, String>();
+    }
+
+    /**
+     * Resolves a variable expression name. See class description for the order scopes are searched in.
+     *
+     * @param name a bare or prefixed variable name
+     * @return the variable value or null if there is no such variable (or its value is null)
+     */
+    public String resolve(String name) {
+        Map<String, String> local = scopes[Scope.LOCAL.ordinal()];
+        if (local.containsKey(name))
+            return local.get(name);
+        Scope scope = Scope.ofName(name);
+        if (scope != Scope.LOCAL) {
+            Map<String, String> prefixed = scopes[scope.ordinal()];
+            String bareName = name.substring(scope.prefix.length());
+            if (prefixed.containsKey(bareName))
+                return prefixed.get(bareName);
+        }
+        Map<String, String> module = scopes[Scope.MODULE.ordinal()];
+        if (module.containsKey(name))
+            return module.get(name);
+        return scopes[Scope.STICKY.ordinal()].get(name);
+    }
+
+    /**
+     * Returns a live map of all variables keyed by their prefixed names (i.e. core_CallSid, module_name, name).
+     */
+    public Map<String, String> asMap() {
+        return view;
+    }
+
+    private final class PrefixedView extends AbstractMap<String, String> {
+
+        @Override
+        public String get(Object key) {
+            if (!(key instanceof String))
+                return null;
+            Scope scope = Scope.ofName((String) key);
+            return scopes[scope.ordinal()].get(((String) key).substring(scope.prefix.length()));
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            if (!(key instanceof String))
+                return false;
+            Scope scope = Scope.ofName((String) key);
+            return scopes[scope.ordinal()].containsKey(((String) key).substring(scope.prefix.length()));
+        }
+
+        @Override
+        public String put(String key, String value) {
+            Scope scope = Scope.ofName(key);
+            return scopes[scope.ordinal()].put(key.substring(scope.prefix.length()), value);
+        }
+
+        @Override
+        public String remove(Object key) {
+            if (!(key instanceof String))
+                return null;
+            Scope scope = Scope.ofName((String) key);
+            return scopes[scope.ordinal()].remove(((String) key).substring(scope.prefix.length()));
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (Map<String, String> scope: scopes)
+                size += scope.size();
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            for (Scope scope: SCOPES)
+                VariableStore.this.clear(scope);
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new PrefixedIterator();
+                }
+
+                @Override
+                public int size() {
+                    return PrefixedView.this.size();
+                }
+            };
+        }
+    }
+
+    // walks over all scopes presenting entries under their prefixed names
+    private final class PrefixedIterator implements Iterator<Map.Entry<String, String>> {
+        private int scopeIndex = -1;
+        private Iterator<Map.Entry<String, String>> current;
+        private Iterator<Map.Entry<String, String>> lastReturnedFrom;
+
+        @Override
+        public boolean hasNext() {
+            while (current == null || !current.hasNext()) {
+                if (scopeIndex + 1 >= SCOPES.length)
+                    return false;
+                scopeIndex ++;
+                current = scopes[scopeIndex].entrySet().iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            lastReturnedFrom = current;
+            return new PrefixedEntry(SCOPES[scopeIndex].prefix, current.next());
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturnedFrom == null)
+                throw new IllegalStateException();
+            lastReturnedFrom.remove();
+            lastReturnedFrom = null;
+        }
+    }
+
+    private static final class PrefixedEntry extends AbstractMap.SimpleEntry<String, String> {
+        private final Map.Entry<String, String> entry;
+
+        PrefixedEntry(String prefix, Map.Entry<String, String> entry) {
+            super(prefix + entry.getKey(), entry.getValue());
+            this.entry = entry;
+        }
+
+        @Override
+        public String setValue(String value) {
+            super.setValue(value);
+            return entry.setValue(value);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.restcomm.connect.rvd.interpreter.serialization;
+
+import org.restcomm.connect.rvd.model.rcml.RcmlStep;
+
+/**
+ * An RCML step that is already in XML form. It is created out of an RcmlTemplate and RcmlSerializer copies it
+ * to the response as is.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class RcmlFragment extends RcmlStep {
+
+    private final String xml;
+
+    public RcmlFragment(String xml) {
+        this.xml = xml;
+    }
+
+    public String getXml() {
+        return xml;
+    }
+
+    @Override
+    public String toString() {
+        return xml;
+    }
+}
@@ -0,0 +1,109 @@
+package org.restcomm.connect.rvd.interpreter.serialization;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.restcomm.connect.rvd.interpreter.Interpreter;
+import org.restcomm.connect.rvd.model.project.Step;
+import org.restcomm.connect.rvd.model.rcml.RcmlStep;
+
+/**
+ * Turns steps to RcmlTemplates at build time.
+ *
+ * Steps that support it (see Step.precompile()) render an RcmlStep where variable expressions are replaced with
+ * markers. The step is serialized using the same RcmlSerializer that the controller uses and the result is split on
+ * the markers. This way literal parts are escaped exactly as they would be at runtime.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class RcmlPrecompiler {
+
+    // XStream setup is not cheap and builds are rare. A single serializer will do.
+    private static final RcmlSerializer serializer = new RcmlSerializer();
+
+    private final String appName;
+    private final String markerPrefix;
+    private final Pattern markerPattern;
+    private List<String> holes;
+
+    public RcmlPrecompiler(String appName) {
+        this.appName = appName;
+        // markers consist of characters that are neither escaped in XML nor URL-encoded
+        this.markerPrefix = "RVDHOLE" + Long.toHexString(new Random().nextLong() & Long.MAX_VALUE) + "X";
+        this.markerPattern = Pattern.compile(markerPrefix + "([0-9]+)X");
+    }
+
+    public String getAppName() {
+        return appName;
+    }
+
+    /**
+     * Returns the template for a step or null if the step can't be precompiled.
+     *
+     * @param step
+     * @return an RcmlTemplate or null
+     */
+    public RcmlTemplate precompile(Step step) {
+        holes = new ArrayList<String>();
+        String xml;
+        try {
+            RcmlStep rcmlStep = step.precompile(this);
+            if (rcmlStep == null)
+                return null;
+            xml = serializer.serializeStep(rcmlStep);
+        } catch (RuntimeException e) {
+            return null; // precompiling is an optimization. The interpreter will render the step as usual.
+        }
+        List<String> parts = new ArrayList<String>();
+        Matcher matcher = markerPattern.matcher(xml);
+        int position = 0;
+        int found = 0;
+        while (matcher.find()) {
+            int index = Integer.parseInt(matcher.group(1));
+            if (index >= holes.size())
+                return null;
+            parts.add(xml.substring(position, matcher.start()));
+            parts.add(holes.get(index));
+            position = matcher.end();
+            found ++;
+        }
+        parts.add(xml.substring(position));
+        // a marker lost in serialization means we can't trust the template
+        if (found != holes.size())
+            return null;
+        return new RcmlTemplate(parts);
+    }
+
+    /**
+     * Replaces variable expressions in text with hole markers. Use it for texts that the interpreter would pass through
+     * populateVariables(). Returns null if text already contains something that looks like a marker.
+     */
+    public String template(String text) {
+        if (text == null)
+            return null;
+        if (text.contains(markerPrefix))
+            return null;
+        Matcher matcher = Interpreter.VARIABLE_PATTERN.matcher(text);
+        StringBuffer buffer = new StringBuffer();
+        while (matcher.find()) {
+            matcher.appendReplacement(buffer, Matcher.quoteReplacement(addHole(matcher.group(1))));
+        }
+        matcher.appendTail(buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * Returns a marker for the context path the application is served from. This is only known at runtime.
+     */
+    public String contextPath() {
+        return addHole(RcmlTemplate.CONTEXT_PATH_HOLE);
+    }
+
+    private String addHole(String name) {
+        holes.add(name);
+        return markerPrefix + (holes.size() - 1) + "X";
+    }
+}
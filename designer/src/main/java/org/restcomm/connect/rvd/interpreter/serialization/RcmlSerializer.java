@@ -1,7 +1,9 @@
 package org.restcomm.connect.rvd.interpreter.serialization;
 
 import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.PrettyPrintWriter;
 import org.restcomm.connect.rvd.model.rcml.RcmlResponse;
+import org.restcomm.connect.rvd.model.rcml.RcmlStep;
 import org.restcomm.connect.rvd.model.steps.dial.ClientNounConverter;
 import org.restcomm.connect.rvd.model.steps.dial.ConferenceNounConverter;
 import org.restcomm.connect.rvd.model.steps.dial.NumberNounConverter;
@@ -34,6 +36,9 @@ import org.restcomm.connect.rvd.model.steps.ussdlanguage.UssdLanguageRcml;
 import org.restcomm.connect.rvd.model.steps.ussdsay.UssdSayRcml;
 import org.restcomm.connect.rvd.model.steps.ussdsay.UssdSayStepConverter;
 
+import java.io.StringWriter;
+import java.io.Writer;
+
 /**
  * Serializes Rcml*Step to RCML code
  *
@@ -121,10 +126,97 @@ public class RcmlSerializer {
         xstream.aliasField("Uri", RcmlDialStep.class, "sipuri");
     }
 
+    // Writes elements as if they were nested inside <Response>. Text content is left alone.
+    private static class ResponseChildWriter extends PrettyPrintWriter {
+        ResponseChildWriter(Writer writer) {
+            super(writer);
+        }
+
+        @Override
+        protected String getNewLine() {
+            return "\n" + INDENT;
+        }
+    }
+
+    private static final String INDENT = "  ";
+
     public String serialize(RcmlResponse rcmlResponse) {
         if (rcmlResponse == null)
             return null;
-        else
+        if (!hasFragments(rcmlResponse))
             return xstream.toXML(rcmlResponse);
+        // precompiled fragments are copied as is. The rest of the steps go through xstream. The output is the
+        // same as if all steps had been rendered.
+        StringWriter writer = new StringWriter();
+        writer.write("<Response>");
+        for (RcmlStep step: rcmlResponse.steps) {
+            writer.write("\n" + INDENT);
+            if (step instanceof RcmlFragment)
+                writer.write(((RcmlFragment) step).getXml());
+            else
+                xstream.marshal(step, new ResponseChildWriter(writer));
+        }
+        writer.write("\n</Response>");
+        return writer.toString();
+    }
+
+    /**
+     * Serializes a single step the way it would appear at the top level of a document.
+     */
+    public String serializeStep(RcmlStep step) {
+        return xstream.toXML(step);
+    }
+
+    private boolean hasFragments(RcmlResponse rcmlResponse) {
+        for (RcmlStep step: rcmlResponse.steps) {
+            if (step instanceof RcmlFragment)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Escapes text content the same way xstream's PrettyPrintWriter does (XML_QUIRKS mode). Used to fill
+     * RcmlTemplate holes.
+     *
+     * @param text
+     * @return escaped text. Null is treated as an empty string.
+     */
+    public static String escapeText(String text) {
+        if (text == null)
+            return "";
+        StringBuilder buffer = null;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            String replacement;
+            switch (c) {
+                case '\0': replacement = "&#x0;"; break;
+                case '&': replacement = "&amp;"; break;
+                case '<': replacement = "&lt;"; break;
+                case '>': replacement = "&gt;"; break;
+                case '"': replacement = "&quot;"; break;
+                case '\'': replacement = "&apos;"; break;
+                case '\r': replacement = "&#xd;"; break;
+                case '\t':
+                case '\n':
+                    replacement = null; break;
+                default:
+                    if (Character.isDefined(c) && !Character.isISOControl(c))
+                        replacement = null;
+                    else
+                        replacement = "&#x" + Integer.toHexString(c) + ";";
+            }
+            if (replacement != null) {
+                if (buffer == null) {
+                    buffer = new StringBuilder(length + 16);
+                    buffer.append(text, 0, i);
+                }
+                buffer.append(replacement);
+            } else
+            if (buffer != null)
+                buffer.append(c);
+        }
+        return buffer == null ? text : buffer.toString();
     }
 }
@@ -0,0 +1,36 @@
+package org.restcomm.connect.rvd.interpreter.serialization;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RCML of a step precompiled at build time. Parts at even positions are literal (already escaped) XML. Parts at odd
+ * positions are holes to be filled by the interpreter. A hole is either the name of a variable or CONTEXT_PATH_HOLE.
+ * The context path is filled in URI-encoded since it only appears in URL paths.
+ *
+ * A template with a single part is constant.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class RcmlTemplate {
+
+    // '@' can't appear in variable names
+    public static final String CONTEXT_PATH_HOLE = "@contextPath";
+
+    private List<String> parts = new ArrayList<String>();
+
+    public RcmlTemplate() {
+    }
+
+    public RcmlTemplate(List<String> parts) {
+        this.parts = parts;
+    }
+
+    public List<String> getParts() {
+        return parts;
+    }
+
+    public boolean isConstant() {
+        return parts.size() == 1;
+    }
+}
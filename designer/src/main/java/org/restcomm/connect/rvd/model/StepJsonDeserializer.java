@@ -72,49 +72,62 @@ public class StepJsonDeserializer implements JsonDeserializer<Step> {
             .registerTypeAdapter(DialNoun.class, new DialNounJsonDeserializer())
             .create();
 
+        Class<? extends Step> stepClass = stepClassForKind(kind);
         Step step;
+        if (stepClass != null)
+            step = gson.fromJson(step_object, stepClass);
+        else {
+            step = null;
+            logger.error("Cannot deserialize step. Unknown step found."); // TODO remove me and return a nice value!!!
+        }
+
+        return step;
+    }
+
+    /**
+     * Returns the model class for a step kind or null if the kind is unknown.
+     *
+     * @param kind as found in the 'kind' property of steps
+     * @return a Step subclass or null
+     */
+    public static Class<? extends Step> stepClassForKind(String kind) {
         if ("say".equals(kind))
-            step = gson.fromJson(step_object, SayStep.class);
+            return SayStep.class;
         else if ("gather".equals(kind))
-            step = gson.fromJson(step_object, GatherStep.class);
+            return GatherStep.class;
         else if ("dial".equals(kind))
-            step = gson.fromJson(step_object, DialStep.class);
+            return DialStep.class;
         else if ("hungup".equals(kind))
-            step = gson.fromJson(step_object, HungupStep.class);
+            return HungupStep.class;
         else if ("play".equals(kind))
-            step = gson.fromJson(step_object, PlayStep.class);
+            return PlayStep.class;
         else if ("control".equals(kind))
-            step = gson.fromJson(step_object, ControlStep.class);
+            return ControlStep.class;
         else if ("externalService".equals(kind))
-            step = gson.fromJson(step_object, ExternalServiceStep.class);
+            return ExternalServiceStep.class;
         else if ("log".equals(kind))
-            step = gson.fromJson(step_object, LogStep.class);
+            return LogStep.class;
         else if ("redirect".equals(kind))
-            step = gson.fromJson(step_object, RedirectStep.class);
+            return RedirectStep.class;
         else if ("reject".equals(kind))
-            step = gson.fromJson(step_object, RejectStep.class);
+            return RejectStep.class;
         else if ("pause".equals(kind))
-            step = gson.fromJson(step_object, PauseStep.class);
+            return PauseStep.class;
         else if ("sms".equals(kind))
-            step = gson.fromJson(step_object, SmsStep.class);
+            return SmsStep.class;
         else if ("email".equals(kind))
-            step = gson.fromJson(step_object, EmailStep.class);
+            return EmailStep.class;
         else if ("record".equals(kind))
-            step = gson.fromJson(step_object, RecordStep.class);
+            return RecordStep.class;
         else if ("fax".equals(kind))
-            step = gson.fromJson(step_object, FaxStep.class);
+            return FaxStep.class;
         else if ("ussdSay".equals(kind))
-            step = gson.fromJson(step_object, UssdSayStep.class);
+            return UssdSayStep.class;
         else if ("ussdCollect".equals(kind))
-            step = gson.fromJson(step_object, UssdCollectStep.class);
+            return UssdCollectStep.class;
         else if ("ussdLanguage".equals(kind))
-            step = gson.fromJson(step_object, UssdLanguageStep.class);
-        else {
-            step = null;
-            logger.error("Cannot deserialize step. Unknown step found."); // TODO remove me and return a nice value!!!
-        }
-
-        return step;
+            return UssdLanguageStep.class;
+        return null;
     }
 
 }
@@ -0,0 +1,32 @@
+package org.restcomm.connect.rvd.model.admin;
+
+import org.restcomm.connect.rvd.storage.WorkspaceBackup;
+
+import java.util.List;
+
+/**
+ * Workspace snapshots, oldest first, and whether one is being taken right now.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class BackupListDto {
+    String instanceId;
+    String location;
+    boolean running;
+    List<WorkspaceBackup.Snapshot> snapshots;
+
+    public BackupListDto(String instanceId, WorkspaceBackup backup) {
+        this.instanceId = instanceId;
+        this.location = backup.getBackupDir().getPath();
+        this.running = backup.isRunning();
+        this.snapshots = backup.list();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public List<WorkspaceBackup.Snapshot> getSnapshots() {
+        return snapshots;
+    }
+}
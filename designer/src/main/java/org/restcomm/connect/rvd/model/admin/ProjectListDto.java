@@ -0,0 +1,37 @@
+package org.restcomm.connect.rvd.model.admin;
+
+import org.restcomm.connect.rvd.storage.ProjectMetadata;
+import org.restcomm.connect.rvd.storage.ProjectMetadataIndex;
+
+import java.util.List;
+
+/**
+ * A page of project metadata as returned by the admin API. Pass 'next' as the 'after' parameter to get the next page.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class ProjectListDto {
+    String instanceId;
+    int total;
+    String next;
+    List<ProjectMetadata> items;
+
+    public ProjectListDto(String instanceId, ProjectMetadataIndex.Page page) {
+        this.instanceId = instanceId;
+        this.total = page.getTotal();
+        this.next = page.getNext();
+        this.items = page.getItems();
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public List<ProjectMetadata> getItems() {
+        return items;
+    }
+}
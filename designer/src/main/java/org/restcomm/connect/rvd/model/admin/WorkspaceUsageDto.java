@@ -0,0 +1,34 @@
+package org.restcomm.connect.rvd.model.admin;
+
+import org.restcomm.connect.rvd.storage.ProjectMetadataIndex;
+
+import java.util.List;
+
+/**
+ * Number of projects and bytes they take by owner. Projects without an owner come last with a null owner.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class WorkspaceUsageDto {
+    String instanceId;
+    int projects;
+    long size;
+    List<ProjectMetadataIndex.Usage> owners;
+
+    public WorkspaceUsageDto(String instanceId, List<ProjectMetadataIndex.Usage> owners) {
+        this.instanceId = instanceId;
+        this.owners = owners;
+        for (ProjectMetadataIndex.Usage usage: owners) {
+            projects += usage.getProjects();
+            size += usage.getSize();
+        }
+    }
+
+    public int getProjects() {
+        return projects;
+    }
+
+    public long getSize() {
+        return size;
+    }
+}
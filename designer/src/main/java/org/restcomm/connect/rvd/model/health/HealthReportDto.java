@@ -0,0 +1,90 @@
+package org.restcomm.connect.rvd.model.health;
+
+import org.restcomm.connect.rvd.health.ProbeResult;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What health checks return. Sections that don't apply (i.e. the probes in a liveness check) are left null.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class HealthReportDto {
+    public static final String UP = "UP";
+    public static final String DOWN = "DOWN";
+
+    String status;
+    String instanceId;
+    Initialization initialization;
+    ProbeResult workspace;
+    ProbeResult restcomm;
+    Map<String, Pool> httpPools;
+    Integer trafficCaptureBacklog;
+
+    public HealthReportDto(String status) {
+        this.status = status;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setInstanceId(String instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    public void setInitialization(Initialization initialization) {
+        this.initialization = initialization;
+    }
+
+    public void setWorkspace(ProbeResult workspace) {
+        this.workspace = workspace;
+    }
+
+    public void setRestcomm(ProbeResult restcomm) {
+        this.restcomm = restcomm;
+    }
+
+    public void addHttpPool(String name, Pool pool) {
+        if (httpPools == null)
+            httpPools = new LinkedHashMap<String, Pool>();
+        httpPools.put(name, pool);
+    }
+
+    public void setTrafficCaptureBacklog(Integer trafficCaptureBacklog) {
+        this.trafficCaptureBacklog = trafficCaptureBacklog;
+    }
+
+    public static class Initialization {
+        String phase;
+        long phaseMillis; // time spent in the current phase so far (or in total once ready)
+        String error;
+
+        public Initialization(String phase, long phaseMillis, String error) {
+            this.phase = phase;
+            this.phaseMillis = phaseMillis;
+            this.error = error;
+        }
+    }
+
+    public static class Pool {
+        int leased;
+        int available;
+        int pending;
+        int max;
+        boolean saturated; // all connections are in use and requests are waiting
+
+        public Pool(int leased, int available, int pending, int max) {
+            this.leased = leased;
+            this.available = available;
+            this.pending = pending;
+            this.max = max;
+            this.saturated = pending > 0 && leased >= max;
+        }
+
+        public boolean isSaturated() {
+            return saturated;
+        }
+    }
+}
@@ -3,6 +3,9 @@ package org.restcomm.connect.rvd.model.project;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+
+import org.restcomm.connect.rvd.interpreter.serialization.RcmlTemplate;
 
 public class Node {
 
@@ -10,6 +13,7 @@ public class Node {
     private String label;
     private String kind;
     private List<Step> steps;
+    private Map<String, RcmlTemplate> rcmlTemplates; // precompiled steps by step name. Only present in built modules.
 
     public Node() {
         // TODO Auto-generated constructor stub
@@ -62,6 +66,24 @@ public class Node {
         return this;
     }
 
+    public Map<String, RcmlTemplate> getRcmlTemplates() {
+        return rcmlTemplates;
+    }
+
+    public Node setRcmlTemplates(Map<String, RcmlTemplate> rcmlTemplates) {
+        this.rcmlTemplates = rcmlTemplates;
+        return this;
+    }
+
+    /**
+     * Returns the precompiled RCML for step stepName or null if there is none.
+     */
+    public RcmlTemplate getRcmlTemplate(String stepName) {
+        if (rcmlTemplates == null)
+            return null;
+        return rcmlTemplates.get(stepName);
+    }
+
     /**
      * Returns a step named stepName or null if nothing is matched
      *
@@ -11,11 +11,11 @@ import org.restcomm.connect.rvd.model.steps.ussdsay.UssdSayStep;
 
 public class ProjectState {
 
+    StateHeader header; // first, so that it can be read without going through the nodes
     Integer lastStepId;
     List<Node> nodes;
     Integer activeNode;
     Integer lastNodeId;
-    StateHeader header;
     ExceptionHandlingInfo exceptionHandlingInfo;
 
 
@@ -5,10 +5,12 @@ import javax.servlet.http.HttpServletRequest;
 import org.restcomm.connect.rvd.exceptions.InterpreterException;
 import org.restcomm.connect.rvd.interpreter.Interpreter;
 import org.restcomm.connect.rvd.interpreter.exceptions.RVDUnsupportedHandlerVerb;
+import org.restcomm.connect.rvd.interpreter.serialization.RcmlPrecompiler;
 import org.restcomm.connect.rvd.jsonvalidation.ValidationErrorItem;
 import org.restcomm.connect.rvd.model.rcml.RcmlStep;
 import org.restcomm.connect.rvd.storage.exceptions.StorageException;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public abstract class Step {
@@ -64,6 +66,42 @@ public abstract class Step {
         return null;
     }
 
+    /**
+     * Returns true if the RCML rendered by this step depends only on project configuration. Such steps don't look at
+     * variables, don't have side effects in process() and render the same output for every request. Override it for
+     * steps that are known to be constant.
+     */
+    public boolean isConstant() {
+        return false;
+    }
+
+    /**
+     * Renders the step at build time. Texts that would go through populateVariables() should go through
+     * precompiler.template() instead. Returns null if the step can't be precompiled which is the default.
+     *
+     * @param precompiler
+     * @return an RcmlStep with hole markers in place of variables or null
+     */
+    public RcmlStep precompile(RcmlPrecompiler precompiler) {
+        return null;
+    }
+
+    /**
+     * Names of the modules this step may continue to within the same request (i.e. ES routing or Control step
+     * 'continue to' actions). Used for static analysis of the project flow. Empty by default.
+     */
+    public List<String> getRerouteTargets() {
+        return new ArrayList<String>();
+    }
+
+    /**
+     * Names of the modules a subsequent request may be routed to by this step (i.e. Gather menu options or
+     * the Dial 'next' module). Empty by default.
+     */
+    public List<String> getInputTargets() {
+        return new ArrayList<String>();
+    }
+
     public List<ValidationErrorItem> validate(String stepPath, Node parentModule) {
         return null; // assume valid unless overriden
     }
@@ -0,0 +1,147 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.restcomm.connect.rvd.model.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Worst-case cost of serving a single controller request, per module. Produced by FlowCostAnalyzer when a project
+ * is built and returned by the build endpoint.
+ *
+ * Costs of a module include all modules it may reroute to within the same request (ES routing, Control 'continue to').
+ * Modules reached after user input (i.e. Gather menu) are served by a new request and are not included.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class FlowCostReport {
+
+    private List<ModuleCost> modules = new ArrayList<ModuleCost>();
+    private List<String> cycles = new ArrayList<String>(); // i.e. "module1 -> module2 -> module1"
+    private List<String> violations = new ArrayList<String>(); // configured limits that were exceeded
+
+    public List<ModuleCost> getModules() {
+        return modules;
+    }
+
+    public ModuleCost getModule(String name) {
+        for (ModuleCost module: modules) {
+            if (module.name.equals(name))
+                return module;
+        }
+        return null;
+    }
+
+    /**
+     * Reroute cycles that don't wait for user input. A request entering such a cycle may never return.
+     */
+    public List<String> getCycles() {
+        return cycles;
+    }
+
+    public List<String> getViolations() {
+        return violations;
+    }
+
+    public void setViolations(List<String> violations) {
+        this.violations = violations;
+    }
+
+    public static class ModuleCost {
+        private String name;
+        private String label;
+        private boolean bounded = true; // false if the module may reach a reroute cycle. Costs are null then.
+        private boolean dynamicRouting; // true if ES routing by response label may add more cost than reported
+        private Integer esCalls;
+        private Long esTimeout; // sum of ES timeouts in milliseconds
+        private Integer rerouteDepth;
+        private List<String> rerouteTargets;
+        private List<String> inputTargets;
+
+        public ModuleCost(String name, String label) {
+            this.name = name;
+            this.label = label;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public boolean isBounded() {
+            return bounded;
+        }
+
+        public void setBounded(boolean bounded) {
+            this.bounded = bounded;
+        }
+
+        public boolean isDynamicRouting() {
+            return dynamicRouting;
+        }
+
+        public void setDynamicRouting(boolean dynamicRouting) {
+            this.dynamicRouting = dynamicRouting;
+        }
+
+        public Integer getEsCalls() {
+            return esCalls;
+        }
+
+        public void setEsCalls(Integer esCalls) {
+            this.esCalls = esCalls;
+        }
+
+        public Long getEsTimeout() {
+            return esTimeout;
+        }
+
+        public void setEsTimeout(Long esTimeout) {
+            this.esTimeout = esTimeout;
+        }
+
+        public Integer getRerouteDepth() {
+            return rerouteDepth;
+        }
+
+        public void setRerouteDepth(Integer rerouteDepth) {
+            this.rerouteDepth = rerouteDepth;
+        }
+
+        public List<String> getRerouteTargets() {
+            return rerouteTargets;
+        }
+
+        public void setRerouteTargets(List<String> rerouteTargets) {
+            this.rerouteTargets = rerouteTargets;
+        }
+
+        public List<String> getInputTargets() {
+            return inputTargets;
+        }
+
+        public void setInputTargets(List<String> inputTargets) {
+            this.inputTargets = inputTargets;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.restcomm.connect.rvd.model.server;
 public class NodeName {
     private String name;
     private String label;
+    private Boolean staticRcml; // true if the module renders the same RCML for every request. Set by BuildService.
 
     public String getName() {
         return name;
@@ -16,4 +17,10 @@ public class NodeName {
     public void setLabel(String label) {
         this.label = label;
     }
+    public Boolean getStaticRcml() {
+        return staticRcml;
+    }
+    public void setStaticRcml(Boolean staticRcml) {
+        this.staticRcml = staticRcml;
+    }
 }
@@ -8,6 +8,7 @@ public class ProjectIndex {
     private String defaultTarget;
     private List<NodeName> nodeNames = new ArrayList<NodeName>();
     private Boolean logging;
+    private Long buildGeneration; // changes each time the project is built. Caches of built artifacts are keyed on it.
 
     public String getDefaultTarget() {
         return defaultTarget;
@@ -31,4 +32,25 @@ public class ProjectIndex {
     public void setLogging(Boolean logging) {
         this.logging = logging;
     }
+
+    public Long getBuildGeneration() {
+        return buildGeneration;
+    }
+
+    public void setBuildGeneration(Long buildGeneration) {
+        this.buildGeneration = buildGeneration;
+    }
+
+    /**
+     * Returns the NodeName entry for the module named 'name' or null if there is no such module.
+     */
+    public NodeName getNodeName(String name) {
+        if (name == null)
+            return null;
+        for (NodeName nodeName: nodeNames) {
+            if (name.equals(nodeName.getName()))
+                return nodeName;
+        }
+        return null;
+    }
 }
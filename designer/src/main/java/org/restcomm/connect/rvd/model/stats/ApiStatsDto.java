@@ -0,0 +1,69 @@
+package org.restcomm.connect.rvd.model.stats;
+
+import org.restcomm.connect.rvd.stats.ApiOperationStats;
+import org.restcomm.connect.rvd.stats.ApiStats;
+import org.restcomm.connect.rvd.stats.LatencySnapshot;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Designer API request stats by operation. Latency is in milliseconds and payload sizes in kilobytes.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class ApiStatsDto {
+    Date startTime;
+    String instanceId;
+    Map<String, Operation> operations = new TreeMap<String, Operation>();
+
+    public ApiStatsDto(String instanceId, ApiStats stats, boolean storageInstrumented) {
+        this.instanceId = instanceId;
+        this.startTime = new Date(stats.getStartTime());
+        for (Map.Entry<String, ApiOperationStats> entry: stats.getOperations().entrySet())
+            operations.put(entry.getKey(), new Operation(entry.getValue(), storageInstrumented));
+    }
+
+    public Map<String, Operation> getOperations() {
+        return operations;
+    }
+
+    public static class Operation {
+        long requests;
+        long clientErrors;
+        long serverErrors;
+        LatencySnapshot latency;
+        LatencySnapshot requestKb;
+        LatencySnapshot responseKb;
+        Long storageOperations; // null unless storage instrumentation is enabled
+        Long storageBytes;
+        Double storageMillis;
+
+        Operation(ApiOperationStats stats, boolean storageInstrumented) {
+            requests = stats.getRequests();
+            clientErrors = stats.getClientErrors();
+            serverErrors = stats.getServerErrors();
+            latency = stats.getLatency().snapshot();
+            requestKb = stats.getRequestBytes().snapshot();
+            responseKb = stats.getResponseBytes().snapshot();
+            if (storageInstrumented) {
+                storageOperations = stats.getStorageOperations();
+                storageBytes = stats.getStorageBytes();
+                storageMillis = stats.getStorageMicros() / 1000.0;
+            }
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getServerErrors() {
+            return serverErrors;
+        }
+
+        public LatencySnapshot getLatency() {
+            return latency;
+        }
+    }
+}
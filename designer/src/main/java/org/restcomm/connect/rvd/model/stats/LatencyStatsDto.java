@@ -0,0 +1,44 @@
+package org.restcomm.connect.rvd.model.stats;
+
+import org.restcomm.connect.rvd.stats.LatencyHistogram;
+import org.restcomm.connect.rvd.stats.LatencySnapshot;
+import org.restcomm.connect.rvd.stats.LatencyStats;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latency percentiles of an application or of all applications. Values are in milliseconds.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class LatencyStatsDto {
+    Date startTime;
+    String instanceId;
+    LatencySnapshot rcml;
+    Map<String, LatencySnapshot> steps = new TreeMap<String, LatencySnapshot>();
+    Map<String, LatencySnapshot> esHosts = new TreeMap<String, LatencySnapshot>();
+
+    public LatencyStatsDto(String instanceId, LatencyStats stats) {
+        this.instanceId = instanceId;
+        this.startTime = new Date(stats.getStartTime());
+        this.rcml = stats.getRcml().snapshot();
+        for (Map.Entry<String, LatencyHistogram> entry: stats.getSteps().entrySet())
+            steps.put(entry.getKey(), entry.getValue().snapshot());
+        for (Map.Entry<String, LatencyHistogram> entry: stats.getEsHosts().entrySet())
+            esHosts.put(entry.getKey(), entry.getValue().snapshot());
+    }
+
+    public LatencySnapshot getRcml() {
+        return rcml;
+    }
+
+    public Map<String, LatencySnapshot> getSteps() {
+        return steps;
+    }
+
+    public Map<String, LatencySnapshot> getEsHosts() {
+        return esHosts;
+    }
+}
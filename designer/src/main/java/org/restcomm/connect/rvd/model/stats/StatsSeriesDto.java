@@ -0,0 +1,71 @@
+package org.restcomm.connect.rvd.model.stats;
+
+import org.restcomm.connect.rvd.stats.LatencySnapshot;
+import org.restcomm.connect.rvd.stats.StatsSample;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Activity of an application (or of all applications) over a time range, one point per step. Counters are the
+ * number of events within each step. Latency values are in milliseconds.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class StatsSeriesDto {
+    String instanceId;
+    Date from;
+    Date to;
+    long step; // seconds
+    List<Point> points = new ArrayList<Point>();
+
+    public StatsSeriesDto(String instanceId, long from, long to, long step, List<StatsSample> samples) {
+        this.instanceId = instanceId;
+        this.from = new Date(from);
+        this.to = new Date(to);
+        this.step = step;
+        for (StatsSample sample: samples)
+            points.add(new Point(sample));
+    }
+
+    public List<Point> getPoints() {
+        return points;
+    }
+
+    public static class Point {
+        Date time;
+        long rcmlRequests;
+        long esCalls;
+        long esCallsSuccess;
+        long esCallsServerError;
+        long esCallsTimeout;
+        int esCallsPending;
+        LatencySnapshot latency; // missing if there were no RCML requests
+
+        Point(StatsSample sample) {
+            this.time = new Date(sample.getTime());
+            this.rcmlRequests = sample.getRcmlRequests();
+            this.esCalls = sample.getEsCalls();
+            this.esCallsSuccess = sample.getEsCallsSuccess();
+            this.esCallsServerError = sample.getEsCallsServerError();
+            this.esCallsTimeout = sample.getEsCallsTimeout();
+            this.esCallsPending = sample.getEsCallsPending();
+            LatencySnapshot snapshot = sample.getLatencySnapshot();
+            if (snapshot.getCount() > 0)
+                this.latency = snapshot;
+        }
+
+        public Date getTime() {
+            return time;
+        }
+
+        public long getRcmlRequests() {
+            return rcmlRequests;
+        }
+
+        public LatencySnapshot getLatency() {
+            return latency;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.restcomm.connect.rvd.model.stats;
+
+import org.restcomm.connect.rvd.stats.LatencySnapshot;
+import org.restcomm.connect.rvd.storage.StorageEntityType;
+import org.restcomm.connect.rvd.storage.StorageStats;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Workspace storage I/O by entity type. Latency is in milliseconds. Entity types without any I/O are left out.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class StorageStatsDto {
+    Date startTime;
+    String instanceId;
+    Map<String, Entity> entities = new LinkedHashMap<String, Entity>();
+
+    public StorageStatsDto(String instanceId, StorageStats stats) {
+        this.instanceId = instanceId;
+        this.startTime = new Date(stats.getStartTime());
+        for (StorageEntityType type: StorageEntityType.values()) {
+            StorageStats.EntityStats entity = stats.entity(type);
+            if (entity.getOperations() > 0)
+                entities.put(type.name(), new Entity(entity));
+        }
+    }
+
+    public Map<String, Entity> getEntities() {
+        return entities;
+    }
+
+    public static class Entity {
+        long reads;
+        long writes;
+        long removals;
+        long lookups;
+        long bytesRead;
+        long bytesWritten;
+        LatencySnapshot latency;
+
+        Entity(StorageStats.EntityStats stats) {
+            reads = stats.getReads();
+            writes = stats.getWrites();
+            removals = stats.getRemovals();
+            lookups = stats.getLookups();
+            bytesRead = stats.getBytesRead();
+            bytesWritten = stats.getBytesWritten();
+            latency = stats.getLatency().snapshot();
+        }
+
+        public long getReads() {
+            return reads;
+        }
+
+        public long getWrites() {
+            return writes;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+    }
+}
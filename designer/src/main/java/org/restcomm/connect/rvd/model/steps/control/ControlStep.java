@@ -188,6 +188,18 @@ public class ControlStep extends Step {
         }
     }
 
+    @Override
+    public List<String> getRerouteTargets() {
+        List<String> targets = new ArrayList<String>();
+        if (actions != null) {
+            for (Action action: actions) {
+                if (action.continueTo != null && !RvdUtils.isEmpty(action.continueTo.target) && !targets.contains(action.continueTo.target))
+                    targets.add(action.continueTo.target);
+            }
+        }
+        return targets;
+    }
+
     /**
      * Checks for semantic validation error in the state object and returns them as ErrorItems. If no error
      * is detected an empty list is returned
@@ -7,7 +7,6 @@ import java.util.List;
 import java.util.Map;
 import org.apache.log4j.Level;
 
-import org.restcomm.connect.rvd.RvdConfiguration;
 import org.restcomm.connect.rvd.logging.system.LoggingContext;
 import org.restcomm.connect.rvd.logging.system.LoggingHelper;
 import org.restcomm.connect.rvd.logging.system.RvdLoggers;
@@ -53,6 +52,14 @@ public class DialStep extends Step {
         return rcmlStep;
     }
 
+    @Override
+    public List<String> getInputTargets() {
+        List<String> targets = new ArrayList<String>();
+        if (!RvdUtils.isEmpty(nextModule))
+            targets.add(nextModule);
+        return targets;
+    }
+
     @Override
     public void handleAction(Interpreter interpreter, Node handlerModule) throws InterpreterException, StorageException {
         LoggingContext logging = interpreter.getLoggingContext();
@@ -63,14 +70,14 @@ public class DialStep extends Step {
 
         String publicRecordingUrl = interpreter.getRequestParams().getFirst("PublicRecordingUrl");
         if ( publicRecordingUrl != null ) {
-            interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "PublicRecordingUrl", publicRecordingUrl);
+            interpreter.putCoreVariable("PublicRecordingUrl", publicRecordingUrl);
         }
 
         String restcommRecordingUrl = interpreter.getRequestParams().getFirst("RecordingUrl");
         if ( restcommRecordingUrl != null ) {
             try {
                 String recordingUrl = interpreter.convertRecordingFileResourceHttp(restcommRecordingUrl);
-                interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "RecordingUrl", recordingUrl);
+                interpreter.putCoreVariable("RecordingUrl", recordingUrl);
             } catch (URISyntaxException e) {
                 RvdLoggers.local.log(Level.WARN, LoggingHelper.buildMessage(getClass(),"handleAction", logging.getPrefix(), "cannot convert file URL to http URL - " + restcommRecordingUrl), e);
             }
@@ -78,19 +85,19 @@ public class DialStep extends Step {
 
         String DialCallStatus = interpreter.getRequestParams().getFirst("DialCallStatus");
         if ( DialCallStatus != null )
-            interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "DialCallStatus", DialCallStatus);
+            interpreter.putCoreVariable("DialCallStatus", DialCallStatus);
 
         String DialCallSid = interpreter.getRequestParams().getFirst("DialCallSid");
         if ( DialCallSid != null )
-            interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "DialCallSid", DialCallSid);
+            interpreter.putCoreVariable("DialCallSid", DialCallSid);
 
         String DialCallDuration = interpreter.getRequestParams().getFirst("DialCallDuration");
         if ( DialCallDuration != null )
-            interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "DialCallDuration", DialCallDuration);
+            interpreter.putCoreVariable("DialCallDuration", DialCallDuration);
 
         String DialRingDuration = interpreter.getRequestParams().getFirst("DialRingDuration");
         if ( DialRingDuration != null )
-            interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "DialRingDuration", DialRingDuration);
+            interpreter.putCoreVariable("DialRingDuration", DialRingDuration);
 
         interpreter.interpret( nextModule, null, null, handlerModule);
     }
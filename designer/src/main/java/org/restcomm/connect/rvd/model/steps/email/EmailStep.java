@@ -1,6 +1,5 @@
 package org.restcomm.connect.rvd.model.steps.email;
 
-import org.restcomm.connect.rvd.RvdConfiguration;
 import org.restcomm.connect.rvd.exceptions.InterpreterException;
 import org.restcomm.connect.rvd.interpreter.Interpreter;
 import org.restcomm.connect.rvd.logging.system.LoggingContext;
@@ -11,7 +10,9 @@ import org.restcomm.connect.rvd.model.project.Step;
 import org.restcomm.connect.rvd.storage.exceptions.StorageException;
 import org.restcomm.connect.rvd.utils.RvdUtils;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.apache.log4j.Level;
 
@@ -108,6 +109,14 @@ public class EmailStep extends Step {
         return rcmlStep;
     }
 
+    @Override
+    public List<String> getInputTargets() {
+        List<String> targets = new ArrayList<String>();
+        if (!RvdUtils.isEmpty(next))
+            targets.add(next);
+        return targets;
+    }
+
     @Override
     public void handleAction(Interpreter interpreter, Node handlerModule) throws InterpreterException, StorageException {
         LoggingContext logging = interpreter.getLoggingContext();
@@ -121,9 +130,9 @@ public class EmailStep extends Step {
         String EmailStatus = interpreter.getRequestParams().getFirst("EmailStatus");
 
         if ( EmailSid != null )
-            interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "EmailSid", EmailSid);
+            interpreter.putCoreVariable("EmailSid", EmailSid);
         if (EmailStatus != null )
-            interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "EmailStatus", EmailStatus);
+            interpreter.putCoreVariable("EmailStatus", EmailStatus);
 
         interpreter.interpret( getNext(), null, null, handlerModule);
     }
@@ -6,6 +6,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Level;
 
@@ -26,11 +27,13 @@ import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
-import org.restcomm.connect.rvd.RvdConfiguration;
+import org.restcomm.connect.rvd.capture.CapturedEsCall;
+import org.restcomm.connect.rvd.capture.CapturedRequest;
 import org.restcomm.connect.rvd.concurrency.ResidentProjectInfo;
 import org.restcomm.connect.rvd.exceptions.ESRequestException;
 import org.restcomm.connect.rvd.exceptions.InterpreterException;
 import org.restcomm.connect.rvd.interpreter.Interpreter;
+import org.restcomm.connect.rvd.interpreter.VariableStore;
 import org.restcomm.connect.rvd.interpreter.exceptions.BadExternalServiceResponse;
 import org.restcomm.connect.rvd.interpreter.exceptions.ErrorParsingExternalServiceUrl;
 import org.restcomm.connect.rvd.interpreter.exceptions.ESProcessFailed;
@@ -194,6 +197,51 @@ public class ExternalServiceStep extends Step {
         return timeout;
     }
 
+    /**
+     * The timeout the ES request will be made with. That's the step 'timeout' property if set, or the configured
+     * one otherwise. It can't exceed the configured timeout.
+     *
+     * @param configTimeout timeout from rvd.xml (in milliseconds)
+     * @return the timeout in milliseconds
+     */
+    public Integer getEffectiveTimeout(Integer configTimeout) {
+        Integer requestTimeout = configTimeout;
+        if (getTimeout() != null)
+            requestTimeout = getTimeout();
+        // if the effective timeout is greater than the one specified in configuration, truncate it to that value.
+        if (requestTimeout > configTimeout)
+            requestTimeout = configTimeout;
+        return requestTimeout;
+    }
+
+    /**
+     * Routing to a module by a label in the ES response can't be resolved at build time.
+     */
+    public boolean hasDynamicRouting() {
+        return RvdUtils.isTrue(doRouting) && "responseBased".equals(getNextType());
+    }
+
+    @Override
+    public List<String> getRerouteTargets() {
+        List<String> targets = new ArrayList<String>();
+        if (RvdUtils.isTrue(doRouting)) {
+            if ("fixed".equals(getNextType()))
+                addTarget(targets, getNext());
+            else if ("mapped".equals(getNextType()) && getRouteMappings() != null) {
+                for (RouteMapping mapping : getRouteMappings())
+                    addTarget(targets, mapping.getNext());
+            }
+        }
+        addTarget(targets, getExceptionNext());
+        addTarget(targets, onTimeout);
+        return targets;
+    }
+
+    private static void addTarget(List<String> targets, String target) {
+        if (!RvdUtils.isEmpty(target) && !targets.contains(target))
+            targets.add(target);
+    }
+
     @Override
     public RcmlStep render(Interpreter interpreter, String containerModule) throws InterpreterException {
         // TODO Auto-generated method stub
@@ -256,14 +304,7 @@ public class ExternalServiceStep extends Step {
             // *** Make the request and get a status code and a response. Build a JsonElement from the response  ***
 
             // Set the request timeout. Try with ES element 'timeout' property and if not set fallback to global configuration setting.
-            Integer configTimeout = interpreter.getConfiguration().getExternalServiceTimeout();
-            if (getTimeout() != null)
-                requestTimeout = getTimeout();
-            else
-                requestTimeout = interpreter.getConfiguration().getExternalServiceTimeout();
-            // if the effective timeout is greater than the one specified in configuration, truncate it to that value.
-            if (requestTimeout > configTimeout)
-                requestTimeout = configTimeout;
+            requestTimeout = getEffectiveTimeout(interpreter.getConfiguration().getExternalServiceTimeout());
             HttpContext httpContext = new BasicHttpContext();
             httpContext.setAttribute(HttpClientContext.REQUEST_CONFIG, RequestConfig.custom().
                     setConnectTimeout(requestTimeout).
@@ -273,6 +314,10 @@ public class ExternalServiceStep extends Step {
             CloseableHttpResponse response;
             int statusCode;
             JsonElement response_element = null;
+            CapturedRequest capture = interpreter.getCapture(); // null unless traffic capture has sampled this request
+            String capturedRequestBody = null;
+            long requestStarted = System.currentTimeMillis();
+            long esNanos = 0; // time spent waiting for the ES host
 
             if (RvdLoggers.local.isDebugEnabled())
                 RvdLoggers.local.log(Level.DEBUG, LoggingHelper.buildMessage(getClass(),"process",logging.getPrefix(), "requesting from url: " + url));
@@ -325,8 +370,8 @@ public class ExternalServiceStep extends Step {
                 if ( !RvdUtils.isEmpty(getUsername()) )
                     request.addHeader("Authorization", "Basic " + RvdUtils.buildHttpAuthorizationToken(getUsername(), getPassword()));
                 // inject the Call ID as an HTTP header to help tracking calls
-                if (!RvdUtils.isEmpty(interpreter.getVariables().get(RvdConfiguration.CORE_VARIABLE_PREFIX + "CallSid")))
-                    request.addHeader("X-RestComm-CallSid", interpreter.getVariables().get(RvdConfiguration.CORE_VARIABLE_PREFIX + "CallSid"));
+                if (!RvdUtils.isEmpty(interpreter.getVariableStore().get(VariableStore.Scope.CORE, "CallSid")))
+                    request.addHeader("X-RestComm-CallSid", interpreter.getVariableStore().get(VariableStore.Scope.CORE, "CallSid"));
                 // add other custom headers if any
                 if (httpHeaders != null) {
                     for (HttpHeader header: httpHeaders) {
@@ -334,7 +379,10 @@ public class ExternalServiceStep extends Step {
                     }
                 }
 
+                if (capture != null && request.getEntity() != null)
+                    capturedRequestBody = EntityUtils.toString(request.getEntity());
                 String appName = interpreter.getAppName(); // TODO remove me!!
+                long esStarted = System.nanoTime();
                 try {
                     // mark ES call as pending
                     StatsHelper.countEsCallPending(projectInfo.stats,1);
@@ -344,6 +392,7 @@ public class ExternalServiceStep extends Step {
                     // 'mark' as not pending when thread is unblocked
                     StatsHelper.countEsCallPending(projectInfo.stats, -1); // decrease pending ES counter
                     StatsHelper.countEsCallPending(globalStats, -1);
+                    esNanos = recordEsLatency(interpreter, projectInfo, url, esStarted);
                 }
             } else
             if ( getMethod() == null || getMethod().equals("GET") || getMethod().equals("DELETE") ) {
@@ -355,8 +404,8 @@ public class ExternalServiceStep extends Step {
 
                 if ( !RvdUtils.isEmpty(getUsername()) )
                     request.addHeader("Authorization", "Basic " + RvdUtils.buildHttpAuthorizationToken(getUsername(), getPassword()));
-                if (!RvdUtils.isEmpty(interpreter.getVariables().get(RvdConfiguration.CORE_VARIABLE_PREFIX + "CallSid")))
-                    request.addHeader("X-RestComm-CallSid", interpreter.getVariables().get(RvdConfiguration.CORE_VARIABLE_PREFIX + "CallSid"));
+                if (!RvdUtils.isEmpty(interpreter.getVariableStore().get(VariableStore.Scope.CORE, "CallSid")))
+                    request.addHeader("X-RestComm-CallSid", interpreter.getVariableStore().get(VariableStore.Scope.CORE, "CallSid"));
                 // add custom headers if any
                 if (httpHeaders != null) {
                     for (HttpHeader header: httpHeaders) {
@@ -364,6 +413,7 @@ public class ExternalServiceStep extends Step {
                     }
                 }
 
+                long esStarted = System.nanoTime();
                 try {
                     // mark ES call as pending
                     StatsHelper.countEsCallPending(projectInfo.stats, 1);
@@ -372,14 +422,24 @@ public class ExternalServiceStep extends Step {
                 } finally {
                     StatsHelper.countEsCallPending(projectInfo.stats, -1); // decrease pending ES counter
                     StatsHelper.countEsCallPending(globalStats, -1);
+                    esNanos = recordEsLatency(interpreter, projectInfo, url, esStarted);
                 }
             } else
                 throw new InterpreterException("Unknonwn HTTP method specified: " + getMethod() );
 
             // got response
+            String entityString = null; // response body, if already read
             try {
 
                 statusCode = response.getStatusLine().getStatusCode();
+                if (capture != null) {
+                    if (response.getEntity() != null)
+                        entityString = EntityUtils.toString(response.getEntity());
+                    String method = getMethod() == null ? "GET" : getMethod();
+                    capture.addEsCall(new CapturedEsCall(method, url.toString(), capturedRequestBody, statusCode, entityString, System.currentTimeMillis() - requestStarted));
+                }
+                if (interpreter.getTrace() != null)
+                    interpreter.getTrace().es(url.toString(), statusCode, esNanos);
 
                 // In  case of error in the service no need to proceed. Just continue the "onException" module if set
                 if (statusCode >= 400 && statusCode < 600) {
@@ -401,7 +461,7 @@ public class ExternalServiceStep extends Step {
                     HttpEntity entity = response.getEntity();
                     if (entity != null) {
                         JsonParser parser = new JsonParser();
-                        String entity_string = EntityUtils.toString(entity);
+                        String entity_string = entityString != null ? entityString : EntityUtils.toString(entity);
                         //logger.info("ES: Received " + entity_string.length() + " bytes");
                         //logger.debug("ES Response: " + entity_string);
                         if (interpreter.getProjectSettings().getLogging())
@@ -513,6 +573,11 @@ public class ExternalServiceStep extends Step {
                 // count this ES request as timed-out
                 StatsHelper.countEsCallTimeout(projectInfo.stats);
                 StatsHelper.countEsCallTimeout(globalStats);
+                // keep the timeout in captured traffic. No status means no response.
+                if (interpreter.getCapture() != null)
+                    interpreter.getCapture().addEsCall(new CapturedEsCall(getMethod() == null ? "GET" : getMethod(), interpreter.populateVariables(getUrl()), null, null, null, requestTimeout));
+                if (interpreter.getTrace() != null)
+                    interpreter.getTrace().es(interpreter.populateVariables(getUrl()), null, TimeUnit.MILLISECONDS.toNanos(requestTimeout));
                 // logging
                 String message = LoggingHelper.buildMessage(getClass(), "process", "[notify] {0} request to {1} timed out. Effective timeout was {2} ms.", new Object[]{logging.getPrefix(), getUrl(), requestTimeout});
                 RvdLoggers.local.log(Level.WARN, message);
@@ -527,4 +592,12 @@ public class ExternalServiceStep extends Step {
         return next;
     }
 
+    // records the time spent waiting for the ES host, whatever the outcome. Returns it in nanoseconds.
+    private static long recordEsLatency(Interpreter interpreter, ResidentProjectInfo projectInfo, URI url, long started) {
+        long elapsed = System.nanoTime() - started;
+        String host = url.getPort() == -1 ? url.getHost() : url.getHost() + ":" + url.getPort();
+        StatsHelper.recordEsLatency(projectInfo.latency, host, elapsed);
+        StatsHelper.recordEsLatency(interpreter.getApplicationContext().getGlobalLatency(), host, elapsed);
+        return elapsed;
+    }
 }
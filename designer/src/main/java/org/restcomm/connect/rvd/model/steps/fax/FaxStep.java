@@ -1,10 +1,11 @@
 package org.restcomm.connect.rvd.model.steps.fax;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.apache.log4j.Level;
 
-import org.restcomm.connect.rvd.RvdConfiguration;
 import org.restcomm.connect.rvd.logging.system.LoggingContext;
 import org.restcomm.connect.rvd.logging.system.LoggingHelper;
 import org.restcomm.connect.rvd.logging.system.RvdLoggers;
@@ -80,6 +81,14 @@ public class FaxStep extends Step {
         return rcmlStep;
     }
 
+    @Override
+    public List<String> getInputTargets() {
+        List<String> targets = new ArrayList<String>();
+        if (!RvdUtils.isEmpty(next))
+            targets.add(next);
+        return targets;
+    }
+
     @Override
     public void handleAction(Interpreter interpreter, Node handlerModule) throws InterpreterException, StorageException {
         LoggingContext logging = interpreter.getLoggingContext();
@@ -93,9 +102,9 @@ public class FaxStep extends Step {
         String FaxStatus = interpreter.getRequestParams().getFirst("FaxStatus");  //.getHttpRequest().getParameter("FaxStatus");
 
         if ( FaxSid != null )
-            interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "FaxSid", FaxSid);
+            interpreter.putCoreVariable("FaxSid", FaxSid);
         if (FaxStatus != null )
-            interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "FaxStatus", FaxStatus);
+            interpreter.putCoreVariable("FaxStatus", FaxStatus);
 
         interpreter.interpret( getNext(), null, null, handlerModule);
     }
@@ -21,7 +21,6 @@ package org.restcomm.connect.rvd.model.steps.gather;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Level;
-import org.restcomm.connect.rvd.RvdConfiguration;
 import org.restcomm.connect.rvd.exceptions.InterpreterException;
 import org.restcomm.connect.rvd.interpreter.Interpreter;
 import org.restcomm.connect.rvd.logging.system.LoggingContext;
@@ -38,6 +37,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 import org.restcomm.connect.rvd.jsonvalidation.ValidationErrorItem;
+import org.restcomm.connect.rvd.utils.RvdUtils;
 
 /**
  * @author otsakir@gmail.com - Orestis Tsakiridis
@@ -219,7 +219,7 @@ public class GatherStep extends Step {
         }
 
         // in any case initialize the module-scoped variable
-        interpreter.getVariables().put(varName, varValue);
+        interpreter.putVariable(varName, varValue);
     }
 
     private boolean isMatchesPattern(String pattern, String value, final LoggingContext logging) {
@@ -250,6 +250,31 @@ public class GatherStep extends Step {
         }
     }
 
+    @Override
+    public List<String> getInputTargets() {
+        List<String> targets = new ArrayList<String>();
+        if (menu != null) {
+            if (menu.mappings != null) {
+                for (Mapping mapping: menu.mappings)
+                    addTarget(targets, mapping.getNext());
+            }
+            if (menu.speechMappings != null) {
+                for (Mapping mapping: menu.speechMappings)
+                    addTarget(targets, mapping.getNext());
+            }
+        }
+        if (collectdigits != null)
+            addTarget(targets, collectdigits.next);
+        if (collectspeech != null)
+            addTarget(targets, collectspeech.next);
+        return targets;
+    }
+
+    private static void addTarget(List<String> targets, String target) {
+        if (!RvdUtils.isEmpty(target) && !targets.contains(target))
+            targets.add(target);
+    }
+
     public void handleAction(Interpreter interpreter, Node handlerModule) throws InterpreterException, StorageException {
         LoggingContext logging = interpreter.getLoggingContext();
         if (RvdLoggers.local.isEnabledFor(Level.INFO))
@@ -259,11 +284,11 @@ public class GatherStep extends Step {
         String unstableSpeechString = interpreter.getRequestParams().getFirst("UnstableSpeechResult");
         String speechResultString = interpreter.getRequestParams().getFirst("SpeechResult");
         if (digitsString != null)
-            interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "Digits", digitsString);
+            interpreter.putCoreVariable("Digits", digitsString);
         if (unstableSpeechString != null)
-            interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "UnstableSpeechResult", unstableSpeechString);
+            interpreter.putCoreVariable("UnstableSpeechResult", unstableSpeechString);
         if (speechResultString != null)
-            interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "SpeechResult", speechResultString);
+            interpreter.putCoreVariable("SpeechResult", speechResultString);
 
         boolean isValid = true;
 
@@ -1,6 +1,7 @@
 package org.restcomm.connect.rvd.model.steps.pause;
 
 import org.restcomm.connect.rvd.interpreter.Interpreter;
+import org.restcomm.connect.rvd.interpreter.serialization.RcmlPrecompiler;
 import org.restcomm.connect.rvd.model.project.Step;
 
 public class PauseStep extends Step {
@@ -13,6 +14,16 @@ public class PauseStep extends Step {
     public void setLength(Integer length) {
         this.length = length;
     }
+    @Override
+    public boolean isConstant() {
+        return true;
+    }
+
+    @Override
+    public RcmlPauseStep precompile(RcmlPrecompiler precompiler) {
+        return render(null, null);
+    }
+
     public RcmlPauseStep render(Interpreter interpreter, String containerModule) {
         RcmlPauseStep rcmlStep = new RcmlPauseStep();
         if ( getLength() != null )
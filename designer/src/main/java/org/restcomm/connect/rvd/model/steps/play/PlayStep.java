@@ -24,6 +24,7 @@ import org.apache.log4j.Level;
 
 import org.apache.http.client.utils.URIBuilder;
 import org.restcomm.connect.rvd.interpreter.Interpreter;
+import org.restcomm.connect.rvd.interpreter.serialization.RcmlPrecompiler;
 import org.restcomm.connect.rvd.logging.system.LoggingContext;
 import org.restcomm.connect.rvd.logging.system.LoggingHelper;
 import org.restcomm.connect.rvd.logging.system.RvdLoggers;
@@ -44,6 +45,47 @@ public class PlayStep extends Step {
     }
 
 
+    /**
+     * Local media urls only depend on the context path and the application. Remote urls are constant as long as
+     * they contain no variables.
+     */
+    @Override
+    public boolean isConstant() {
+        if ("local".equals(playType))
+            return local != null;
+        return remote != null && !Interpreter.containsVariables(remote.wavUrl);
+    }
+
+    /**
+     * Local media urls are built here once instead of on every request. Only the context path is left for runtime.
+     */
+    @Override
+    public RcmlStep precompile(RcmlPrecompiler precompiler) {
+        String url;
+        if ("local".equals(playType)) {
+            if (local == null)
+                return null;
+            try {
+                URIBuilder uribuilder = new URIBuilder();
+                // the marker of the context path is left as is by the encoding. It is filled in encoded too.
+                uribuilder.setPath(precompiler.contextPath() + "/services/projects/" + precompiler.getAppName() + "/wavs/" + local.wavLocalFilename);
+                url = uribuilder.build().toString();
+            } catch (URISyntaxException e) {
+                return null; // let render() handle it
+            }
+        } else {
+            if (remote == null || remote.wavUrl == null)
+                return null;
+            url = precompiler.template(remote.wavUrl);
+            if (url == null)
+                return null;
+        }
+        RcmlPlayStep playStep = new RcmlPlayStep();
+        playStep.setWavurl(url);
+        playStep.setLoop(loop);
+        return playStep;
+    }
+
     @Override
     public RcmlStep render(Interpreter interpreter, String containerModule) {
         LoggingContext logging = interpreter.getLoggingContext();
@@ -20,11 +20,12 @@
 package org.restcomm.connect.rvd.model.steps.record;
 
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.apache.log4j.Level;
 
-import org.restcomm.connect.rvd.RvdConfiguration;
 import org.restcomm.connect.rvd.logging.system.LoggingContext;
 import org.restcomm.connect.rvd.logging.system.LoggingHelper;
 import org.restcomm.connect.rvd.logging.system.RvdLoggers;
@@ -128,6 +129,14 @@ public class RecordStep extends Step {
         return rcmlStep;
     }
 
+    @Override
+    public List<String> getInputTargets() {
+        List<String> targets = new ArrayList<String>();
+        if (!RvdUtils.isEmpty(next))
+            targets.add(next);
+        return targets;
+    }
+
     @Override
     public void handleAction(Interpreter interpreter, Node handlerModule) throws InterpreterException, StorageException {
         LoggingContext logging = interpreter.getLoggingContext();
@@ -139,14 +148,14 @@ public class RecordStep extends Step {
 
         String publicRecordingUrl = interpreter.getRequestParams().getFirst("PublicRecordingUrl");
         if ( publicRecordingUrl != null ) {
-            interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "PublicRecordingUrl", publicRecordingUrl);
+            interpreter.putCoreVariable("PublicRecordingUrl", publicRecordingUrl);
         }
 
         String restcommRecordingUrl = interpreter.getRequestParams().getFirst("RecordingUrl");
         if ( restcommRecordingUrl != null ) {
             try {
                 String recordingUrl = interpreter.convertRecordingFileResourceHttp(restcommRecordingUrl);
-                interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "RecordingUrl", recordingUrl);
+                interpreter.putCoreVariable("RecordingUrl", recordingUrl);
             } catch (URISyntaxException e) {
 
                     RvdLoggers.local.log(Level.WARN, LoggingHelper.buildMessage(getClass(),"handleAction","{0} cannot convert file URL to http URL - {1}", new Object[] {logging.getPrefix(), restcommRecordingUrl}));
@@ -155,11 +164,11 @@ public class RecordStep extends Step {
 
         String RecordingDuration = interpreter.getRequestParams().getFirst("RecordingDuration");
         if (RecordingDuration != null )
-            interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "RecordingDuration", RecordingDuration);
+            interpreter.putCoreVariable("RecordingDuration", RecordingDuration);
 
         String Digits = interpreter.getRequestParams().getFirst("Digits");
         if (Digits != null )
-            interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "Digits", Digits);
+            interpreter.putCoreVariable("Digits", Digits);
 
         interpreter.interpret( getNext(), null, null, handlerModule);
     }
@@ -1,6 +1,7 @@
 package org.restcomm.connect.rvd.model.steps.say;
 
 import org.restcomm.connect.rvd.interpreter.Interpreter;
+import org.restcomm.connect.rvd.interpreter.serialization.RcmlPrecompiler;
 import org.restcomm.connect.rvd.model.project.Step;
 import org.restcomm.connect.rvd.model.rcml.RcmlStep;
 
@@ -64,6 +65,24 @@ public class SayStep extends Step {
         this.loop = loop;
     }
 
+    @Override
+    public boolean isConstant() {
+        return !Interpreter.containsVariables(phrase);
+    }
+
+    @Override
+    public RcmlStep precompile(RcmlPrecompiler precompiler) {
+        String templatedPhrase = precompiler.template(getPhrase());
+        if (templatedPhrase == null)
+            return null;
+        RcmlSayStep sayStep = new RcmlSayStep();
+        sayStep.setPhrase(templatedPhrase);
+        sayStep.setVoice(getVoice());
+        sayStep.setLanguage(getLanguage());
+        sayStep.setLoop(getLoop());
+        return sayStep;
+    }
+
     public RcmlStep render(Interpreter interpreter, String containerModule) {
 
         RcmlSayStep sayStep = new RcmlSayStep();
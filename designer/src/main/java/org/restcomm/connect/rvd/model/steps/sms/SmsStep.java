@@ -19,11 +19,12 @@
 
 package org.restcomm.connect.rvd.model.steps.sms;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.apache.log4j.Level;
 
-import org.restcomm.connect.rvd.RvdConfiguration;
 import org.restcomm.connect.rvd.logging.system.LoggingContext;
 import org.restcomm.connect.rvd.logging.system.LoggingHelper;
 import org.restcomm.connect.rvd.logging.system.RvdLoggers;
@@ -112,6 +113,14 @@ public class SmsStep extends Step {
         return rcmlStep;
     }
 
+    @Override
+    public List<String> getInputTargets() {
+        List<String> targets = new ArrayList<String>();
+        if (!RvdUtils.isEmpty(next))
+            targets.add(next);
+        return targets;
+    }
+
     @Override
     public void handleAction(Interpreter interpreter, Node handlerModule) throws InterpreterException, StorageException {
         LoggingContext logging = interpreter.getLoggingContext();
@@ -125,9 +134,9 @@ public class SmsStep extends Step {
         String SmsStatus = interpreter.getRequestParams().getFirst("SmsStatus");
 
         if ( SmsSid != null )
-            interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "SmsSid", SmsSid);
+            interpreter.putCoreVariable("SmsSid", SmsSid);
         if (SmsStatus != null )
-            interpreter.getVariables().put(RvdConfiguration.CORE_VARIABLE_PREFIX + "SmsStatus", SmsStatus);
+            interpreter.putCoreVariable("SmsStatus", SmsStatus);
 
         interpreter.interpret( getNext(), null, null, handlerModule);
     }
@@ -19,12 +19,12 @@
 
 package org.restcomm.connect.rvd.model.steps.ussdcollect;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.log4j.Level;
 
-import org.restcomm.connect.rvd.RvdConfiguration;
 import org.restcomm.connect.rvd.exceptions.InterpreterException;
 import org.restcomm.connect.rvd.interpreter.Interpreter;
 import org.restcomm.connect.rvd.logging.system.LoggingContext;
@@ -34,6 +34,7 @@ import org.restcomm.connect.rvd.model.project.Node;
 import org.restcomm.connect.rvd.model.project.Step;
 import org.restcomm.connect.rvd.model.steps.ussdsay.UssdSayStep;
 import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+import org.restcomm.connect.rvd.utils.RvdUtils;
 
 /**
  * @author otsakir@gmail.com - Orestis Tsakiridis
@@ -80,6 +81,23 @@ public class UssdCollectStep extends Step {
         return rcml;
     }
 
+    @Override
+    public List<String> getInputTargets() {
+        List<String> targets = new ArrayList<String>();
+        if (menu != null && menu.mappings != null) {
+            for (Mapping mapping: menu.mappings)
+                addTarget(targets, mapping.next);
+        }
+        if (collectdigits != null)
+            addTarget(targets, collectdigits.next);
+        return targets;
+    }
+
+    private static void addTarget(List<String> targets, String target) {
+        if (!RvdUtils.isEmpty(target) && !targets.contains(target))
+            targets.add(target);
+    }
+
     @Override
     public void handleAction(Interpreter interpreter, Node handlerModule) throws InterpreterException, StorageException {
         LoggingContext logging = interpreter.getLoggingContext();
@@ -119,10 +137,10 @@ public class UssdCollectStep extends Step {
             // is this an application-scoped variable ?
             if ( "application".equals(collectdigits.scope) ) {
                 // if it is, create a sticky_* variable named after it
-                interpreter.getVariables().put(RvdConfiguration.STICKY_PREFIX + variableName, variableValue);
+                interpreter.putStickyVariable(variableName, variableValue);
             }
             // in any case initialize the module-scoped variable
-            interpreter.getVariables().put(variableName, variableValue);
+            interpreter.putVariable(variableName, variableValue);
 
             interpreter.interpret(collectdigits.next,null,null, handlerModule);
         }
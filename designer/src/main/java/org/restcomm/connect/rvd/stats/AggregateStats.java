@@ -39,6 +39,26 @@ public class AggregateStats {
         esCallsTimeout = new AtomicInteger(0);
     }
 
+    /**
+     * Continues counting from totals saved earlier. See totals().
+     */
+    public AggregateStats(long startTime, long[] totals) {
+        this();
+        this.startTime.set(startTime);
+        rcmlRequestsTotal.set((int) totals[0]);
+        esCallsTotal.set((int) totals[1]);
+        esCallsSuccess.set((int) totals[2]);
+        esCallsServerError.set((int) totals[3]);
+        esCallsTimeout.set((int) totals[4]);
+    }
+
+    /**
+     * @return the counters that only go up: RCML requests, ES calls, successful, failed and timed out ES calls
+     */
+    public long[] totals() {
+        return new long[] {rcmlRequestsTotal.get(), esCallsTotal.get(), esCallsSuccess.get(), esCallsServerError.get(), esCallsTimeout.get()};
+    }
+
     /**
      *
      */
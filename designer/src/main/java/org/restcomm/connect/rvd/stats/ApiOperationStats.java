@@ -0,0 +1,104 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.restcomm.connect.rvd.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency, status and payload sizes of the requests to a designer API operation (a resource method). Sizes are
+ * recorded in bytes into LatencyHistogram buckets. Their snapshots therefore read as kilobytes.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class ApiOperationStats {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram requestBytes = new LatencyHistogram();
+    private final LatencyHistogram responseBytes = new LatencyHistogram();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong clientErrors = new AtomicLong(); // 4xx
+    private final AtomicLong serverErrors = new AtomicLong(); // 5xx
+    private final AtomicLong storageOperations = new AtomicLong();
+    private final AtomicLong storageBytes = new AtomicLong();
+    private final AtomicLong storageMicros = new AtomicLong();
+
+    /**
+     * @param status the HTTP status of the response
+     * @param nanos time from request to the last byte of the response
+     * @param requestBytes size of the request body or a negative number if unknown
+     * @param responseBytes size of the response body
+     */
+    public void record(int status, long nanos, long requestBytes, long responseBytes) {
+        requests.incrementAndGet();
+        if (status >= 500)
+            serverErrors.incrementAndGet();
+        else if (status >= 400)
+            clientErrors.incrementAndGet();
+        latency.recordNanos(nanos);
+        if (requestBytes >= 0)
+            this.requestBytes.record(requestBytes);
+        this.responseBytes.record(responseBytes);
+    }
+
+    /**
+     * Adds the storage I/O of a request. Only called when storage instrumentation is enabled.
+     */
+    public void recordStorage(long operations, long bytes, long nanos) {
+        storageOperations.addAndGet(operations);
+        storageBytes.addAndGet(bytes);
+        storageMicros.addAndGet(nanos / 1000);
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public LatencyHistogram getRequestBytes() {
+        return requestBytes;
+    }
+
+    public LatencyHistogram getResponseBytes() {
+        return responseBytes;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getClientErrors() {
+        return clientErrors.get();
+    }
+
+    public long getServerErrors() {
+        return serverErrors.get();
+    }
+
+    public long getStorageOperations() {
+        return storageOperations.get();
+    }
+
+    public long getStorageBytes() {
+        return storageBytes.get();
+    }
+
+    public long getStorageMicros() {
+        return storageMicros.get();
+    }
+}
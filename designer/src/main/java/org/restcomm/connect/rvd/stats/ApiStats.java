@@ -0,0 +1,58 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.restcomm.connect.rvd.stats;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Stats of designer API requests keyed by operation name (i.e. 'ProjectRestService.buildProject'). Filled in by
+ * ApiStatsFilterFactory. Lives in ApplicationContext.
+ *
+ * The number of operations is bounded by the number of resource methods so there is no need to cap the map.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class ApiStats {
+
+    private final long startTime = System.currentTimeMillis();
+    private final ConcurrentMap<String, ApiOperationStats> operations = new ConcurrentHashMap<String, ApiOperationStats>();
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public ApiOperationStats operation(String name) {
+        ApiOperationStats stats = operations.get(name);
+        if (stats == null) {
+            stats = new ApiOperationStats();
+            ApiOperationStats existing = operations.putIfAbsent(name, stats);
+            if (existing != null)
+                stats = existing;
+        }
+        return stats;
+    }
+
+    public Map<String, ApiOperationStats> getOperations() {
+        return Collections.unmodifiableMap(operations);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.restcomm.connect.rvd.stats;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A latency histogram with logarithmic buckets. Each power of two is split into 8 sub-buckets, so a recorded value
+ * is known within 12.5%. Values are kept in microseconds, from 0 up to about 12 days.
+ *
+ * Recording is lock-free and cheap. Counts start out in a single stripe. Once threads recording at the same time
+ * collide on it, the colliding thread gets a stripe of its own (picked by thread id) so that histograms that are
+ * seldom contended stay small. Stripes are summed up when a snapshot is taken.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int MAX_EXPONENT = 40; // 2^40 microseconds is about 12 days. Larger values are clamped.
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    // extra slots at the end of each stripe
+    static final int COUNT = BUCKETS;
+    static final int SUM = BUCKETS + 1;
+    static final int MAX = BUCKETS + 2;
+    static final int STRIPE_LENGTH = BUCKETS + 3;
+
+    private static final int STRIPES = stripeCount();
+
+    // stripe 0 is always there. The rest are allocated on contention.
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<AtomicLongArray>(STRIPES);
+
+    public LatencyHistogram() {
+        stripes.set(0, new AtomicLongArray(STRIPE_LENGTH));
+    }
+
+    // a power of two close to the number of processors, up to 16
+    private static int stripeCount() {
+        int processors = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+        int count = 1;
+        while (count < processors)
+            count <<= 1;
+        return count;
+    }
+
+    /**
+     * @return the heap memory the histogram takes, roughly. It grows as stripes are allocated.
+     */
+    public long estimateBytes() {
+        long bytes = 48 + 8L * STRIPES;
+        for (int i = 0; i < STRIPES; i++)
+            if (stripes.get(i) != null)
+                bytes += 24 + 8L * STRIPE_LENGTH;
+        return bytes;
+    }
+
+    public void recordNanos(long nanos) {
+        record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * @param micros latency in microseconds. Negative values are recorded as 0.
+     */
+    public void record(long micros) {
+        if (micros < 0)
+            micros = 0;
+        int index = stripeIndex();
+        AtomicLongArray stripe = stripes.get(index);
+        if (stripe == null)
+            stripe = stripes.get(0);
+        long count = stripe.get(COUNT);
+        if (!stripe.compareAndSet(COUNT, count, count + 1)) {
+            // another thread is recording in the same stripe
+            if (index != 0 && stripe == stripes.get(0))
+                stripe = allocateStripe(index);
+            stripe.incrementAndGet(COUNT);
+        }
+        stripe.incrementAndGet(bucketIndex(micros));
+        stripe.addAndGet(SUM, micros);
+        long max = stripe.get(MAX);
+        while (micros > max && !stripe.compareAndSet(MAX, max, micros))
+            max = stripe.get(MAX);
+    }
+
+    private AtomicLongArray allocateStripe(int index) {
+        stripes.compareAndSet(index, null, new AtomicLongArray(STRIPE_LENGTH));
+        return stripes.get(index);
+    }
+
+    private static int stripeIndex() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (STRIPES - 1);
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS)
+            return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT)
+            return BUCKETS - 1;
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // smallest value that falls in a bucket
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket)) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    // largest value that falls in a bucket
+    static long bucketUpperBound(int index) {
+        if (index >= BUCKETS - 1)
+            return Long.MAX_VALUE;
+        return bucketLowerBound(index + 1) - 1;
+    }
+
+    /**
+     * Sums up the stripes. Recording may go on while a snapshot is taken. In that case the snapshot may miss the
+     * latest values but stays consistent with itself.
+     */
+    public LatencySnapshot snapshot() {
+        long[] totals = totals();
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            count += totals[i];
+        return new LatencySnapshot(Arrays.copyOf(totals, BUCKETS), count, totals[SUM], totals[MAX]);
+    }
+
+    /**
+     * Returns the bucket counts followed by the COUNT, SUM and MAX slots, summed up over all stripes.
+     */
+    long[] totals() {
+        long[] totals = new long[STRIPE_LENGTH];
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (stripe == null)
+                continue;
+            for (int i = 0; i < MAX; i++)
+                totals[i] += stripe.get(i);
+            totals[MAX] = Math.max(totals[MAX], stripe.get(MAX));
+        }
+        return totals;
+    }
+}
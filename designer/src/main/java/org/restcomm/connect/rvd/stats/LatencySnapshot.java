@@ -0,0 +1,97 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.restcomm.connect.rvd.stats;
+
+/**
+ * Percentiles of a LatencyHistogram at some point in time. All values are in milliseconds. A percentile is the
+ * upper bound of the bucket it falls in (but never more than the maximum recorded value).
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class LatencySnapshot {
+
+    private long count;
+    private double mean;
+    private double p50;
+    private double p90;
+    private double p99;
+    private double p999;
+    private double max;
+
+    LatencySnapshot(long[] counts, long count, long sumMicros, long maxMicros) {
+        this.count = count;
+        if (count == 0)
+            return;
+        this.mean = millis((double) sumMicros / count);
+        this.max = millis(maxMicros);
+        this.p50 = millis(percentile(counts, count, 0.50, maxMicros));
+        this.p90 = millis(percentile(counts, count, 0.90, maxMicros));
+        this.p99 = millis(percentile(counts, count, 0.99, maxMicros));
+        this.p999 = millis(percentile(counts, count, 0.999, maxMicros));
+    }
+
+    private static long percentile(long[] counts, long total, double fraction, long maxMicros) {
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0)
+                return Math.min(LatencyHistogram.bucketUpperBound(i), maxMicros);
+        }
+        return maxMicros;
+    }
+
+    private static double millis(double micros) {
+        return Math.round(micros) / 1000.0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP90() {
+        return p90;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public double getP999() {
+        return p999;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + " mean=" + mean + " p50=" + p50 + " p90=" + p90 + " p99=" + p99 + " p999=" + p999 + " max=" + max;
+    }
+}
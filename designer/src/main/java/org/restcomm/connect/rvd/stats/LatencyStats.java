@@ -0,0 +1,100 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.restcomm.connect.rvd.stats;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Latency histograms of RCML requests, of steps by kind and of ES requests by destination host. Lives in
+ * ResidentProjectInfo for each application and in ApplicationContext for all of them.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class LatencyStats {
+
+    static final int MAX_ES_HOSTS = 100; // keeps memory bounded if ES urls are built out of variables
+    public static final String OTHER_HOSTS = "(other)";
+
+    private final long startTime = System.currentTimeMillis();
+    private final LatencyHistogram rcml = new LatencyHistogram();
+    private final ConcurrentMap<String, LatencyHistogram> steps = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String, LatencyHistogram> esHosts = new ConcurrentHashMap<String, LatencyHistogram>();
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * End-to-end latency of RCML requests handled by the controller
+     */
+    public LatencyHistogram getRcml() {
+        return rcml;
+    }
+
+    /**
+     * Time spent processing and rendering steps of a kind (i.e. 'say', 'externalService')
+     */
+    public LatencyHistogram step(String kind) {
+        return histogram(steps, kind == null ? "unknown" : kind);
+    }
+
+    /**
+     * Time spent waiting for ES requests to a host
+     */
+    public LatencyHistogram esHost(String host) {
+        if (host == null || (esHosts.size() >= MAX_ES_HOSTS && !esHosts.containsKey(host)))
+            host = OTHER_HOSTS;
+        return histogram(esHosts, host);
+    }
+
+    public Map<String, LatencyHistogram> getSteps() {
+        return Collections.unmodifiableMap(steps);
+    }
+
+    public Map<String, LatencyHistogram> getEsHosts() {
+        return Collections.unmodifiableMap(esHosts);
+    }
+
+    /**
+     * @return a rough estimate of the heap memory all histograms take
+     */
+    public long estimateBytes() {
+        long bytes = rcml.estimateBytes();
+        for (LatencyHistogram histogram: steps.values())
+            bytes += histogram.estimateBytes() + 64;
+        for (LatencyHistogram histogram: esHosts.values())
+            bytes += histogram.estimateBytes() + 64;
+        return bytes;
+    }
+
+    private static LatencyHistogram histogram(ConcurrentMap<String, LatencyHistogram> histograms, String key) {
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            LatencyHistogram existing = histograms.putIfAbsent(key, histogram);
+            if (existing != null)
+                histogram = existing;
+        }
+        return histogram;
+    }
+}
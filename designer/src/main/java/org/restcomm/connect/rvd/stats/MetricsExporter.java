@@ -0,0 +1,409 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.restcomm.connect.rvd.stats;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.restcomm.connect.rvd.ApplicationContext;
+import org.restcomm.connect.rvd.capture.TrafficCapture;
+import org.restcomm.connect.rvd.commons.http.CustomHttpClientBuilder;
+import org.restcomm.connect.rvd.concurrency.ProjectRegistry;
+import org.restcomm.connect.rvd.concurrency.ResidentProjectInfo;
+import org.restcomm.connect.rvd.concurrency.ResidentProjectListener;
+import org.restcomm.connect.rvd.storage.StorageEntityType;
+import org.restcomm.connect.rvd.storage.StorageStats;
+
+/**
+ * Renders runtime metrics in the Prometheus text exposition format (version 0.0.4).
+ *
+ * Everything is read from memory. Values are written straight to the writer without building intermediate
+ * structures. Applications get an app_sid label on a first come basis up to maxApplications. Once an application
+ * is labelled it stays so, which keeps series stable between scrapes. Applications over the limit are summed up
+ * under app_sid="other".
+ *
+ * Application counters only hold what was counted since the application was admitted to ProjectRegistry (totals
+ * restored by StatsRecorder are left out). What evicted applications had counted is kept aside so that exported
+ * counters never go down: a labelled application goes on being exported with its last values and app_sid="other"
+ * keeps what its evicted applications had counted. Register the exporter with the registry after StatsRecorder.
+ * Stats replaced while the application is resident (i.e. reset through the stats API) are handled the same way as
+ * an eviction followed by an admission: what the old stats had counted is kept and counting starts over from zero.
+ *
+ * Lives in ApplicationContext.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class MetricsExporter implements ResidentProjectListener {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    static final String OTHER_APPLICATIONS = "other";
+
+    // AggregateStats counters in the order they're exported
+    static final String[] COUNTER_NAMES = {"rcml_requests_total", "es_calls_total", "es_calls_success_total", "es_calls_server_error_total", "es_calls_timeout_total", "es_calls_pending"};
+    static final String[] COUNTER_HELP = {
+            "RCML requests received",
+            "External Service requests made",
+            "External Service requests that completed successfully",
+            "External Service requests that got a 4xx or 5xx response",
+            "External Service requests that timed out",
+            "External Service requests waiting for a response"};
+    static final int PENDING = 5; // the only gauge among them
+
+    private final int maxApplications;
+    private final Set<String> labelled = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicInteger labelledCount = new AtomicInteger();
+    // guarded by 'retired'
+    private final Map<String, Baseline> baselines = new HashMap<String, Baseline>(); // resident applications
+    private final Map<String, long[]> retired = new HashMap<String, long[]>(); // counted by labelled applications before eviction
+    private final long[] retiredOther = new long[PENDING]; // counted by the rest before eviction
+
+    // what a resident application's stats held when it was admitted or its stats were replaced
+    static class Baseline {
+        final AggregateStats stats;
+        final long[] totals;
+
+        Baseline(AggregateStats stats, long[] totals) {
+            this.stats = stats;
+            this.totals = totals;
+        }
+    }
+
+    public MetricsExporter(int maxApplications) {
+        this.maxApplications = maxApplications;
+    }
+
+    public void write(ApplicationContext applicationContext, Writer writer) throws IOException {
+        writeApplicationStats(applicationContext, writer);
+        writeApiStats(applicationContext.getApiStats(), writer);
+        writeStorageStats(applicationContext.getStorageStats(), writer);
+        writeHttpPools(applicationContext.getHttpClientBuilder(), writer);
+        writeTrafficCapture(applicationContext.getTrafficCapture(), writer);
+        writeProjectRegistry(applicationContext.getProjectRegistry(), writer);
+        writeJvm(writer);
+    }
+
+    void writeApplicationStats(ApplicationContext applicationContext, Writer writer) throws IOException {
+        AggregateStats global = applicationContext.getGlobalStats();
+        ProjectRegistry registry = applicationContext.getProjectRegistry();
+        Map<String, ResidentProjectInfo> projects = registry == null ? Collections.<String, ResidentProjectInfo>emptyMap() : registry.getResidentProjects();
+        Map<String, long[]> retiredLabelled;
+        Map<String, Baseline> baselineCopy;
+        long[] other;
+        synchronized (retired) {
+            for (Map.Entry<String, ResidentProjectInfo> entry: projects.entrySet())
+                rebase(entry.getKey(), entry.getValue().stats);
+            retiredLabelled = new HashMap<String, long[]>(retired);
+            baselineCopy = new HashMap<String, Baseline>(baselines);
+            other = retiredOther.clone();
+        }
+        for (int i = 0; i < COUNTER_NAMES.length; i++) {
+            String type = i == PENDING ? "gauge" : "counter";
+            writeHeader(writer, "rvd_" + COUNTER_NAMES[i], COUNTER_HELP[i] + " by all applications", type);
+            writeSample(writer, "rvd_" + COUNTER_NAMES[i], null, null, counter(global, i));
+
+            String name = "rvd_app_" + COUNTER_NAMES[i];
+            writeHeader(writer, name, COUNTER_HELP[i] + " by application", type);
+            long otherValue = i == PENDING ? 0 : other[i];
+            boolean hasOther = otherValue > 0;
+            for (Map.Entry<String, ResidentProjectInfo> entry: projects.entrySet()) {
+                long value = counter(entry.getValue().stats, i);
+                Baseline baseline = baselineCopy.get(entry.getKey());
+                // stats replaced since the rebase above are picked up by the next scrape
+                if (baseline != null && i != PENDING)
+                    value = Math.max(0, counter(baseline.stats, i) - baseline.totals[i]);
+                if (isLabelled(entry.getKey())) {
+                    long[] before = retiredLabelled.get(entry.getKey());
+                    if (before != null && i != PENDING)
+                        value += before[i];
+                    writeSample(writer, name, "app_sid", entry.getKey(), value);
+                } else {
+                    otherValue += value;
+                    hasOther = true;
+                }
+            }
+            for (Map.Entry<String, long[]> entry: retiredLabelled.entrySet()) {
+                if (!projects.containsKey(entry.getKey()))
+                    writeSample(writer, name, "app_sid", entry.getKey(), i == PENDING ? 0 : entry.getValue()[i]);
+            }
+            if (hasOther)
+                writeSample(writer, name, "app_sid", OTHER_APPLICATIONS, otherValue);
+        }
+    }
+
+    void writeApiStats(ApiStats stats, Writer writer) throws IOException {
+        if (stats == null || stats.getOperations().isEmpty())
+            return;
+        Map<String, ApiOperationStats> operations = stats.getOperations();
+        writeHeader(writer, "rvd_api_requests_total", "Designer API requests by operation", "counter");
+        for (Map.Entry<String, ApiOperationStats> entry: operations.entrySet())
+            writeSample(writer, "rvd_api_requests_total", "operation", entry.getKey(), entry.getValue().getRequests());
+        writeHeader(writer, "rvd_api_client_errors_total", "Designer API requests answered with a 4xx status by operation", "counter");
+        for (Map.Entry<String, ApiOperationStats> entry: operations.entrySet())
+            writeSample(writer, "rvd_api_client_errors_total", "operation", entry.getKey(), entry.getValue().getClientErrors());
+        writeHeader(writer, "rvd_api_server_errors_total", "Designer API requests answered with a 5xx status by operation", "counter");
+        for (Map.Entry<String, ApiOperationStats> entry: operations.entrySet())
+            writeSample(writer, "rvd_api_server_errors_total", "operation", entry.getKey(), entry.getValue().getServerErrors());
+        writeHeader(writer, "rvd_api_request_seconds_total", "Time spent serving designer API requests by operation", "counter");
+        for (Map.Entry<String, ApiOperationStats> entry: operations.entrySet())
+            writeSeconds(writer, "rvd_api_request_seconds_total", "operation", entry.getKey(), entry.getValue().getLatency().totals()[LatencyHistogram.SUM] / 1000);
+        writeHeader(writer, "rvd_api_response_bytes_total", "Response body bytes of designer API requests by operation", "counter");
+        for (Map.Entry<String, ApiOperationStats> entry: operations.entrySet())
+            writeSample(writer, "rvd_api_response_bytes_total", "operation", entry.getKey(), entry.getValue().getResponseBytes().totals()[LatencyHistogram.SUM]);
+    }
+
+    void writeStorageStats(StorageStats stats, Writer writer) throws IOException {
+        if (stats == null)
+            return;
+        StorageEntityType[] types = StorageEntityType.values();
+        writeHeader(writer, "rvd_storage_reads_total", "Workspace entity reads by entity type", "counter");
+        for (StorageEntityType type: types)
+            writeSample(writer, "rvd_storage_reads_total", "entity", type.name(), stats.entity(type).getReads());
+        writeHeader(writer, "rvd_storage_writes_total", "Workspace entity writes by entity type", "counter");
+        for (StorageEntityType type: types)
+            writeSample(writer, "rvd_storage_writes_total", "entity", type.name(), stats.entity(type).getWrites());
+        writeHeader(writer, "rvd_storage_read_bytes_total", "Bytes read from the workspace by entity type", "counter");
+        for (StorageEntityType type: types)
+            writeSample(writer, "rvd_storage_read_bytes_total", "entity", type.name(), stats.entity(type).getBytesRead());
+        writeHeader(writer, "rvd_storage_written_bytes_total", "Bytes written to the workspace by entity type", "counter");
+        for (StorageEntityType type: types)
+            writeSample(writer, "rvd_storage_written_bytes_total", "entity", type.name(), stats.entity(type).getBytesWritten());
+        writeHeader(writer, "rvd_storage_seconds_total", "Time spent in workspace storage operations by entity type", "counter");
+        for (StorageEntityType type: types)
+            writeSeconds(writer, "rvd_storage_seconds_total", "entity", type.name(), stats.entity(type).getLatency().totals()[LatencyHistogram.SUM] / 1000);
+    }
+
+    void writeHttpPools(CustomHttpClientBuilder httpClientBuilder, Writer writer) throws IOException {
+        if (httpClientBuilder == null)
+            return;
+        Map<String, PoolingHttpClientConnectionManager> pools = httpClientBuilder.getConnectionPools();
+        if (pools.isEmpty())
+            return;
+        writeHeader(writer, "rvd_http_pool_leased", "Connections in use", "gauge");
+        for (Map.Entry<String, PoolingHttpClientConnectionManager> entry: pools.entrySet())
+            writeSample(writer, "rvd_http_pool_leased", "pool", entry.getKey(), entry.getValue().getTotalStats().getLeased());
+        writeHeader(writer, "rvd_http_pool_available", "Idle connections kept alive", "gauge");
+        for (Map.Entry<String, PoolingHttpClientConnectionManager> entry: pools.entrySet())
+            writeSample(writer, "rvd_http_pool_available", "pool", entry.getKey(), entry.getValue().getTotalStats().getAvailable());
+        writeHeader(writer, "rvd_http_pool_pending", "Requests waiting for a connection", "gauge");
+        for (Map.Entry<String, PoolingHttpClientConnectionManager> entry: pools.entrySet())
+            writeSample(writer, "rvd_http_pool_pending", "pool", entry.getKey(), entry.getValue().getTotalStats().getPending());
+        writeHeader(writer, "rvd_http_pool_max", "Maximum number of connections", "gauge");
+        for (Map.Entry<String, PoolingHttpClientConnectionManager> entry: pools.entrySet())
+            writeSample(writer, "rvd_http_pool_max", "pool", entry.getKey(), entry.getValue().getTotalStats().getMax());
+    }
+
+    void writeTrafficCapture(TrafficCapture capture, Writer writer) throws IOException {
+        if (capture == null || !capture.isEnabled())
+            return;
+        writeHeader(writer, "rvd_traffic_capture_queue_depth", "Captured requests waiting to be written", "gauge");
+        writeSample(writer, "rvd_traffic_capture_queue_depth", null, null, capture.getQueueSize());
+        writeHeader(writer, "rvd_traffic_capture_captured_total", "Captured requests queued for writing", "counter");
+        writeSample(writer, "rvd_traffic_capture_captured_total", null, null, capture.getCapturedCount());
+        writeHeader(writer, "rvd_traffic_capture_dropped_total", "Captured requests dropped", "counter");
+        writeSample(writer, "rvd_traffic_capture_dropped_total", null, null, capture.getDroppedCount());
+    }
+
+    void writeProjectRegistry(ProjectRegistry registry, Writer writer) throws IOException {
+        if (registry == null)
+            return;
+        writeHeader(writer, "rvd_project_registry_entries", "Projects with in-memory data", "gauge");
+        writeSample(writer, "rvd_project_registry_entries", null, null, registry.getResidentProjects().size());
+        writeHeader(writer, "rvd_project_registry_pinned", "Projects whose in-memory data are never evicted", "gauge");
+        writeSample(writer, "rvd_project_registry_pinned", null, null, registry.getPinnedCount());
+        writeHeader(writer, "rvd_project_registry_bytes", "Estimated memory taken by in-memory project data", "gauge");
+        writeSample(writer, "rvd_project_registry_bytes", null, null, registry.getEstimatedBytes());
+        writeHeader(writer, "rvd_project_registry_admissions_total", "Projects whose in-memory data were created", "counter");
+        writeSample(writer, "rvd_project_registry_admissions_total", null, null, registry.getAdmissions());
+        writeHeader(writer, "rvd_project_registry_evictions_total", "Projects whose in-memory data were evicted", "counter");
+        writeSample(writer, "rvd_project_registry_evictions_total", null, null, registry.getEvictions());
+    }
+
+    void writeJvm(Writer writer) throws IOException {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        writeHeader(writer, "jvm_memory_bytes_used", "Used bytes of a memory area", "gauge");
+        writeSample(writer, "jvm_memory_bytes_used", "area", "heap", heap.getUsed());
+        writeSample(writer, "jvm_memory_bytes_used", "area", "nonheap", nonHeap.getUsed());
+        writeHeader(writer, "jvm_memory_bytes_committed", "Committed bytes of a memory area", "gauge");
+        writeSample(writer, "jvm_memory_bytes_committed", "area", "heap", heap.getCommitted());
+        writeSample(writer, "jvm_memory_bytes_committed", "area", "nonheap", nonHeap.getCommitted());
+        writeHeader(writer, "jvm_memory_bytes_max", "Maximum bytes of a memory area or -1 if undefined", "gauge");
+        writeSample(writer, "jvm_memory_bytes_max", "area", "heap", heap.getMax());
+        writeSample(writer, "jvm_memory_bytes_max", "area", "nonheap", nonHeap.getMax());
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        writeHeader(writer, "jvm_threads_current", "Current thread count", "gauge");
+        writeSample(writer, "jvm_threads_current", null, null, threads.getThreadCount());
+        writeHeader(writer, "jvm_threads_daemon", "Daemon thread count", "gauge");
+        writeSample(writer, "jvm_threads_daemon", null, null, threads.getDaemonThreadCount());
+        writeHeader(writer, "jvm_threads_peak", "Peak thread count", "gauge");
+        writeSample(writer, "jvm_threads_peak", null, null, threads.getPeakThreadCount());
+        writeHeader(writer, "jvm_threads_started_total", "Threads started since the JVM started", "counter");
+        writeSample(writer, "jvm_threads_started_total", null, null, threads.getTotalStartedThreadCount());
+
+        writeHeader(writer, "jvm_gc_collection_count", "Garbage collections", "counter");
+        for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans())
+            writeSample(writer, "jvm_gc_collection_count", "gc", gc.getName(), gc.getCollectionCount());
+        writeHeader(writer, "jvm_gc_collection_seconds", "Time spent in garbage collections", "counter");
+        for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans())
+            writeSeconds(writer, "jvm_gc_collection_seconds", "gc", gc.getName(), gc.getCollectionTime());
+
+        writeHeader(writer, "jvm_uptime_seconds", "Time since the JVM started", "gauge");
+        writeSeconds(writer, "jvm_uptime_seconds", null, null, ManagementFactory.getRuntimeMXBean().getUptime());
+    }
+
+    /**
+     * Remembers what the application starts counting from.
+     */
+    @Override
+    public void admitted(String applicationId, ResidentProjectInfo info) {
+        AggregateStats stats = info.stats;
+        synchronized (retired) {
+            baselines.put(applicationId, new Baseline(stats, stats.totals()));
+        }
+    }
+
+    /**
+     * Keeps what the application counted while resident.
+     */
+    @Override
+    public void evicted(String applicationId, ResidentProjectInfo info) {
+        synchronized (retired) {
+            rebase(applicationId, info.stats);
+            Baseline baseline = baselines.remove(applicationId);
+            retire(applicationId, info.stats.totals(), baseline == null ? null : baseline.totals);
+        }
+    }
+
+    // keeps what replaced stats had counted and starts counting from the new ones. Call it holding 'retired'.
+    private void rebase(String applicationId, AggregateStats stats) {
+        Baseline baseline = baselines.get(applicationId);
+        if (baseline == null || baseline.stats == stats)
+            return;
+        retire(applicationId, baseline.stats.totals(), baseline.totals);
+        baselines.put(applicationId, new Baseline(stats, new long[PENDING])); // replaced stats start from zero
+    }
+
+    // call it holding 'retired'
+    private void retire(String applicationId, long[] totals, long[] baseline) {
+        long[] counters = retiredOther;
+        if (labelled.contains(applicationId)) {
+            counters = retired.get(applicationId);
+            if (counters == null) {
+                counters = new long[PENDING];
+                retired.put(applicationId, counters);
+            }
+        }
+        for (int i = 0; i < PENDING; i++)
+            counters[i] += Math.max(0, totals[i] - (baseline == null ? 0 : baseline[i]));
+    }
+
+    private boolean isLabelled(String applicationSid) {
+        if (labelled.contains(applicationSid))
+            return true;
+        // reserve a place before adding so that concurrent scrapes don't go over the limit
+        while (true) {
+            int count = labelledCount.get();
+            if (count >= maxApplications)
+                return false;
+            if (labelledCount.compareAndSet(count, count + 1))
+                break;
+        }
+        if (!labelled.add(applicationSid))
+            labelledCount.decrementAndGet(); // added by a concurrent scrape
+        return true;
+    }
+
+    static long counter(AggregateStats stats, int index) {
+        switch (index) {
+            case 0: return stats.rcmlRequestsTotal.get();
+            case 1: return stats.esCallsTotal.get();
+            case 2: return stats.esCallsSuccess.get();
+            case 3: return stats.esCallsServerError.get();
+            case 4: return stats.esCallsTimeout.get();
+            case PENDING: return stats.esCallsPending.get();
+            default: throw new IllegalArgumentException("no such counter: " + index);
+        }
+    }
+
+    static void writeHeader(Writer writer, String name, String help, String type) throws IOException {
+        writer.write("# HELP ");
+        writer.write(name);
+        writer.write(' ');
+        writer.write(help);
+        writer.write("\n# TYPE ");
+        writer.write(name);
+        writer.write(' ');
+        writer.write(type);
+        writer.write('\n');
+    }
+
+    static void writeSample(Writer writer, String name, String label, String labelValue, long value) throws IOException {
+        writeName(writer, name, label, labelValue);
+        writer.write(Long.toString(value));
+        writer.write('\n');
+    }
+
+    static void writeSeconds(Writer writer, String name, String label, String labelValue, long millis) throws IOException {
+        writeName(writer, name, label, labelValue);
+        writer.write(Long.toString(millis / 1000));
+        writer.write('.');
+        long fraction = millis % 1000;
+        if (fraction < 100)
+            writer.write('0');
+        if (fraction < 10)
+            writer.write('0');
+        writer.write(Long.toString(fraction));
+        writer.write('\n');
+    }
+
+    private static void writeName(Writer writer, String name, String label, String labelValue) throws IOException {
+        writer.write(name);
+        if (label != null) {
+            writer.write('{');
+            writer.write(label);
+            writer.write("=\"");
+            for (int i = 0; i < labelValue.length(); i++) {
+                char c = labelValue.charAt(i);
+                if (c == '\\' || c == '"') {
+                    writer.write('\\');
+                    writer.write(c);
+                } else
+                if (c == '\n')
+                    writer.write("\\n");
+                else
+                    writer.write(c);
+            }
+            writer.write("\"}");
+        }
+        writer.write(' ');
+    }
+}
@@ -49,4 +49,16 @@ public class StatsHelper {
     public static void countEsCallSuccess(AggregateStats stats) {
         stats.esCallsSuccess.incrementAndGet();
     }
+
+    public static void recordRcmlLatency(LatencyStats stats, long nanos) {
+        stats.getRcml().recordNanos(nanos);
+    }
+
+    public static void recordStepLatency(LatencyStats stats, String stepKind, long nanos) {
+        stats.step(stepKind).recordNanos(nanos);
+    }
+
+    public static void recordEsLatency(LatencyStats stats, String host, long nanos) {
+        stats.esHost(host).recordNanos(nanos);
+    }
 }
@@ -0,0 +1,249 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.restcomm.connect.rvd.stats;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.ApplicationContext;
+import org.restcomm.connect.rvd.concurrency.ProjectRegistry;
+import org.restcomm.connect.rvd.concurrency.ResidentProjectInfo;
+import org.restcomm.connect.rvd.concurrency.ResidentProjectListener;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+
+/**
+ * Takes a sample of the in-memory stats every minute and persists it in a StatsSeriesStore. Samples hold what
+ * happened since the previous one. AggregateStats and LatencyStats keep totals so the recorder remembers the totals
+ * it last saw per scope. Stats that were reset (i.e. replaced by new objects) are counted from zero.
+ *
+ * Scopes without any activity within a minute are not written. Once an hour is over, minute samples are rolled up and
+ * expired files are removed.
+ *
+ * Applications evicted from ProjectRegistry have their activity since the last sample written with the next one and
+ * their totals saved. Once they become resident again, their stats continue from those totals.
+ *
+ * Lives in ApplicationContext.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class StatsRecorder implements ResidentProjectListener {
+
+    static final Logger logger = RvdLoggers.global;
+    static final int COUNTERS = 5;
+
+    private final StatsSeriesStore store;
+    private final ApplicationContext applicationContext;
+    private final Map<String, Cursor> cursors = new HashMap<String, Cursor>();
+    private final Map<String, StatsSample> evictedSamples = new HashMap<String, StatsSample>(); // written on next tick
+    private ScheduledExecutorService executor;
+    private long intervalStart = System.currentTimeMillis();
+
+    public StatsRecorder(StatsSeriesStore store, ApplicationContext applicationContext) {
+        this.store = store;
+        this.applicationContext = applicationContext;
+    }
+
+    public StatsSeriesStore getStore() {
+        return store;
+    }
+
+    /**
+     * Starts sampling at the beginning of every minute. Hours missed while RVD was down are rolled up first.
+     */
+    public synchronized void start() {
+        if (executor != null)
+            return;
+        long now = System.currentTimeMillis();
+        intervalStart = now;
+        store.rollup(now);
+        store.purge(now);
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "rvd-stats-recorder");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long delay = StatsSeriesStore.MINUTE - now % StatsSeriesStore.MINUTE;
+        executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick(System.currentTimeMillis());
+                } catch (RuntimeException e) {
+                    // an exception would cancel all later runs
+                    logger.error(LoggingHelper.buildMessage(StatsRecorder.class, "run", null, "error recording stats"), e);
+                }
+            }
+        }, delay, StatsSeriesStore.MINUTE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sampling. Activity since the last sample is written before returning.
+     */
+    public void stop() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = executor;
+            executor = null;
+        }
+        if (running == null)
+            return;
+        running.shutdown();
+        try {
+            running.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        tick(System.currentTimeMillis());
+    }
+
+    /**
+     * Persists the activity of all scopes since the previous tick. The sample is timed at the start of the minute
+     * the interval started in.
+     */
+    synchronized void tick(long now) {
+        long time = StatsSeriesStore.floor(intervalStart, StatsSeriesStore.MINUTE);
+        Map<String, StatsSample> samples = new HashMap<String, StatsSample>();
+        Map<String, Cursor> seen = new HashMap<String, Cursor>();
+        sample(StatsSeriesStore.GLOBAL_SCOPE, applicationContext.getGlobalStats(), applicationContext.getGlobalLatency(), time, samples, seen);
+        ProjectRegistry registry = applicationContext.getProjectRegistry();
+        if (registry != null) {
+            for (Map.Entry<String, ResidentProjectInfo> entry: registry.getResidentProjects().entrySet())
+                sample(entry.getKey(), entry.getValue().stats, entry.getValue().latency, time, samples, seen);
+        }
+        // forget applications that are no longer resident
+        cursors.keySet().retainAll(seen.keySet());
+        for (Map.Entry<String, StatsSample> entry: evictedSamples.entrySet()) {
+            StatsSample sample = samples.get(entry.getKey());
+            if (sample == null)
+                samples.put(entry.getKey(), entry.getValue());
+            else
+                sample.merge(entry.getValue());
+        }
+        evictedSamples.clear();
+        store.appendMinutes(samples);
+        if (StatsSeriesStore.floor(now, StatsSeriesStore.HOUR) != StatsSeriesStore.floor(intervalStart, StatsSeriesStore.HOUR)) {
+            store.rollup(now);
+            store.purge(now);
+        }
+        intervalStart = now;
+    }
+
+    private void sample(String scope, AggregateStats stats, LatencyStats latencyStats, long time, Map<String, StatsSample> samples, Map<String, Cursor> seen) {
+        Cursor cursor = cursors.get(scope);
+        if (cursor == null) {
+            cursor = new Cursor();
+            cursors.put(scope, cursor);
+        }
+        seen.put(scope, cursor);
+        StatsSample sample = new StatsSample(time);
+
+        if (cursor.stats != stats) {
+            cursor.stats = stats;
+            cursor.counters = new long[COUNTERS];
+        }
+        long[] counters = stats.totals();
+        sample.rcmlRequests = counters[0] - cursor.counters[0];
+        sample.esCalls = counters[1] - cursor.counters[1];
+        sample.esCallsSuccess = counters[2] - cursor.counters[2];
+        sample.esCallsServerError = counters[3] - cursor.counters[3];
+        sample.esCallsTimeout = counters[4] - cursor.counters[4];
+        sample.esCallsPending = stats.esCallsPending.get();
+        cursor.counters = counters;
+
+        LatencyHistogram histogram = latencyStats.getRcml();
+        if (cursor.histogram != histogram) {
+            cursor.histogram = histogram;
+            cursor.latency = new long[LatencyHistogram.STRIPE_LENGTH];
+        }
+        long[] totals = histogram.totals();
+        int highest = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            long delta = totals[i] - cursor.latency[i];
+            if (delta > 0) {
+                if (sample.latency == null)
+                    sample.latency = new HashMap<Integer, Long>();
+                sample.latency.put(i, delta);
+                highest = i;
+            }
+        }
+        if (highest >= 0) {
+            sample.latencySum = totals[LatencyHistogram.SUM] - cursor.latency[LatencyHistogram.SUM];
+            // the exact maximum within the interval is not known. Its bucket is.
+            sample.latencyMax = Math.min(LatencyHistogram.bucketUpperBound(highest), totals[LatencyHistogram.MAX]);
+        }
+        cursor.latency = totals;
+
+        if (!sample.isEmpty())
+            samples.put(scope, sample);
+    }
+
+    /**
+     * Picks up the totals saved when the application was last evicted, if any.
+     */
+    @Override
+    public synchronized void admitted(String applicationId, ResidentProjectInfo info) {
+        StatsSeriesStore.Totals totals = store.readTotals(applicationId);
+        if (totals == null)
+            return;
+        info.setStats(new AggregateStats(totals.getStartTime(), totals.getCounters()));
+        // what they hold is already persisted
+        Cursor cursor = new Cursor();
+        cursor.stats = info.stats;
+        cursor.counters = totals.getCounters().clone();
+        cursors.put(applicationId, cursor);
+    }
+
+    /**
+     * Keeps the activity of the application since the last sample for the next tick and saves its totals.
+     */
+    @Override
+    public synchronized void evicted(String applicationId, ResidentProjectInfo info) {
+        long time = StatsSeriesStore.floor(intervalStart, StatsSeriesStore.MINUTE);
+        Map<String, StatsSample> samples = new HashMap<String, StatsSample>();
+        sample(applicationId, info.stats, info.latency, time, samples, new HashMap<String, Cursor>());
+        cursors.remove(applicationId);
+        StatsSample sample = samples.get(applicationId);
+        if (sample != null) {
+            StatsSample pending = evictedSamples.get(applicationId);
+            if (pending == null)
+                evictedSamples.put(applicationId, sample);
+            else
+                pending.merge(sample);
+        }
+        store.writeTotals(applicationId, new StatsSeriesStore.Totals(info.stats.startTime.get(), info.stats.totals(), System.currentTimeMillis()));
+    }
+
+    // the totals last seen for a scope
+    static class Cursor {
+        AggregateStats stats;
+        LatencyHistogram histogram;
+        long[] counters = new long[COUNTERS];
+        long[] latency = new long[LatencyHistogram.STRIPE_LENGTH];
+    }
+}
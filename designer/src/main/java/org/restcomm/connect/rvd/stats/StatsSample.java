@@ -0,0 +1,123 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.restcomm.connect.rvd.stats;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Activity of a scope (an application or the whole instance) over an interval of time as kept by StatsSeriesStore.
+ * Counters hold what happened within the interval, not totals. Latency of RCML requests is kept as a sparse
+ * histogram so that samples can be merged into larger intervals without losing percentiles.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class StatsSample {
+
+    long time; // start of the interval in milliseconds since 1970 GMT
+    long rcmlRequests;
+    long esCalls;
+    long esCallsSuccess;
+    long esCallsServerError;
+    long esCallsTimeout;
+    int esCallsPending; // at the end of the interval
+    Map<Integer, Long> latency; // histogram bucket index -> count. Missing if there were no requests.
+    long latencySum; // microseconds
+    long latencyMax; // microseconds
+
+    public StatsSample() {
+    }
+
+    public StatsSample(long time) {
+        this.time = time;
+    }
+
+    /**
+     * Adds the activity of another sample to this one. The time of this sample is kept.
+     */
+    public void merge(StatsSample other) {
+        rcmlRequests += other.rcmlRequests;
+        esCalls += other.esCalls;
+        esCallsSuccess += other.esCallsSuccess;
+        esCallsServerError += other.esCallsServerError;
+        esCallsTimeout += other.esCallsTimeout;
+        esCallsPending = Math.max(esCallsPending, other.esCallsPending);
+        if (other.latency != null) {
+            if (latency == null)
+                latency = new TreeMap<Integer, Long>();
+            for (Map.Entry<Integer, Long> entry: other.latency.entrySet()) {
+                Long count = latency.get(entry.getKey());
+                latency.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+            }
+        }
+        latencySum += other.latencySum;
+        latencyMax = Math.max(latencyMax, other.latencyMax);
+    }
+
+    /**
+     * @return true if nothing happened within the interval
+     */
+    public boolean isEmpty() {
+        return rcmlRequests == 0 && esCalls == 0 && esCallsPending == 0 && latency == null;
+    }
+
+    public LatencySnapshot getLatencySnapshot() {
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        long count = 0;
+        if (latency != null) {
+            for (Map.Entry<Integer, Long> entry: latency.entrySet()) {
+                int index = entry.getKey();
+                if (index >= 0 && index < counts.length) {
+                    counts[index] += entry.getValue();
+                    count += entry.getValue();
+                }
+            }
+        }
+        return new LatencySnapshot(counts, count, latencySum, latencyMax);
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public long getRcmlRequests() {
+        return rcmlRequests;
+    }
+
+    public long getEsCalls() {
+        return esCalls;
+    }
+
+    public long getEsCallsSuccess() {
+        return esCallsSuccess;
+    }
+
+    public long getEsCallsServerError() {
+        return esCallsServerError;
+    }
+
+    public long getEsCallsTimeout() {
+        return esCallsTimeout;
+    }
+
+    public int getEsCallsPending() {
+        return esCallsPending;
+    }
+}
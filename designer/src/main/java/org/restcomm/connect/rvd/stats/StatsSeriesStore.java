@@ -0,0 +1,384 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.restcomm.connect.rvd.stats;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+
+import com.google.gson.Gson;
+
+/**
+ * Keeps StatsSample series on disk, one directory per scope (an application sid or GLOBAL_SCOPE). Per-minute samples
+ * go to a file per day (minutes-yyyyMMdd.jsonl) and hourly samples to a file per month (hours-yyyyMM.jsonl), both
+ * as JSON lines. Dates are UTC. Expired samples are dropped a whole file at a time.
+ *
+ * Hourly samples are rolled up from minute ones once an hour is over. The rollup picks up where it left off so
+ * hours that passed while RVD was down are rolled up too, as long as their minute samples are still around.
+ *
+ * The totals of applications evicted from ProjectRegistry are kept in TOTALS_FILENAME of their scope, so that their
+ * counters pick up from there once they become resident again.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class StatsSeriesStore {
+
+    static final Logger logger = RvdLoggers.global;
+    public static final String GLOBAL_SCOPE = "global";
+    public static final long MINUTE = 60 * 1000L;
+    public static final long HOUR = 60 * MINUTE;
+    static final long DAY = 24 * HOUR;
+    static final String MINUTES_PREFIX = "minutes-";
+    static final String HOURS_PREFIX = "hours-";
+    static final String EXTENSION = ".jsonl";
+    static final String TOTALS_FILENAME = "totals.json";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final Gson gson = new Gson();
+
+    private final File directory;
+    private final long minuteRetention;
+    private final long hourlyRetention;
+    private final Map<String, Long> rolledUpTo = new HashMap<String, Long>(); // scope -> the hour rollup continues from
+
+    /**
+     * @param directory the @stats directory under the workspace
+     * @param minuteHours hours to keep minute samples for
+     * @param hourlyDays days to keep hourly samples for
+     */
+    public StatsSeriesStore(File directory, int minuteHours, int hourlyDays) {
+        this.directory = directory;
+        this.minuteRetention = minuteHours * HOUR;
+        this.hourlyRetention = hourlyDays * DAY;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized void appendMinutes(Map<String, StatsSample> samples) {
+        for (Map.Entry<String, StatsSample> entry: samples.entrySet()) {
+            StatsSample sample = entry.getValue();
+            try {
+                append(new File(scopeDirectory(entry.getKey()), MINUTES_PREFIX + format("yyyyMMdd", sample.time) + EXTENSION), sample);
+            } catch (IOException e) {
+                logger.warn(LoggingHelper.buildMessage(getClass(), "appendMinutes", null, "error persisting stats of " + entry.getKey()), e);
+            }
+        }
+    }
+
+    /**
+     * Rolls up minute samples into hourly ones for all hours that are over by 'now'.
+     */
+    public synchronized void rollup(long now) {
+        long currentHour = floor(now, HOUR);
+        for (String scope: listScopes()) {
+            Long from = rolledUpTo.get(scope);
+            try {
+                if (from == null)
+                    from = Math.max(lastHourlyTime(scope) + HOUR, floor(now - minuteRetention, HOUR));
+                if (from >= currentHour)
+                    continue;
+                TreeMap<Long, StatsSample> hours = new TreeMap<Long, StatsSample>();
+                for (StatsSample sample: read(scope, false, from, currentHour)) {
+                    long hour = floor(sample.time, HOUR);
+                    StatsSample hourly = hours.get(hour);
+                    if (hourly == null) {
+                        hourly = new StatsSample(hour);
+                        hours.put(hour, hourly);
+                    }
+                    hourly.merge(sample);
+                }
+                for (StatsSample hourly: hours.values())
+                    append(new File(scopeDirectory(scope), HOURS_PREFIX + format("yyyyMM", hourly.time) + EXTENSION), hourly);
+                rolledUpTo.put(scope, currentHour);
+            } catch (IOException e) {
+                logger.warn(LoggingHelper.buildMessage(getClass(), "rollup", null, "error rolling up stats of " + scope), e);
+            }
+        }
+    }
+
+    /**
+     * Removes files whose samples have all expired by 'now'. Scope directories left empty are removed too.
+     */
+    public synchronized void purge(long now) {
+        for (String scope: listScopes()) {
+            File scopeDir = new File(directory, scope);
+            File[] files = scopeDir.listFiles();
+            if (files == null)
+                continue;
+            for (File file: files) {
+                String name = file.getName();
+                try {
+                    boolean expired;
+                    if (name.startsWith(MINUTES_PREFIX))
+                        expired = parse("yyyyMMdd", name, MINUTES_PREFIX) + DAY <= now - minuteRetention;
+                    else
+                    if (name.startsWith(HOURS_PREFIX))
+                        expired = nextMonth(parse("yyyyMM", name, HOURS_PREFIX)) <= now - hourlyRetention;
+                    else
+                    if (name.equals(TOTALS_FILENAME))
+                        expired = file.lastModified() <= now - hourlyRetention;
+                    else
+                        continue;
+                    if (expired && !file.delete())
+                        logger.warn(LoggingHelper.buildMessage(getClass(), "purge", null, "could not remove expired stats file " + file));
+                } catch (ParseException e) {
+                    // not ours. Leave it alone.
+                }
+            }
+            String[] remaining = scopeDir.list();
+            if (remaining != null && remaining.length == 0) {
+                scopeDir.delete();
+                rolledUpTo.remove(scope);
+            }
+        }
+    }
+
+    /**
+     * Returns the activity of a scope in [from, to) split in intervals of 'step' milliseconds. Hourly samples are
+     * used if step is a whole number of hours, minute samples otherwise. 'from' is aligned to the start of its
+     * minute (or hour). Intervals without any activity are returned as empty samples.
+     *
+     * @param step interval length in milliseconds. It should be a positive multiple of a minute.
+     */
+    public synchronized List<StatsSample> query(String scope, long from, long to, long step) throws IOException {
+        if (step <= 0 || step % MINUTE != 0)
+            throw new IllegalArgumentException("step should be a positive multiple of a minute");
+        boolean hourly = step % HOUR == 0;
+        from = floor(from, hourly ? HOUR : MINUTE);
+        List<StatsSample> points = new ArrayList<StatsSample>();
+        for (long time = from; time < to; time += step)
+            points.add(new StatsSample(time));
+        if (points.isEmpty())
+            return points;
+        for (StatsSample sample: read(scope, hourly, from, to))
+            points.get((int) ((sample.time - from) / step)).merge(sample);
+        return points;
+    }
+
+    /**
+     * Saves the totals of a scope, replacing those saved before.
+     */
+    public synchronized void writeTotals(String scope, Totals totals) {
+        File scopeDir = scopeDirectory(scope);
+        File file = new File(scopeDir, TOTALS_FILENAME);
+        File temp = new File(scopeDir, TOTALS_FILENAME + ".tmp");
+        try {
+            if (!scopeDir.exists())
+                scopeDir.mkdirs();
+            Writer writer = new OutputStreamWriter(new FileOutputStream(temp), UTF8);
+            try {
+                writer.write(gson.toJson(totals));
+            } finally {
+                writer.close();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn(LoggingHelper.buildMessage(getClass(), "writeTotals", null, "error persisting stats totals of " + scope), e);
+        }
+    }
+
+    /**
+     * Returns the totals saved for a scope or null if there are none.
+     */
+    public synchronized Totals readTotals(String scope) {
+        File file = new File(scopeDirectory(scope), TOTALS_FILENAME);
+        if (!file.exists())
+            return null;
+        try {
+            Reader reader = new InputStreamReader(new FileInputStream(file), UTF8);
+            try {
+                Totals totals = gson.fromJson(reader, Totals.class);
+                return totals != null && totals.counters != null && totals.counters.length == StatsRecorder.COUNTERS ? totals : null;
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn(LoggingHelper.buildMessage(getClass(), "readTotals", null, "ignoring stats totals of " + scope + ": " + e.getMessage()));
+            return null;
+        }
+    }
+
+    // returns the samples of a scope in [from, to) ordered as written
+    List<StatsSample> read(String scope, boolean hourly, long from, long to) throws IOException {
+        List<StatsSample> samples = new ArrayList<StatsSample>();
+        File scopeDir = scopeDirectory(scope);
+        if (!scopeDir.isDirectory())
+            return samples;
+        long fileStart = hourly ? floorMonth(from) : floor(from, DAY);
+        while (fileStart < to) {
+            File file = hourly ? new File(scopeDir, HOURS_PREFIX + format("yyyyMM", fileStart) + EXTENSION) : new File(scopeDir, MINUTES_PREFIX + format("yyyyMMdd", fileStart) + EXTENSION);
+            if (file.exists()) {
+                for (StatsSample sample: load(file))
+                    if (sample.time >= from && sample.time < to)
+                        samples.add(sample);
+            }
+            fileStart = hourly ? nextMonth(fileStart) : fileStart + DAY;
+        }
+        return samples;
+    }
+
+    // time of the last hourly sample of a scope or Long.MIN_VALUE/2 if there is none
+    private long lastHourlyTime(String scope) throws IOException {
+        String[] names = scopeDirectory(scope).list();
+        long last = Long.MIN_VALUE / 2;
+        if (names == null)
+            return last;
+        Arrays.sort(names);
+        for (int i = names.length - 1; i >= 0; i--) {
+            if (names[i].startsWith(HOURS_PREFIX)) {
+                for (StatsSample sample: load(new File(scopeDirectory(scope), names[i])))
+                    last = Math.max(last, sample.time);
+                break;
+            }
+        }
+        return last;
+    }
+
+    private List<String> listScopes() {
+        List<String> scopes = new ArrayList<String>();
+        File[] dirs = directory.listFiles();
+        if (dirs != null)
+            for (File dir: dirs)
+                if (dir.isDirectory())
+                    scopes.add(dir.getName());
+        return scopes;
+    }
+
+    private File scopeDirectory(String scope) {
+        if (scope == null || scope.isEmpty() || scope.startsWith(".") || scope.contains("/") || scope.contains(File.separator))
+            throw new IllegalArgumentException("invalid stats scope: " + scope);
+        return new File(directory, scope);
+    }
+
+    private static void append(File file, StatsSample sample) throws IOException {
+        File parent = file.getParentFile();
+        if (!parent.exists())
+            parent.mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), UTF8);
+        try {
+            writer.write(gson.toJson(sample));
+            writer.write('\n');
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static List<StatsSample> load(File file) throws IOException {
+        List<StatsSample> samples = new ArrayList<StatsSample>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty())
+                    continue;
+                try {
+                    samples.add(gson.fromJson(line, StatsSample.class));
+                } catch (RuntimeException e) {
+                    // a line cut short by a crash. Skip it.
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return samples;
+    }
+
+    static long floor(long time, long unit) {
+        return time - ((time % unit) + unit) % unit;
+    }
+
+    private static long floorMonth(long time) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        calendar.setTimeInMillis(floor(time, DAY));
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        return calendar.getTimeInMillis();
+    }
+
+    private static long nextMonth(long monthStart) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        calendar.setTimeInMillis(monthStart);
+        calendar.add(Calendar.MONTH, 1);
+        return calendar.getTimeInMillis();
+    }
+
+    private static String format(String pattern, long time) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setTimeZone(UTC);
+        return format.format(new Date(time));
+    }
+
+    private static long parse(String pattern, String filename, String prefix) throws ParseException {
+        if (!filename.endsWith(EXTENSION))
+            throw new ParseException(filename, 0);
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setTimeZone(UTC);
+        format.setLenient(false);
+        return format.parse(filename.substring(prefix.length(), filename.length() - EXTENSION.length())).getTime();
+    }
+
+    /**
+     * Counter totals of a scope at some point. See AggregateStats.totals().
+     */
+    public static class Totals {
+        long startTime;
+        long[] counters;
+        long saved;
+
+        public Totals(long startTime, long[] counters, long saved) {
+            this.startTime = startTime;
+            this.counters = counters;
+            this.saved = saved;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long[] getCounters() {
+            return counters;
+        }
+    }
+}
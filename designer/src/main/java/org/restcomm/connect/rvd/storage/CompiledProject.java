@@ -0,0 +1,318 @@
+package org.restcomm.connect.rvd.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.restcomm.connect.rvd.interpreter.serialization.RcmlTemplate;
+import org.restcomm.connect.rvd.model.StepJsonDeserializer;
+import org.restcomm.connect.rvd.model.project.Node;
+import org.restcomm.connect.rvd.model.project.Step;
+import org.restcomm.connect.rvd.model.steps.dial.DialNoun;
+import org.restcomm.connect.rvd.model.steps.dial.DialNounJsonDeserializer;
+import org.restcomm.connect.rvd.storage.exceptions.StaleCompiledProject;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Binary form of the built modules of a project (the 'data/project.rvdc' entity). It is written by the build along
+ * with the .mod files and is memory-mapped when read. Only the module index is decoded when the file is opened.
+ * Modules are decoded on demand.
+ *
+ * Layout (all integers big-endian, offsets absolute):
+ *
+ *  header      magic(int) formatVersion(int) buildGeneration(long) stringCount(int) stringsOffset(int)
+ *              moduleCount(int) modulesOffset(int)
+ *  strings     stringCount x offset(int), followed by the strings as length(int) + UTF-8 bytes
+ *  modules     moduleCount x [name(int) label(int) kind(int) stepCount(int) stepsOffset(int) templateCount(int)
+ *              templatesOffset(int)] where name/label/kind are string ids (-1 for null)
+ *  steps       stepCount x [kind(int) name(int) payload(int)]. Payload is the step in JSON.
+ *  templates   templateCount x [stepName(int) partCount(int) partCount x part(int)]
+ *
+ * Bump FORMAT_VERSION whenever the layout changes. Artifacts with a different version are considered stale and
+ * are rebuilt.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class CompiledProject {
+
+    public static final String ENTITY_NAME = "project.rvdc";
+    public static final int MAGIC = 0x52564443; // "RVDC"
+    public static final int FORMAT_VERSION = 1;
+
+    static final int HEADER_SIZE = 32;
+    static final int MODULE_ENTRY_SIZE = 28;
+    static final int STEP_RECORD_SIZE = 12;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    // a single gson for decoding. Step kind is known from the step record so there is no need to go through a JSON tree.
+    private static final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(Step.class, new StepJsonDeserializer())
+            .registerTypeAdapter(DialNoun.class, new DialNounJsonDeserializer())
+            .create();
+
+    private final ByteBuffer buffer; // only absolute reads are done on it. Safe for concurrent readers.
+    private final long buildGeneration;
+    private final int stringsOffset;
+    private final Map<String, Integer> moduleEntries; // module name -> offset of module entry
+    private final BasicFileAttributes attributes; // of the file when it was mapped
+    private volatile boolean current; // its build generation was found to match the project index
+
+    private CompiledProject(ByteBuffer buffer, BasicFileAttributes attributes) throws StaleCompiledProject {
+        this.buffer = buffer;
+        this.attributes = attributes;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new StaleCompiledProject("Not a compiled project");
+        int version = buffer.getInt(4);
+        if (version != FORMAT_VERSION)
+            throw new StaleCompiledProject("Compiled project format version is " + version + ". Expected " + FORMAT_VERSION);
+        buildGeneration = buffer.getLong(8);
+        stringsOffset = buffer.getInt(20);
+        int moduleCount = buffer.getInt(24);
+        int modulesOffset = buffer.getInt(28);
+        Map<String, Integer> entries = new HashMap<String, Integer>();
+        for (int i = 0; i < moduleCount; i++) {
+            int entryOffset = modulesOffset + i * MODULE_ENTRY_SIZE;
+            entries.put(string(buffer.getInt(entryOffset)), entryOffset);
+        }
+        moduleEntries = entries;
+    }
+
+    /**
+     * Maps a compiled project file to memory and decodes its index.
+     *
+     * @param file
+     * @return the compiled project
+     * @throws IOException on I/O errors
+     * @throws StaleCompiledProject if the file is not a compiled project or is of a different format version
+     */
+    public static CompiledProject open(File file) throws IOException, StaleCompiledProject {
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            // the mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new CompiledProject(buffer, attributes);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    public long getBuildGeneration() {
+        return buildGeneration;
+    }
+
+    boolean isCurrent() {
+        return current;
+    }
+
+    void setCurrent() {
+        current = true;
+    }
+
+    public Set<String> getModuleNames() {
+        return Collections.unmodifiableSet(moduleEntries.keySet());
+    }
+
+    /**
+     * Checks whether file is still the one that was mapped. Builds replace the file so the file key (inode) changes
+     * even if the modification time doesn't.
+     */
+    boolean isSameFile(File file) {
+        try {
+            BasicFileAttributes current = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            if (current.fileKey() != null && !current.fileKey().equals(attributes.fileKey()))
+                return false;
+            return current.lastModifiedTime().equals(attributes.lastModifiedTime()) && current.size() == attributes.size();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Decodes a module. A new Node object is returned each time.
+     *
+     * @param moduleName
+     * @return the module or null if there is no such module
+     */
+    public Node loadNode(String moduleName) {
+        Integer entryOffset = moduleEntries.get(moduleName);
+        if (entryOffset == null)
+            return null;
+        int offset = entryOffset;
+        Node node = new Node();
+        node.setName(string(buffer.getInt(offset)));
+        node.setLabel(string(buffer.getInt(offset + 4)));
+        node.setKind(string(buffer.getInt(offset + 8)));
+        int stepCount = buffer.getInt(offset + 12);
+        int stepsOffset = buffer.getInt(offset + 16);
+        int templateCount = buffer.getInt(offset + 20);
+        int templatesOffset = buffer.getInt(offset + 24);
+
+        List<Step> steps = new ArrayList<Step>(stepCount);
+        for (int i = 0; i < stepCount; i++) {
+            int recordOffset = stepsOffset + i * STEP_RECORD_SIZE;
+            String kind = string(buffer.getInt(recordOffset));
+            String payload = string(buffer.getInt(recordOffset + 8));
+            Class<? extends Step> stepClass = StepJsonDeserializer.stepClassForKind(kind);
+            steps.add(stepClass == null ? null : gson.fromJson(payload, stepClass));
+        }
+        node.setSteps(steps);
+
+        if (templateCount > 0) {
+            Map<String, RcmlTemplate> templates = new HashMap<String, RcmlTemplate>();
+            int position = templatesOffset;
+            for (int i = 0; i < templateCount; i++) {
+                String stepName = string(buffer.getInt(position));
+                int partCount = buffer.getInt(position + 4);
+                position += 8;
+                List<String> parts = new ArrayList<String>(partCount);
+                for (int j = 0; j < partCount; j++) {
+                    parts.add(string(buffer.getInt(position)));
+                    position += 4;
+                }
+                templates.put(stepName, new RcmlTemplate(parts));
+            }
+            node.setRcmlTemplates(templates);
+        }
+        return node;
+    }
+
+    private String string(int id) {
+        if (id < 0)
+            return null;
+        int offset = buffer.getInt(stringsOffset + id * 4);
+        int size = buffer.getInt(offset);
+        byte[] bytes = new byte[size];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + 4);
+        view.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Writes built modules to a compiled project file.
+     *
+     * @param file the file to write to. It is overwritten.
+     * @param nodes built modules as returned by BuildService
+     * @param buildGeneration
+     * @param stepGson gson that serializes steps into what the model classes expect (see StepMarshaler)
+     * @throws IOException
+     */
+    public static void write(File file, List<Node> nodes, long buildGeneration, Gson stepGson) throws IOException {
+        StringTable strings = new StringTable();
+        ByteArrayOutputStream modulesBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream stepsBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream templatesBytes = new ByteArrayOutputStream();
+        DataOutputStream modules = new DataOutputStream(modulesBytes);
+        DataOutputStream steps = new DataOutputStream(stepsBytes);
+        DataOutputStream templates = new DataOutputStream(templatesBytes);
+
+        // step and template offsets are relative to their sections for now. They are fixed once sizes are known.
+        List<int[]> moduleOffsets = new ArrayList<int[]>();
+        for (Node node: nodes) {
+            List<Step> nodeSteps = node.getSteps() == null ? Collections.<Step>emptyList() : node.getSteps();
+            Map<String, RcmlTemplate> nodeTemplates = node.getRcmlTemplates() == null ? Collections.<String, RcmlTemplate>emptyMap() : node.getRcmlTemplates();
+            moduleOffsets.add(new int[] {steps.size(), templates.size()});
+            modules.writeInt(strings.id(node.getName()));
+            modules.writeInt(strings.id(node.getLabel()));
+            modules.writeInt(strings.id(node.getKind()));
+            modules.writeInt(nodeSteps.size());
+            modules.writeInt(0); // steps offset placeholder
+            modules.writeInt(nodeTemplates.size());
+            modules.writeInt(0); // templates offset placeholder
+            for (Step step: nodeSteps) {
+                steps.writeInt(strings.id(step == null ? null : step.getKind()));
+                steps.writeInt(strings.id(step == null ? null : step.getName()));
+                steps.writeInt(strings.id(step == null ? null : stepGson.toJson(step)));
+            }
+            for (Map.Entry<String, RcmlTemplate> entry: nodeTemplates.entrySet()) {
+                templates.writeInt(strings.id(entry.getKey()));
+                templates.writeInt(entry.getValue().getParts().size());
+                for (String part: entry.getValue().getParts())
+                    templates.writeInt(strings.id(part));
+            }
+        }
+        byte[] stringBytes = strings.toBytes(HEADER_SIZE);
+        int modulesOffset = HEADER_SIZE + stringBytes.length;
+        int stepsOffset = modulesOffset + modules.size();
+        int templatesOffset = stepsOffset + steps.size();
+        byte[] moduleTable = modulesBytes.toByteArray();
+        ByteBuffer moduleTableBuffer = ByteBuffer.wrap(moduleTable);
+        for (int i = 0; i < moduleOffsets.size(); i++) {
+            moduleTableBuffer.putInt(i * MODULE_ENTRY_SIZE + 16, stepsOffset + moduleOffsets.get(i)[0]);
+            moduleTableBuffer.putInt(i * MODULE_ENTRY_SIZE + 24, templatesOffset + moduleOffsets.get(i)[1]);
+        }
+
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(buildGeneration);
+            out.writeInt(strings.size());
+            out.writeInt(HEADER_SIZE);
+            out.writeInt(nodes.size());
+            out.writeInt(modulesOffset);
+            out.write(stringBytes);
+            out.write(moduleTable);
+            stepsBytes.writeTo(out);
+            templatesBytes.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    // de-duplicates strings and assigns ids to them
+    static class StringTable {
+        private Map<String, Integer> ids = new LinkedHashMap<String, Integer>();
+
+        int id(String value) {
+            if (value == null)
+                return -1;
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = ids.size();
+                ids.put(value, id);
+            }
+            return id;
+        }
+
+        int size() {
+            return ids.size();
+        }
+
+        // offsets array followed by the strings. Offsets are absolute, based on the position of the table in the file.
+        byte[] toBytes(int tableOffset) throws IOException {
+            ByteArrayOutputStream dataBytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(dataBytes);
+            ByteArrayOutputStream offsetBytes = new ByteArrayOutputStream();
+            DataOutputStream offsets = new DataOutputStream(offsetBytes);
+            int dataStart = tableOffset + ids.size() * 4;
+            for (String value: ids.keySet()) {
+                offsets.writeInt(dataStart + data.size());
+                byte[] bytes = value.getBytes(UTF8);
+                data.writeInt(bytes.length);
+                data.write(bytes);
+            }
+            offsetBytes.write(dataBytes.toByteArray());
+            return offsetBytes.toByteArray();
+        }
+    }
+}
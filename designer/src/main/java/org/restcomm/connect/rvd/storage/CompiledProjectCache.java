@@ -0,0 +1,81 @@
+package org.restcomm.connect.rvd.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.restcomm.connect.rvd.storage.exceptions.StaleCompiledProject;
+
+/**
+ * Keeps compiled projects mapped in memory so that they are not re-opened on each request. An entry is
+ * re-opened if the file on disk has been replaced (different modification time or size). Least recently used
+ * entries are dropped once maxEntries is reached.
+ *
+ * Lives in ApplicationContext.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class CompiledProjectCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final Map<String, CompiledProject> projects;
+
+    public CompiledProjectCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public CompiledProjectCache(final int maxEntries) {
+        this.projects = new LinkedHashMap<String, CompiledProject>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledProject> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the compiled project stored in file or null if there is no such file.
+     *
+     * @param file
+     * @return a CompiledProject or null
+     * @throws StaleCompiledProject if the file needs to be rebuilt
+     * @throws IOException
+     */
+    public CompiledProject get(File file) throws StaleCompiledProject, IOException {
+        String key = file.getPath();
+        CompiledProject compiled;
+        synchronized (projects) {
+            compiled = projects.get(key);
+        }
+        if (compiled != null && compiled.isSameFile(file))
+            return compiled;
+        if (!file.exists()) {
+            evict(key);
+            return null;
+        }
+        try {
+            compiled = CompiledProject.open(file);
+        } catch (StaleCompiledProject e) {
+            evict(key);
+            throw e;
+        }
+        synchronized (projects) {
+            projects.put(key, compiled);
+        }
+        return compiled;
+    }
+
+    public void evict(String path) {
+        synchronized (projects) {
+            projects.remove(path);
+        }
+    }
+
+    public int size() {
+        synchronized (projects) {
+            return projects.size();
+        }
+    }
+}
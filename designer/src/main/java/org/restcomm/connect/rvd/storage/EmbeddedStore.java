@@ -0,0 +1,581 @@
+package org.restcomm.connect.rvd.storage;
+
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * A key/value store kept in a single append-only file. Values are byte arrays, keys are strings.
+ *
+ * Changes are grouped in transactions. Each committed transaction is appended as a single record protected by a
+ * CRC and the file is fsync'ed before commit() returns. A crash in the middle of a commit leaves a partial record at
+ * the end of the file. It is discarded the next time the store is opened, so a transaction is either applied as a
+ * whole or not at all.
+ *
+ * Keys and the location of their values are kept in memory. Values are read from the file on demand. Once most of
+ * the file is taken by overwritten or removed values it is compacted. Live values are copied to a new file that
+ * replaces the old one with an atomic rename.
+ *
+ * File format:
+ *
+ *  header: int magic, int format version
+ *  record: int payload length, int payload crc32, payload
+ *  payload: long timestamp, int operation count, operations
+ *  operation: byte type, utf key, [int value length, value bytes] (value only for puts)
+ *
+ * Thread safe. Readers run concurrently. Commits and compaction are serialized. A store is used by a single process:
+ * an exclusive lock on a file next to it (see lockFile()) is held while the store is open and opening a store that
+ * is already open elsewhere fails.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class EmbeddedStore implements Closeable {
+
+    static Logger logger = RvdLoggers.local;
+
+    public static final String FILENAME = "@workspace.store"; // lives at the root of the workspace
+    static final int MAGIC = 0x52564453; // 'RVDS'
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 8;
+    static final int ENTRY_OVERHEAD = 16; // rough per operation cost in the file besides key and value
+    static final byte OP_PUT = 1;
+    static final byte OP_REMOVE = 2;
+    static final long COMPACTION_MIN_SIZE = 1024 * 1024; // smaller files are never compacted
+
+    private final File file;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, Entry> index = new TreeMap<String, Entry>();
+    private FileChannel channel;
+    private FileLock fileLock; // held while the store is open
+    private long size; // end of the last committed record
+    private long liveBytes; // approximate size of the records that would survive compaction
+    private long discardedBytes; // what was truncated at open time
+
+    static class Entry {
+        final long offset;
+        final int length;
+        final long modified;
+
+        Entry(long offset, int length, long modified) {
+            this.offset = offset;
+            this.length = length;
+            this.modified = modified;
+        }
+    }
+
+    private EmbeddedStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the store in file, creating it if missing. An incomplete transaction at the end of the file is dropped.
+     *
+     * @param file
+     * @return the opened store
+     * @throws IOException if the file can't be opened, is not a store or is already open by another process
+     */
+    public static EmbeddedStore open(File file) throws IOException {
+        EmbeddedStore store = new EmbeddedStore(file);
+        store.fileLock = lock(file);
+        try {
+            // a crash during compaction leaves the half-written copy behind. The original is intact.
+            Files.deleteIfExists(compactionFile(file).toPath());
+            store.load();
+        } catch (IOException e) {
+            release(store.fileLock);
+            throw e;
+        }
+        return store;
+    }
+
+    // the lock is taken on a file of its own since compaction replaces the store file
+    private static FileLock lock(File file) throws IOException {
+        FileChannel lockChannel = FileChannel.open(lockFile(file).toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        FileLock fileLock;
+        try {
+            fileLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileLock = null; // held by this JVM
+        } catch (IOException e) {
+            lockChannel.close();
+            throw e;
+        }
+        if (fileLock == null) {
+            lockChannel.close();
+            throw new IOException("Workspace store is in use by another process: " + file);
+        }
+        return fileLock;
+    }
+
+    private static void release(FileLock fileLock) throws IOException {
+        try {
+            fileLock.release();
+        } finally {
+            fileLock.channel().close();
+        }
+    }
+
+    static File lockFile(File file) {
+        return new File(file.getPath() + ".lock");
+    }
+
+    static File compactionFile(File file) {
+        return new File(file.getPath() + ".compact");
+    }
+
+    private void load() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            long fileSize = channel.size();
+            if (fileSize == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+                writeFully(channel, header, 0);
+                channel.force(true);
+                size = HEADER_SIZE;
+                return;
+            }
+            ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC)
+                throw new IOException("Not a workspace store: " + file);
+            int version = header.getInt();
+            if (version != FORMAT_VERSION)
+                throw new IOException("Unsupported workspace store format version " + version + ": " + file);
+            long position = HEADER_SIZE;
+            while (position + RECORD_HEADER_SIZE <= fileSize) {
+                ByteBuffer recordHeader = readFully(channel, position, RECORD_HEADER_SIZE);
+                int length = recordHeader.getInt();
+                int crc = recordHeader.getInt();
+                if (length <= 0 || position + RECORD_HEADER_SIZE + length > fileSize)
+                    break;
+                byte[] payload = readFully(channel, position + RECORD_HEADER_SIZE, length).array();
+                if (crc != crc(payload))
+                    break;
+                apply(payload, position + RECORD_HEADER_SIZE);
+                position += RECORD_HEADER_SIZE + length;
+            }
+            if (position < fileSize) {
+                discardedBytes = fileSize - position;
+                logger.warn(LoggingHelper.buildMessage(getClass(), "load", null, "discarding " + discardedBytes + " bytes of an incomplete transaction at the end of " + file));
+                channel.truncate(position);
+                channel.force(true);
+            }
+            size = position;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // updates the index with the operations of a committed record
+    private void apply(byte[] payload, long payloadOffset) throws IOException {
+        ByteArrayInputStream bytes = new ByteArrayInputStream(payload);
+        DataInputStream in = new DataInputStream(bytes);
+        long timestamp = in.readLong();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            byte op = in.readByte();
+            String key = in.readUTF();
+            if (op == OP_PUT) {
+                int length = in.readInt();
+                long offset = payloadOffset + payload.length - bytes.available();
+                if (in.skipBytes(length) != length)
+                    throw new EOFException("Truncated value of '" + key + "' in " + file);
+                indexPut(key, new Entry(offset, length, timestamp));
+            } else
+            if (op == OP_REMOVE) {
+                indexRemove(key);
+            } else
+                throw new IOException("Unknown operation " + op + " in " + file);
+        }
+    }
+
+    private void indexPut(String key, Entry entry) {
+        indexRemove(key);
+        index.put(key, entry);
+        liveBytes += entrySize(key, entry.length);
+    }
+
+    private void indexRemove(String key) {
+        Entry previous = index.remove(key);
+        if (previous != null)
+            liveBytes -= entrySize(key, previous.length);
+    }
+
+    static long entrySize(String key, int valueLength) {
+        return key.length() + valueLength + ENTRY_OVERHEAD;
+    }
+
+    static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0)
+                throw new EOFException();
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer, position + buffer.position());
+    }
+
+    /**
+     * Returns the value of key or null if there is no such key.
+     */
+    public byte[] get(String key) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Entry entry = index.get(key);
+            if (entry == null)
+                return null;
+            return readFully(channel, entry.offset, entry.length).array();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String key) {
+        lock.readLock().lock();
+        try {
+            return index.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the time key was last written or null if there is no such key
+     */
+    public Long lastModified(String key) {
+        lock.readLock().lock();
+        try {
+            Entry entry = index.get(key);
+            return entry == null ? null : entry.modified;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the keys starting with prefix, in order, along with the time they were last written.
+     */
+    public SortedMap<String, Long> list(String prefix) {
+        SortedMap<String, Long> keys = new TreeMap<String, Long>();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, Entry> entry: subMap(prefix).entrySet())
+                keys.put(entry.getKey(), entry.getValue().modified);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return keys;
+    }
+
+    public boolean hasKeysStartingWith(String prefix) {
+        lock.readLock().lock();
+        try {
+            return !subMap(prefix).isEmpty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private SortedMap<String, Entry> subMap(String prefix) {
+        return index.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    public void put(String key, byte[] value) throws IOException {
+        begin().put(key, value).commit();
+    }
+
+    public void remove(String key) throws IOException {
+        begin().remove(key).commit();
+    }
+
+    public Transaction begin() {
+        return new Transaction();
+    }
+
+    /**
+     * Changes applied together or not at all. Nothing is visible to readers before commit().
+     */
+    public class Transaction {
+        private final List<Object[]> operations = new ArrayList<Object[]>(); // {type, key, value}
+        private final Set<String> requiredAbsent = new HashSet<String>();
+
+        public Transaction put(String key, byte[] value) {
+            if (value == null)
+                throw new IllegalArgumentException("null value for " + key);
+            operations.add(new Object[] {OP_PUT, key, value});
+            return this;
+        }
+
+        public Transaction remove(String key) {
+            operations.add(new Object[] {OP_REMOVE, key, null});
+            return this;
+        }
+
+        /**
+         * Removes all keys starting with prefix. Keys are resolved when the transaction is committed.
+         */
+        public Transaction removeAll(String prefix) {
+            operations.add(new Object[] {null, prefix, null});
+            return this;
+        }
+
+        /**
+         * Makes commit() fail if key exists by then.
+         */
+        public Transaction requireAbsent(String key) {
+            requiredAbsent.add(key);
+            return this;
+        }
+
+        /**
+         * Writes the transaction to disk and makes it visible.
+         *
+         * @return false if a key required to be absent exists. Nothing is written in that case.
+         * @throws IOException
+         */
+        public boolean commit() throws IOException {
+            lock.writeLock().lock();
+            try {
+                ensureOpen();
+                for (String key: requiredAbsent)
+                    if (index.containsKey(key))
+                        return false;
+                // the final value of each key changed. A null value stands for removal.
+                Map<String, byte[]> changes = new LinkedHashMap<String, byte[]>();
+                for (Object[] operation: operations) {
+                    String key = (String) operation[1];
+                    if (operation[0] == null) {
+                        for (String existing: subMap(key).keySet())
+                            changes.put(existing, null);
+                        for (String changed: new ArrayList<String>(changes.keySet()))
+                            if (changed.startsWith(key))
+                                changes.put(changed, null);
+                    } else {
+                        changes.remove(key); // keep the order of the last change
+                        changes.put(key, (byte[]) operation[2]);
+                    }
+                }
+                for (String key: new ArrayList<String>(changes.keySet()))
+                    if (changes.get(key) == null && !index.containsKey(key))
+                        changes.remove(key);
+                if (!changes.isEmpty())
+                    append(changes);
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // Called with the write lock held
+    private void append(Map<String, byte[]> changes) throws IOException {
+        long timestamp = System.currentTimeMillis();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(timestamp);
+        out.writeInt(changes.size());
+        List<Integer> valueOffsets = new ArrayList<Integer>(changes.size());
+        for (Map.Entry<String, byte[]> change: changes.entrySet()) {
+            byte[] value = change.getValue();
+            out.writeByte(value != null ? OP_PUT : OP_REMOVE);
+            out.writeUTF(change.getKey());
+            if (value != null) {
+                out.writeInt(value.length);
+                valueOffsets.add(out.size());
+                out.write(value);
+            }
+        }
+        out.flush();
+        byte[] payload = bytes.toByteArray();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt(crc(payload)).put(payload).flip();
+        try {
+            writeFully(channel, record, size);
+            channel.force(false);
+        } catch (IOException e) {
+            // don't leave a partial record behind for later commits to append after
+            try {
+                channel.truncate(size);
+            } catch (IOException e1) {
+                // the partial record will be dropped when the store is next opened
+            }
+            throw e;
+        }
+        long payloadOffset = size + RECORD_HEADER_SIZE;
+        int i = 0;
+        for (Map.Entry<String, byte[]> change: changes.entrySet()) {
+            if (change.getValue() != null)
+                indexPut(change.getKey(), new Entry(payloadOffset + valueOffsets.get(i++), change.getValue().length, timestamp));
+            else
+                indexRemove(change.getKey());
+        }
+        size += record.capacity();
+        if (size > COMPACTION_MIN_SIZE && liveBytes < (size - HEADER_SIZE) / 2) {
+            try {
+                compactLocked();
+            } catch (IOException e) {
+                // the transaction is committed anyway. Compaction will be retried with the next one.
+                logger.warn(LoggingHelper.buildMessage(getClass(), "append", null, "error compacting " + file), e);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the file keeping live values only.
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            compactLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void compactLocked() throws IOException {
+        long started = System.currentTimeMillis();
+        long previousSize = size;
+        File compacted = compactionFile(file);
+        TreeMap<String, Entry> compactedIndex = new TreeMap<String, Entry>();
+        long position;
+        FileChannel out = FileChannel.open(compacted.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+            writeFully(out, header, 0);
+            position = HEADER_SIZE;
+            // one record per entry. It keeps the original timestamp.
+            for (Map.Entry<String, Entry> entry: index.entrySet()) {
+                byte[] value = readFully(channel, entry.getValue().offset, entry.getValue().length).array();
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length + 64);
+                DataOutputStream data = new DataOutputStream(bytes);
+                data.writeLong(entry.getValue().modified);
+                data.writeInt(1);
+                data.writeByte(OP_PUT);
+                data.writeUTF(entry.getKey());
+                data.writeInt(value.length);
+                int valueOffset = data.size();
+                data.write(value);
+                data.flush();
+                byte[] payload = bytes.toByteArray();
+                ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+                record.putInt(payload.length).putInt(crc(payload)).put(payload).flip();
+                writeFully(out, record, position);
+                compactedIndex.put(entry.getKey(), new Entry(position + RECORD_HEADER_SIZE + valueOffset, value.length, entry.getValue().modified));
+                position += record.capacity();
+            }
+            out.force(true);
+        } catch (IOException e) {
+            out.close();
+            Files.deleteIfExists(compacted.toPath());
+            throw e;
+        }
+        out.close();
+        // the current channel keeps pointing to the old file until it's closed
+        Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileChannel previous = channel;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        previous.close();
+        index.clear();
+        index.putAll(compactedIndex);
+        size = position;
+        if (logger.isInfoEnabled())
+            logger.info(LoggingHelper.buildMessage(getClass(), "compact", null, "compacted " + file + " from " + previousSize + " to " + size + " bytes in " + (System.currentTimeMillis() - started) + " ms"));
+    }
+
+    private void ensureOpen() throws IOException {
+        if (channel == null)
+            throw new IOException("Workspace store is closed: " + file);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getFileSize() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getEntryCount() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return how many bytes of an incomplete transaction were dropped when the store was opened
+     */
+    public long getDiscardedBytes() {
+        return discardedBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            try {
+                if (fileLock != null) {
+                    release(fileLock);
+                    fileLock = null;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package org.restcomm.connect.rvd.storage;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Transparent compression of workspace entities at rest (see FsWorkspaceStorage).
+ *
+ * Compressed entities start with MAGIC followed by a FORMAT byte and a zlib stream. Plain entities are json text and
+ * can't start that way (0xC5 followed by 'R' is not valid UTF-8) so both kinds coexist. Entities are compressed when
+ * written and only if their type is selected. Anything is decompressed when read, whatever the configuration.
+ *
+ * Optionally a preset dictionary trained from the entities already in the workspace is used. Small entities that
+ * share little with themselves (i.e. the state of a short project) compress a lot better this way. Dictionaries are
+ * kept under @compression named after their zlib id and are never removed since entities written with them may still
+ * be around. The one new entities are compressed with is named in the 'active' file.
+ *
+ * There is one instance per workspace directory (see Workspace).
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class EntityCompression {
+
+    static Logger logger = RvdLoggers.local;
+
+    public static final String DIRECTORY_NAME = "@compression";
+    static final String ACTIVE_FILENAME = "active";
+    static final String DICTIONARY_PREFIX = "dict-";
+    static final byte[] MAGIC = {(byte) 0xC5, 'R', 'V', 'Z'};
+    static final byte FORMAT_ZLIB = 1;
+    static final int MIN_SIZE = 128; // smaller entities are left alone
+    static final int MAX_DICTIONARY_SIZE = 16 * 1024; // half the deflate window
+    static final int MAX_SAMPLE_BYTES = 4 * 1024 * 1024;
+    static final int SEGMENT_SIZE = 32;
+    static final int SEGMENT_STEP = 8;
+    static final Charset LATIN1 = Charset.forName("ISO-8859-1"); // maps bytes to chars one to one
+
+    /**
+     * Entity types that may be compressed. Media and whatever is not recognized are stored as they are.
+     */
+    public static final Set<StorageEntityType> COMPRESSIBLE_TYPES = Collections.unmodifiableSet(EnumSet.of(
+            StorageEntityType.state, StorageEntityType.header, StorageEntityType.project, StorageEntityType.mod,
+            StorageEntityType.settings, StorageEntityType.cc, StorageEntityType.parameters, StorageEntityType.bootstrap));
+
+    private final File directory;
+    private final FsJournal journal; // of the workspace. Dictionaries are written through it.
+    private final ConcurrentMap<Integer, byte[]> dictionaries = new ConcurrentHashMap<Integer, byte[]>();
+    private volatile Set<StorageEntityType> types = Collections.emptySet();
+    private volatile byte[] activeDictionary;
+    private volatile int level = Deflater.DEFAULT_COMPRESSION;
+
+    EntityCompression(File workspaceDir, FsJournal journal) {
+        this.directory = new File(workspaceDir.getAbsoluteFile(), DIRECTORY_NAME);
+        this.journal = journal;
+    }
+
+    /**
+     * Selects the entity types compressed from now on. Types not in COMPRESSIBLE_TYPES are ignored. An empty
+     * collection turns compression off for writes.
+     */
+    public void setTypes(Collection<StorageEntityType> types) {
+        Set<StorageEntityType> selected = EnumSet.noneOf(StorageEntityType.class);
+        for (StorageEntityType type: types)
+            if (COMPRESSIBLE_TYPES.contains(type))
+                selected.add(type);
+        this.types = selected;
+    }
+
+    public Set<StorageEntityType> getTypes() {
+        return Collections.unmodifiableSet(types);
+    }
+
+    /**
+     * @param level a Deflater level, 1 (fastest) to 9 (smallest)
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    /**
+     * Compresses new entities with the active dictionary of the workspace. If there is none yet, one is trained out
+     * of the compressible entities of up to 'sampleProjects' projects and becomes the active one.
+     *
+     * @return the id of the dictionary in use
+     */
+    public int useDictionary(int sampleProjects) throws IOException {
+        File activeFile = new File(directory, ACTIVE_FILENAME);
+        if (activeFile.exists()) {
+            String name = FileUtils.readFileToString(activeFile, LATIN1).trim();
+            try {
+                int id = (int) Long.parseLong(name.substring(DICTIONARY_PREFIX.length()), 16);
+                byte[] dictionary = loadDictionary(id);
+                if (dictionary != null) {
+                    activeDictionary = dictionary;
+                    return id;
+                }
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                // damaged. Train a new one.
+            }
+            logger.log(Level.WARN, LoggingHelper.buildMessage(getClass(), "useDictionary", null, "active dictionary '" + name + "' of " + directory + " can't be loaded. Training a new one."));
+        }
+        byte[] dictionary = train(collectSamples(directory.getParentFile(), sampleProjects), MAX_DICTIONARY_SIZE);
+        if (dictionary.length == 0) {
+            // nothing to learn from yet. It will be trained on next startup.
+            activeDictionary = null;
+            return 0;
+        }
+        int id = storeDictionary(dictionary);
+        journal.write(activeFile, dictionaryFilename(id).getBytes(LATIN1));
+        activeDictionary = dictionary;
+        if (logger.isInfoEnabled())
+            logger.log(Level.INFO, LoggingHelper.buildMessage(getClass(), "useDictionary", null, "trained compression dictionary " + dictionaryFilename(id) + " (" + dictionary.length + " bytes)"));
+        return id;
+    }
+
+    /**
+     * Stops using a dictionary for new entities. Those already written with one can still be read.
+     */
+    public void dropDictionary() {
+        activeDictionary = null;
+    }
+
+    /**
+     * Saves a dictionary under the workspace so that entities compressed with it can be read later.
+     *
+     * @return the zlib id of the dictionary
+     */
+    public int storeDictionary(byte[] dictionary) throws IOException {
+        int id = dictionaryId(dictionary);
+        File file = new File(directory, dictionaryFilename(id));
+        if (!file.exists()) {
+            FileUtils.forceMkdir(directory);
+            journal.write(file, dictionary);
+        }
+        dictionaries.put(id, dictionary);
+        return id;
+    }
+
+    /**
+     * Returns the data to store for an entity of the given type. That's the data as is unless the type is selected
+     * for compression and compressing actually saves space.
+     */
+    public byte[] encode(byte[] data, StorageEntityType type) {
+        if (data.length < MIN_SIZE || !types.contains(type))
+            return data;
+        return compress(data, level, activeDictionary);
+    }
+
+    static byte[] compress(byte[] data, int level, byte[] dictionary) {
+        Deflater deflater = new Deflater(level);
+        try {
+            if (dictionary != null)
+                deflater.setDictionary(dictionary);
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 4 + 64);
+            output.write(MAGIC, 0, MAGIC.length);
+            output.write(FORMAT_ZLIB);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                output.write(buffer, 0, count);
+                if (output.size() >= data.length)
+                    return data; // does not pay off
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Returns the content of a stored entity, decompressing it if needed.
+     */
+    public byte[] decode(byte[] data) throws IOException {
+        if (!isCompressed(data))
+            return data;
+        InputStream stream = decode(new ByteArrayInputStream(data));
+        try {
+            return IOUtils.toByteArray(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Wraps a stream of a stored entity so that the plain content is read out of it, compressed or not.
+     */
+    public InputStream decode(InputStream stream) throws IOException {
+        PushbackInputStream input = new PushbackInputStream(stream, MAGIC.length + 1);
+        byte[] start = new byte[MAGIC.length + 1];
+        int count = IOUtils.read(input, start);
+        if (!isCompressed(start) || count < start.length) {
+            if (count > 0)
+                input.unread(start, 0, count);
+            return input;
+        }
+        if (start[MAGIC.length] != FORMAT_ZLIB)
+            throw new IOException("Unknown compression format " + start[MAGIC.length]);
+        // Read the zlib header up front to find out which dictionary is needed. InflaterInputStream would just stop.
+        byte[] header = new byte[2];
+        IOUtils.readFully(input, header);
+        boolean presetDictionary = (header[1] & 0x20) != 0;
+        if (presetDictionary) {
+            byte[] withId = new byte[6];
+            System.arraycopy(header, 0, withId, 0, 2);
+            IOUtils.readFully(input, withId, 2, 4);
+            header = withId;
+        }
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(header);
+            inflater.inflate(new byte[1]);
+            if (inflater.needsDictionary()) {
+                byte[] dictionary = loadDictionary(inflater.getAdler());
+                if (dictionary == null)
+                    throw new IOException("Compression dictionary " + dictionaryFilename(inflater.getAdler()) + " is missing from " + directory);
+                inflater.setDictionary(dictionary);
+            }
+        } catch (DataFormatException e) {
+            inflater.end();
+            throw new IOException("Damaged compressed entity", e);
+        } catch (IOException | RuntimeException e) {
+            inflater.end();
+            throw e;
+        }
+        return new InflaterInputStream(input, inflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    public static boolean isCompressed(byte[] data) {
+        if (data.length <= MAGIC.length)
+            return false;
+        for (int i = 0; i < MAGIC.length; i++)
+            if (data[i] != MAGIC[i])
+                return false;
+        return true;
+    }
+
+    byte[] loadDictionary(int id) throws IOException {
+        byte[] dictionary = dictionaries.get(id);
+        if (dictionary == null) {
+            File file = new File(directory, dictionaryFilename(id));
+            if (!file.exists())
+                return null;
+            dictionary = FileUtils.readFileToByteArray(file);
+            if (dictionaryId(dictionary) != id)
+                throw new IOException("Compression dictionary " + file + " is damaged");
+            dictionaries.put(id, dictionary);
+        }
+        return dictionary;
+    }
+
+    static int dictionaryId(byte[] dictionary) {
+        Adler32 adler = new Adler32(); // what zlib identifies preset dictionaries with
+        adler.update(dictionary);
+        return (int) adler.getValue();
+    }
+
+    static String dictionaryFilename(int id) {
+        return DICTIONARY_PREFIX + String.format("%08x", id);
+    }
+
+    /**
+     * Reads the compressible entities of up to maxProjects projects of a workspace, plain, to train a dictionary with.
+     */
+    List<byte[]> collectSamples(File workspaceDir, int maxProjects) throws IOException {
+        List<byte[]> samples = new ArrayList<byte[]>();
+        int bytes = 0;
+        int projects = 0;
+        for (File projectDir: WorkspaceLayout.forWorkspace(workspaceDir).listRoot()) {
+            if (!projectDir.isDirectory() || !new File(projectDir, "state").isFile())
+                continue;
+            List<File> files = new ArrayList<File>();
+            files.add(new File(projectDir, "state"));
+            File[] modules = new File(projectDir, "data").listFiles();
+            if (modules != null)
+                Collections.addAll(files, modules);
+            for (File file: files) {
+                if (!file.isFile() || !COMPRESSIBLE_TYPES.contains(StorageEntityType.of(file.getName(), projectDir.getName() + "/" + file.getParentFile().getName())))
+                    continue;
+                byte[] sample = decode(FileUtils.readFileToByteArray(file));
+                samples.add(sample);
+                bytes += sample.length;
+                if (bytes >= MAX_SAMPLE_BYTES)
+                    return samples;
+            }
+            if (++projects >= maxProjects)
+                break;
+        }
+        return samples;
+    }
+
+    /**
+     * Builds a preset dictionary out of sample entities. The samples are cut into overlapping segments and those
+     * found in most samples are kept, the most common last since deflate reaches recent data more cheaply.
+     */
+    static byte[] train(List<byte[]> samples, int maxSize) {
+        final Map<String, int[]> counts = new HashMap<String, int[]>(); // segment -> {samples it's found in, first seen}
+        int order = 0;
+        for (byte[] sample: samples) {
+            String text = new String(sample, LATIN1);
+            Set<String> seen = new HashSet<String>();
+            for (int i = 0; i + SEGMENT_SIZE <= text.length(); i += SEGMENT_STEP) {
+                String segment = text.substring(i, i + SEGMENT_SIZE);
+                if (!seen.add(segment))
+                    continue;
+                int[] count = counts.get(segment);
+                if (count == null)
+                    counts.put(segment, new int[] {1, order++});
+                else
+                    count[0]++;
+            }
+        }
+        List<Map.Entry<String, int[]>> ranked = new ArrayList<Map.Entry<String, int[]>>(counts.entrySet());
+        Collections.sort(ranked, new Comparator<Map.Entry<String, int[]>>() {
+            @Override
+            public int compare(Map.Entry<String, int[]> a, Map.Entry<String, int[]> b) {
+                if (a.getValue()[0] != b.getValue()[0])
+                    return b.getValue()[0] - a.getValue()[0];
+                return a.getValue()[1] - b.getValue()[1];
+            }
+        });
+        List<String> picked = new ArrayList<String>();
+        StringBuilder content = new StringBuilder();
+        int size = 0;
+        for (Map.Entry<String, int[]> entry: ranked) {
+            if (entry.getValue()[0] < 2 && samples.size() > 1)
+                break; // not shared by anything
+            String segment = entry.getKey();
+            if (content.indexOf(segment) >= 0)
+                continue;
+            if (size + segment.length() > maxSize)
+                break;
+            picked.add(segment);
+            content.append(segment);
+            size += segment.length();
+        }
+        Collections.reverse(picked);
+        StringBuilder dictionary = new StringBuilder(size);
+        for (String segment: picked)
+            dictionary.append(segment);
+        return dictionary.toString().getBytes(LATIN1);
+    }
+}
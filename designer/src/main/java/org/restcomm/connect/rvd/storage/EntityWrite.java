@@ -0,0 +1,18 @@
+package org.restcomm.connect.rvd.storage;
+
+/**
+ * An entity stored as part of a group. See WorkspaceStorage.storeEntityStrings().
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class EntityWrite {
+    final String data;
+    final String entityName;
+    final String entityPath;
+
+    public EntityWrite(String data, String entityName, String entityPath) {
+        this.data = data;
+        this.entityName = entityName;
+        this.entityPath = entityPath;
+    }
+}
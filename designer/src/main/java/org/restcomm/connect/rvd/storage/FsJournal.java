@@ -0,0 +1,376 @@
+package org.restcomm.connect.rvd.storage;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Crash-safe writes for file system workspaces (see FsWorkspaceStorage).
+ *
+ * A single file is written to a temporary file, fsync'ed and renamed over the target. Readers see either the old or
+ * the new content, never a truncated file.
+ *
+ * Multi-file changes go through a transaction. Files are first written under the journal directory (@journal) of the
+ * workspace along with a manifest of where they should go. Once the manifest is in place the transaction is committed.
+ * Files are then moved to their targets and the transaction directory is removed. recover() completes committed
+ * transactions and drops uncommitted ones after a crash.
+ *
+ * fsync requests from concurrent writers are grouped. One thread syncs everything pending while the others wait, and
+ * a directory is synced once per group however many files were renamed in it.
+ *
+ * There is one journal per workspace directory (see Workspace).
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class FsJournal {
+
+    static Logger logger = RvdLoggers.local;
+
+    public static final String DIRECTORY_NAME = "@journal";
+    static final String COMMIT_FILENAME = "commit";
+    static final String TRANSACTION_PREFIX = "t-";
+    static final String SINGLE_WRITE_PREFIX = "w-";
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File workspaceDir;
+    private final File journalDir;
+    private final AtomicLong sequence = new AtomicLong();
+    private final GroupSync syncs = new GroupSync();
+
+    FsJournal(File workspaceDir) {
+        this.workspaceDir = workspaceDir.getAbsoluteFile();
+        this.journalDir = new File(this.workspaceDir, DIRECTORY_NAME);
+    }
+
+    String nextId() {
+        return System.currentTimeMillis() + "-" + sequence.incrementAndGet();
+    }
+
+    /**
+     * Orders journal entries by the time and sequence number in their id. Names are compared as numbers, "-10" comes
+     * after "-9". Entries that don't carry an id go last.
+     */
+    static final Comparator<File> OLDEST_FIRST = new Comparator<File>() {
+        @Override
+        public int compare(File a, File b) {
+            long[] first = parseId(a.getName());
+            long[] second = parseId(b.getName());
+            if (first == null || second == null) {
+                if (first != second)
+                    return first == null ? 1 : -1;
+                return a.getName().compareTo(b.getName());
+            }
+            if (first[0] != second[0])
+                return first[0] < second[0] ? -1 : 1;
+            if (first[1] != second[1])
+                return first[1] < second[1] ? -1 : 1;
+            return a.getName().compareTo(b.getName());
+        }
+    };
+
+    /**
+     * Returns {millis, sequence} out of an entry name like "t-1500000000000-12", or null if it has no id.
+     */
+    static long[] parseId(String name) {
+        String[] parts = name.split("-");
+        if (parts.length != 3)
+            return null;
+        try {
+            return new long[] {Long.parseLong(parts[1]), Long.parseLong(parts[2])};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    boolean isUnderWorkspace(File file) {
+        return file.getAbsolutePath().startsWith(workspaceDir.getPath() + File.separator);
+    }
+
+    /**
+     * Replaces target with data atomically. Missing parent directories are created.
+     */
+    public void write(File target, byte[] data) throws IOException {
+        target = target.getAbsoluteFile();
+        target.getParentFile().mkdirs();
+        File temp;
+        if (isUnderWorkspace(target)) {
+            journalDir.mkdirs();
+            temp = new File(journalDir, SINGLE_WRITE_PREFIX + nextId());
+        } else
+            temp = new File(target.getParentFile(), "." + target.getName() + "." + nextId() + ".tmp");
+        try {
+            writeFile(temp, data);
+            syncs.sync(Collections.singleton(temp));
+            move(temp, target);
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(temp);
+            throw e;
+        }
+        syncs.sync(Collections.singleton(target.getParentFile()));
+    }
+
+    static void writeFile(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // the journal is on a different file system than the target. Go through a temporary file next to it.
+            File sibling = new File(target.getParentFile(), "." + target.getName() + ".tmp");
+            Files.copy(source.toPath(), sibling.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            force(sibling);
+            Files.move(sibling.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(source.toPath());
+        }
+    }
+
+    static void force(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            channel.force(true);
+        } catch (IOException e) {
+            // some platforms can't sync directories. There's nothing more to do for them.
+            if (!file.isDirectory())
+                throw e;
+        } finally {
+            channel.close();
+        }
+    }
+
+    public Transaction begin() {
+        return new Transaction();
+    }
+
+    /**
+     * A set of file writes and removals applied all together or not at all.
+     */
+    public class Transaction {
+        private final List<File> targets = new ArrayList<File>();
+        private final List<byte[]> contents = new ArrayList<byte[]>(); // null for removals
+
+        public Transaction write(File target, byte[] data) {
+            targets.add(target.getAbsoluteFile());
+            contents.add(data);
+            return this;
+        }
+
+        public Transaction remove(File target) {
+            targets.add(target.getAbsoluteFile());
+            contents.add(null);
+            return this;
+        }
+
+        public void commit() throws IOException {
+            if (targets.isEmpty())
+                return;
+            apply(prepare());
+        }
+
+        /**
+         * Writes the files and the manifest to the journal. The transaction is committed once this returns.
+         */
+        File prepare() throws IOException {
+            File transactionDir = new File(journalDir, TRANSACTION_PREFIX + nextId());
+            try {
+                if (!transactionDir.mkdirs())
+                    throw new IOException("Cannot create journal directory " + transactionDir);
+                List<File> written = new ArrayList<File>();
+                StringBuilder manifest = new StringBuilder();
+                for (int i = 0; i < targets.size(); i++) {
+                    String path = relativize(targets.get(i));
+                    if (contents.get(i) != null) {
+                        File file = new File(transactionDir, Integer.toString(i));
+                        writeFile(file, contents.get(i));
+                        written.add(file);
+                        manifest.append("W\t").append(i).append("\t").append(path).append("\n");
+                    } else
+                        manifest.append("D\t").append(i).append("\t").append(path).append("\n");
+                }
+                File manifestTemp = new File(transactionDir, COMMIT_FILENAME + ".tmp");
+                writeFile(manifestTemp, manifest.toString().getBytes(UTF8));
+                written.add(manifestTemp);
+                written.add(transactionDir);
+                syncs.sync(written);
+                // the commit point
+                move(manifestTemp, new File(transactionDir, COMMIT_FILENAME));
+                syncs.sync(Collections.singleton(transactionDir));
+            } catch (IOException e) {
+                FileUtils.deleteQuietly(transactionDir);
+                throw e;
+            }
+            return transactionDir;
+        }
+    }
+
+    String relativize(File file) {
+        if (isUnderWorkspace(file))
+            return file.getPath().substring(workspaceDir.getPath().length() + 1);
+        return file.getPath();
+    }
+
+    File resolve(String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(workspaceDir, path);
+    }
+
+    /**
+     * Moves the files of a committed transaction in place and removes it from the journal. Files already moved by a
+     * previous attempt are skipped.
+     */
+    void apply(File transactionDir) throws IOException {
+        String manifest = FileUtils.readFileToString(new File(transactionDir, COMMIT_FILENAME), UTF8);
+        Set<File> directories = new LinkedHashSet<File>();
+        for (String line: manifest.split("\n")) {
+            if (line.isEmpty())
+                continue;
+            String[] parts = line.split("\t", 3);
+            File target = resolve(parts[2]);
+            if ("W".equals(parts[0])) {
+                File file = new File(transactionDir, parts[1]);
+                if (file.exists()) {
+                    target.getParentFile().mkdirs();
+                    move(file, target);
+                }
+            } else
+                FileUtils.deleteQuietly(target);
+            directories.add(target.getParentFile());
+        }
+        syncs.sync(directories);
+        FileUtils.deleteDirectory(transactionDir);
+    }
+
+    /**
+     * Completes the transactions that were committed before a crash and drops the rest, along with interrupted
+     * single file writes. Run it before the workspace is used.
+     *
+     * @return the number of transactions completed
+     */
+    public int recover() throws IOException {
+        File[] entries = journalDir.listFiles();
+        if (entries == null)
+            return 0;
+        Arrays.sort(entries, OLDEST_FIRST);
+        int completed = 0;
+        int dropped = 0;
+        for (File entry: entries) {
+            if (entry.getName().startsWith(TRANSACTION_PREFIX) && new File(entry, COMMIT_FILENAME).exists()) {
+                apply(entry);
+                completed ++;
+            } else {
+                FileUtils.deleteQuietly(entry);
+                dropped ++;
+            }
+        }
+        if (completed > 0 || dropped > 0)
+            logger.warn(LoggingHelper.buildMessage(getClass(), "recover", null, "completed " + completed + " and dropped " + dropped + " interrupted writes in " + journalDir));
+        return completed;
+    }
+
+    public long getSyncBatches() {
+        return syncs.getBatches();
+    }
+
+    public long getSyncRequests() {
+        return syncs.getRequests();
+    }
+
+    /**
+     * Group commit for fsync. The first writer to arrive syncs what is pending. Writers that arrive meanwhile wait and
+     * have their files synced by the next one in line, in a single batch.
+     */
+    static class GroupSync {
+        private Set<File> pending = new LinkedHashSet<File>();
+        private long nextBatch = 1; // the batch new requests join
+        private long completed = 0;
+        private boolean running = false;
+        private long requests = 0;
+        private final Map<Long, IOException> failures = new LinkedHashMap<Long, IOException>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, IOException> eldest) {
+                return size() > 16;
+            }
+        };
+
+        void sync(Collection<File> files) throws IOException {
+            Set<File> batch;
+            long batchId;
+            synchronized (this) {
+                pending.addAll(files);
+                requests ++;
+                long ticket = nextBatch;
+                while (running && completed < ticket) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for fsync");
+                    }
+                }
+                if (completed >= ticket) {
+                    IOException failure = failures.get(ticket);
+                    if (failure != null)
+                        throw new IOException("fsync failed", failure);
+                    return;
+                }
+                running = true;
+                batch = pending;
+                pending = new LinkedHashSet<File>();
+                batchId = nextBatch ++;
+            }
+            IOException failure = null;
+            try {
+                for (File file: batch)
+                    force(file);
+            } catch (IOException e) {
+                failure = e;
+            }
+            synchronized (this) {
+                if (failure != null)
+                    failures.put(batchId, failure);
+                completed = batchId;
+                running = false;
+                notifyAll();
+            }
+            if (failure != null)
+                throw failure;
+        }
+
+        synchronized long getBatches() {
+            return completed;
+        }
+
+        synchronized long getRequests() {
+            return requests;
+        }
+    }
+}
@@ -16,6 +16,7 @@ import org.restcomm.connect.rvd.model.project.Node;
 import org.restcomm.connect.rvd.model.project.ProjectState;
 import org.restcomm.connect.rvd.model.server.ProjectIndex;
 import org.restcomm.connect.rvd.storage.exceptions.ProjectAlreadyExists;
+import org.restcomm.connect.rvd.storage.exceptions.StaleCompiledProject;
 import org.restcomm.connect.rvd.storage.exceptions.StorageEntityNotFound;
 import org.restcomm.connect.rvd.storage.exceptions.StorageException;
 import org.restcomm.connect.rvd.storage.exceptions.WavItemDoesNotExist;
@@ -23,13 +24,19 @@ import org.restcomm.connect.rvd.utils.RvdUtils;
 import org.restcomm.connect.rvd.utils.Zipper;
 import org.restcomm.connect.rvd.utils.exceptions.ZipperException;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
 
 /**
  * @author otsakir@gmail.com - Orestis Tsakiridis
@@ -39,13 +46,21 @@ public class FsProjectDao implements ProjectDao {
     static Logger logger = RvdLoggers.local;
 
     JsonModelStorage storage;
+    final Workspace workspace; // locks, trash and metadata index shared with everything else working on the workspace
+    CompiledProjectCache compiledProjects; // if null, modules are always loaded from .mod files
 
     public FsProjectDao(JsonModelStorage workspaceStorage) {
+        this(workspaceStorage, null);
+    }
+
+    public FsProjectDao(JsonModelStorage workspaceStorage, CompiledProjectCache compiledProjects) {
 //        if (RvdUtils.isEmpty(applicationName)) {
 //            throw new IllegalStateException("Application name is null. Cannot create FsProjectDao");
 //        }
 //        this.applicationName = applicationName;
         this.storage = workspaceStorage;
+        this.workspace = workspaceStorage.getWorkspace();
+        this.compiledProjects = compiledProjects;
     }
 
     @Override
@@ -73,19 +88,189 @@ public class FsProjectDao implements ProjectDao {
 
     @Override
     public void storeProjectOptions(String applicationId, ProjectIndex projectOptions) throws StorageException {
-        storage.storeEntity(projectOptions, ProjectIndex.class, "project", applicationId+"/data");
+        Lock lock = lockProject(applicationId);
+        try {
+            storage.storeEntity(projectOptions, ProjectIndex.class, "project", applicationId+"/data");
+            bumpGeneration(applicationId);
+        } finally {
+            lock.unlock();
+        }
     }
 
 
 
     @Override
     public Node loadNode(String moduleName, String applicationId) throws StorageException {
+        if (compiledProjects != null) {
+            CompiledProject compiled = loadCompiledProject(applicationId);
+            if (compiled != null) {
+                Node node = compiled.loadNode(moduleName);
+                if (node != null)
+                    return node;
+            }
+        }
         return storage.loadEntity(moduleName+".mod", applicationId + "/data", Node.class);
     }
 
     @Override
     public void storeNode(String applicationId, Node node) throws StorageException {
-        storage.storeEntity(node, node.getName()+".mod", applicationId+"/data");
+        Lock lock = lockProject(applicationId);
+        try {
+            storage.storeEntity(node, node.getName()+".mod", applicationId+"/data");
+            bumpGeneration(applicationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes all .mod files along with the project index in a single transaction (see
+     * WorkspaceStorage.storeEntityStrings()) and then the compiled project artifact. The .mod files and the index are
+     * either both from the previous build or both from the new one, even if the process dies half way. The artifact is not part of the transaction. If it's left from the
+     * previous build, its build generation won't match the index and loadCompiledProject() re-creates it.
+     */
+    @Override
+    public void storeBuiltProject(String applicationId, List<Node> nodes, ProjectIndex projectIndex) throws StorageException {
+        Lock lock = lockProject(applicationId);
+        try {
+            long generation = projectIndex.getBuildGeneration() == null ? 0 : projectIndex.getBuildGeneration();
+            List<EntityWrite> entities = new ArrayList<EntityWrite>();
+            for (Node node: nodes)
+                entities.add(new EntityWrite(storage.marshaller.getGson().toJson(node), node.getName() + ".mod", applicationId + "/data"));
+            entities.add(new EntityWrite(storage.marshaller.getGson().toJson(projectIndex, ProjectIndex.class), "project", applicationId + "/data"));
+            storage.storeEntityStrings(entities);
+            writeCompiledProject(applicationId, nodes, generation);
+            bumpGeneration(applicationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the project to a new generation (see GenerationStamp). Called after each change so that nodes sharing
+     * the workspace drop what they have cached for it. The project metadata index is refreshed in the background.
+     */
+    void bumpGeneration(String applicationId) throws StorageException {
+        try {
+            GenerationStamp.bump(workspace, new File(storage.resolveWorkspacePath(applicationId)));
+        } catch (IOException e) {
+            throw new StorageException("Error updating generation stamp of project " + applicationId, e);
+        }
+        ProjectMetadataIndex index = workspace.getMetadataIndex();
+        if (index != null)
+            index.scheduleRefresh(applicationId, storage);
+    }
+
+    // see ProjectLocks
+    Lock lockProject(String applicationId) {
+        return workspace.getLocks().lock(applicationId);
+    }
+
+    void removeFromMetadataIndex(String applicationId) {
+        ProjectMetadataIndex index = workspace.getMetadataIndex();
+        if (index != null)
+            index.remove(applicationId);
+    }
+
+    // for operations that don't report storage errors
+    void bumpGenerationQuietly(String applicationId) {
+        try {
+            bumpGeneration(applicationId);
+        } catch (StorageException e) {
+            logger.log(Level.WARN, LoggingHelper.buildMessage(getClass(), "bumpGeneration", null, e.getMessage()), e);
+        }
+    }
+
+    File compiledProjectFile(String applicationId) {
+        return new File(storage.resolveWorkspacePath(applicationId + "/data") + File.separator + CompiledProject.ENTITY_NAME);
+    }
+
+    /**
+     * Writes the compiled project to a temporary file and moves it in place. Readers that have the old file mapped
+     * keep on using it until they notice it has been replaced.
+     */
+    void writeCompiledProject(String applicationId, List<Node> nodes, long generation) throws StorageException {
+        File file = compiledProjectFile(applicationId);
+        file.getParentFile().mkdirs(); // with the store backend there may be no data directory on the file system
+        File tempFile = null;
+        try {
+            // a file of its own. A build and a rebuild of a stale artifact may be writing at the same time.
+            tempFile = File.createTempFile(CompiledProject.ENTITY_NAME + "-", ".tmp", file.getParentFile());
+            CompiledProject.write(tempFile, nodes, generation, storage.marshaller.getGson());
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(tempFile);
+            throw new StorageException("Error writing compiled project for " + applicationId, e);
+        }
+        if (compiledProjects != null)
+            compiledProjects.evict(file.getPath());
+    }
+
+    /**
+     * Returns the compiled project of an application or null if it can't be used. Artifacts of a different format
+     * version, artifacts whose build generation differs from the project index (left from an earlier build) and
+     * projects built before compiled artifacts existed get their artifact re-created from the .mod files.
+     *
+     * The build generation is checked once each time the artifact file is opened, not on every call.
+     */
+    CompiledProject loadCompiledProject(String applicationId) {
+        File file = compiledProjectFile(applicationId);
+        try {
+            try {
+                CompiledProject compiled = compiledProjects.get(file);
+                if (compiled != null) {
+                    if (isCurrent(compiled, applicationId))
+                        return compiled;
+                    if (logger.isDebugEnabled())
+                        logger.debug(LoggingHelper.buildMessage(FsProjectDao.class,"loadCompiledProject", "[" + applicationId + "]", "compiled project is of build generation " + compiled.getBuildGeneration() + ". Rebuilding it."));
+                }
+                if (!storage.entityExists("project", applicationId + "/data"))
+                    return null; // not built yet
+            } catch (StaleCompiledProject e) {
+                if (logger.isDebugEnabled())
+                    logger.debug(LoggingHelper.buildMessage(FsProjectDao.class,"loadCompiledProject", "[" + applicationId + "]", e.getMessage() + ". Rebuilding it."));
+            }
+            synchronized (compiledProjects) {
+                // some other thread may have got here first
+                try {
+                    CompiledProject compiled = compiledProjects.get(file);
+                    if (compiled != null && isCurrent(compiled, applicationId))
+                        return compiled;
+                } catch (StaleCompiledProject e) {
+                    // rebuild it
+                }
+                rebuildCompiledProject(applicationId);
+            }
+            CompiledProject compiled = compiledProjects.get(file);
+            return compiled != null && isCurrent(compiled, applicationId) ? compiled : null;
+        } catch (StorageException | IOException e) {
+            logger.warn(LoggingHelper.buildMessage(FsProjectDao.class,"loadCompiledProject", "[" + applicationId + "]", "cannot use compiled project. Falling back to .mod files"), e);
+            return null;
+        }
+    }
+
+    // compares the build generation of a freshly opened artifact to the project index
+    boolean isCurrent(CompiledProject compiled, String applicationId) throws StorageException {
+        if (compiled.isCurrent())
+            return true;
+        ProjectIndex index = loadProjectOptions(applicationId);
+        if (index == null)
+            return false;
+        long generation = index.getBuildGeneration() == null ? 0 : index.getBuildGeneration();
+        if (compiled.getBuildGeneration() != generation)
+            return false;
+        compiled.setCurrent();
+        return true;
+    }
+
+    void rebuildCompiledProject(String applicationId) throws StorageException {
+        List<Node> nodes = new ArrayList<Node>();
+        for (String entry: storage.listContents(applicationId + "/data", ".*\\.mod", false)) {
+            nodes.add(storage.loadEntity(entry, applicationId + "/data", Node.class));
+        }
+        ProjectIndex index = loadProjectOptions(applicationId);
+        long generation = (index == null || index.getBuildGeneration() == null) ? 0 : index.getBuildGeneration();
+        writeCompiledProject(applicationId, nodes, generation);
     }
 
     @Override
@@ -118,17 +303,35 @@ public class FsProjectDao implements ProjectDao {
 
     @Override
     public void storeWebTriggerInfo(CallControlInfo webTriggerInfo, String applicationId) throws StorageException {
-        storage.storeEntity(webTriggerInfo, CallControlInfo.class, "cc", applicationId);
+        Lock lock = lockProject(applicationId);
+        try {
+            storage.storeEntity(webTriggerInfo, CallControlInfo.class, "cc", applicationId);
+            bumpGeneration(applicationId);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void removeWebTriggerInfo(String applicationId) {
-        storage.removeEntity("cc", applicationId);
+        Lock lock = lockProject(applicationId);
+        try {
+            storage.removeEntity("cc", applicationId);
+            bumpGenerationQuietly(applicationId);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void storeSettings(ProjectSettings projectSettings, String applicationId) throws StorageException {
-        storage.storeEntity(projectSettings, "settings", applicationId);
+        Lock lock = lockProject(applicationId);
+        try {
+            storage.storeEntity(projectSettings, "settings", applicationId);
+            bumpGeneration(applicationId);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
@@ -136,6 +339,28 @@ public class FsProjectDao implements ProjectDao {
         return storage.loadEntityString("state", applicationId);
     }
 
+    /**
+     * Stores the state and its header in a single transaction. If the state has no header the header entity is
+     * removed first, so that it's never older than the state. Readers fall back to the state while it's missing.
+     */
+    @Override
+    public void updateProjectStateRaw(String applicationId, String state) throws StorageException {
+        Lock lock = lockProject(applicationId);
+        try {
+            JsonElement header = new JsonParser().parse(state).getAsJsonObject().get("header");
+            List<EntityWrite> entities = new ArrayList<EntityWrite>();
+            entities.add(new EntityWrite(state, "state", applicationId));
+            if (header != null)
+                entities.add(new EntityWrite(header.toString(), JsonModelStorage.HEADER_ENTITY_NAME, applicationId));
+            else
+                storage.removeEntity(JsonModelStorage.HEADER_ENTITY_NAME, applicationId);
+            storage.storeEntityStrings(entities);
+            bumpGeneration(applicationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Creates a new project identified by applicationId.
      *
@@ -147,28 +372,34 @@ public class FsProjectDao implements ProjectDao {
      */
     @Override
     public void createProject(String applicationId, ProjectState projectState) throws StorageException {
-        // create the directory hosting the project but oversee any errors in case it already exists (false return value)
-        // we use 'state' file to ensure the project is not overwritten
-        File newProjectDir = new File(storage.resolveWorkspacePath(applicationId));
-        newProjectDir.mkdir();
-
-        File newStateFile = new File(storage.resolveWorkspacePath(applicationId + File.separator + "state" ));
-        // we attempt to create a blank state file in an atomic way
+        Lock lock = lockProject(applicationId);
         try {
-            if ( ! newStateFile.createNewFile() ) {
-                // if already exists throw proper error
-                throw new ProjectAlreadyExists("Project '" + applicationId + "' already exists");
+            // create the directory hosting the project but oversee any errors in case it already exists (false return value)
+            // we use 'state' file to ensure the project is not overwritten
+            File newProjectDir = new File(storage.resolveWorkspacePath(applicationId));
+            newProjectDir.mkdir();
+
+            File newStateFile = new File(storage.resolveWorkspacePath(applicationId + File.separator + "state" ));
+            // we attempt to create a blank state file in an atomic way
+            try {
+                if ( ! newStateFile.createNewFile() ) {
+                    // if already exists throw proper error
+                    throw new ProjectAlreadyExists("Project '" + applicationId + "' already exists");
+                }
+            } catch (IOException e) {
+                throw new StorageException("Error while trying to create state file '" + newStateFile.toString() + "' in an atomic way", e);
             }
-        } catch (IOException e) {
-            throw new StorageException("Error while trying to create state file '" + newStateFile.toString() + "' in an atomic way", e);
-        }
-        // populate the state file accordingly
-        storage.storeEntity(projectState, "state", applicationId);
-        // This project has just been created. Let's build related directories
-        if ("voice".equals(projectState.getHeader().getProjectKind()) ) {
-            String wavsPath = storage.resolveWorkspacePath(applicationId + File.separator + "wavs");
-            File wavsDir = new File(  wavsPath );
-            wavsDir.mkdir();
+            // populate the state file accordingly
+            storeState(applicationId, projectState);
+            // This project has just been created. Let's build related directories
+            if ("voice".equals(projectState.getHeader().getProjectKind()) ) {
+                String wavsPath = storage.resolveWorkspacePath(applicationId + File.separator + "wavs");
+                File wavsDir = new File(  wavsPath );
+                wavsDir.mkdir();
+            }
+            bumpGeneration(applicationId);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -183,40 +414,47 @@ public class FsProjectDao implements ProjectDao {
      */
     @Override
     public void createProjectFromLocation(String applicationId, String sourcePath, String owner) throws StorageException {
-        // load state from remote project (note, sourcePath is absolute)
-        ProjectState projectState = storage.loadEntity("state", sourcePath, ProjectState.class);
-        if (owner != null) {
-            projectState.getHeader().setOwner(owner);
-        }
-        // create the project skeleton and state file
-        createProject(applicationId,projectState);
-        // copy project settings
+        Lock lock = lockProject(applicationId);
         try {
-            ProjectSettings settings = storage.loadEntity("settings", sourcePath, ProjectSettings.class);
-            storeSettings(settings, applicationId);
-        } catch (StorageEntityNotFound e) {
-            // do nothing if the settings are not found
-        }
-        // copy web-trigger information
-        try {
-            CallControlInfo webTriggerInfo = storage.loadEntity("cc", sourcePath, CallControlInfo.class);
-            storage.storeEntity(webTriggerInfo, CallControlInfo.class, "cc", applicationId);
-        } catch (StorageEntityNotFound e) {
-            // do nothing if webTrigger info is not there
-        }
-        // copy parameters
-        try {
-            ProjectParameters parameters = storage.loadEntity("parameters", sourcePath, ProjectParameters.class);
-            storeProjectParameters(applicationId, parameters);
-        } catch (StorageEntityNotFound e) {
-            // do nothing
-        }
-
-        // copy .wav/media resources
-        List<WavItem> wavs = listMedia(new File(sourcePath + File.separator + RvdConfiguration.WAVS_DIRECTORY_NAME));
-        for (WavItem wav: wavs) {
-            String sourceWavPath = sourcePath + File.separator + RvdConfiguration.WAVS_DIRECTORY_NAME;
-            addRawResource(applicationId, RvdConfiguration.WAVS_DIRECTORY_NAME, sourceWavPath, wav.getFilename());
+            // load state from remote project (note, sourcePath is absolute)
+            ProjectState projectState = storage.loadEntity("state", sourcePath, ProjectState.class);
+            if (owner != null) {
+                projectState.getHeader().setOwner(owner);
+            }
+            // create the project skeleton and state file
+            createProject(applicationId,projectState);
+            // copy project settings, web-trigger information and parameters. They are stored together.
+            List<EntityWrite> entities = new ArrayList<EntityWrite>();
+            try {
+                ProjectSettings settings = storage.loadEntity("settings", sourcePath, ProjectSettings.class);
+                entities.add(new EntityWrite(storage.marshaller.getGson().toJson(settings), "settings", applicationId));
+            } catch (StorageEntityNotFound e) {
+                // do nothing if the settings are not found
+            }
+            try {
+                CallControlInfo webTriggerInfo = storage.loadEntity("cc", sourcePath, CallControlInfo.class);
+                entities.add(new EntityWrite(storage.marshaller.getGson().toJson(webTriggerInfo, CallControlInfo.class), "cc", applicationId));
+            } catch (StorageEntityNotFound e) {
+                // do nothing if webTrigger info is not there
+            }
+            try {
+                ProjectParameters parameters = storage.loadEntity("parameters", sourcePath, ProjectParameters.class);
+                entities.add(new EntityWrite(storage.marshaller.getGson().toJson(parameters, ProjectParameters.class), "parameters", applicationId));
+            } catch (StorageEntityNotFound e) {
+                // do nothing
+            }
+            if (!entities.isEmpty())
+                storage.storeEntityStrings(entities);
+            bumpGeneration(applicationId);
+
+            // copy .wav/media resources
+            List<WavItem> wavs = listMedia(new File(sourcePath + File.separator + RvdConfiguration.WAVS_DIRECTORY_NAME));
+            for (WavItem wav: wavs) {
+                String sourceWavPath = sourcePath + File.separator + RvdConfiguration.WAVS_DIRECTORY_NAME;
+                addRawResource(applicationId, RvdConfiguration.WAVS_DIRECTORY_NAME, sourceWavPath, wav.getFilename());
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -254,6 +492,13 @@ public class FsProjectDao implements ProjectDao {
         }
     }
 
+    @Override
+    public File getMediaFile(String projectName, String filename) {
+        if (RvdUtils.isEmpty(filename) || filename.indexOf('/') >= 0 || filename.indexOf(File.separatorChar) >= 0 || ".".equals(filename) || "..".equals(filename))
+            return null;
+        return new File(storage.resolveWorkspacePath(projectName + File.separator + RvdConfiguration.WAVS_DIRECTORY_NAME + File.separator + filename));
+    }
+
     /**
      * Generates a list of media files for a project
      *
@@ -284,27 +529,39 @@ public class FsProjectDao implements ProjectDao {
 
     @Override
     public void storeMediaFromStream(String projectName, String wavname, InputStream wavStream, Integer maxSize) throws StorageException, StreamDoesNotFitInFile {
-        String wavPathname = storage.resolveWorkspacePath(projectName + File.separator +  RvdConfiguration.WAVS_DIRECTORY_NAME + File.separator + wavname);
-        if(logger.isDebugEnabled())
-            logger.log(Level.DEBUG, LoggingHelper.buildMessage(FsProjectDao.class,"storeWav", "writing wav file to {0}", wavPathname));
+        Lock lock = lockProject(projectName);
         try {
-            RvdUtils.streamToFile(wavStream, new File(wavPathname), maxSize);
-        } catch (IOException e) {
-            throw new StorageException("Error writing to " + wavPathname, e);
+            String wavPathname = storage.resolveWorkspacePath(projectName + File.separator +  RvdConfiguration.WAVS_DIRECTORY_NAME + File.separator + wavname);
+            if(logger.isDebugEnabled())
+                logger.log(Level.DEBUG, LoggingHelper.buildMessage(FsProjectDao.class,"storeWav", "writing wav file to {0}", wavPathname));
+            try {
+                RvdUtils.streamToFile(wavStream, new File(wavPathname), maxSize);
+            } catch (IOException e) {
+                throw new StorageException("Error writing to " + wavPathname, e);
+            }
+            bumpGeneration(projectName);
+        } finally {
+            lock.unlock();
         }
     }
 
     @Override
     public void removeMedia(String applicationId, String mediaName) throws WavItemDoesNotExist {
-        String filepath = storage.resolveWorkspacePath(applicationId + File.separator +  RvdConfiguration.WAVS_DIRECTORY_NAME + File.separator + mediaName);
-        File wavfile = new File(filepath);
-        if ( wavfile.delete() ) {
-            if(logger.isDebugEnabled())
-                logger.log(Level.DEBUG, LoggingHelper.buildMessage(FsProjectDao.class,"deleteWav","deleted {0} from {1} app", new Object[] {mediaName, applicationId}));
-        }
-        else {
-            //logger.warn( "Cannot delete " + wavname + " from " + projectName + " app" );
-            throw new WavItemDoesNotExist("Wav file does not exist - " + filepath );
+        Lock lock = lockProject(applicationId);
+        try {
+            String filepath = storage.resolveWorkspacePath(applicationId + File.separator +  RvdConfiguration.WAVS_DIRECTORY_NAME + File.separator + mediaName);
+            File wavfile = new File(filepath);
+            if ( wavfile.delete() ) {
+                if(logger.isDebugEnabled())
+                    logger.log(Level.DEBUG, LoggingHelper.buildMessage(FsProjectDao.class,"deleteWav","deleted {0} from {1} app", new Object[] {mediaName, applicationId}));
+                bumpGenerationQuietly(applicationId);
+            }
+            else {
+                //logger.warn( "Cannot delete " + wavname + " from " + projectName + " app" );
+                throw new WavItemDoesNotExist("Wav file does not exist - " + filepath );
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -320,14 +577,36 @@ public class FsProjectDao implements ProjectDao {
 
     @Override
     public void storeProjectParameters(String applicationId, ProjectParameters parameters) throws StorageException {
-        storage.storeEntity(parameters, ProjectParameters.class, "parameters", applicationId);
+        Lock lock = lockProject(applicationId);
+        try {
+            storage.storeEntity(parameters, ProjectParameters.class, "parameters", applicationId);
+            bumpGeneration(applicationId);
+        } finally {
+            lock.unlock();
+        }
     }
 
+    /**
+     * Moves the project to the trash of the workspace. It's gone at once. Its files are deleted in the background
+     * (see TrashReaper).
+     */
     @Override
     public void removeProject(String applicationId) throws ProjectDoesNotExist, StorageException {
+        Lock lock = lockProject(applicationId);
+        try {
+            trashProjectDirectory(applicationId);
+            if (compiledProjects != null)
+                compiledProjects.evict(compiledProjectFile(applicationId).getPath());
+            removeFromMetadataIndex(applicationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void trashProjectDirectory(String applicationId) throws StorageException {
         try {
-            File projectDir = new File( storage.resolveWorkspacePath(applicationId));
-            FileUtils.deleteDirectory(projectDir);
+            workspace.getTrash().trash(new File(storage.resolveWorkspacePath(applicationId)), applicationId);
+            WorkspaceLayout.forWorkspace(workspace.getDir()).removeForwardingLink(applicationId); // would point to nothing
         } catch (IOException e) {
             throw new StorageException("Error removing directory '" + applicationId + "'", e);
         }
@@ -335,13 +614,33 @@ public class FsProjectDao implements ProjectDao {
 
     @Override
     public void updateProjectState(String applicationId, ProjectState state) throws StorageException {
-        storage.storeEntity(state, "state", applicationId);
+        Lock lock = lockProject(applicationId);
+        try {
+            storeState(applicationId, state);
+            bumpGeneration(applicationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores the project state along with a copy of its header (see JsonModelStorage.HEADER_ENTITY_NAME) in a single
+     * transaction.
+     */
+    void storeState(String applicationId, ProjectState state) throws StorageException {
+        List<EntityWrite> entities = new ArrayList<EntityWrite>();
+        entities.add(new EntityWrite(storage.marshaller.getGson().toJson(state), "state", applicationId));
+        entities.add(new EntityWrite(storage.marshaller.getGson().toJson(state.getHeader()), JsonModelStorage.HEADER_ENTITY_NAME, applicationId));
+        storage.storeEntityStrings(entities);
     }
 
 
     @Override
     public InputStream archiveProject(String projectName) throws StorageException {
-        String path = storage.resolveWorkspacePath(projectName);
+        return archiveDirectory(storage.resolveWorkspacePath(projectName), projectName);
+    }
+
+    InputStream archiveDirectory(String path, String projectName) throws StorageException {
         File tempFile;
         try {
             tempFile = File.createTempFile("RVDprojectArchive",".zip");
@@ -351,7 +650,14 @@ public class FsProjectDao implements ProjectDao {
 
         InputStream archiveStream;
         try {
-            Zipper zipper = new Zipper(tempFile);
+            final EntityCompression compression = workspace.getCompression();
+            Zipper zipper = new Zipper(tempFile) {
+                @Override
+                protected InputStream openFile(File file) throws IOException {
+                    // archives are portable. Entities go in plain.
+                    return compression.decode(super.openFile(file));
+                }
+            };
             zipper.addDirectoryRecursively(path, false);
             zipper.finish();
 
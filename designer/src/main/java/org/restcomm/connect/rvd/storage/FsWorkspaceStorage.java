@@ -1,6 +1,7 @@
 package org.restcomm.connect.rvd.storage;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.restcomm.connect.rvd.storage.exceptions.StorageEntityNotFound;
 import org.restcomm.connect.rvd.storage.exceptions.StorageException;
 import org.restcomm.connect.rvd.utils.RvdUtils;
@@ -24,16 +25,25 @@ import java.util.regex.Pattern;
 public class FsWorkspaceStorage implements WorkspaceStorage {
 
     String rootPath; // path of the .../workspace directory (trailing slash NOT included
+    final Workspace workspace;
+    final WorkspaceLayout layout;
+    final EntityCompression compression;
 
+    public FsWorkspaceStorage(Workspace workspace) {
+        this.rootPath = workspace.getDir().getPath();
+        this.workspace = workspace;
+        this.layout = WorkspaceLayout.forWorkspace(workspace.getDir());
+        this.compression = workspace.getCompression();
+    }
+
+    // for a workspace nothing else works on, i.e. in tests or for a project being imported
     public FsWorkspaceStorage(String rootPath) {
-        this.rootPath = rootPath;
+        this(new Workspace(new File(rootPath)));
     }
 
     @Override
     public boolean entityExists(String entityName, String relativePath) {
-        if ( !relativePath.startsWith( "/") )
-            relativePath = File.separator + relativePath;
-        String pathname = rootPath + relativePath + File.separator + entityName;
+        String pathname = resolveWorkspacePath(relativePath) + File.separator + entityName;
         File file = new File(pathname);
         return file.exists();
     }
@@ -49,22 +59,28 @@ public class FsWorkspaceStorage implements WorkspaceStorage {
      */
     @Override
     public List<String> listContents(String path, String regexNameFilter, final boolean onlyDirectories) throws StorageException {
-        File parentDir;
-        if ( path.startsWith( "/") )
-            parentDir = new File(path);
-        else
-            parentDir = new File(rootPath + File.separator + path);
+        File parentDir = new File(resolveWorkspacePath(path));
 
         final Pattern pattern = Pattern.compile(regexNameFilter);
         if (parentDir.exists()) {
-            File[] entries = parentDir.listFiles(new FileFilter() {
+            FileFilter filter = new FileFilter() {
                 @Override
                 public boolean accept(File anyfile) {
                     if ( pattern.matcher(anyfile.getName()).matches()  && (!onlyDirectories || (onlyDirectories && anyfile.isDirectory())))
                         return true;
                     return false;
                 }
-            });
+            };
+            File[] entries;
+            if (!path.startsWith("/") && layout.isRoot(path) && layout.isSharded()) {
+                // projects in shards are listed as if they were at the root
+                List<File> accepted = new ArrayList<File>();
+                for (File entry: layout.listRoot())
+                    if (filter.accept(entry))
+                        accepted.add(entry);
+                entries = accepted.toArray(new File[accepted.size()]);
+            } else
+                entries = parentDir.listFiles(filter);
             // sort results by modification date
             Arrays.sort(entries, new Comparator<File>() {
                 public int compare(File f1, File f2) {
@@ -86,8 +102,7 @@ public class FsWorkspaceStorage implements WorkspaceStorage {
     @Override
     public void removeEntity(String entityName, String entityPath) {
         // convert relative paths to absolute
-        if ( ! entityPath.startsWith( "/") )
-            entityPath = rootPath + File.separator + entityPath;
+        entityPath = resolveWorkspacePath(entityPath);
         String pathname = entityPath + File.separator + entityName;
 
         File file = new File(pathname);
@@ -97,43 +112,63 @@ public class FsWorkspaceStorage implements WorkspaceStorage {
     @Override
     public String loadEntityString(String entityName, String entityPath) throws StorageException {
         // convert relative paths to absolute
-        if ( ! entityPath.startsWith( "/") )
-            entityPath = rootPath + File.separator + entityPath;
+        entityPath = resolveWorkspacePath(entityPath);
         String pathname = entityPath + File.separator + entityName;
 
         File file = new File(pathname);
         if ( !file.exists() )
             throw new StorageEntityNotFound("File " + file.getPath() + " does not exist");
 
-        String data;
         try {
-            data = FileUtils.readFileToString(file, Charset.forName("UTF-8"));
-            return data;
+            // entities may be compressed (see EntityCompression)
+            return new String(compression.decode(FileUtils.readFileToByteArray(file)), Charset.forName("UTF-8"));
         } catch (IOException e) {
             throw new StorageException("Error loading file " + file.getPath(), e);
         }
     }
 
+    /**
+     * Writes the entity atomically. A crash leaves either the old or the new content in place (see FsJournal). It is
+     * compressed if its type is selected for compression.
+     */
     @Override
     public void storeEntityString(String entityString, String entityName, String entityPath) throws StorageException {
+        byte[] data = compression.encode(entityString.getBytes(Charset.forName("UTF-8")), StorageEntityType.of(entityName, entityPath));
         // convert relative paths to absolute
-        if ( ! entityPath.startsWith( "/") )
-            entityPath = rootPath + File.separator + entityPath;
+        entityPath = resolveWorkspacePath(entityPath);
         String pathname = entityPath + File.separator + entityName;
 
         File file = new File(pathname);
         try {
-            FileUtils.writeStringToFile(file, entityString, "UTF-8");
+            workspace.getJournal().write(file, data);
         } catch (IOException e) {
             throw new StorageException("Error creating file in storage: " + file, e);
         }
     }
 
+    /**
+     * Stores the entities through the workspace journal (see FsJournal). Uncompleted groups are rolled forward or
+     * dropped on startup.
+     */
+    @Override
+    public void storeEntityStrings(List<EntityWrite> entities) throws StorageException {
+        FsJournal.Transaction transaction = workspace.getJournal().begin();
+        for (EntityWrite entity: entities) {
+            File file = new File(resolveWorkspacePath(entity.entityPath) + File.separator + entity.entityName);
+            byte[] data = entity.data.getBytes(Charset.forName("UTF-8"));
+            transaction.write(file, compression.encode(data, StorageEntityType.of(entity.entityName, entity.entityPath)));
+        }
+        try {
+            transaction.commit();
+        } catch (IOException e) {
+            throw new StorageException("Error storing " + entities.size() + " entities", e);
+        }
+    }
+
     @Override
     public void storeBinaryFile(File sourceFile, String entityName, String entityPath) throws StorageException {
         // convert relative paths to absolute
-        if ( ! entityPath.startsWith( "/") )
-            entityPath = rootPath + File.separator + entityPath;
+        entityPath = resolveWorkspacePath(entityPath);
         String pathname = entityPath + File.separator + entityName;
 
         //File destFile = new File(getProjectBasePath(projectName) + File.separator + RvdConfiguration.PACKAGING_DIRECTORY_NAME + File.separator + "app.zip");
@@ -149,8 +184,7 @@ public class FsWorkspaceStorage implements WorkspaceStorage {
     @Override
     public InputStream loadBinaryFile(String projectName, String entityName, String entityPath) throws FileNotFoundException {
         // convert relative paths to absolute
-        if ( ! entityPath.startsWith( "/") )
-            entityPath = rootPath + File.separator + entityPath;
+        entityPath = resolveWorkspacePath(entityPath);
         String pathname = entityPath + File.separator + entityName;
 
         File packageFile = new File( pathname );
@@ -159,18 +193,27 @@ public class FsWorkspaceStorage implements WorkspaceStorage {
 
     @Override
     public InputStream loadStream(String entityName, String entityPath) throws StorageException {
+        StorageEntityType type = StorageEntityType.of(entityName, entityPath);
         // convert relative paths to absolute
-        if ( ! entityPath.startsWith( "/") )
-            entityPath = rootPath + File.separator + entityPath;
+        entityPath = resolveWorkspacePath(entityPath);
 
         String pathname = entityPath + File.separator + entityName;
 
         File file = new File(pathname);
+        InputStream stream;
         try {
-            return new FileInputStream(file);
+            stream = new FileInputStream(file);
         } catch (FileNotFoundException e) {
             throw new StorageEntityNotFound("File " + file.getPath() + " does not exist");
         }
+        if (!EntityCompression.COMPRESSIBLE_TYPES.contains(type))
+            return stream; // media are never compressed
+        try {
+            return compression.decode(stream);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(stream);
+            throw new StorageException("Error loading file " + file.getPath(), e);
+        }
     }
 
     /**
@@ -203,13 +246,18 @@ public class FsWorkspaceStorage implements WorkspaceStorage {
     public String resolveWorkspacePath(String path) {
         if (path == null)
             return null;
-        // if this is a relative path append workspace root
+        // if this is a relative path append workspace root. Projects may be in a shard.
         if ( ! path.startsWith( "/") ) {
             if ( path.isEmpty() )
                 path = rootPath;
             else
-                path = rootPath + File.separator + path;
+                path = layout.resolve(path);
         }
         return path;
     }
+
+    @Override
+    public Workspace getWorkspace() {
+        return workspace;
+    }
 }
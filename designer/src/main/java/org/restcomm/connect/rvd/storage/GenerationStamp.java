@@ -0,0 +1,87 @@
+package org.restcomm.connect.rvd.storage;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.UUID;
+
+/**
+ * The generation of a project as kept in its stamp file (.generation in the project directory). Every change to the
+ * project bumps it so nodes sharing the workspace can tell whether what they have cached is still current.
+ *
+ * The stamp is a counter followed by a random token. Two nodes bumping the same generation at the same time still
+ * produce different stamps so a change is never missed.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class GenerationStamp {
+
+    public static final String FILENAME = ".generation"; // hidden from project listings and archives
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final long generation;
+    private final String token;
+
+    GenerationStamp(long generation, String token) {
+        this.generation = generation;
+        this.token = token;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public static File file(File projectDir) {
+        return new File(projectDir, FILENAME);
+    }
+
+    /**
+     * Returns the stamp of the project or null if it has none yet.
+     */
+    public static GenerationStamp read(File projectDir) throws IOException {
+        String data;
+        try {
+            data = FileUtils.readFileToString(file(projectDir), UTF8).trim();
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        int separator = data.indexOf(' ');
+        try {
+            return new GenerationStamp(Long.parseLong(separator < 0 ? data : data.substring(0, separator)), separator < 0 ? "" : data.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return new GenerationStamp(0, data); // damaged. It is still different from what comes next.
+        }
+    }
+
+    /**
+     * Moves the project to a new generation. The stamp file is replaced atomically.
+     */
+    public static GenerationStamp bump(Workspace workspace, File projectDir) throws IOException {
+        GenerationStamp current = read(projectDir);
+        GenerationStamp next = new GenerationStamp(current == null ? 1 : current.generation + 1, UUID.randomUUID().toString());
+        workspace.getJournal().write(file(projectDir), next.toString().getBytes(UTF8));
+        ProjectSnapshotCache.changedLocally(projectDir);
+        return next;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GenerationStamp that = (GenerationStamp) o;
+        return generation == that.generation && token.equals(that.token);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (int) (generation ^ (generation >>> 32)) + token.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return generation + " " + token;
+    }
+}
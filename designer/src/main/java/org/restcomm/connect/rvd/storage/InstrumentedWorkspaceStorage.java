@@ -0,0 +1,258 @@
+package org.restcomm.connect.rvd.storage;
+
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Decorates a WorkspaceStorage counting operations, bytes and time spent by entity type. Totals go to StorageStats
+ * and, if the current thread is processing a request, to its RequestStorageIo too.
+ *
+ * For streams (i.e. wavs) the time to open them is accounted. Bytes are counted as they are read. Media served by
+ * MediaResponses don't go through a WorkspaceStorage and are accounted with recordRead() instead.
+ *
+ * Use wrap() to decorate a storage only when instrumentation is enabled.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class InstrumentedWorkspaceStorage implements WorkspaceStorage {
+
+    private final WorkspaceStorage storage;
+    private final StorageStats stats;
+
+    public InstrumentedWorkspaceStorage(WorkspaceStorage storage, StorageStats stats) {
+        this.storage = storage;
+        this.stats = stats;
+    }
+
+    /**
+     * @param stats where to record I/O. If null instrumentation is disabled and storage is returned as is.
+     */
+    public static WorkspaceStorage wrap(WorkspaceStorage storage, StorageStats stats) {
+        return stats == null ? storage : new InstrumentedWorkspaceStorage(storage, stats);
+    }
+
+    @Override
+    public boolean entityExists(String entityName, String relativePath) {
+        long started = System.nanoTime();
+        try {
+            return storage.entityExists(entityName, relativePath);
+        } finally {
+            StorageStats.EntityStats entity = record(StorageEntityType.of(entityName, relativePath), started, 0, 0);
+            entity.lookups.incrementAndGet();
+        }
+    }
+
+    @Override
+    public List<String> listContents(String path, String regexNameFilter, boolean onlyDirectories) throws StorageException {
+        long started = System.nanoTime();
+        try {
+            return storage.listContents(path, regexNameFilter, onlyDirectories);
+        } finally {
+            StorageStats.EntityStats entity = record(StorageEntityType.of(regexNameFilter, path), started, 0, 0);
+            entity.lookups.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void removeEntity(String entityName, String entityPath) {
+        long started = System.nanoTime();
+        try {
+            storage.removeEntity(entityName, entityPath);
+        } finally {
+            StorageStats.EntityStats entity = record(StorageEntityType.of(entityName, entityPath), started, 0, 0);
+            entity.removals.incrementAndGet();
+        }
+    }
+
+    @Override
+    public String loadEntityString(String entityName, String entityPath) throws StorageException {
+        long started = System.nanoTime();
+        String data = null;
+        try {
+            data = storage.loadEntityString(entityName, entityPath);
+            return data;
+        } finally {
+            long bytes = data == null ? 0 : utf8Length(data);
+            StorageStats.EntityStats entity = record(StorageEntityType.of(entityName, entityPath), started, bytes, 0);
+            entity.reads.incrementAndGet();
+            entity.bytesRead.addAndGet(bytes);
+        }
+    }
+
+    @Override
+    public void storeEntityString(String entityString, String entityName, String entityPath) throws StorageException {
+        long started = System.nanoTime();
+        try {
+            storage.storeEntityString(entityString, entityName, entityPath);
+        } finally {
+            long bytes = entityString == null ? 0 : utf8Length(entityString);
+            StorageStats.EntityStats entity = record(StorageEntityType.of(entityName, entityPath), started, 0, bytes);
+            entity.writes.incrementAndGet();
+            entity.bytesWritten.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * Accounts a write for each entity. The time the group took is shared evenly among them.
+     */
+    @Override
+    public void storeEntityStrings(List<EntityWrite> entities) throws StorageException {
+        long started = System.nanoTime();
+        try {
+            storage.storeEntityStrings(entities);
+        } finally {
+            long share = entities.isEmpty() ? 0 : (System.nanoTime() - started) / entities.size();
+            for (EntityWrite entity: entities) {
+                long bytes = entity.data == null ? 0 : utf8Length(entity.data);
+                StorageStats.EntityStats stats = recordElapsed(StorageEntityType.of(entity.entityName, entity.entityPath), share, 0, bytes);
+                stats.writes.incrementAndGet();
+                stats.bytesWritten.addAndGet(bytes);
+            }
+        }
+    }
+
+    @Override
+    public void storeBinaryFile(File sourceFile, String entityName, String entityPath) throws StorageException {
+        long bytes = sourceFile.length(); // the source file is removed once stored
+        long started = System.nanoTime();
+        try {
+            storage.storeBinaryFile(sourceFile, entityName, entityPath);
+        } finally {
+            StorageStats.EntityStats entity = record(StorageEntityType.of(entityName, entityPath), started, 0, bytes);
+            entity.writes.incrementAndGet();
+            entity.bytesWritten.addAndGet(bytes);
+        }
+    }
+
+    @Override
+    public InputStream loadBinaryFile(String projectName, String entityName, String entityPath) throws FileNotFoundException {
+        long started = System.nanoTime();
+        InputStream stream = null;
+        try {
+            stream = storage.loadBinaryFile(projectName, entityName, entityPath);
+        } finally {
+            stream = countReads(stream, StorageEntityType.of(entityName, entityPath), started);
+        }
+        return stream;
+    }
+
+    @Override
+    public InputStream loadStream(String entityName, String entityPath) throws StorageException {
+        long started = System.nanoTime();
+        InputStream stream = null;
+        try {
+            stream = storage.loadStream(entityName, entityPath);
+        } finally {
+            stream = countReads(stream, StorageEntityType.of(entityName, entityPath), started);
+        }
+        return stream;
+    }
+
+    @Override
+    public void copyDirToWorkspace(String sourcePath, String workspaceParentPath) throws StorageException {
+        long started = System.nanoTime();
+        try {
+            storage.copyDirToWorkspace(sourcePath, workspaceParentPath);
+        } finally {
+            StorageStats.EntityStats entity = record(StorageEntityType.other, started, 0, 0);
+            entity.writes.incrementAndGet();
+        }
+    }
+
+    @Override
+    public String resolveWorkspacePath(String path) {
+        return storage.resolveWorkspacePath(path);
+    }
+
+    @Override
+    public Workspace getWorkspace() {
+        return storage.getWorkspace();
+    }
+
+    /**
+     * Accounts a read that did not go through a WorkspaceStorage, i.e. a media file sent straight from disk (see
+     * MediaResponses).
+     *
+     * @param nanos time spent reading, or -1 if it's not known because the container sent the file itself. No latency
+     *              is recorded then.
+     */
+    public static void recordRead(StorageStats stats, StorageEntityType type, long nanos, long bytes) {
+        StorageStats.EntityStats entity = stats.entity(type);
+        if (nanos >= 0)
+            entity.latency.recordNanos(nanos);
+        entity.reads.incrementAndGet();
+        entity.bytesRead.addAndGet(bytes);
+        RequestStorageIo io = RequestStorageIo.current();
+        if (io != null)
+            io.record(type, Math.max(0, nanos), bytes, 0);
+    }
+
+    private StorageStats.EntityStats record(StorageEntityType type, long started, long bytesRead, long bytesWritten) {
+        return recordElapsed(type, System.nanoTime() - started, bytesRead, bytesWritten);
+    }
+
+    private StorageStats.EntityStats recordElapsed(StorageEntityType type, long elapsed, long bytesRead, long bytesWritten) {
+        StorageStats.EntityStats entity = stats.entity(type);
+        entity.latency.recordNanos(elapsed);
+        RequestStorageIo io = RequestStorageIo.current();
+        if (io != null)
+            io.record(type, elapsed, bytesRead, bytesWritten);
+        return entity;
+    }
+
+    // accounts the read and returns a stream that counts the bytes read through it. Null streams are returned as is.
+    private InputStream countReads(InputStream stream, StorageEntityType type, long started) {
+        final StorageStats.EntityStats entity = record(type, started, 0, 0);
+        entity.reads.incrementAndGet();
+        if (stream == null)
+            return null;
+        final RequestStorageIo io = RequestStorageIo.current();
+        return new FilterInputStream(stream) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0)
+                    count(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int count = super.read(b, off, len);
+                if (count > 0)
+                    count(count);
+                return count;
+            }
+
+            private void count(long bytes) {
+                entity.bytesRead.addAndGet(bytes);
+                if (io != null && io == RequestStorageIo.current())
+                    io.addBytesRead(bytes);
+            }
+        };
+    }
+
+    // number of bytes the string takes when encoded in UTF-8, without encoding it
+    static long utf8Length(String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80)
+                length ++;
+            else if (c < 0x800)
+                length += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i ++;
+            } else
+                length += 3;
+        }
+        return length;
+    }
+}
@@ -1,17 +1,24 @@
 package org.restcomm.connect.rvd.storage;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import org.apache.commons.io.IOUtils;
 import org.restcomm.connect.rvd.model.ModelMarshaller;
 import org.restcomm.connect.rvd.model.project.StateHeader;
 import org.restcomm.connect.rvd.storage.exceptions.BadProjectHeader;
+import org.restcomm.connect.rvd.storage.exceptions.StorageEntityNotFound;
 import org.restcomm.connect.rvd.storage.exceptions.StorageException;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.util.List;
 
 
@@ -22,6 +29,12 @@ import java.util.List;
  */
 public class JsonModelStorage implements WorkspaceStorage {
 
+    /**
+     * A copy of the 'header' of the project state kept next to it, so that reading it does not mean reading the whole
+     * state. It is written in the same transaction as the state. See FsProjectDao.storeState().
+     */
+    public static final String HEADER_ENTITY_NAME = "header";
+
     WorkspaceStorage workspaceStorage;
     ModelMarshaller marshaller;
 
@@ -41,22 +54,53 @@ public class JsonModelStorage implements WorkspaceStorage {
         }
     }
 
+    /**
+     * Returns the header of a project. The header entity is used if it's there. Otherwise the state is read up to
+     * the end of its header.
+     */
     public StateHeader loadStateHeader(String projectName) throws StorageException {
-        String stateData = workspaceStorage.loadEntityString("state", projectName);
-        JsonParser parser = new JsonParser();
-        JsonElement header_element = null;
         try {
-            header_element = parser.parse(stateData).getAsJsonObject().get("header");
+            String headerData = workspaceStorage.loadEntityString(HEADER_ENTITY_NAME, projectName);
+            StateHeader header = new Gson().fromJson(headerData, StateHeader.class);
+            if (header != null)
+                return header;
+        } catch (StorageEntityNotFound e) {
+            // the project was last written by an older version
         } catch (JsonSyntaxException e) {
-            throw new StorageException("Error loading header for project '" + projectName +"'",e);
+            // damaged. The state has it too.
+        }
+        InputStream stream = workspaceStorage.loadStream("state", projectName);
+        try {
+            return readStateHeader(new InputStreamReader(stream, Charset.forName("UTF-8")), projectName);
+        } finally {
+            IOUtils.closeQuietly(stream);
         }
-        if ( header_element == null )
-            throw new BadProjectHeader("No header found. This is probably an old project");
+    }
 
-        Gson gson = new Gson();
-        StateHeader header = gson.fromJson(header_element, StateHeader.class);
+    /**
+     * Extracts the header out of the raw project state.
+     */
+    public StateHeader parseStateHeader(String stateData, String projectName) throws StorageException {
+        return readStateHeader(new StringReader(stateData), projectName);
+    }
 
-        return header;
+    /**
+     * Reads project state json up to the end of the 'header' property and returns it. Properties before it are
+     * skipped without being parsed into objects and whatever follows is not read at all.
+     */
+    public static StateHeader readStateHeader(Reader reader, String projectName) throws StorageException {
+        JsonReader jsonReader = new JsonReader(reader);
+        try {
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                if ("header".equals(jsonReader.nextName()))
+                    return new Gson().fromJson(jsonReader, StateHeader.class);
+                jsonReader.skipValue();
+            }
+        } catch (IOException | IllegalStateException | JsonParseException e) {
+            throw new StorageException("Error loading header for project '" + projectName +"'",e);
+        }
+        throw new BadProjectHeader("No header found. This is probably an old project");
     }
 
     public void storeEntity(Object entity, Class<?> entityClass, String entityName, String entityPath ) throws StorageException {
@@ -94,6 +138,11 @@ public class JsonModelStorage implements WorkspaceStorage {
         workspaceStorage.storeEntityString(entityString, entityName, entityPath);
     }
 
+    @Override
+    public void storeEntityStrings(List<EntityWrite> entities) throws StorageException {
+        workspaceStorage.storeEntityStrings(entities);
+    }
+
     @Override
     public void storeBinaryFile(File sourceFile, String entityName, String entityPath) throws StorageException {
         workspaceStorage.storeBinaryFile(sourceFile, entityName, entityPath);
@@ -118,4 +167,9 @@ public class JsonModelStorage implements WorkspaceStorage {
     public String resolveWorkspacePath(String path) {
         return workspaceStorage.resolveWorkspacePath(path);
     }
+
+    @Override
+    public Workspace getWorkspace() {
+        return workspaceStorage.getWorkspace();
+    }
 }
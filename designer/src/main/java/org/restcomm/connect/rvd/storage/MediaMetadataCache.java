@@ -0,0 +1,143 @@
+package org.restcomm.connect.rvd.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps size, modification time and ETag of the media files served to Restcomm so that fetching a prompt does not
+ * hit the file system for its attributes every time. An entry is trusted for REVALIDATION_MILLIS and its file
+ * attributes are looked up again after that. Files replaced or removed through this node are evicted right away.
+ *
+ * Holds up to maxEntries files, least recently used ones are dropped beyond that. Lives in ApplicationContext.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class MediaMetadataCache {
+
+    static final long REVALIDATION_MILLIS = 2000; // changes by other nodes sharing the workspace show up after that
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    public static class Metadata {
+        private final long length;
+        private final long lastModified; // epoch millis
+        private final String etag;
+        private final long checked; // when the file attributes were looked up
+
+        Metadata(long length, long lastModified, long checked) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+            this.checked = checked;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return the entity tag of the file, quoted. It changes whenever the file is modified.
+         */
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    private final Map<String, Metadata> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+
+    public MediaMetadataCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public MediaMetadataCache(final int maxEntries) {
+        this.entries = new LinkedHashMap<String, Metadata>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Metadata> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the metadata of a media file or null if there is no such (regular) file.
+     */
+    public Metadata get(File file) throws IOException {
+        return get(file, System.currentTimeMillis());
+    }
+
+    Metadata get(File file, long now) throws IOException {
+        String key = file.getPath();
+        Metadata cached;
+        synchronized (entries) {
+            cached = entries.get(key);
+        }
+        if (cached != null && now - cached.checked < REVALIDATION_MILLIS) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        return load(file, now);
+    }
+
+    /**
+     * Looks the file up even if its metadata is cached, and caches what is found. Use it when the file is about to be
+     * handed over to something that trusts the length, i.e. the container's sendfile.
+     */
+    public Metadata getFresh(File file) throws IOException {
+        return load(file, System.currentTimeMillis());
+    }
+
+    private Metadata load(File file, long now) throws IOException {
+        String key = file.getPath();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            evict(file);
+            return null;
+        }
+        loads.incrementAndGet();
+        if (!attributes.isRegularFile()) {
+            evict(file);
+            return null;
+        }
+        Metadata metadata = new Metadata(attributes.size(), attributes.lastModifiedTime().toMillis(), now);
+        synchronized (entries) {
+            entries.put(key, metadata);
+        }
+        return metadata;
+    }
+
+    /**
+     * Drops what's known about a file. Call it when the file is written or removed.
+     */
+    public void evict(File file) {
+        synchronized (entries) {
+            entries.remove(file.getPath());
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getLoads() {
+        return loads.get();
+    }
+}
@@ -12,6 +12,7 @@ import org.restcomm.connect.rvd.model.server.ProjectIndex;
 import org.restcomm.connect.rvd.storage.exceptions.StorageException;
 import org.restcomm.connect.rvd.storage.exceptions.WavItemDoesNotExist;
 
+import java.io.File;
 import java.io.InputStream;
 import java.util.List;
 
@@ -51,6 +52,14 @@ public interface ProjectDao {
 
     String loadProjectStateRaw(String applicationId) throws StorageException;
 
+    /**
+     * Stores the project state as given, i.e. after a project upgrade, along with a copy of its header.
+     *
+     * @param state the project state as a JSON string
+     * @throws StorageException
+     */
+    void updateProjectStateRaw(String applicationId, String state) throws StorageException;
+
     InputStream archiveProject(String projectName) throws StorageException;
 
     /**
@@ -78,6 +87,16 @@ public interface ProjectDao {
      */
     void storeNode(String applicationId, Node node) throws StorageException;
 
+    /**
+     * Stores the output of a build i.e. all built modules and the project index. The index is stored last.
+     *
+     * @param applicationId
+     * @param nodes built modules
+     * @param projectIndex
+     * @throws StorageException
+     */
+    void storeBuiltProject(String applicationId, List<Node> nodes, ProjectIndex projectIndex) throws StorageException;
+
     /**
      * Returns current project's bootstrap information as a JSON string. If it does not exist it returns null.
      *
@@ -107,6 +126,14 @@ public interface ProjectDao {
 
     InputStream getMediaAsStream(String projectName, String filename) throws StorageException;
 
+    /**
+     * Returns where a media file of a project is kept. Media always live on the file system whatever the workspace
+     * backend is. The file may not exist.
+     *
+     * @return the file or null if filename is not a plain file name (i.e. it points outside the media directory)
+     */
+    File getMediaFile(String projectName, String filename);
+
     void storeMediaFromStream(String projectName, String wavname, InputStream wavStream, Integer maxSize) throws StorageException, StreamDoesNotFitInFile;
 
     List<WavItem> listMedia(String applicationId) throws StorageException;
@@ -0,0 +1,49 @@
+package org.restcomm.connect.rvd.storage;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializes changes to a project within this process. The dao holds the lock of a project while writing to it,
+ * WorkspaceBackup while restoring it and ShardMigrator while moving it to its shard, so that none of these interleave.
+ * Readers don't take it.
+ *
+ * Locks are striped by project name. Projects sharing a stripe wait for each other, which is harmless given how
+ * short writes are, and the number of locks stays fixed however many projects there are. Locks are reentrant.
+ *
+ * There is one set of locks per workspace directory (see Workspace).
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class ProjectLocks {
+
+    static final int STRIPES = 64;
+
+    private final Lock[] stripes = new Lock[STRIPES];
+
+    ProjectLocks() {
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new ReentrantLock();
+    }
+
+    /**
+     * Returns the lock of a project. Unlock it in a finally block.
+     */
+    public Lock lock(String projectName) {
+        Lock lock = stripeOf(projectName);
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * Returns the lock of a project if it's free, null if someone else holds it.
+     */
+    public Lock tryLock(String projectName) {
+        Lock lock = stripeOf(projectName);
+        return lock.tryLock() ? lock : null;
+    }
+
+    private Lock stripeOf(String projectName) {
+        return stripes[(projectName.hashCode() & 0x7fffffff) % STRIPES];
+    }
+}
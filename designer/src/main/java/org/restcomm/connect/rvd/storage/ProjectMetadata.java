@@ -0,0 +1,63 @@
+package org.restcomm.connect.rvd.storage;
+
+/**
+ * What ProjectMetadataIndex knows about a project. Serialized as is in the index files and in admin API responses.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class ProjectMetadata {
+
+    String name;
+    String owner;
+    String kind;
+    String version; // null for projects without a header
+    long size; // bytes under the project directory
+    long lastModified;
+    Long lastBuilt; // null if never built
+    String contentHash; // SHA-1 of the project state
+    long generation; // see GenerationStamp
+    String stamp;
+
+    public ProjectMetadata() {
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public Long getLastBuilt() {
+        return lastBuilt;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public String getStamp() {
+        return stamp;
+    }
+}
@@ -0,0 +1,573 @@
+package org.restcomm.connect.rvd.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+import org.restcomm.connect.rvd.model.project.StateHeader;
+import org.restcomm.connect.rvd.storage.exceptions.BadProjectHeader;
+import org.restcomm.connect.rvd.storage.exceptions.StorageEntityNotFound;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps owner, kind, version, size, timestamps and a content hash of every project of the workspace so that they can
+ * be queried without opening each project's state.
+ *
+ * The index lives in memory and is persisted under @index in the workspace. projects.jsonl holds a snapshot of all
+ * entries and changes.jsonl the entries updated since, both as JSON lines. The changes are folded into the snapshot
+ * every COMPACT_THRESHOLD updates and when the index is closed. A changes file found when opening means RVD was not
+ * shut down cleanly. Entries are then checked against the generation stamps of the projects (see GenerationStamp) and
+ * the stale ones are refreshed. A missing or damaged snapshot is rebuilt from the projects themselves.
+ *
+ * The dao asks for the entry of a project to be refreshed after every change (see FsProjectDao.bumpGeneration()) as
+ * long as the index of its workspace is open. Reading a project means hashing its state and walking its directory, so
+ * this is done on a background thread. Requests for a project that is already waiting to be refreshed are dropped and
+ * a burst of writes costs a single read. Changes made by other nodes sharing the workspace show up after verify().
+ *
+ * Lives in ApplicationContext.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class ProjectMetadataIndex {
+
+    static final Logger logger = RvdLoggers.global;
+
+    public static final String DIRECTORY_NAME = "@index";
+    static final String SNAPSHOT_FILENAME = "projects.jsonl";
+    static final String CHANGES_FILENAME = "changes.jsonl";
+    static final int COMPACT_THRESHOLD = 1000;
+    public static final int MAX_PAGE_SIZE = 500;
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Gson gson = new Gson();
+
+    // a line of the changes file. Either an updated entry or the name of a removed project.
+    static class Change {
+        ProjectMetadata put;
+        String removed;
+    }
+
+    public static class Filter {
+        final String owner;
+        final String kind;
+        final String version;
+
+        public Filter(String owner, String kind, String version) {
+            this.owner = owner;
+            this.kind = kind;
+            this.version = version;
+        }
+
+        boolean matches(ProjectMetadata entry) {
+            return (owner == null || owner.equals(entry.owner)) && (kind == null || kind.equals(entry.kind)) && (version == null || version.equals(entry.version));
+        }
+    }
+
+    public static class Page {
+        final List<ProjectMetadata> items = new ArrayList<ProjectMetadata>();
+        int total; // all matching projects, not only those in the page
+        String next; // pass it as 'after' to get the next page. Null on the last page.
+
+        public List<ProjectMetadata> getItems() {
+            return items;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public String getNext() {
+            return next;
+        }
+    }
+
+    public static class Usage {
+        final String owner;
+        int projects;
+        long size;
+
+        Usage(String owner) {
+            this.owner = owner;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public int getProjects() {
+            return projects;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    private final Workspace workspace;
+    private final File workspaceDir;
+    private final File directory;
+    private final TreeMap<String, ProjectMetadata> entries = new TreeMap<String, ProjectMetadata>(); // by project name
+    private Writer changes;
+    private int changeCount;
+    private ExecutorService refresher;
+    private final Set<String> pending = new LinkedHashSet<String>(); // projects waiting to be refreshed. Guarded by itself.
+
+    public ProjectMetadataIndex(Workspace workspace) {
+        this.workspace = workspace;
+        this.workspaceDir = workspace.getDir();
+        this.directory = new File(workspaceDir, DIRECTORY_NAME);
+    }
+
+    /**
+     * Loads the index from disk, or builds it if it's not there, and starts keeping it up to date.
+     *
+     * @param storage used to read projects if the index needs to be built or verified
+     */
+    public synchronized void open(JsonModelStorage storage) throws IOException, StorageException {
+        File changesFile = new File(directory, CHANGES_FILENAME);
+        boolean unclean = changesFile.exists();
+        boolean loaded;
+        try {
+            loaded = load();
+        } catch (IOException | JsonSyntaxException e) {
+            logger.warn(LoggingHelper.buildMessage(getClass(), "open", null, "damaged project index in " + directory + ". Rebuilding it."), e);
+            loaded = false;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create " + directory);
+        changes = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(changesFile, true), UTF8));
+        refresher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "rvd-index-refresher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        workspace.indexOpened(this);
+        if (!loaded) {
+            int count = rebuild(storage);
+            logger.info(LoggingHelper.buildMessage(getClass(), "open", null, "built project index of " + workspaceDir + " (" + count + " projects)"));
+        } else
+        if (unclean) {
+            int count = verify(storage);
+            logger.info(LoggingHelper.buildMessage(getClass(), "open", null, "project index of " + workspaceDir + " was not closed properly. " + count + " entries refreshed."));
+        }
+    }
+
+    /**
+     * Runs the refreshes still pending, folds changes into the snapshot and stops keeping the index up to date.
+     */
+    public void close() throws IOException {
+        ExecutorService running;
+        synchronized (this) {
+            if (changes == null || refresher == null)
+                return;
+            workspace.indexClosed(this);
+            running = refresher;
+            refresher = null;
+        }
+        // outside the lock. Refreshes need it to update their entries.
+        running.shutdown();
+        boolean drained = false;
+        try {
+            drained = running.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            writeSnapshot();
+            changes.close();
+            changes = null;
+            if (drained)
+                Files.deleteIfExists(new File(directory, CHANGES_FILENAME).toPath());
+            else // the changes file left behind gets the index verified when opened
+                logger.warn(LoggingHelper.buildMessage(getClass(), "close", null, "project index refreshes in " + directory + " did not finish"));
+        }
+    }
+
+    // returns false if there is no snapshot to load
+    boolean load() throws IOException {
+        File snapshotFile = new File(directory, SNAPSHOT_FILENAME);
+        if (!snapshotFile.exists())
+            return false;
+        entries.clear();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(snapshotFile), UTF8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ProjectMetadata entry = gson.fromJson(line, ProjectMetadata.class);
+                entries.put(entry.name, entry);
+            }
+        }
+        File changesFile = new File(directory, CHANGES_FILENAME);
+        if (changesFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(changesFile), UTF8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Change change;
+                    try {
+                        change = gson.fromJson(line, Change.class);
+                    } catch (JsonSyntaxException e) {
+                        break; // torn last line. verify() picks up whatever it was about.
+                    }
+                    if (change.put != null)
+                        apply(change.put);
+                    else
+                    if (change.removed != null)
+                        entries.remove(change.removed);
+                }
+            }
+        }
+        return true;
+    }
+
+    // an older generation never replaces a newer one. Writers may finish out of order.
+    private boolean apply(ProjectMetadata entry) {
+        ProjectMetadata current = entries.get(entry.name);
+        if (current != null && current.generation > entry.generation)
+            return false;
+        entries.put(entry.name, entry);
+        return true;
+    }
+
+    /**
+     * Refreshes the entry of a project in the background. Does nothing if the project is already waiting to be
+     * refreshed, as the pending refresh reads it after this change anyway.
+     */
+    public void scheduleRefresh(final String projectName, final JsonModelStorage storage) {
+        synchronized (pending) {
+            if (!pending.add(projectName))
+                return;
+        }
+        ExecutorService running;
+        synchronized (this) {
+            running = refresher;
+        }
+        try {
+            if (running == null)
+                throw new RejectedExecutionException();
+            running.execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (pending) {
+                        pending.remove(projectName);
+                    }
+                    try {
+                        refresh(projectName, storage);
+                    } catch (StorageException | RuntimeException e) {
+                        // the change itself went through. The entry will be fixed when the index is verified.
+                        logger.warn(LoggingHelper.buildMessage(ProjectMetadataIndex.class, "scheduleRefresh", null, "cannot update metadata index for project " + projectName), e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // closed in the meantime
+            synchronized (pending) {
+                pending.remove(projectName);
+            }
+        }
+    }
+
+    /**
+     * Waits for the refreshes requested so far to finish.
+     */
+    void awaitRefreshes() throws InterruptedException {
+        ExecutorService running;
+        synchronized (this) {
+            running = refresher;
+        }
+        if (running == null)
+            return;
+        try {
+            running.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get(); // the executor runs a single task at a time, in order
+        } catch (ExecutionException | RejectedExecutionException e) {
+            // closed in the meantime. close() runs what was pending.
+        }
+    }
+
+    /**
+     * Reads the project and updates its entry right away. Removes the entry if the project is gone.
+     */
+    public void refresh(String projectName, JsonModelStorage storage) throws StorageException {
+        ProjectMetadata entry = read(projectName, storage);
+        synchronized (this) {
+            if (entry == null) {
+                if (entries.remove(projectName) != null)
+                    record(null, projectName);
+            } else
+            if (apply(entry))
+                record(entry, null);
+        }
+    }
+
+    public synchronized void remove(String projectName) {
+        if (entries.remove(projectName) != null)
+            record(null, projectName);
+    }
+
+    /**
+     * Drops all entries and reads every project of the workspace again.
+     *
+     * @return the number of projects indexed
+     */
+    public int rebuild(JsonModelStorage storage) throws StorageException {
+        TreeMap<String, ProjectMetadata> built = new TreeMap<String, ProjectMetadata>();
+        for (String projectName: storage.listContents(".", "[^@].+", true)) {
+            ProjectMetadata entry = read(projectName, storage);
+            if (entry != null)
+                built.put(projectName, entry);
+        }
+        synchronized (this) {
+            entries.clear();
+            entries.putAll(built);
+            try {
+                compact();
+            } catch (IOException e) {
+                logger.warn(LoggingHelper.buildMessage(getClass(), "rebuild", null, "cannot persist project index in " + directory), e);
+            }
+            return entries.size();
+        }
+    }
+
+    /**
+     * Refreshes entries whose generation stamp no longer matches that of the project, adds missing projects and drops
+     * those that are gone. Much cheaper than rebuild() as only the stamps of unchanged projects are read.
+     *
+     * @return the number of entries refreshed, added or dropped
+     */
+    public int verify(JsonModelStorage storage) throws StorageException {
+        int count = 0;
+        Set<String> projectNames = new HashSet<String>(storage.listContents(".", "[^@].+", true));
+        for (String projectName: projectNames) {
+            ProjectMetadata entry;
+            synchronized (this) {
+                entry = entries.get(projectName);
+            }
+            if (entry != null && entry.stamp != null && entry.stamp.equals(readStamp(projectName, storage)))
+                continue;
+            refresh(projectName, storage);
+            count ++;
+        }
+        synchronized (this) {
+            for (String projectName: new ArrayList<String>(entries.keySet())) {
+                if (!projectNames.contains(projectName)) {
+                    remove(projectName);
+                    count ++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns up to 'limit' matching entries in project name order, starting after project 'after'.
+     */
+    public synchronized Page query(Filter filter, String after, int limit) {
+        Page page = new Page();
+        for (ProjectMetadata entry: entries.values()) {
+            if (!filter.matches(entry))
+                continue;
+            page.total ++; // all matches are counted so that total is the same on every page
+            if (after != null && entry.name.compareTo(after) <= 0)
+                continue;
+            if (page.items.size() < limit)
+                page.items.add(entry);
+            else
+            if (page.next == null)
+                page.next = page.items.get(page.items.size() - 1).name;
+        }
+        return page;
+    }
+
+    /**
+     * Returns the number of projects and their total size by owner.
+     */
+    public synchronized List<Usage> usageByOwner() {
+        Map<String, Usage> usage = new TreeMap<String, Usage>();
+        Usage unowned = new Usage(null);
+        for (ProjectMetadata entry: entries.values()) {
+            Usage owner;
+            if (entry.owner == null)
+                owner = unowned;
+            else {
+                owner = usage.get(entry.owner);
+                if (owner == null) {
+                    owner = new Usage(entry.owner);
+                    usage.put(entry.owner, owner);
+                }
+            }
+            owner.projects ++;
+            owner.size += entry.size;
+        }
+        List<Usage> list = new ArrayList<Usage>(usage.values());
+        if (unowned.projects > 0)
+            list.add(unowned);
+        return list;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // appends a change. The index stays usable in memory if it can't be persisted.
+    private void record(ProjectMetadata put, String removed) {
+        if (changes == null)
+            return; // closed
+        Change change = new Change();
+        change.put = put;
+        change.removed = removed;
+        try {
+            changes.write(gson.toJson(change));
+            changes.write('\n');
+            changes.flush();
+            if (++changeCount >= COMPACT_THRESHOLD)
+                compact();
+        } catch (IOException e) {
+            logger.warn(LoggingHelper.buildMessage(getClass(), "record", null, "cannot persist project index change in " + directory + ": " + e.getMessage()));
+        }
+    }
+
+    private void compact() throws IOException {
+        writeSnapshot();
+        if (changes != null) {
+            changes.close();
+            changes = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(directory, CHANGES_FILENAME), false), UTF8));
+        }
+        changeCount = 0;
+    }
+
+    // writes all entries to a temporary file and moves it in place
+    private void writeSnapshot() throws IOException {
+        File snapshotFile = new File(directory, SNAPSHOT_FILENAME);
+        File tempFile = new File(directory, SNAPSHOT_FILENAME + ".tmp");
+        FileOutputStream stream = new FileOutputStream(tempFile);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(stream, UTF8))) {
+            for (ProjectMetadata entry: entries.values()) {
+                writer.write(gson.toJson(entry));
+                writer.write('\n');
+            }
+            writer.flush();
+            stream.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String readStamp(String projectName, JsonModelStorage storage) {
+        try {
+            GenerationStamp stamp = GenerationStamp.read(new File(storage.resolveWorkspacePath(projectName)));
+            return stamp == null ? null : stamp.toString();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Builds the entry of a project out of its state and directory. Returns null if there is no such project.
+     */
+    static ProjectMetadata read(String projectName, JsonModelStorage storage) throws StorageException {
+        File projectDir = new File(storage.resolveWorkspacePath(projectName));
+        ProjectMetadata entry = new ProjectMetadata();
+        entry.name = projectName;
+        // the stamp is read first. A change that lands while reading shows up as a stamp mismatch in verify().
+        try {
+            GenerationStamp stamp = GenerationStamp.read(projectDir);
+            if (stamp != null) {
+                entry.generation = stamp.getGeneration();
+                entry.stamp = stamp.toString();
+            }
+        } catch (IOException e) {
+            throw new StorageException("Error reading generation stamp of project " + projectName, e);
+        }
+        String state;
+        try {
+            state = storage.loadEntityString("state", projectName);
+        } catch (StorageEntityNotFound e) {
+            return null;
+        }
+        try {
+            StateHeader header = storage.parseStateHeader(state, projectName);
+            entry.owner = header.getOwner();
+            entry.kind = header.getProjectKind();
+            entry.version = header.getVersion();
+        } catch (BadProjectHeader e) {
+            // an old project. It will be upgraded.
+        }
+        entry.contentHash = sha1(state);
+        final long[] totals = new long[2]; // size, last modified
+        if (!new File(projectDir, "state").exists())
+            totals[0] = state.length(); // entities are kept in the workspace store. Only the state is counted.
+        if (projectDir.isDirectory()) {
+            try {
+                Files.walkFileTree(projectDir.toPath(), new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        totals[0] += attributes.size();
+                        totals[1] = Math.max(totals[1], attributes.lastModifiedTime().toMillis());
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        return FileVisitResult.CONTINUE; // removed while walking
+                    }
+                });
+            } catch (IOException e) {
+                throw new StorageException("Error reading directory of project " + projectName, e);
+            }
+        }
+        entry.size = totals[0];
+        entry.lastModified = totals[1];
+        File dataDir = new File(projectDir, "data");
+        long built = Math.max(new File(dataDir, "project").lastModified(), new File(dataDir, CompiledProject.ENTITY_NAME).lastModified());
+        entry.lastBuilt = built == 0 ? null : built;
+        return entry;
+    }
+
+    static String sha1(String data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data.getBytes(UTF8));
+            StringBuilder buffer = new StringBuilder(digest.length * 2);
+            for (byte b: digest)
+                buffer.append(String.format("%02x", b & 0xff));
+            return buffer.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JRE has SHA-1
+        }
+    }
+}
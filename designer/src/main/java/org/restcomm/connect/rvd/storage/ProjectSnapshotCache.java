@@ -0,0 +1,185 @@
+package org.restcomm.connect.rvd.storage;
+
+import org.restcomm.connect.rvd.model.ProjectParameters;
+import org.restcomm.connect.rvd.model.ProjectSettings;
+import org.restcomm.connect.rvd.model.server.ProjectIndex;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the project index, settings and parameters of a project in memory for as long as the project generation stamp
+ * (see GenerationStamp) stays the same. Other nodes sharing the workspace bump the stamp when they change the project,
+ * so checking it is enough to tell whether the cached data are current.
+ *
+ * Checking costs a single file attribute lookup. The stamp file is read only if it was replaced since the last check.
+ * A revalidation interval can be used to skip checks altogether for a while. Changes made by this node are seen
+ * right away regardless.
+ *
+ * One per project. Lives in ResidentProjectInfo. Cached objects are shared by concurrent requests and should not be
+ * modified.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class ProjectSnapshotCache {
+
+    static final long SNAPSHOT_BYTES = 8 * 1024; // assumed size of a cached snapshot
+
+    // when each project was last changed by this node, keyed by project directory
+    private static final ConcurrentMap<String, Long> localChanges = new ConcurrentHashMap<String, Long>();
+
+    public static class Snapshot {
+        private final GenerationStamp stamp;
+        private final ProjectIndex options;
+        private final ProjectSettings settings;
+        private final ProjectParameters parameters;
+
+        Snapshot(GenerationStamp stamp, ProjectIndex options, ProjectSettings settings, ProjectParameters parameters) {
+            this.stamp = stamp;
+            this.options = options;
+            this.settings = settings;
+            this.parameters = parameters;
+        }
+
+        public GenerationStamp getStamp() {
+            return stamp;
+        }
+
+        /**
+         * @return the project index or null if the project does not exist
+         */
+        public ProjectIndex getOptions() {
+            return options;
+        }
+
+        public ProjectSettings getSettings() {
+            return settings;
+        }
+
+        public ProjectParameters getParameters() {
+            return parameters;
+        }
+    }
+
+    // what the stamp file looked like last time it was checked
+    private static class Observation {
+        final GenerationStamp stamp;
+        final Object fileKey;
+        final FileTime modified;
+        final long size;
+        final long checkedAt;
+
+        Observation(GenerationStamp stamp, BasicFileAttributes attributes, long checkedAt) {
+            this.stamp = stamp;
+            this.fileKey = attributes.fileKey();
+            this.modified = attributes.lastModifiedTime();
+            this.size = attributes.size();
+            this.checkedAt = checkedAt;
+        }
+
+        boolean isSameFile(BasicFileAttributes attributes) {
+            if (fileKey != null && !fileKey.equals(attributes.fileKey()))
+                return false;
+            return modified.equals(attributes.lastModifiedTime()) && size == attributes.size();
+        }
+    }
+
+    private volatile Observation observation;
+    private volatile Snapshot snapshot;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+
+    /**
+     * Makes caches in this process check the stamp of the project on their next use, even within their revalidation
+     * interval. GenerationStamp.bump() calls it.
+     */
+    static void changedLocally(File projectDir) {
+        localChanges.put(projectDir.getAbsolutePath(), System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the current generation stamp of the project or null if it has none.
+     */
+    public GenerationStamp currentStamp(File projectDir, long revalidationMillis) throws IOException {
+        long now = System.currentTimeMillis();
+        Observation last = observation;
+        if (last != null && revalidationMillis > 0 && now - last.checkedAt < revalidationMillis) {
+            Long changed = localChanges.get(projectDir.getAbsolutePath());
+            if (changed == null || changed < last.checkedAt)
+                return last.stamp;
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(GenerationStamp.file(projectDir).toPath(), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            observation = null;
+            return null;
+        }
+        GenerationStamp stamp = (last != null && last.isSameFile(attributes)) ? last.stamp : GenerationStamp.read(projectDir);
+        observation = stamp == null ? null : new Observation(stamp, attributes, now);
+        return stamp;
+    }
+
+    /**
+     * Returns the cached snapshot of the project if it is still current, or loads a new one. Projects without a
+     * stamp (created by older versions) are loaded and stamped so that they can be cached from then on.
+     */
+    public Snapshot get(String applicationId, Workspace workspace, long revalidationMillis, ProjectDao projectDao) throws StorageException {
+        File projectDir = WorkspaceLayout.forWorkspace(workspace.getDir()).projectDir(applicationId);
+        GenerationStamp stamp;
+        try {
+            stamp = currentStamp(projectDir, revalidationMillis);
+        } catch (IOException e) {
+            throw new StorageException("Error reading generation stamp of project " + applicationId, e);
+        }
+        Snapshot cached = snapshot;
+        if (stamp != null && cached != null && stamp.equals(cached.stamp)) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        // the stamp is read before the entities. A change in between will show up as a new stamp next time.
+        Snapshot loaded = new Snapshot(stamp, projectDao.loadProjectOptions(applicationId), projectDao.loadSettings(applicationId), projectDao.loadProjectParameters(applicationId));
+        loads.incrementAndGet();
+        if (loaded.options == null) {
+            snapshot = null;
+        } else
+        if (stamp == null) {
+            try {
+                GenerationStamp.bump(workspace, projectDir);
+            } catch (IOException e) {
+                throw new StorageException("Error creating generation stamp of project " + applicationId, e);
+            }
+        } else
+            snapshot = loaded;
+        return loaded;
+    }
+
+    /**
+     * @return a rough estimate of the heap memory the cached snapshot takes. Project options, settings and parameters
+     * are small so a fixed size per snapshot is assumed.
+     */
+    public long estimateBytes() {
+        return snapshot == null ? 64 : 64 + SNAPSHOT_BYTES;
+    }
+
+    public void clear() {
+        observation = null;
+        snapshot = null;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getLoads() {
+        return loads.get();
+    }
+}
@@ -0,0 +1,101 @@
+package org.restcomm.connect.rvd.storage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage I/O of the request being processed by the current thread. A request is opened with begin() and closed
+ * with end(). In between InstrumentedWorkspaceStorage adds its operations to current(). Storage accessed outside
+ * a request (i.e. at startup) is not attributed to anything.
+ *
+ * Not thread-safe. An instance belongs to the thread that created it.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class RequestStorageIo {
+
+    private static final ThreadLocal<RequestStorageIo> current = new ThreadLocal<RequestStorageIo>();
+
+    private final long[] operations = new long[StorageEntityType.values().length];
+    private long bytesRead;
+    private long bytesWritten;
+    private long nanos;
+
+    public static RequestStorageIo begin() {
+        RequestStorageIo io = new RequestStorageIo();
+        current.set(io);
+        return io;
+    }
+
+    /**
+     * @return the I/O of the current request or null if no request is open
+     */
+    public static RequestStorageIo current() {
+        return current.get();
+    }
+
+    /**
+     * Closes the request of the current thread.
+     *
+     * @return its I/O or null if no request was open
+     */
+    public static RequestStorageIo end() {
+        RequestStorageIo io = current.get();
+        current.remove();
+        return io;
+    }
+
+    void record(StorageEntityType type, long nanos, long bytesRead, long bytesWritten) {
+        operations[type.ordinal()] ++;
+        this.nanos += nanos;
+        this.bytesRead += bytesRead;
+        this.bytesWritten += bytesWritten;
+    }
+
+    void addBytesRead(long bytes) {
+        bytesRead += bytes;
+    }
+
+    public long getOperations() {
+        long total = 0;
+        for (long count: operations)
+            total += count;
+        return total;
+    }
+
+    public long getOperations(StorageEntityType type) {
+        return operations[type.ordinal()];
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * i.e. '5 ops (state:1 mod:4), 10240 bytes read, 0 bytes written, 3 ms'
+     */
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append(getOperations()).append(" ops (");
+        boolean first = true;
+        for (StorageEntityType type: StorageEntityType.values()) {
+            if (operations[type.ordinal()] == 0)
+                continue;
+            if (!first)
+                buffer.append(' ');
+            buffer.append(type.name()).append(':').append(operations[type.ordinal()]);
+            first = false;
+        }
+        buffer.append("), ").append(bytesRead).append(" bytes read, ").append(bytesWritten).append(" bytes written, ");
+        buffer.append(TimeUnit.NANOSECONDS.toMillis(nanos)).append(" ms");
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,139 @@
+package org.restcomm.connect.rvd.storage;
+
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Moves the projects of a workspace into their shards (see WorkspaceLayout) in the background, a few at a time,
+ * while RVD keeps serving. Keeps on running after all projects are moved, to pick up projects created at the root by
+ * nodes that haven't noticed the workspace is sharded yet.
+ *
+ * Forwarding links are removed once LINK_GRACE_MILLIS have passed since the move. Links left over from a previous
+ * run are removed on start.
+ *
+ * Lives in ApplicationContext.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class ShardMigrator {
+
+    static final Logger logger = RvdLoggers.global;
+    static final int BATCH_SIZE = 50; // projects moved per tick
+    static final long TICK_MILLIS = 5000;
+    static final long LINK_GRACE_MILLIS = 60000;
+
+    private final WorkspaceLayout layout;
+    private final ProjectLocks locks; // of the workspace. Writes in progress are not moved under.
+    private final Map<String, Long> links = new LinkedHashMap<String, Long>(); // project -> when it was moved
+    private ScheduledExecutorService executor;
+    private long migrated;
+
+    public ShardMigrator(WorkspaceLayout layout, ProjectLocks locks) {
+        this.layout = layout;
+        this.locks = locks;
+    }
+
+    public synchronized void start() {
+        if (executor != null)
+            return;
+        try {
+            layout.enableSharding();
+            int removed = layout.removeForwardingLinks();
+            if (removed > 0)
+                logger.info(LoggingHelper.buildMessage(getClass(), "start", null, "removed " + removed + " forwarding links left over in " + layout.getRoot()));
+        } catch (IOException e) {
+            logger.error(LoggingHelper.buildMessage(getClass(), "start", null, "cannot shard workspace " + layout.getRoot()), e);
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "rvd-shard-migrator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick(System.currentTimeMillis());
+                } catch (RuntimeException e) {
+                    // an exception would cancel all later runs
+                    logger.error(LoggingHelper.buildMessage(ShardMigrator.class, "run", null, "error migrating projects to shards"), e);
+                }
+            }
+        }, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = executor;
+            executor = null;
+        }
+        if (running == null)
+            return;
+        running.shutdown();
+        try {
+            running.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Removes expired forwarding links and moves the next batch of projects.
+     *
+     * @return the number of projects moved
+     */
+    synchronized int tick(long now) {
+        Iterator<Map.Entry<String, Long>> expired = links.entrySet().iterator();
+        while (expired.hasNext()) {
+            Map.Entry<String, Long> link = expired.next();
+            if (now - link.getValue() < LINK_GRACE_MILLIS)
+                break; // ordered by time
+            try {
+                layout.removeForwardingLink(link.getKey());
+            } catch (IOException e) {
+                logger.warn(LoggingHelper.buildMessage(getClass(), "tick", null, "cannot remove forwarding link of " + link.getKey() + ": " + e.getMessage()));
+            }
+            expired.remove();
+        }
+        int count = 0;
+        for (String projectName: layout.listUnmigrated(BATCH_SIZE)) {
+            // a write in progress has resolved its paths to the current location. The project waits for the next tick.
+            Lock lock = locks.tryLock(projectName);
+            if (lock == null)
+                continue;
+            try {
+                if (layout.migrate(projectName))
+                    links.put(projectName, now);
+                count ++;
+            } catch (IOException e) {
+                logger.warn(LoggingHelper.buildMessage(getClass(), "tick", null, "cannot move project " + projectName + " to its shard: " + e.getMessage()));
+            } finally {
+                lock.unlock();
+            }
+        }
+        migrated += count;
+        if (count > 0)
+            logger.info(LoggingHelper.buildMessage(getClass(), "tick", null, count + " projects moved to shards (" + migrated + " in total)"));
+        return count;
+    }
+
+    public synchronized long getMigrated() {
+        return migrated;
+    }
+}
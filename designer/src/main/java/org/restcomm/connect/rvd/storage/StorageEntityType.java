@@ -0,0 +1,35 @@
+package org.restcomm.connect.rvd.storage;
+
+import org.restcomm.connect.rvd.RvdConfiguration;
+
+/**
+ * Kinds of workspace entities storage I/O is accounted under. Anything not recognized goes under 'other'.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public enum StorageEntityType {
+    state, header, project, mod, settings, cc, parameters, bootstrap, wavs, other;
+
+    /**
+     * @param entityName the name of the entity or the name filter in case of listings. May be null.
+     * @param entityPath the workspace path the entity lives under (i.e. 'AP1234/data'). May be null.
+     */
+    public static StorageEntityType of(String entityName, String entityPath) {
+        if (entityPath != null && (entityPath.endsWith("/" + RvdConfiguration.WAVS_DIRECTORY_NAME) || entityPath.equals(RvdConfiguration.WAVS_DIRECTORY_NAME)))
+            return wavs;
+        if (entityName == null)
+            return other;
+        if (entityName.endsWith(".mod"))
+            return mod;
+        switch (entityName) {
+            case "state": return state;
+            case JsonModelStorage.HEADER_ENTITY_NAME: return header;
+            case "project": return project;
+            case "settings": return settings;
+            case "cc": return cc;
+            case "parameters": return parameters;
+            case "bootstrap": return bootstrap;
+            default: return other;
+        }
+    }
+}
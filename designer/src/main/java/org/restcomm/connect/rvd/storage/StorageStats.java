@@ -0,0 +1,74 @@
+package org.restcomm.connect.rvd.storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.restcomm.connect.rvd.stats.LatencyHistogram;
+
+/**
+ * Storage I/O of all requests by entity type. Filled in by InstrumentedWorkspaceStorage. Lives in ApplicationContext
+ * when storage instrumentation is enabled.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class StorageStats {
+
+    private final long startTime = System.currentTimeMillis();
+    private final EntityStats[] entities;
+
+    public StorageStats() {
+        StorageEntityType[] types = StorageEntityType.values();
+        entities = new EntityStats[types.length];
+        for (StorageEntityType type: types)
+            entities[type.ordinal()] = new EntityStats();
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public EntityStats entity(StorageEntityType type) {
+        return entities[type.ordinal()];
+    }
+
+    public static class EntityStats {
+        final AtomicLong reads = new AtomicLong();
+        final AtomicLong writes = new AtomicLong();
+        final AtomicLong removals = new AtomicLong();
+        final AtomicLong lookups = new AtomicLong(); // existence checks and listings
+        final AtomicLong bytesRead = new AtomicLong();
+        final AtomicLong bytesWritten = new AtomicLong();
+        final LatencyHistogram latency = new LatencyHistogram(); // of all operations
+
+        public long getReads() {
+            return reads.get();
+        }
+
+        public long getWrites() {
+            return writes.get();
+        }
+
+        public long getRemovals() {
+            return removals.get();
+        }
+
+        public long getLookups() {
+            return lookups.get();
+        }
+
+        public long getBytesRead() {
+            return bytesRead.get();
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten.get();
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getOperations() {
+            return reads.get() + writes.get() + removals.get() + lookups.get();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.restcomm.connect.rvd.storage;
+
+import org.apache.commons.io.FileUtils;
+import org.restcomm.connect.rvd.RvdConfiguration;
+import org.restcomm.connect.rvd.exceptions.ProjectDoesNotExist;
+import org.restcomm.connect.rvd.model.project.ProjectState;
+import org.restcomm.connect.rvd.storage.exceptions.ProjectAlreadyExists;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Project dao for workspaces kept in an EmbeddedStore (see StoreWorkspaceStorage). Builds, imports, project creation
+ * and removal are applied atomically. Media and compiled project artifacts stay on the file system and are handled the
+ * same way as in FsProjectDao.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class StoreProjectDao extends FsProjectDao {
+
+    final StoreWorkspaceStorage workspaceStore;
+
+    public StoreProjectDao(JsonModelStorage storage, StoreWorkspaceStorage workspaceStore) {
+        this(storage, workspaceStore, null);
+    }
+
+    public StoreProjectDao(JsonModelStorage storage, StoreWorkspaceStorage workspaceStore, CompiledProjectCache compiledProjects) {
+        super(storage, compiledProjects);
+        this.workspaceStore = workspaceStore;
+    }
+
+    /**
+     * Creates the project state unless it already exists. The check and the write are a single transaction.
+     */
+    @Override
+    public void createProject(String applicationId, ProjectState projectState) throws StorageException {
+        Lock lock = lockProject(applicationId);
+        try {
+            String data = storage.marshaller.getGson().toJson(projectState);
+            boolean created = workspaceStore.batch()
+                    .requireAbsent("state", applicationId)
+                    .storeEntityString(data, "state", applicationId)
+                    .storeEntityString(storage.marshaller.getGson().toJson(projectState.getHeader()), JsonModelStorage.HEADER_ENTITY_NAME, applicationId)
+                    .commit();
+            if (!created)
+                throw new ProjectAlreadyExists("Project '" + applicationId + "' already exists");
+            if ("voice".equals(projectState.getHeader().getProjectKind()) ) {
+                File wavsDir = new File(storage.resolveWorkspacePath(applicationId + File.separator + RvdConfiguration.WAVS_DIRECTORY_NAME));
+                wavsDir.mkdirs();
+            }
+            bumpGeneration(applicationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all project entities in one transaction. Then removes whatever the project keeps on the file system.
+     */
+    @Override
+    public void removeProject(String applicationId) throws ProjectDoesNotExist, StorageException {
+        Lock lock = lockProject(applicationId);
+        try {
+            workspaceStore.batch().removeEntity(applicationId, "").commit();
+            if (compiledProjects != null)
+                compiledProjects.evict(compiledProjectFile(applicationId).getPath());
+            removeFromMetadataIndex(applicationId);
+            trashProjectDirectory(applicationId); // wavs and packaging are still files
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lays out the project in a temporary directory the way the file system backend keeps it and archives that.
+     */
+    @Override
+    public InputStream archiveProject(String projectName) throws StorageException {
+        File tempDir = new File(FileUtils.getTempDirectory(), "RVDprojectExport-" + System.nanoTime());
+        try {
+            File projectDir = new File(storage.resolveWorkspacePath(projectName));
+            for (String areaName: new String[] {RvdConfiguration.WAVS_DIRECTORY_NAME, RvdConfiguration.PACKAGING_DIRECTORY_NAME}) {
+                File area = new File(projectDir, areaName);
+                if (area.isDirectory())
+                    FileUtils.copyDirectory(area, new File(tempDir, areaName));
+            }
+            workspaceStore.exportTo(projectName, tempDir);
+            tempDir.mkdirs();
+            return archiveDirectory(tempDir.getPath(), projectName);
+        } catch (IOException e) {
+            throw new StorageException("Error exporting project " + projectName + " for archiving", e);
+        } finally {
+            FileUtils.deleteQuietly(tempDir);
+        }
+    }
+}
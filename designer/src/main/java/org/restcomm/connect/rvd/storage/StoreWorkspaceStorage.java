@@ -0,0 +1,324 @@
+package org.restcomm.connect.rvd.storage;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.RvdConfiguration;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+import org.restcomm.connect.rvd.storage.exceptions.StorageEntityNotFound;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Workspace storage that keeps entities in an EmbeddedStore. Entity "state" of project AP123 is stored under key
+ * "AP123/state", the project index under "AP123/data/project" and so on. Directories are implied by the keys.
+ *
+ * Some things stay on the file system (see FsWorkspaceStorage):
+ *
+ *  - media and packaging files. They are streamed and can be large.
+ *  - workspace areas starting with '@' like the project templates, stats and capture directories.
+ *  - anything addressed by an absolute path.
+ *
+ * Use batch() for multi-entity writes that should be applied atomically.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class StoreWorkspaceStorage implements WorkspaceStorage {
+
+    static Logger logger = RvdLoggers.local;
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    final EmbeddedStore store;
+    final FsWorkspaceStorage files;
+
+    public StoreWorkspaceStorage(EmbeddedStore store, Workspace workspace) {
+        this.store = store;
+        this.files = new FsWorkspaceStorage(workspace);
+    }
+
+    // for a workspace nothing else works on, i.e. in tests
+    public StoreWorkspaceStorage(EmbeddedStore store, String rootPath) {
+        this(store, new Workspace(new File(rootPath)));
+    }
+
+    public EmbeddedStore getStore() {
+        return store;
+    }
+
+    /**
+     * Turns a relative workspace path into the form used in keys. "", "." and "./" are the workspace root.
+     */
+    static String normalizePath(String path) {
+        while (path.startsWith("./"))
+            path = path.substring(2);
+        if (path.equals("."))
+            path = "";
+        while (path.endsWith("/"))
+            path = path.substring(0, path.length() - 1);
+        return path;
+    }
+
+    /**
+     * Returns true for keys that belong to the file system. See class description.
+     */
+    static boolean isFileKey(String key) {
+        String[] parts = key.split("/");
+        if (parts[0].startsWith("@"))
+            return true;
+        return parts.length >= 2 && (RvdConfiguration.WAVS_DIRECTORY_NAME.equals(parts[1]) || RvdConfiguration.PACKAGING_DIRECTORY_NAME.equals(parts[1]));
+    }
+
+    /**
+     * Returns the key of an entity or null if it's kept on the file system.
+     */
+    static String keyOf(String entityName, String entityPath) {
+        if (entityPath.startsWith("/"))
+            return null;
+        String path = normalizePath(entityPath);
+        String key = path.isEmpty() ? entityName : path + "/" + entityName;
+        return isFileKey(key) ? null : key;
+    }
+
+    @Override
+    public boolean entityExists(String entityName, String relativePath) {
+        String key = keyOf(entityName, relativePath);
+        if (key == null)
+            return files.entityExists(entityName, relativePath);
+        return store.contains(key) || store.hasKeysStartingWith(key + "/");
+    }
+
+    /**
+     * Lists the entries under path. Entries implied by keys are merged with file system areas under the same path
+     * (i.e. wavs directory of a project). Results are sorted by modification date, newest first.
+     */
+    @Override
+    public List<String> listContents(String path, String regexNameFilter, boolean onlyDirectories) throws StorageException {
+        if (path.startsWith("/"))
+            return files.listContents(path, regexNameFilter, onlyDirectories);
+        path = normalizePath(path);
+        if (!path.isEmpty() && isFileKey(path + "/x"))
+            return files.listContents(path, regexNameFilter, onlyDirectories);
+
+        String prefix = path.isEmpty() ? "" : path + "/";
+        final Map<String, Long> entries = new HashMap<String, Long>(); // name -> modification time
+        boolean found = path.isEmpty();
+        for (Map.Entry<String, Long> key: store.list(prefix).entrySet()) {
+            found = true;
+            String rest = key.getKey().substring(prefix.length());
+            int slash = rest.indexOf('/');
+            if (onlyDirectories && slash < 0)
+                continue;
+            String name = slash < 0 ? rest : rest.substring(0, slash);
+            Long modified = entries.get(name);
+            if (modified == null || modified < key.getValue())
+                entries.put(name, key.getValue());
+        }
+        File dir = new File(files.resolveWorkspacePath(path));
+        if (dir.isDirectory()) {
+            File[] children = dir.listFiles();
+            if (children != null) {
+                for (File child: children) {
+                    if (isFileKey(prefix + child.getName() + "/x") && (!onlyDirectories || child.isDirectory())) {
+                        found = true;
+                        Long modified = entries.get(child.getName());
+                        if (modified == null || modified < child.lastModified())
+                            entries.put(child.getName(), child.lastModified());
+                    }
+                }
+            }
+        }
+        if (!found)
+            throw new StorageException("No parent directory found to list its contents: " + path);
+
+        Pattern pattern = Pattern.compile(regexNameFilter);
+        List<String> names = new ArrayList<String>();
+        for (String name: entries.keySet())
+            if (pattern.matcher(name).matches())
+                names.add(name);
+        Collections.sort(names, new Comparator<String>() {
+            @Override
+            public int compare(String name1, String name2) {
+                return entries.get(name2).compareTo(entries.get(name1));
+            }
+        });
+        return names;
+    }
+
+    /**
+     * Removes an entity. If it's a directory all entities under it are removed too.
+     */
+    @Override
+    public void removeEntity(String entityName, String entityPath) {
+        String key = keyOf(entityName, entityPath);
+        if (key == null) {
+            files.removeEntity(entityName, entityPath);
+            return;
+        }
+        try {
+            store.begin().remove(key).removeAll(key + "/").commit();
+        } catch (IOException e) {
+            logger.error(LoggingHelper.buildMessage(getClass(), "removeEntity", null, "error removing " + key), e);
+        }
+    }
+
+    @Override
+    public String loadEntityString(String entityName, String entityPath) throws StorageException {
+        String key = keyOf(entityName, entityPath);
+        if (key == null)
+            return files.loadEntityString(entityName, entityPath);
+        return new String(load(key), UTF8);
+    }
+
+    byte[] load(String key) throws StorageException {
+        byte[] value;
+        try {
+            value = store.get(key);
+        } catch (IOException e) {
+            throw new StorageException("Error loading " + key, e);
+        }
+        if (value == null)
+            throw new StorageEntityNotFound("Entity " + key + " does not exist");
+        return value;
+    }
+
+    @Override
+    public void storeEntityString(String entityString, String entityName, String entityPath) throws StorageException {
+        String key = keyOf(entityName, entityPath);
+        if (key == null) {
+            files.storeEntityString(entityString, entityName, entityPath);
+            return;
+        }
+        try {
+            store.put(key, entityString.getBytes(UTF8));
+        } catch (IOException e) {
+            throw new StorageException("Error storing " + key, e);
+        }
+    }
+
+    /**
+     * Stores the entities in a single store transaction.
+     */
+    @Override
+    public void storeEntityStrings(List<EntityWrite> entities) throws StorageException {
+        Batch batch = batch();
+        for (EntityWrite entity: entities)
+            batch.storeEntityString(entity.data, entity.entityName, entity.entityPath);
+        batch.commit();
+    }
+
+    @Override
+    public void storeBinaryFile(File sourceFile, String entityName, String entityPath) throws StorageException {
+        files.storeBinaryFile(sourceFile, entityName, entityPath);
+    }
+
+    @Override
+    public InputStream loadBinaryFile(String projectName, String entityName, String entityPath) throws FileNotFoundException {
+        return files.loadBinaryFile(projectName, entityName, entityPath);
+    }
+
+    @Override
+    public InputStream loadStream(String entityName, String entityPath) throws StorageException {
+        String key = keyOf(entityName, entityPath);
+        if (key == null)
+            return files.loadStream(entityName, entityPath);
+        return new ByteArrayInputStream(load(key));
+    }
+
+    @Override
+    public void copyDirToWorkspace(String sourcePath, String workspaceParentPath) throws StorageException {
+        files.copyDirToWorkspace(sourcePath, workspaceParentPath);
+    }
+
+    @Override
+    public String resolveWorkspacePath(String path) {
+        return files.resolveWorkspacePath(path);
+    }
+
+    @Override
+    public Workspace getWorkspace() {
+        return files.getWorkspace();
+    }
+
+    /**
+     * Writes the entities under path to directory dir, the way FsWorkspaceStorage would lay them out. File system
+     * areas are not included.
+     */
+    public void exportTo(String path, File dir) throws StorageException {
+        String prefix = normalizePath(path);
+        prefix = prefix.isEmpty() ? "" : prefix + "/";
+        try {
+            for (String key: store.list(prefix).keySet()) {
+                byte[] value = store.get(key);
+                if (value != null)
+                    FileUtils.writeByteArrayToFile(new File(dir, key.substring(prefix.length())), value);
+            }
+        } catch (IOException e) {
+            throw new StorageException("Error exporting " + path + " to " + dir, e);
+        }
+    }
+
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * Entity changes committed to the store in a single transaction.
+     */
+    public class Batch {
+        final EmbeddedStore.Transaction transaction = store.begin();
+
+        public Batch storeEntityString(String entityString, String entityName, String entityPath) throws StorageException {
+            transaction.put(requireKey(entityName, entityPath), entityString.getBytes(UTF8));
+            return this;
+        }
+
+        /**
+         * Removes an entity and, if it's a directory, everything under it.
+         */
+        public Batch removeEntity(String entityName, String entityPath) throws StorageException {
+            String key = requireKey(entityName, entityPath);
+            transaction.remove(key).removeAll(key + "/");
+            return this;
+        }
+
+        /**
+         * Makes the batch fail if the entity exists when committed.
+         */
+        public Batch requireAbsent(String entityName, String entityPath) throws StorageException {
+            transaction.requireAbsent(requireKey(entityName, entityPath));
+            return this;
+        }
+
+        String requireKey(String entityName, String entityPath) throws StorageException {
+            String key = keyOf(entityName, entityPath);
+            if (key == null)
+                throw new StorageException("Entity " + entityName + " under " + entityPath + " is not kept in the workspace store");
+            return key;
+        }
+
+        /**
+         * @return false if an entity required to be absent exists. Nothing is changed in that case.
+         * @throws StorageException
+         */
+        public boolean commit() throws StorageException {
+            try {
+                return transaction.commit();
+            } catch (IOException e) {
+                throw new StorageException("Error committing changes to " + store.getFile(), e);
+            }
+        }
+    }
+}
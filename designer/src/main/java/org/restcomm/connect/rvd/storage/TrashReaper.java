@@ -0,0 +1,113 @@
+package org.restcomm.connect.rvd.storage;
+
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes what's in the trash of a workspace (see WorkspaceTrash) in the background. Each tick deletes up to
+ * FILES_PER_TICK files or BYTES_PER_TICK bytes, whichever comes first, so removing big projects does not flood the
+ * disk while requests are being served. Entries left over from a previous run are reaped first.
+ *
+ * Lives in ApplicationContext.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class TrashReaper {
+
+    static final Logger logger = RvdLoggers.global;
+    static final long FILES_PER_TICK = 500;
+    static final long BYTES_PER_TICK = 20 * 1024 * 1024;
+    static final long TICK_MILLIS = 1000;
+
+    private final WorkspaceTrash trash;
+    private ScheduledExecutorService executor;
+    private long reaped;
+
+    public TrashReaper(WorkspaceTrash trash) {
+        this.trash = trash;
+    }
+
+    public synchronized void start() {
+        if (executor != null)
+            return;
+        int pending = trash.list().size();
+        if (pending > 0)
+            logger.info(LoggingHelper.buildMessage(getClass(), "start", null, pending + " removed projects left over in " + trash.getDirectory() + " will be reaped"));
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "rvd-trash-reaper");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick(new WorkspaceTrash.Budget(FILES_PER_TICK, BYTES_PER_TICK));
+                } catch (RuntimeException e) {
+                    // an exception would cancel all later runs
+                    logger.error(LoggingHelper.buildMessage(TrashReaper.class, "run", null, "error reaping trash"), e);
+                }
+            }
+        }, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = executor;
+            executor = null;
+        }
+        if (running == null)
+            return;
+        running.shutdown();
+        try {
+            running.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Deletes trash entries, oldest first, until the budget runs out.
+     *
+     * @return the number of entries completely removed
+     */
+    synchronized int tick(WorkspaceTrash.Budget budget) {
+        int count = 0;
+        List<File> entries = trash.list();
+        for (File entry: entries) {
+            try {
+                if (!trash.reap(entry, budget))
+                    break;
+                count ++;
+            } catch (IOException e) {
+                logger.warn(LoggingHelper.buildMessage(getClass(), "tick", null, "cannot reap " + entry + ": " + e.getMessage()));
+            }
+        }
+        reaped += count;
+        if (count > 0 && logger.isDebugEnabled())
+            logger.debug(LoggingHelper.buildMessage(getClass(), "tick", null, count + " removed projects reaped (" + reaped + " in total, " + (entries.size() - count) + " pending)"));
+        return count;
+    }
+
+    public synchronized long getReaped() {
+        return reaped;
+    }
+
+    public int getPending() {
+        return trash.list().size();
+    }
+}
@@ -0,0 +1,68 @@
+package org.restcomm.connect.rvd.storage;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * What this process keeps about a workspace directory: its journal (see FsJournal), entity compression, trash,
+ * project locks and the project metadata index while that is open.
+ *
+ * Everything working on the same workspace has to share them. Writes are serialized by the same locks and journaled
+ * under the same sequence. There is one instance in ApplicationContext that is handed to the storage and through it
+ * to the daos (see WorkspaceStorage.getWorkspace()). It goes away along with the context.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class Workspace {
+
+    private final File dir;
+    private final FsJournal journal;
+    private final EntityCompression compression;
+    private final WorkspaceTrash trash;
+    private final ProjectLocks locks;
+    private final AtomicReference<ProjectMetadataIndex> metadataIndex = new AtomicReference<ProjectMetadataIndex>();
+
+    public Workspace(File dir) {
+        this.dir = dir;
+        this.journal = new FsJournal(dir);
+        this.compression = new EntityCompression(dir, journal);
+        this.trash = new WorkspaceTrash(dir);
+        this.locks = new ProjectLocks();
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    public FsJournal getJournal() {
+        return journal;
+    }
+
+    public EntityCompression getCompression() {
+        return compression;
+    }
+
+    public WorkspaceTrash getTrash() {
+        return trash;
+    }
+
+    public ProjectLocks getLocks() {
+        return locks;
+    }
+
+    /**
+     * Returns the open metadata index of the workspace or null if there is none.
+     */
+    public ProjectMetadataIndex getMetadataIndex() {
+        return metadataIndex.get();
+    }
+
+    // see ProjectMetadataIndex.open() and close()
+    void indexOpened(ProjectMetadataIndex index) {
+        metadataIndex.set(index);
+    }
+
+    void indexClosed(ProjectMetadataIndex index) {
+        metadataIndex.compareAndSet(index, null);
+    }
+}
@@ -0,0 +1,574 @@
+package org.restcomm.connect.rvd.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.RvdConfiguration;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Incremental point-in-time snapshots of a workspace.
+ *
+ * Each snapshot is a directory under the backup location laid out like the workspace. Files unchanged since the
+ * previous snapshot (same size and modification time) are hard links to it, so a snapshot costs the space of what
+ * changed only while each one is still complete on its own. Entities of a workspace store (see EmbeddedStore) are
+ * written out as files, the way the file system backend keeps them.
+ *
+ * A snapshot is written under a '.partial' name and renamed when complete. Partial snapshots left over by a crash are
+ * removed by the next run. Journal, trash, index and capture areas are left out and so are application logs unless
+ * the policy says otherwise. Data copying is throttled to maxBytesPerSecond.
+ *
+ * Single projects can be restored out of a snapshot. The current project, if any, goes to the trash.
+ *
+ * Lives in ApplicationContext.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class WorkspaceBackup {
+
+    static final Logger logger = RvdLoggers.global;
+    static final String SNAPSHOT_PREFIX = "snapshot-";
+    static final String PARTIAL_SUFFIX = ".partial";
+    static final String MANIFEST_FILENAME = "@snapshot.json";
+    static final String RESTORE_DIRECTORY_NAME = "@restore";
+    static final long CHECK_MILLIS = 10 * 60 * 1000; // how often the schedule is checked
+    static final int BUFFER_SIZE = 64 * 1024;
+    static final int PROJECT_COPY_ATTEMPTS = 3; // the last one holds the project lock
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    static final Set<String> EXCLUDED_ROOT_ENTRIES = new HashSet<String>(Arrays.asList(FsJournal.DIRECTORY_NAME,
+            WorkspaceTrash.DIRECTORY_NAME, ProjectMetadataIndex.DIRECTORY_NAME, RvdConfiguration.CAPTURE_DIRECTORY_NAME,
+            RESTORE_DIRECTORY_NAME, EmbeddedStore.FILENAME));
+
+    private final Workspace workspace;
+    private final File workspaceDir;
+    private final File backupDir;
+    private final EmbeddedStore store; // null for file system workspaces
+    private final int retention;
+    private final boolean includeLogs;
+    private final long maxBytesPerSecond;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param store the workspace store or null if entities are kept in files
+     * @param retention number of snapshots kept
+     * @param maxBytesPerSecond limit of data copied per second. 0 for no limit.
+     */
+    public WorkspaceBackup(Workspace workspace, File backupDir, EmbeddedStore store, int retention, boolean includeLogs, long maxBytesPerSecond) {
+        this.workspace = workspace;
+        this.workspaceDir = workspace.getDir().getAbsoluteFile();
+        this.backupDir = backupDir.getAbsoluteFile();
+        this.store = store;
+        this.retention = retention;
+        this.includeLogs = includeLogs;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    public File getBackupDir() {
+        return backupDir;
+    }
+
+    /**
+     * Starts the background thread that takes requested snapshots and, if intervalHours is positive, a snapshot
+     * whenever the last one is older than that.
+     */
+    public synchronized void start(final int intervalHours) {
+        if (executor != null)
+            return;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "rvd-workspace-backup");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        if (intervalHours > 0) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    List<Snapshot> snapshots = list();
+                    long last = snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1).created;
+                    if (System.currentTimeMillis() - last >= TimeUnit.HOURS.toMillis(intervalHours))
+                        takeLogged();
+                }
+            }, CHECK_MILLIS, CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void stop() {
+        ScheduledExecutorService executing;
+        synchronized (this) {
+            executing = executor;
+            executor = null;
+        }
+        if (executing == null)
+            return;
+        executing.shutdownNow(); // a snapshot in progress stays partial and is removed next time
+        try {
+            executing.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes a snapshot in the background.
+     *
+     * @return false if a snapshot is already being taken or the backup is stopped
+     */
+    public synchronized boolean request() {
+        if (executor == null || running.get())
+            return false;
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    takeLogged();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+        return true;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private void takeLogged() {
+        try {
+            Snapshot snapshot = take();
+            if (snapshot != null)
+                logger.info(LoggingHelper.buildMessage(WorkspaceBackup.class, "take", null, "workspace snapshot " + snapshot));
+        } catch (IOException | StorageException | RuntimeException e) {
+            logger.error(LoggingHelper.buildMessage(WorkspaceBackup.class, "take", null, "error taking workspace snapshot under " + backupDir), e);
+        }
+    }
+
+    /**
+     * Takes a snapshot now and removes the oldest ones beyond retention.
+     *
+     * @return the snapshot or null if one is already being taken
+     */
+    public Snapshot take() throws IOException, StorageException {
+        if (!running.compareAndSet(false, true))
+            return null;
+        try {
+            FileUtils.forceMkdir(backupDir);
+            removePartial();
+            List<Snapshot> existing = list();
+            File previous = existing.isEmpty() ? null : new File(backupDir, existing.get(existing.size() - 1).name);
+
+            long created = System.currentTimeMillis();
+            SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            String name = SNAPSHOT_PREFIX + format.format(new Date(created));
+            if (previous != null && previous.getName().compareTo(name) >= 0)
+                name = previous.getName() + "-1"; // more than one in the same second
+            File partial = new File(backupDir, name + PARTIAL_SUFFIX);
+
+            Snapshot snapshot = new Snapshot(name, created);
+            Throttle throttle = new Throttle(maxBytesPerSecond);
+            FileUtils.forceMkdir(partial);
+            copyTree(workspaceDir, previous, partial, true, snapshot, throttle);
+            if (store != null)
+                exportStore(previous, partial, snapshot, throttle);
+            snapshot.durationMillis = System.currentTimeMillis() - created;
+            FileUtils.writeStringToFile(new File(partial, MANIFEST_FILENAME), new Gson().toJson(snapshot), UTF8);
+            Files.move(partial.toPath(), new File(backupDir, name).toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+            existing.add(snapshot);
+            for (int i = 0; i < existing.size() - retention; i++)
+                FileUtils.deleteDirectory(new File(backupDir, existing.get(i).name));
+            return snapshot;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Returns the complete snapshots, oldest first.
+     */
+    public List<Snapshot> list() {
+        List<Snapshot> snapshots = new ArrayList<Snapshot>();
+        File[] entries = backupDir.listFiles();
+        if (entries == null)
+            return snapshots;
+        Gson gson = new Gson();
+        for (File entry: entries) {
+            if (!entry.getName().startsWith(SNAPSHOT_PREFIX) || entry.getName().endsWith(PARTIAL_SUFFIX))
+                continue;
+            try {
+                Snapshot snapshot = gson.fromJson(FileUtils.readFileToString(new File(entry, MANIFEST_FILENAME), UTF8), Snapshot.class);
+                if (snapshot != null && entry.getName().equals(snapshot.name))
+                    snapshots.add(snapshot);
+            } catch (IOException | RuntimeException e) {
+                logger.warn(LoggingHelper.buildMessage(getClass(), "list", null, "ignoring damaged snapshot " + entry + ": " + e.getMessage()));
+            }
+        }
+        Collections.sort(snapshots, new Comparator<Snapshot>() {
+            @Override
+            public int compare(Snapshot a, Snapshot b) {
+                return a.name.compareTo(b.name);
+            }
+        });
+        return snapshots;
+    }
+
+    private void removePartial() throws IOException {
+        File[] entries = backupDir.listFiles();
+        if (entries == null)
+            return;
+        for (File entry: entries)
+            if (entry.getName().startsWith(SNAPSHOT_PREFIX) && entry.getName().endsWith(PARTIAL_SUFFIX))
+                FileUtils.deleteDirectory(entry);
+    }
+
+    boolean isExcluded(File file, boolean root) {
+        String name = file.getName();
+        if (root && (EXCLUDED_ROOT_ENTRIES.contains(name) || name.startsWith(EmbeddedStore.FILENAME)))
+            return true;
+        if (name.endsWith(".tmp"))
+            return true;
+        return !includeLogs && name.startsWith(RvdConfiguration.PROJECT_LOG_FILENAME) && name.endsWith(".log");
+    }
+
+    private void copyTree(File source, File previous, File target, boolean root, Snapshot snapshot, Throttle throttle) throws IOException {
+        File[] children = source.listFiles();
+        if (children == null)
+            return;
+        for (File child: children) {
+            if (isExcluded(child, root) || Files.isSymbolicLink(child.toPath()))
+                continue; // links at the root forward to projects already in their shard
+            File previousChild = previous == null ? null : new File(previous, child.getName());
+            File targetChild = new File(target, child.getName());
+            if (child.isDirectory() && WorkspaceLayout.isProjectName(child.getName()) && holdsProjects(source)) {
+                backupProject(child, previousChild, targetChild, snapshot, throttle);
+            } else if (child.isDirectory()) {
+                FileUtils.forceMkdir(targetChild);
+                copyTree(child, previousChild, targetChild, false, snapshot, throttle);
+            } else {
+                try {
+                    backupFile(child, previousChild, targetChild, snapshot, throttle);
+                } catch (FileNotFoundException e) {
+                    // removed while the snapshot was being taken
+                }
+            }
+        }
+    }
+
+    // the workspace root and the shard directories
+    private boolean holdsProjects(File dir) {
+        return dir.equals(workspaceDir) || dir.getParentFile().equals(new File(workspaceDir, WorkspaceLayout.SHARDS_DIRECTORY_NAME));
+    }
+
+    /**
+     * Copies a project directory. If the project changed while it was being copied (its generation moved, see
+     * GenerationStamp) the copy is thrown away and taken again. The last attempt holds the project lock so that
+     * a busy project doesn't keep the snapshot waiting.
+     */
+    private void backupProject(File source, File previous, File target, Snapshot snapshot, Throttle throttle) throws IOException {
+        int files = snapshot.files;
+        int linked = snapshot.linked;
+        int copied = snapshot.copied;
+        long bytesCopied = snapshot.bytesCopied;
+        for (int attempt = 1; ; attempt ++) {
+            Lock lock = attempt == PROJECT_COPY_ATTEMPTS ? workspace.getLocks().lock(source.getName()) : null;
+            try {
+                GenerationStamp before = GenerationStamp.read(source);
+                FileUtils.forceMkdir(target);
+                copyTree(source, previous, target, false, snapshot, throttle);
+                GenerationStamp after = GenerationStamp.read(source);
+                if (lock != null || (before == null ? after == null : before.equals(after)))
+                    return;
+            } finally {
+                if (lock != null)
+                    lock.unlock();
+            }
+            FileUtils.deleteDirectory(target);
+            snapshot.files = files;
+            snapshot.linked = linked;
+            snapshot.copied = copied;
+            snapshot.bytesCopied = bytesCopied;
+        }
+    }
+
+    private void backupFile(File source, File previous, File target, Snapshot snapshot, Throttle throttle) throws IOException {
+        long size = source.length();
+        long modified = source.lastModified();
+        snapshot.files ++;
+        if (previous != null && previous.isFile() && previous.length() == size && previous.lastModified() == modified && link(previous, target)) {
+            snapshot.linked ++;
+            return;
+        }
+        InputStream input = new FileInputStream(source);
+        try {
+            copy(input, target, throttle, snapshot);
+        } finally {
+            input.close();
+        }
+        target.setLastModified(modified);
+    }
+
+    private boolean link(File existing, File link) {
+        try {
+            Files.createLink(link.toPath(), existing.toPath());
+            return true;
+        } catch (UnsupportedOperationException | IOException e) {
+            return false; // i.e. too many links. Copy it.
+        }
+    }
+
+    private void copy(InputStream input, File target, Throttle throttle, Snapshot snapshot) throws IOException {
+        OutputStream output = new FileOutputStream(target);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                throttle.acquire(count);
+                output.write(buffer, 0, count);
+                snapshot.bytesCopied += count;
+            }
+        } finally {
+            output.close();
+        }
+        snapshot.copied ++;
+    }
+
+    /**
+     * Writes the entities of the workspace store as files, in the directories of the projects they belong to.
+     */
+    private void exportStore(File previous, File target, Snapshot snapshot, Throttle throttle) throws IOException {
+        WorkspaceLayout layout = WorkspaceLayout.forWorkspace(workspaceDir);
+        for (Map.Entry<String, Long> entry: store.list("").entrySet()) {
+            String key = entry.getKey();
+            if (StoreWorkspaceStorage.isFileKey(key) || key.startsWith(WorkspaceStoreMigrator.MIGRATION_KEY))
+                continue;
+            String path = relativePath(layout, key);
+            File previousFile = previous == null ? null : new File(previous, path);
+            File targetFile = new File(target, path);
+            snapshot.files ++;
+            if (previousFile != null && previousFile.isFile() && previousFile.lastModified() == entry.getValue() && link(previousFile, targetFile)) {
+                snapshot.linked ++;
+                continue;
+            }
+            byte[] value = store.get(key);
+            if (value == null)
+                continue; // removed meanwhile
+            FileUtils.forceMkdir(targetFile.getParentFile());
+            copy(new ByteArrayInputStream(value), targetFile, throttle, snapshot);
+            targetFile.setLastModified(entry.getValue());
+        }
+    }
+
+    /**
+     * Where the entity with the given store key lives under the workspace, taking shards into account.
+     */
+    String relativePath(WorkspaceLayout layout, String key) {
+        int slash = key.indexOf('/');
+        if (slash < 0)
+            return key;
+        File projectDir = layout.projectDir(key.substring(0, slash));
+        String projectPath = workspaceDir.toPath().relativize(projectDir.getAbsoluteFile().toPath()).toString();
+        return projectPath + File.separator + key.substring(slash + 1);
+    }
+
+    /**
+     * Puts a project back the way it was in a snapshot. Whatever is there now goes to the trash. The .mod files and
+     * project index of the last build come back along with the state. The compiled project artifact is left out and
+     * re-created from them the first time the project is used (see FsProjectDao.loadCompiledProject()).
+     *
+     * The project is locked for the whole restore (see ProjectLocks) so that writes through the dao wait for it.
+     *
+     * @return false if there is no such snapshot or the project is not in it
+     */
+    public boolean restoreProject(String snapshotName, String projectName, JsonModelStorage storage) throws IOException, StorageException {
+        if (!snapshotName.startsWith(SNAPSHOT_PREFIX) || snapshotName.endsWith(PARTIAL_SUFFIX) || !WorkspaceLayout.isProjectName(projectName))
+            return false;
+        File snapshotDir = new File(backupDir, snapshotName);
+        File source = new File(snapshotDir, projectName);
+        if (!source.isDirectory())
+            source = new File(snapshotDir, WorkspaceLayout.SHARDS_DIRECTORY_NAME + File.separator + WorkspaceLayout.shardOf(projectName) + File.separator + projectName);
+        if (!source.isDirectory() || !new File(snapshotDir, MANIFEST_FILENAME).isFile())
+            return false;
+
+        Lock lock = workspace.getLocks().lock(projectName);
+        try {
+            // lay it out next to the workspace first so that it appears in one go
+            File staging = new File(workspaceDir, RESTORE_DIRECTORY_NAME + File.separator + projectName + "-" + System.currentTimeMillis());
+            FileUtils.forceMkdir(staging);
+            EmbeddedStore.Transaction transaction = store == null ? null : store.begin();
+            if (transaction != null)
+                transaction.removeAll(projectName + "/");
+            stage(source, staging, projectName, transaction);
+
+            WorkspaceLayout layout = WorkspaceLayout.forWorkspace(workspaceDir);
+            File projectDir = layout.projectDir(projectName);
+            workspace.getTrash().trash(projectDir, projectName);
+            layout.removeForwardingLink(projectName);
+            FileUtils.forceMkdir(projectDir.getParentFile());
+            try {
+                Files.move(staging.toPath(), projectDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                FileUtils.moveDirectory(staging, projectDir);
+            }
+            if (transaction != null)
+                transaction.commit();
+
+            GenerationStamp.bump(workspace, projectDir);
+            ProjectMetadataIndex index = workspace.getMetadataIndex();
+            if (index != null)
+                index.refresh(projectName, storage);
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Copies a project out of a snapshot. Entities go to the store transaction instead, if there is one.
+     */
+    private void stage(File source, File target, String key, EmbeddedStore.Transaction transaction) throws IOException {
+        File[] children = source.listFiles();
+        if (children == null)
+            return;
+        for (File child: children) {
+            String childKey = key + "/" + child.getName();
+            File targetChild = new File(target, child.getName());
+            if (isCompiledProject(source, child))
+                continue; // re-created on first use
+            if (child.isDirectory()) {
+                FileUtils.forceMkdir(targetChild);
+                stage(child, targetChild, childKey, transaction);
+            } else
+            if (transaction != null && !StoreWorkspaceStorage.isFileKey(childKey) && !child.getName().equals(GenerationStamp.FILENAME)) {
+                transaction.put(childKey, workspace.getCompression().decode(FileUtils.readFileToByteArray(child)));
+            } else {
+                try {
+                    Files.copy(child.toPath(), targetChild.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+                } catch (FileSystemException e) {
+                    throw new IOException("Error restoring " + child, e);
+                }
+            }
+        }
+    }
+
+    // the compiled project artifact of a project is a cache of its .mod files
+    private static boolean isCompiledProject(File dir, File file) {
+        return file.getName().equals(CompiledProject.ENTITY_NAME) && dir.getName().equals("data");
+    }
+
+    /**
+     * Keeps copying within maxBytesPerSecond.
+     */
+    static class Throttle {
+        final long maxBytesPerSecond;
+        final long started = System.nanoTime();
+        long bytes;
+
+        Throttle(long maxBytesPerSecond) {
+            this.maxBytesPerSecond = maxBytesPerSecond;
+        }
+
+        void acquire(long count) throws IOException {
+            if (maxBytesPerSecond <= 0)
+                return;
+            bytes += count;
+            long dueMillis = bytes * 1000 / maxBytesPerSecond - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            if (dueMillis > 0) {
+                try {
+                    Thread.sleep(dueMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("snapshot interrupted");
+                }
+            }
+        }
+    }
+
+    /**
+     * What a snapshot holds. Kept in the snapshot directory as MANIFEST_FILENAME and returned by the admin API.
+     */
+    public static class Snapshot {
+        String name;
+        long created;
+        long durationMillis;
+        int files;
+        int linked; // unchanged since the previous snapshot
+        int copied;
+        long bytesCopied;
+
+        Snapshot(String name, long created) {
+            this.name = name;
+            this.created = created;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        public int getLinked() {
+            return linked;
+        }
+
+        public int getCopied() {
+            return copied;
+        }
+
+        public long getBytesCopied() {
+            return bytesCopied;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + files + " files, " + linked + " unchanged, " + copied + " copied (" + bytesCopied + " bytes) in " + durationMillis + " ms";
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package org.restcomm.connect.rvd.storage;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+
+/**
+ * Where projects live in a file system workspace.
+ *
+ * Originally all projects are direct children of the workspace root. A sharded workspace keeps them under
+ * @shards/xx/ instead, where xx is derived from a hash of the project name, so that no directory grows too large. The
+ * workspace is sharded once the @shards directory exists. Other workspace areas (@users, @templates etc.) stay at the
+ * root.
+ *
+ * Projects of a sharded workspace may still be at the root until ShardMigrator gets to them. Lookups try the shard
+ * first and the root next. New projects go to their shard.
+ *
+ * A project is moved with a single rename. A symbolic link is left at the old location for a while so that requests
+ * that resolved the old path before the move still reach the project. If such a request re-creates the old directory
+ * before the link is in place, its content is merged into the shard.
+ *
+ * There is one layout per workspace directory.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class WorkspaceLayout {
+
+    static Logger logger = RvdLoggers.local;
+
+    public static final String SHARDS_DIRECTORY_NAME = "@shards";
+    static final long RECHECK_MILLIS = 1000; // how often the workspace is checked for @shards
+
+    private static final ConcurrentMap<String, WorkspaceLayout> layouts = new ConcurrentHashMap<String, WorkspaceLayout>();
+
+    private final File root;
+    private final File shardsDir;
+    private volatile boolean sharded;
+    private volatile long checkedAt;
+
+    WorkspaceLayout(File root) {
+        this.root = root;
+        this.shardsDir = new File(root, SHARDS_DIRECTORY_NAME);
+    }
+
+    public static WorkspaceLayout forWorkspace(File root) {
+        String key = root.getAbsolutePath();
+        WorkspaceLayout layout = layouts.get(key);
+        if (layout == null) {
+            layout = new WorkspaceLayout(root);
+            WorkspaceLayout existing = layouts.putIfAbsent(key, layout);
+            if (existing != null)
+                layout = existing;
+        }
+        return layout;
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    public boolean isSharded() {
+        long now = System.currentTimeMillis();
+        if (now - checkedAt >= RECHECK_MILLIS) {
+            sharded = shardsDir.isDirectory(); // another node may have enabled sharding
+            checkedAt = now;
+        }
+        return sharded;
+    }
+
+    /**
+     * Turns the workspace into a sharded one. Existing projects stay where they are until migrated.
+     */
+    public void enableSharding() throws IOException {
+        if (!shardsDir.isDirectory() && !shardsDir.mkdirs())
+            throw new IOException("Cannot create " + shardsDir);
+        sharded = true;
+        checkedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the shard of a project, two hex digits out of 256.
+     */
+    public static String shardOf(String projectName) {
+        CRC32 crc = new CRC32();
+        crc.update(projectName.getBytes(Charset.forName("UTF-8")));
+        return String.format("%02x", crc.getValue() & 0xff);
+    }
+
+    /**
+     * Returns true for root entries that are projects, as opposed to workspace areas and files like @users.
+     */
+    static boolean isProjectName(String name) {
+        return !name.isEmpty() && !name.startsWith("@") && !name.startsWith(".") && name.indexOf('/') < 0 && name.indexOf(File.separatorChar) < 0;
+    }
+
+    File legacyDir(String projectName) {
+        return new File(root, projectName);
+    }
+
+    File shardedDir(String projectName) {
+        return new File(shardsDir, shardOf(projectName) + File.separator + projectName);
+    }
+
+    /**
+     * Returns the directory of a project, whether it exists or not.
+     */
+    public File projectDir(String projectName) {
+        if (!isProjectName(projectName) || !isSharded())
+            return legacyDir(projectName);
+        File shardedDir = shardedDir(projectName);
+        if (shardedDir.exists())
+            return shardedDir;
+        File legacyDir = legacyDir(projectName);
+        if (legacyDir.exists())
+            return legacyDir; // not migrated yet
+        return shardedDir;
+    }
+
+    /**
+     * Resolves a path relative to the workspace root. "", "." and "./" are the root itself.
+     */
+    public String resolve(String relativePath) {
+        while (relativePath.startsWith("./"))
+            relativePath = relativePath.substring(2);
+        if (relativePath.isEmpty() || relativePath.equals("."))
+            return root.getPath();
+        int slash = relativePath.indexOf('/');
+        String first = slash < 0 ? relativePath : relativePath.substring(0, slash);
+        if (isProjectName(first) && isSharded())
+            return projectDir(first).getPath() + (slash < 0 ? "" : File.separator + relativePath.substring(slash + 1));
+        return root.getPath() + File.separator + relativePath;
+    }
+
+    /**
+     * Returns true if path is the workspace root.
+     */
+    public boolean isRoot(String relativePath) {
+        while (relativePath.startsWith("./"))
+            relativePath = relativePath.substring(2);
+        return relativePath.isEmpty() || relativePath.equals(".") || relativePath.equals("/");
+    }
+
+    /**
+     * Lists the root the way it would look if all projects were direct children of it. Forwarding links and the
+     * @shards directory itself are left out.
+     */
+    public List<File> listRoot() {
+        List<File> entries = new ArrayList<File>();
+        File[] children = root.listFiles();
+        if (children != null) {
+            for (File child: children) {
+                if (child.equals(shardsDir) || isForwardingLink(child))
+                    continue;
+                entries.add(child);
+            }
+        }
+        entries.addAll(shardedProjectDirs());
+        return entries;
+    }
+
+    /**
+     * Returns the directories of projects already in their shard.
+     */
+    public List<File> shardedProjectDirs() {
+        List<File> dirs = new ArrayList<File>();
+        File[] shards = shardsDir.listFiles();
+        if (shards == null)
+            return dirs;
+        for (File shard: shards) {
+            File[] projects = shard.listFiles();
+            if (projects == null)
+                continue;
+            for (File project: projects)
+                if (isProjectName(project.getName()))
+                    dirs.add(project);
+        }
+        return dirs;
+    }
+
+    /**
+     * Returns the projects still at the root, up to max of them. Forwarding links are not included.
+     */
+    public List<String> listUnmigrated(int max) {
+        List<String> names = new ArrayList<String>();
+        File[] children = root.listFiles();
+        if (children == null)
+            return names;
+        for (File child: children) {
+            if (names.size() >= max)
+                break;
+            if (isProjectName(child.getName()) && child.isDirectory() && !Files.isSymbolicLink(child.toPath()))
+                names.add(child.getName());
+        }
+        return names;
+    }
+
+    boolean isForwardingLink(File file) {
+        return isProjectName(file.getName()) && Files.isSymbolicLink(file.toPath());
+    }
+
+    /**
+     * Moves a project from the root to its shard and leaves a link behind. If the project is found in both places
+     * (a request re-created it at the root after it was moved) the root copy is merged into the shard.
+     *
+     * The caller holds the lock of the project (see ProjectLocks) so that no write resolves its paths to the root
+     * while the project moves.
+     *
+     * @return true if a forwarding link was left at the root
+     */
+    public boolean migrate(String projectName) throws IOException {
+        File legacyDir = legacyDir(projectName);
+        File shardedDir = shardedDir(projectName);
+        if (!shardedDir.exists()) {
+            shardedDir.getParentFile().mkdirs();
+            Files.move(legacyDir.toPath(), shardedDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } else
+            merge(legacyDir, shardedDir);
+        try {
+            Files.createSymbolicLink(legacyDir.toPath(), shardedDir.toPath());
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            // re-created between the move and the link. Merge and try once more.
+            merge(legacyDir, shardedDir);
+            try {
+                Files.createSymbolicLink(legacyDir.toPath(), shardedDir.toPath());
+                return true;
+            } catch (FileAlreadyExistsException e1) {
+                return false; // the next migration pass will merge it
+            }
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    // moves whatever is in source into target, replacing older files, and removes source
+    void merge(File source, File target) throws IOException {
+        File[] entries = source.listFiles();
+        if (entries != null) {
+            for (File entry: entries) {
+                File targetEntry = new File(target, entry.getName());
+                if (entry.isDirectory() && !Files.isSymbolicLink(entry.toPath())) {
+                    targetEntry.mkdirs();
+                    merge(entry, targetEntry);
+                } else
+                if (!targetEntry.exists() || entry.lastModified() >= targetEntry.lastModified())
+                    Files.move(entry.toPath(), targetEntry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        FileUtils.deleteQuietly(source);
+        logger.warn(LoggingHelper.buildMessage(getClass(), "merge", null, "merged " + source + " into " + target));
+    }
+
+    /**
+     * Removes the forwarding link of a project, if there is one.
+     */
+    public void removeForwardingLink(String projectName) throws IOException {
+        Path link = legacyDir(projectName).toPath();
+        if (Files.isSymbolicLink(link))
+            Files.delete(link);
+    }
+
+    /**
+     * Removes all forwarding links at the root.
+     *
+     * @return the number of links removed
+     */
+    public int removeForwardingLinks() throws IOException {
+        int count = 0;
+        File[] children = root.listFiles();
+        if (children == null)
+            return 0;
+        for (File child: children) {
+            if (isForwardingLink(child)) {
+                Files.delete(child.toPath());
+                count ++;
+            }
+        }
+        return count;
+    }
+}
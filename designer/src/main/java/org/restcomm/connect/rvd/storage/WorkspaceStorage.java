@@ -21,6 +21,11 @@ public interface WorkspaceStorage {
 
     void storeEntityString(String entityString, String entityName, String entityPath) throws StorageException;
 
+    /**
+     * Stores a group of entities all-or-nothing.
+     */
+    void storeEntityStrings(List<EntityWrite> entities) throws StorageException;
+
     void storeBinaryFile(File sourceFile, String entityName, String entityPath) throws StorageException;
 
     InputStream loadBinaryFile(String projectName, String entityName, String entityPath) throws FileNotFoundException;
@@ -30,4 +35,9 @@ public interface WorkspaceStorage {
     void copyDirToWorkspace(String sourcePath, String workspaceParentPath) throws StorageException;
 
     String resolveWorkspacePath(String path);
+
+    /**
+     * Returns what is kept in this process about the workspace, shared with whatever else works on it.
+     */
+    Workspace getWorkspace();
 }
@@ -0,0 +1,132 @@
+package org.restcomm.connect.rvd.storage;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Copies the entities of a file system workspace (see FsWorkspaceStorage) into an EmbeddedStore. Each project is
+ * copied in a single transaction. Projects already in the store are skipped so an interrupted migration can simply
+ * be run again. Files are left in place.
+ *
+ * What stays on the file system is not copied (see StoreWorkspaceStorage). Neither are compiled project artifacts,
+ * generation stamps and leftover temporary files.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class WorkspaceStoreMigrator {
+
+    static Logger logger = RvdLoggers.local;
+    static final String MIGRATION_KEY = "@migration"; // set once migration completes. Not visible as an entity.
+
+    private final File workspaceDir;
+    private final EntityCompression compression;
+    private final EmbeddedStore store;
+
+    public WorkspaceStoreMigrator(Workspace workspace, EmbeddedStore store) {
+        this.workspaceDir = workspace.getDir();
+        this.compression = workspace.getCompression();
+        this.store = store;
+    }
+
+    public boolean isMigrated() {
+        return store.contains(MIGRATION_KEY);
+    }
+
+    public static class Report {
+        int projects;
+        int skippedProjects;
+        int entities;
+        long bytes;
+
+        public int getProjects() {
+            return projects;
+        }
+
+        public int getSkippedProjects() {
+            return skippedProjects;
+        }
+
+        public int getEntities() {
+            return entities;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return projects + " projects (" + entities + " entities, " + bytes + " bytes) migrated, " + skippedProjects + " already in the store";
+        }
+    }
+
+    public Report migrate() throws StorageException {
+        long started = System.currentTimeMillis();
+        Report report = new Report();
+        File[] entries = workspaceDir.listFiles();
+        if (entries == null)
+            throw new StorageException("Cannot list workspace " + workspaceDir);
+        try {
+            EmbeddedStore.Transaction rootEntities = store.begin();
+            for (File entry: entries) {
+                if (entry.getName().startsWith("@"))
+                    continue;
+                if (entry.isDirectory()) {
+                    migrateProject(entry, report);
+                } else
+                if (!store.contains(entry.getName())) {
+                    addEntity(rootEntities, entry.getName(), entry, report);
+                }
+            }
+            for (File projectDir: WorkspaceLayout.forWorkspace(workspaceDir).shardedProjectDirs())
+                migrateProject(projectDir, report);
+            rootEntities.put(MIGRATION_KEY, Long.toString(System.currentTimeMillis()).getBytes(Charset.forName("UTF-8")));
+            rootEntities.commit();
+        } catch (IOException e) {
+            throw new StorageException("Error migrating workspace " + workspaceDir + " to " + store.getFile(), e);
+        }
+        logger.info(LoggingHelper.buildMessage(getClass(), "migrate", null, report + " in " + (System.currentTimeMillis() - started) + " ms"));
+        return report;
+    }
+
+    void migrateProject(File projectDir, Report report) throws IOException {
+        String projectName = projectDir.getName();
+        if (store.hasKeysStartingWith(projectName + "/")) {
+            report.skippedProjects ++;
+            return;
+        }
+        EmbeddedStore.Transaction transaction = store.begin();
+        addDirectory(transaction, projectName, projectDir, report);
+        transaction.commit();
+        report.projects ++;
+    }
+
+    void addDirectory(EmbeddedStore.Transaction transaction, String path, File dir, Report report) throws IOException {
+        File[] entries = dir.listFiles();
+        if (entries == null)
+            return;
+        for (File entry: entries) {
+            String key = path + "/" + entry.getName();
+            if (StoreWorkspaceStorage.isFileKey(key) || entry.getName().equals(CompiledProject.ENTITY_NAME) || entry.getName().equals(GenerationStamp.FILENAME) || entry.getName().endsWith(".tmp"))
+                continue;
+            if (entry.isDirectory())
+                addDirectory(transaction, key, entry, report);
+            else
+                addEntity(transaction, key, entry, report);
+        }
+    }
+
+    void addEntity(EmbeddedStore.Transaction transaction, String key, File file, Report report) throws IOException {
+        byte[] value = compression.decode(FileUtils.readFileToByteArray(file)); // the store keeps them plain
+        transaction.put(key, value);
+        report.entities ++;
+        report.bytes += value.length;
+    }
+}
@@ -0,0 +1,165 @@
+package org.restcomm.connect.rvd.storage;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where removed projects go. A project directory is renamed into @trash in one step, so it's gone from the workspace
+ * at once however big it is, and its files are deleted later by TrashReaper. Whatever is in the trash after a crash
+ * is still there on next start and is picked up again.
+ *
+ * There is one trash per workspace directory (see Workspace).
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class WorkspaceTrash {
+
+    public static final String DIRECTORY_NAME = "@trash";
+
+    private final File trashDir;
+    private final AtomicLong sequence = new AtomicLong();
+
+    WorkspaceTrash(File workspaceDir) {
+        this.trashDir = new File(workspaceDir.getAbsoluteFile(), DIRECTORY_NAME);
+    }
+
+    public File getDirectory() {
+        return trashDir;
+    }
+
+    /**
+     * Moves a directory of the workspace into the trash. If it can't be renamed there (i.e. it's on another file
+     * system) it is deleted right away.
+     *
+     * @param name what the directory is known as, i.e. the application sid. Entries in the trash are named after it.
+     * @return the entry in the trash or null if there was nothing to move or it was deleted in place
+     */
+    public File trash(File dir, String name) throws IOException {
+        if (!dir.exists())
+            return null;
+        FileUtils.forceMkdir(trashDir);
+        File entry = new File(trashDir, name + "-" + System.currentTimeMillis() + "-" + sequence.incrementAndGet());
+        try {
+            Files.move(dir.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return null; // removed concurrently
+        } catch (AtomicMoveNotSupportedException e) {
+            FileUtils.deleteDirectory(dir);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the entries waiting to be reaped, oldest first.
+     */
+    public List<File> list() {
+        File[] entries = trashDir.listFiles();
+        if (entries == null)
+            return Collections.emptyList();
+        List<File> sorted = new ArrayList<File>(Arrays.asList(entries));
+        Collections.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long[] orderA = order(a);
+                long[] orderB = order(b);
+                if (orderA[0] != orderB[0])
+                    return Long.compare(orderA[0], orderB[0]);
+                return Long.compare(orderA[1], orderB[1]);
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * Returns when an entry was trashed and its sequence number within that millisecond, out of its name.
+     */
+    static long[] order(File entry) {
+        String[] parts = entry.getName().split("-");
+        if (parts.length >= 3) {
+            try {
+                return new long[] {Long.parseLong(parts[parts.length - 2]), Long.parseLong(parts[parts.length - 1])};
+            } catch (NumberFormatException e) {
+                // not named by trash()
+            }
+        }
+        return new long[] {entry.lastModified(), 0};
+    }
+
+    /**
+     * Deletes files of a trash entry until the budget runs out. Symbolic links are removed, never followed. Files
+     * removed by someone else in the meantime (i.e. another node sharing the workspace) are skipped.
+     *
+     * @return true if the entry is completely gone
+     */
+    public boolean reap(File entry, Budget budget) throws IOException {
+        return delete(entry.toPath(), budget);
+    }
+
+    private boolean delete(Path path, Budget budget) throws IOException {
+        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            File[] children = path.toFile().listFiles();
+            if (children != null) {
+                for (File child: children)
+                    if (!delete(child.toPath(), budget))
+                        return false;
+            }
+        } else {
+            if (budget.isExhausted())
+                return false;
+            long size = Files.isSymbolicLink(path) ? 0 : path.toFile().length();
+            budget.spend(size);
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (DirectoryNotEmptyException e) {
+            return false; // something was added under it. Next time.
+        }
+        return true;
+    }
+
+    /**
+     * How much deleting may be done in one go.
+     */
+    public static class Budget {
+        private long files;
+        private long bytes;
+
+        public Budget(long files, long bytes) {
+            this.files = files;
+            this.bytes = bytes;
+        }
+
+        boolean isExhausted() {
+            return files <= 0 || bytes <= 0;
+        }
+
+        void spend(long size) {
+            files --;
+            bytes -= size;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.restcomm.connect.rvd.storage.exceptions;
+
+/**
+ * Thrown when a compiled project artifact can't be used as is and should be rebuilt. For example when it was
+ * written in an older format version.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class StaleCompiledProject extends StorageException {
+
+    public StaleCompiledProject(String message) {
+        super(message);
+    }
+}
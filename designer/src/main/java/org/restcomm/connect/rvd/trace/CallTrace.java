@@ -0,0 +1,190 @@
+package org.restcomm.connect.rvd.trace;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.restcomm.connect.rvd.RvdConfiguration;
+
+/**
+ * Structured trace of a single controller request. Filled in by RvdController, Interpreter and steps while the
+ * request is processed and kept in the CallTraceBuffer of the application once it's complete.
+ *
+ * Memory is bounded: at most MAX_EVENTS events are kept (the rest are counted) and values are cut at
+ * MAX_VALUE_LENGTH characters. Values of variables whose name matches the redaction pattern are not kept at all.
+ * The pattern is tried both on the variable name and on the name without its scope prefix (core_, module_ or
+ * sticky_). ES urls are kept without credentials and query string as those often carry secrets.
+ *
+ * Not thread-safe. A trace belongs to the thread processing the request.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class CallTrace {
+
+    public static final int MAX_EVENTS = 200;
+    public static final int MAX_VALUE_LENGTH = 256;
+    public static final String REDACTED = "***";
+    static final String[] SCOPE_PREFIXES = {RvdConfiguration.CORE_VARIABLE_PREFIX, RvdConfiguration.MODULE_PREFIX, RvdConfiguration.STICKY_PREFIX};
+
+    private final transient long startedNanos = System.nanoTime();
+    private final transient Pattern redactPattern;
+    String callSid;
+    long started = System.currentTimeMillis();
+    Long durationMicros; // null until completed
+    String outcome;
+    List<TraceEvent> events = new ArrayList<TraceEvent>();
+    int droppedEvents;
+
+    /**
+     * @param callSid the CallSid of the request. May be null (i.e. for SMS or USSD).
+     * @param redactPattern values of variables whose name matches are redacted. May be null.
+     */
+    public CallTrace(String callSid, Pattern redactPattern) {
+        this.callSid = callSid;
+        this.redactPattern = redactPattern;
+    }
+
+    public void target(String target) {
+        add(TraceEvent.Type.target, target, null);
+    }
+
+    public void module(String name, String label) {
+        add(TraceEvent.Type.module, name, label);
+    }
+
+    public void step(String name, String kind, long nanos) {
+        TraceEvent event = add(TraceEvent.Type.step, name, kind);
+        if (event != null)
+            event.micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    public void variable(String name, String value) {
+        if (value != null && isRedacted(name))
+            value = REDACTED;
+        add(TraceEvent.Type.variable, name, value);
+    }
+
+    boolean isRedacted(String name) {
+        if (redactPattern == null || name == null)
+            return false;
+        if (redactPattern.matcher(name).matches())
+            return true;
+        for (String prefix: SCOPE_PREFIXES) {
+            if (name.startsWith(prefix))
+                return redactPattern.matcher(name.substring(prefix.length())).matches();
+        }
+        return false;
+    }
+
+    /**
+     * @param status the HTTP status or null if no response was received
+     */
+    public void es(String url, Integer status, long nanos) {
+        TraceEvent event = add(TraceEvent.Type.es, stripUrl(url), null);
+        if (event != null) {
+            event.status = status;
+            event.micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        }
+    }
+
+    public void route(String fromModule, String toModule) {
+        add(TraceEvent.Type.route, fromModule, toModule);
+    }
+
+    public void error(String message) {
+        add(TraceEvent.Type.error, null, message);
+    }
+
+    /**
+     * @param outcome a short description of how the request ended i.e. 'ok', 'error' or 'cached'
+     */
+    public void complete(String outcome) {
+        this.outcome = outcome;
+        this.durationMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedNanos);
+    }
+
+    private TraceEvent add(TraceEvent.Type type, String name, String value) {
+        if (events.size() >= MAX_EVENTS) {
+            droppedEvents ++;
+            return null;
+        }
+        TraceEvent event = new TraceEvent(type, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedNanos), cut(name), cut(value));
+        events.add(event);
+        return event;
+    }
+
+    /**
+     * @return a rough estimate of the heap memory the trace takes
+     */
+    long estimateBytes() {
+        long bytes = 128;
+        for (TraceEvent event: events)
+            bytes += 64 + 2 * (length(event.name) + length(event.value));
+        return bytes;
+    }
+
+    /**
+     * Removes user info, query string and fragment from a url. Urls that can't be parsed are cut at the first '?'
+     * and lose anything up to an '@' after the scheme.
+     */
+    public static String stripUrl(String url) {
+        if (url == null)
+            return null;
+        try {
+            URI uri = new URI(url);
+            if (uri.getHost() != null)
+                return new URI(uri.getScheme(), null, uri.getHost(), uri.getPort(), uri.getPath(), null, null).toString();
+        } catch (URISyntaxException e) {
+            // handled below
+        }
+        int end = url.length();
+        for (char c: new char[] {'?', '#'}) {
+            int index = url.indexOf(c);
+            if (index >= 0 && index < end)
+                end = index;
+        }
+        String stripped = url.substring(0, end);
+        int authority = stripped.indexOf("//");
+        int at = stripped.lastIndexOf('@');
+        if (authority >= 0 && at > authority)
+            stripped = stripped.substring(0, authority + 2) + stripped.substring(at + 1);
+        return stripped;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static String cut(String value) {
+        if (value == null || value.length() <= MAX_VALUE_LENGTH)
+            return value;
+        return value.substring(0, MAX_VALUE_LENGTH) + "...";
+    }
+
+    public String getCallSid() {
+        return callSid;
+    }
+
+    public long getStarted() {
+        return started;
+    }
+
+    public Long getDurationMicros() {
+        return durationMicros;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+
+    public List<TraceEvent> getEvents() {
+        return events;
+    }
+
+    public int getDroppedEvents() {
+        return droppedEvents;
+    }
+}
@@ -0,0 +1,80 @@
+package org.restcomm.connect.rvd.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the last 'capacity' call traces of an application. Older traces are overwritten. Since both the number
+ * of traces and their size are bounded, so is the memory a buffer takes no matter how much traffic there is.
+ *
+ * Lives in ResidentProjectInfo.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class CallTraceBuffer {
+
+    private final CallTrace[] traces;
+    private int next = 0; // where the next trace goes
+    private long total = 0;
+
+    public CallTraceBuffer(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity should be a positive number");
+        this.traces = new CallTrace[capacity];
+    }
+
+    public int getCapacity() {
+        return traces.length;
+    }
+
+    public synchronized void add(CallTrace trace) {
+        traces[next] = trace;
+        next = (next + 1) % traces.length;
+        total ++;
+    }
+
+    /**
+     * @return the traces of all requests of a call that are still in the buffer, oldest first
+     */
+    public synchronized List<CallTrace> find(String callSid) {
+        List<CallTrace> found = new ArrayList<CallTrace>();
+        for (int i = 0; i < traces.length; i++) {
+            CallTrace trace = traces[(next + i) % traces.length];
+            if (trace != null && callSid.equals(trace.getCallSid()))
+                found.add(trace);
+        }
+        return found;
+    }
+
+    /**
+     * @return up to 'limit' of the most recent traces, newest first
+     */
+    public synchronized List<CallTrace> recent(int limit) {
+        List<CallTrace> found = new ArrayList<CallTrace>();
+        for (int i = 1; i <= traces.length && found.size() < limit; i++) {
+            CallTrace trace = traces[(next - i + traces.length) % traces.length];
+            if (trace == null)
+                break;
+            found.add(trace);
+        }
+        return found;
+    }
+
+    /**
+     * @return a rough estimate of the heap memory the buffer and its traces take
+     */
+    public synchronized long estimateBytes() {
+        long bytes = 32 + 8L * traces.length;
+        for (CallTrace trace: traces)
+            if (trace != null)
+                bytes += trace.estimateBytes();
+        return bytes;
+    }
+
+    /**
+     * @return the number of traces added since the buffer was created
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+}
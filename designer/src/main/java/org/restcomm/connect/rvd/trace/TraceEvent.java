@@ -0,0 +1,57 @@
+package org.restcomm.connect.rvd.trace;
+
+/**
+ * A single thing that happened while a request was processed. Only the fields that make sense for each type are set.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class TraceEvent {
+
+    public enum Type {
+        target,   // the controller target (module, step, action) the request asked for
+        module,   // a module was entered
+        step,     // a step was processed and rendered
+        variable, // a variable was assigned
+        es,       // an External Service request
+        route,    // the flow moved to another module
+        error
+    }
+
+    Type type;
+    long at; // microseconds since the request started
+    String name;
+    String value;
+    Long micros; // duration
+    Integer status; // HTTP status of ES requests
+
+    TraceEvent(Type type, long at, String name, String value) {
+        this.type = type;
+        this.at = at;
+        this.name = name;
+        this.value = value;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getAt() {
+        return at;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public Long getMicros() {
+        return micros;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+}
@@ -21,6 +21,7 @@ package org.restcomm.connect.rvd.upgrade;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -60,9 +61,21 @@ public class UpgradeService {
     static final List<String> upgradesPath = Arrays.asList(new String [] {"1.0","1.6","1.13"});
 
     private JsonModelStorage storage;
+    private ProjectDao projectDao;
 
+    /**
+     * Upgrades projects of a file system workspace. Prefer passing the dao of the backend in use.
+     */
     public UpgradeService(JsonModelStorage storage) {
+        this(storage, new FsProjectDao(storage));
+    }
+
+    /**
+     * @param projectDao a dao for the workspace backend 'storage' is on. Upgraded projects are built with it.
+     */
+    public UpgradeService(JsonModelStorage storage, ProjectDao projectDao) {
         this.storage = storage;
+        this.projectDao = projectDao;
     }
 
     /**
@@ -116,6 +129,16 @@ public class UpgradeService {
      * @throws UpgradeException
      */
     public JsonElement upgradeProject(String projectName) throws StorageException, UpgradeException {
+        // the state is read, upgraded and written back with no other change to the project in between
+        Lock lock = storage.getWorkspace().getLocks().lock(projectName);
+        try {
+            return upgradeLockedProject(projectName);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private JsonElement upgradeLockedProject(String projectName) throws StorageException, UpgradeException {
         StateHeader header = null;
         String startVersion = null;
         try {
@@ -161,7 +184,7 @@ public class UpgradeService {
         }
 
         backupProjectState(projectName, storage);
-        storage.storeEntityString(root.toString(), "state", projectName);
+        projectDao.updateProjectStateRaw(projectName, root.toString());
         //FsProjectStorage.updateProjectState(projectName, root.toString(), storage);
         return root;
     }
@@ -170,7 +193,6 @@ public class UpgradeService {
      * @throws StorageException
      */
     public void upgradeWorkspace() throws StorageException {
-        ProjectDao projectDao = new FsProjectDao(storage);
         BuildService buildService = new BuildService(projectDao);
         int upgradedCount = 0;
         int uptodateCount = 0;
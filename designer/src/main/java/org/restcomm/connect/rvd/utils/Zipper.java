@@ -132,9 +132,9 @@ public class Zipper {
                 addDirectory(childPath + "/" + file.getName() + "/");
                 addNestedDirectoryContents(rootPath, childPath + "/" + file.getName());
             } else {
-                FileInputStream inputStream;
+                InputStream inputStream;
                 try {
-                    inputStream = new FileInputStream(file);
+                    inputStream = openFile(file);
                     try {
                         addFile(childPath + "/" + file.getName(), inputStream);
                     } finally {
@@ -150,6 +150,13 @@ public class Zipper {
         }
     }
 
+    /**
+     * Opens a file found under a directory being added. Override to transform its content on the way in.
+     */
+    protected InputStream openFile(File file) throws IOException {
+        return new FileInputStream(file);
+    }
+
     /**
      * Best effort finish function. If it fails it looks there is more that can be done. We just log
      * the message.
@@ -0,0 +1,137 @@
+package org.restcomm.connect.rvd.warmup;
+
+import java.nio.charset.Charset;
+
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.ApplicationContext;
+import org.restcomm.connect.rvd.capture.ReplayEngine;
+import org.restcomm.connect.rvd.concurrency.ResidentProjectInfo;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+import org.restcomm.connect.rvd.model.server.NodeName;
+import org.restcomm.connect.rvd.model.server.ProjectIndex;
+import org.restcomm.connect.rvd.storage.ProjectDao;
+import org.restcomm.connect.rvd.storage.ProjectSnapshotCache;
+import org.restcomm.connect.rvd.storage.Workspace;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+/**
+ * Loads the applications of a HotSet before RVD reports ready so that the first calls after a restart don't pay for
+ * reading and parsing their projects. For each application, hottest first:
+ *
+ * - the project snapshot (options, settings, parameters) is cached in its ResidentProjectInfo,
+ * - each hot module is interpreted once with ReplayEngine.dryRun(). This loads the project into the compiled project
+ *   cache of the dao and runs the interpreter code paths. No External Service is contacted and nothing is logged.
+ * - RCML of static modules is put in the RCML cache, as RvdController would do on the first request.
+ *
+ * Warming up stops once the time budget is spent.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class CacheWarmer {
+
+    static final Logger logger = RvdLoggers.global;
+    public static final long DEFAULT_BUDGET_MILLIS = 30000;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ApplicationContext applicationContext;
+    private final ProjectDao projectDao;
+    private final ReplayEngine replayEngine;
+    private final String contextPath;
+
+    /**
+     * @param projectDao a dao backed by the compiled project cache of the application context
+     * @param contextPath the context path RVD is deployed under
+     */
+    public CacheWarmer(ApplicationContext applicationContext, ProjectDao projectDao, String contextPath) {
+        this.applicationContext = applicationContext;
+        this.projectDao = projectDao;
+        this.replayEngine = new ReplayEngine(applicationContext.getConfiguration(), projectDao).setSpeed(0);
+        this.contextPath = contextPath;
+    }
+
+    /**
+     * @return what got warmed up
+     */
+    public Report warm(HotSet hotSet, long budgetMillis) {
+        Report report = new Report();
+        long started = System.currentTimeMillis();
+        Workspace workspace = applicationContext.getWorkspace();
+        int revalidationMillis = applicationContext.getConfiguration().getProjectRevalidationMillis();
+        for (HotSet.Application application: hotSet.getApplications()) {
+            if (System.currentTimeMillis() - started >= budgetMillis) {
+                report.skipped = hotSet.getApplications().size() - report.applications - report.missing;
+                break;
+            }
+            String applicationId = application.getApplicationId();
+            ResidentProjectInfo info = applicationContext.getProjectRegistry().getResidentProjectInfo(applicationId);
+            ProjectIndex options;
+            try {
+                ProjectSnapshotCache.Snapshot snapshot = info.getSnapshots().get(applicationId, workspace, revalidationMillis, projectDao);
+                options = snapshot.getOptions();
+            } catch (StorageException e) {
+                logger.warn(LoggingHelper.buildMessage(getClass(), "warm", null, "cannot load project " + applicationId + ": " + e.getMessage()));
+                options = null;
+            }
+            if (options == null) {
+                report.missing ++; // removed or never built since it was hot
+                continue;
+            }
+            report.applications ++;
+            if (application.getModules() == null)
+                continue;
+            for (String module: application.getModules()) {
+                NodeName nodeName = options.getNodeName(module);
+                if (nodeName == null)
+                    continue; // renamed or removed
+                String rcml = replayEngine.dryRun(applicationId, contextPath, nodeName.getName());
+                report.modules ++;
+                if (rcml != null && options.getBuildGeneration() != null && Boolean.TRUE.equals(nodeName.getStaticRcml())) {
+                    info.getRcmlCache().put(options.getBuildGeneration(), nodeName.getName(), rcml.getBytes(UTF8));
+                    report.cachedRcml ++;
+                }
+            }
+        }
+        report.elapsedMillis = System.currentTimeMillis() - started;
+        return report;
+    }
+
+    public static class Report {
+        int applications;
+        int missing;
+        int skipped; // left out when the budget was spent
+        int modules;
+        int cachedRcml;
+        long elapsedMillis;
+
+        public int getApplications() {
+            return applications;
+        }
+
+        public int getMissing() {
+            return missing;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public int getModules() {
+            return modules;
+        }
+
+        public int getCachedRcml() {
+            return cachedRcml;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return applications + " applications and " + modules + " modules warmed up (" + cachedRcml + " static) in "
+                    + elapsedMillis + "ms. " + missing + " missing, " + skipped + " skipped.";
+        }
+    }
+}
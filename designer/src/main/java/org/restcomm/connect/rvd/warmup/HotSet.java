@@ -0,0 +1,122 @@
+package org.restcomm.connect.rvd.warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+
+import com.google.gson.Gson;
+
+/**
+ * The most requested applications of a workspace lately along with their busiest modules, hottest first. Saved
+ * by HotSetTracker to @hotset.json at the root of the workspace and read back by CacheWarmer on startup.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class HotSet {
+
+    public static final String FILENAME = "@hotset.json";
+
+    static final Logger logger = RvdLoggers.global;
+    private static final Gson gson = new Gson();
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private long saved; // epoch millis
+    private List<Application> applications = new ArrayList<Application>();
+
+    public HotSet() {
+    }
+
+    public HotSet(long saved, List<Application> applications) {
+        this.saved = saved;
+        this.applications = applications;
+    }
+
+    public long getSaved() {
+        return saved;
+    }
+
+    public List<Application> getApplications() {
+        return applications;
+    }
+
+    public static File file(File workspaceDir) {
+        return new File(workspaceDir, FILENAME);
+    }
+
+    /**
+     * Returns the hot set saved in a workspace or null if there is none or it can't be read.
+     */
+    public static HotSet load(File workspaceDir) {
+        File file = file(workspaceDir);
+        if (!file.exists())
+            return null;
+        try {
+            Reader reader = new InputStreamReader(new FileInputStream(file), UTF8);
+            try {
+                HotSet hotSet = gson.fromJson(reader, HotSet.class);
+                return hotSet != null && hotSet.applications != null ? hotSet : null;
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn(LoggingHelper.buildMessage(HotSet.class, "load", null, "ignoring hot set " + file + ": " + e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the hot set saved in a workspace. A crash while writing leaves the previous one in place.
+     */
+    public void store(File workspaceDir) throws IOException {
+        File file = file(workspaceDir);
+        File temp = new File(workspaceDir, FILENAME + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(temp), UTF8);
+        try {
+            writer.write(gson.toJson(this));
+        } finally {
+            writer.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static class Application {
+        private String applicationId;
+        private double score; // decayed request count
+        private List<String> modules; // busiest first
+
+        public Application() {
+        }
+
+        public Application(String applicationId, double score, List<String> modules) {
+            this.applicationId = applicationId;
+            this.score = score;
+            this.modules = modules;
+        }
+
+        public String getApplicationId() {
+            return applicationId;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public List<String> getModules() {
+            return modules;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.restcomm.connect.rvd.warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.concurrency.ProjectRegistry;
+import org.restcomm.connect.rvd.concurrency.ResidentProjectInfo;
+import org.restcomm.connect.rvd.logging.system.LoggingHelper;
+import org.restcomm.connect.rvd.logging.system.RvdLoggers;
+
+/**
+ * Keeps track of the most requested applications out of the module hits counted in ProjectRegistry and saves them
+ * as the HotSet of the workspace every PERSIST_MINUTES and on stop.
+ *
+ * Each application has a score that is halved on every update and increased by the requests it got since the
+ * previous one. Applications that stop getting requests fade out of the hot set in a few updates, evicted from
+ * ProjectRegistry or not.
+ *
+ * Lives in ApplicationContext.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class HotSetTracker {
+
+    static final Logger logger = RvdLoggers.global;
+    static final long PERSIST_MINUTES = 5;
+    static final double DECAY = 0.5;
+    static final double MIN_SCORE = 0.5; // below that an application is dropped
+    static final int MODULES_PER_APPLICATION = 5;
+
+    private final ProjectRegistry registry;
+    private final File workspaceDir;
+    private final int size;
+    private final Map<String, Double> scores = new HashMap<String, Double>();
+    private final Map<String, List<String>> modules = new HashMap<String, List<String>>(); // kept while the application is scored
+    private final Map<String, Long> lastHits = new HashMap<String, Long>(); // module hits of resident applications on last update
+    private ScheduledExecutorService executor;
+
+    public HotSetTracker(ProjectRegistry registry, File workspaceDir, int size) {
+        this.registry = registry;
+        this.workspaceDir = workspaceDir;
+        this.size = size;
+    }
+
+    /**
+     * Continues from a hot set saved earlier so that a restart does not reset the ranking.
+     */
+    public synchronized void resume(HotSet saved) {
+        for (HotSet.Application application: saved.getApplications()) {
+            if (application.getApplicationId() == null)
+                continue;
+            scores.put(application.getApplicationId(), application.getScore());
+            if (application.getModules() != null)
+                modules.put(application.getApplicationId(), application.getModules());
+        }
+    }
+
+    public synchronized void start() {
+        if (executor != null)
+            return;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "rvd-hot-set-tracker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    persist();
+                } catch (RuntimeException e) {
+                    // an exception would cancel all later runs
+                    logger.error(LoggingHelper.buildMessage(HotSetTracker.class, "run", null, "error tracking hot set"), e);
+                }
+            }
+        }, PERSIST_MINUTES, PERSIST_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops tracking and saves the hot set one last time.
+     */
+    public void stop() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = executor;
+            executor = null;
+        }
+        if (running == null)
+            return;
+        running.shutdown();
+        try {
+            running.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        persist();
+    }
+
+    void persist() {
+        HotSet hotSet = update(System.currentTimeMillis());
+        try {
+            hotSet.store(workspaceDir);
+        } catch (IOException e) {
+            logger.warn(LoggingHelper.buildMessage(getClass(), "persist", null, "error saving hot set to " + HotSet.file(workspaceDir)), e);
+        }
+    }
+
+    /**
+     * Updates the scores with the requests counted since the previous update.
+     *
+     * @return the top 'size' applications
+     */
+    synchronized HotSet update(long now) {
+        Map<String, ResidentProjectInfo> resident = registry.getResidentProjects();
+        Set<String> applicationIds = new HashSet<String>(scores.keySet());
+        applicationIds.addAll(resident.keySet());
+        for (String applicationId: applicationIds) {
+            Double previous = scores.get(applicationId);
+            double score = previous == null ? 0 : previous * DECAY;
+            ResidentProjectInfo info = resident.get(applicationId);
+            if (info != null) {
+                Map<String, Long> hits = info.getModuleHits();
+                long total = 0;
+                for (Long count: hits.values())
+                    total += count;
+                Long last = lastHits.get(applicationId);
+                score += (last == null || total < last) ? total : total - last; // fewer hits: evicted and admitted again
+                lastHits.put(applicationId, total);
+                if (!hits.isEmpty())
+                    modules.put(applicationId, topModules(hits));
+            } else
+                lastHits.remove(applicationId); // counting starts over if it is admitted again
+            if (score < MIN_SCORE) {
+                scores.remove(applicationId);
+                modules.remove(applicationId);
+            } else
+                scores.put(applicationId, score);
+        }
+
+        List<Map.Entry<String, Double>> ranked = new ArrayList<Map.Entry<String, Double>>(scores.entrySet());
+        Collections.sort(ranked, new Comparator<Map.Entry<String, Double>>() {
+            @Override
+            public int compare(Map.Entry<String, Double> a, Map.Entry<String, Double> b) {
+                return Double.compare(b.getValue(), a.getValue());
+            }
+        });
+        List<HotSet.Application> applications = new ArrayList<HotSet.Application>();
+        for (Map.Entry<String, Double> entry: ranked) {
+            if (applications.size() >= size)
+                break;
+            List<String> hotModules = modules.get(entry.getKey());
+            applications.add(new HotSet.Application(entry.getKey(), entry.getValue(), hotModules != null ? hotModules : new ArrayList<String>()));
+        }
+        return new HotSet(now, applications);
+    }
+
+    // the MODULES_PER_APPLICATION most hit modules, busiest first
+    static List<String> topModules(Map<String, Long> hits) {
+        List<Map.Entry<String, Long>> ranked = new ArrayList<Map.Entry<String, Long>>(hits.entrySet());
+        Collections.sort(ranked, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                return Long.compare(b.getValue(), a.getValue());
+            }
+        });
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < ranked.size() && i < MODULES_PER_APPLICATION; i++)
+            names.add(ranked.get(i).getKey());
+        return names;
+    }
+}
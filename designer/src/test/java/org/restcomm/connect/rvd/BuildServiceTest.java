@@ -0,0 +1,63 @@
+package org.restcomm.connect.rvd;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.restcomm.connect.rvd.interpreter.StaticRcmlCache;
+import org.restcomm.connect.rvd.model.project.Node;
+import org.restcomm.connect.rvd.model.project.ProjectState;
+import org.restcomm.connect.rvd.model.server.ProjectIndex;
+import org.restcomm.connect.rvd.model.steps.pause.PauseStep;
+import org.restcomm.connect.rvd.model.steps.say.SayStep;
+import org.restcomm.connect.rvd.storage.MemoryProjectDao;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+import org.restcomm.connect.rvd.utils.CustomizableRvdConfiguration;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class BuildServiceTest {
+
+    static class IndexCapturingDao extends MemoryProjectDao {
+        ProjectIndex storedIndex;
+
+        @Override
+        public void storeProjectOptions(String applicationId, ProjectIndex projectOptions) throws StorageException {
+            storedIndex = projectOptions;
+        }
+    }
+
+    @Test
+    public void staticModulesAreMarked() throws StorageException {
+        ProjectState state = ProjectState.createEmptyVoice("orestis", new CustomizableRvdConfiguration());
+        Node dynamicNode = Node.createDefault("voice", "dynamic", "Dynamic");
+        dynamicNode.getSteps().add(SayStep.createDefault("step2", "hello $name"));
+        state.getNodes().add(dynamicNode);
+        Node pauseNode = Node.createDefault("voice", "paused", "Paused");
+        pauseNode.getSteps().add(new PauseStep());
+        pauseNode.getSteps().add(SayStep.createDefault("step3", "costs 5 $"));
+        state.getNodes().add(pauseNode);
+
+        IndexCapturingDao dao = new IndexCapturingDao();
+        new BuildService(dao).buildProject("AP1234", state);
+        ProjectIndex index = dao.storedIndex;
+        Assert.assertNotNull(index.getBuildGeneration());
+        Assert.assertEquals(Boolean.TRUE, index.getNodeName("start").getStaticRcml());
+        Assert.assertNull(index.getNodeName("dynamic").getStaticRcml());
+        Assert.assertEquals(Boolean.TRUE, index.getNodeName("paused").getStaticRcml());
+        // each build gets a new generation
+        long firstGeneration = index.getBuildGeneration();
+        new BuildService(dao).buildProject("AP1234", state);
+        Assert.assertTrue(dao.storedIndex.getBuildGeneration() > firstGeneration);
+    }
+
+    @Test
+    public void rcmlCacheIsBoundToGeneration() {
+        StaticRcmlCache cache = new StaticRcmlCache();
+        cache.put(1, "start", "<Response/>".getBytes());
+        Assert.assertNotNull(cache.get(1, "start"));
+        Assert.assertNull(cache.get(2, "start"));
+        cache.put(2, "other", "<Response/>".getBytes());
+        Assert.assertNull("entries of older generations should be dropped", cache.get(1, "start"));
+        Assert.assertEquals(1, cache.size());
+    }
+}
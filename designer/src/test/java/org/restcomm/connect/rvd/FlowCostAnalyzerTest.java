@@ -0,0 +1,120 @@
+package org.restcomm.connect.rvd;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.restcomm.connect.rvd.configuration.FlowCostLimits;
+import org.restcomm.connect.rvd.exceptions.project.FlowCostExceeded;
+import org.restcomm.connect.rvd.model.StepJsonDeserializer;
+import org.restcomm.connect.rvd.model.project.Node;
+import org.restcomm.connect.rvd.model.project.ProjectState;
+import org.restcomm.connect.rvd.model.project.Step;
+import org.restcomm.connect.rvd.model.server.FlowCostReport;
+import org.restcomm.connect.rvd.model.server.ProjectIndex;
+import org.restcomm.connect.rvd.storage.MemoryProjectDao;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+import org.restcomm.connect.rvd.utils.CustomizableRvdConfiguration;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.List;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class FlowCostAnalyzerTest {
+
+    static Gson gson = new GsonBuilder().registerTypeAdapter(Step.class, new StepJsonDeserializer()).create();
+
+    static Step step(String json) {
+        return gson.fromJson(json, Step.class);
+    }
+
+    static Node module(ProjectState state, String name, String... steps) {
+        Node node = Node.createDefault("voice", name, name);
+        for (String json: steps)
+            node.getSteps().add(step(json));
+        state.getNodes().add(node);
+        return node;
+    }
+
+    // start -(ES fixed)-> checkout -(control)-> done -(gather, next request)-> start
+    static ProjectState chainedProject() {
+        ProjectState state = ProjectState.createEmptyVoice("orestis", new CustomizableRvdConfiguration());
+        state.getNodes().clear();
+        module(state, "start", "{\"kind\":\"externalService\",\"name\":\"s1\",\"url\":\"http://localhost/a\",\"timeout\":2000,\"doRouting\":true,\"nextType\":\"fixed\",\"next\":\"checkout\"}");
+        module(state, "checkout",
+                "{\"kind\":\"externalService\",\"name\":\"s2\",\"url\":\"http://localhost/b\",\"timeout\":9000}",
+                "{\"kind\":\"control\",\"name\":\"s3\",\"actions\":[{\"continueTo\":{\"target\":\"done\"}}]}");
+        module(state, "done", "{\"kind\":\"gather\",\"name\":\"s4\",\"menu\":{\"mappings\":[{\"digits\":\"1\",\"next\":\"start\"}]}}");
+        return state;
+    }
+
+    @Test
+    public void worstCaseCostFollowsReroutes() {
+        FlowCostReport report = new FlowCostAnalyzer(RvdConfiguration.DEFAULT_ES_TIMEOUT).analyze(chainedProject());
+        FlowCostReport.ModuleCost start = report.getModule("start");
+        Assert.assertTrue(start.isBounded());
+        Assert.assertEquals(2, start.getEsCalls().intValue());
+        // 9000 ms is capped to the configured ES timeout
+        Assert.assertEquals(2000 + RvdConfiguration.DEFAULT_ES_TIMEOUT, start.getEsTimeout().longValue());
+        Assert.assertEquals(2, start.getRerouteDepth().intValue());
+        Assert.assertEquals(0, report.getModule("done").getEsCalls().intValue());
+        Assert.assertEquals("start", report.getModule("done").getInputTargets().get(0));
+        // going back to start after user input is not a cycle
+        Assert.assertTrue(report.getCycles().isEmpty());
+    }
+
+    @Test
+    public void rerouteCyclesAreDetected() {
+        ProjectState state = ProjectState.createEmptyVoice("orestis", new CustomizableRvdConfiguration());
+        state.getNodes().clear();
+        module(state, "entry", "{\"kind\":\"control\",\"name\":\"s1\",\"actions\":[{\"continueTo\":{\"target\":\"loopA\"}}]}");
+        module(state, "loopA", "{\"kind\":\"control\",\"name\":\"s2\",\"actions\":[{\"continueTo\":{\"target\":\"loopB\"}}]}");
+        module(state, "loopB", "{\"kind\":\"externalService\",\"name\":\"s3\",\"url\":\"http://localhost/a\",\"onTimeout\":\"loopA\"}");
+        module(state, "label", "{\"kind\":\"externalService\",\"name\":\"s4\",\"url\":\"http://localhost/a\",\"doRouting\":true,\"nextType\":\"responseBased\"}");
+
+        FlowCostReport report = new FlowCostAnalyzer(RvdConfiguration.DEFAULT_ES_TIMEOUT).analyze(state);
+        Assert.assertEquals(1, report.getCycles().size());
+        Assert.assertEquals("loopA -> loopB -> loopA", report.getCycles().get(0));
+        Assert.assertFalse(report.getModule("entry").isBounded());
+        Assert.assertNull(report.getModule("entry").getEsCalls());
+        Assert.assertTrue(report.getModule("label").isBounded());
+        Assert.assertTrue(report.getModule("label").isDynamicRouting());
+
+        FlowCostLimits limits = new FlowCostLimits(null, null, null, true);
+        Assert.assertEquals(1, FlowCostAnalyzer.checkLimits(report, limits).size());
+        Assert.assertTrue(FlowCostAnalyzer.checkLimits(report, null).isEmpty());
+    }
+
+    static class StoreCountingDao extends MemoryProjectDao {
+        int stored = 0;
+
+        @Override
+        public void storeBuiltProject(String projectName, List<Node> nodes, ProjectIndex projectIndex) throws StorageException {
+            stored ++;
+        }
+    }
+
+    @Test
+    public void buildFailsWhenLimitsAreExceeded() throws StorageException {
+        CustomizableRvdConfiguration configuration = new CustomizableRvdConfiguration();
+        StoreCountingDao dao = new StoreCountingDao();
+        configuration.setFlowCostLimits(new FlowCostLimits(1, null, null, null));
+        try {
+            new BuildService(dao).buildProject("AP1234", chainedProject(), configuration);
+            Assert.fail("build should fail since 'start' makes two ES requests");
+        } catch (FlowCostExceeded e) {
+            Assert.assertEquals(1, e.getReport().getViolations().size());
+            Assert.assertEquals(0, dao.stored);
+        }
+        configuration.setFlowCostLimits(new FlowCostLimits(2, 7000, 2, true));
+        try {
+            FlowCostReport report = new BuildService(dao).buildProject("AP1234", chainedProject(), configuration);
+            Assert.assertTrue(report.getViolations().isEmpty());
+            Assert.assertEquals(1, dao.stored);
+        } catch (FlowCostExceeded e) {
+            Assert.fail("limits are not exceeded: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.restcomm.connect.rvd.concurrency;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class ProjectRegistryTest {
+
+    static class RecordingListener implements ResidentProjectListener {
+        List<String> admitted = new ArrayList<String>();
+        List<String> evicted = new ArrayList<String>();
+
+        @Override
+        public void admitted(String applicationId, ResidentProjectInfo info) {
+            admitted.add(applicationId);
+        }
+
+        @Override
+        public void evicted(String applicationId, ResidentProjectInfo info) {
+            evicted.add(applicationId);
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedAreEvictedButPinnedAndBusyStay() throws InterruptedException {
+        ProjectRegistry registry = new ProjectRegistry(2, 0, Arrays.asList("AP0"));
+        RecordingListener listener = new RecordingListener();
+        registry.addListener(listener);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++)
+            registry.getResidentProjectInfo("AP" + i);
+        registry.awaitSweeps(); // admissions over the limit sweep in the background. Nothing is idle yet.
+        Assert.assertEquals(5, registry.getResidentProjects().size());
+        for (int i = 0; i < 5; i++)
+            registry.getResidentProjects().get("AP" + i).lastAccess = now - (10 - i) * ProjectRegistry.MIN_IDLE_MILLIS;
+        registry.getResidentProjectInfo("AP1").stats.esCallsPending.incrementAndGet();
+        Assert.assertEquals(5, listener.admitted.size());
+
+        Assert.assertEquals(3, registry.evict(now));
+        Assert.assertEquals(Arrays.asList("AP2", "AP3", "AP4"), listener.evicted);
+        Assert.assertEquals(2, registry.getResidentProjects().size());
+        Assert.assertTrue(registry.getResidentProjects().containsKey("AP0")); // pinned
+        Assert.assertTrue(registry.getResidentProjects().containsKey("AP1")); // waiting for an ES
+        Assert.assertEquals(3, registry.getEvictions());
+
+        // it comes back as new
+        Assert.assertEquals(0, registry.getResidentProjectInfo("AP2").stats.rcmlRequestsTotal.get());
+        Assert.assertEquals(6, registry.getAdmissions());
+    }
+
+    @Test
+    public void recentlyUsedAreNotEvicted() {
+        ProjectRegistry registry = new ProjectRegistry(1, 0, Collections.<String>emptyList());
+        registry.getResidentProjectInfo("AP1");
+        registry.getResidentProjectInfo("AP2");
+        Assert.assertEquals(0, registry.evict(System.currentTimeMillis()));
+        Assert.assertEquals(2, registry.getResidentProjects().size());
+        Assert.assertEquals(1, registry.evict(System.currentTimeMillis() + 2 * ProjectRegistry.MIN_IDLE_MILLIS));
+    }
+
+    @Test
+    public void estimatedSizeIsBounded() {
+        ResidentProjectInfo empty = new ResidentProjectInfo();
+        ProjectRegistry registry = new ProjectRegistry(0, 3 * empty.estimateBytes() + 1000, Collections.<String>emptyList());
+        registry.getResidentProjectInfo("AP1").rcmlCache.put(1, "start", new byte[4000]);
+        registry.getResidentProjectInfo("AP2");
+        registry.getResidentProjectInfo("AP3").lastAccess = 0;
+        registry.getResidentProjectInfo("AP1").lastAccess = 1;
+
+        long now = System.currentTimeMillis() + 2 * ProjectRegistry.MIN_IDLE_MILLIS;
+        Assert.assertEquals(1, registry.evict(now)); // the oldest one is enough
+        Assert.assertFalse(registry.getResidentProjects().containsKey("AP3"));
+        Assert.assertTrue(registry.getEstimatedBytes() > 2 * empty.estimateBytes() + 4000);
+        registry.getResidentProjectInfo("AP4").lastAccess = 2;
+        Assert.assertEquals(1, registry.evict(now));
+        Assert.assertFalse(registry.getResidentProjects().containsKey("AP1"));
+        Assert.assertTrue(registry.getEstimatedBytes() <= 3 * empty.estimateBytes() + 1000);
+    }
+
+    @Test
+    public void listenersAreCalledWithTheRegistryUnlocked() throws InterruptedException {
+        final ProjectRegistry registry = new ProjectRegistry(1, 0, Collections.<String>emptyList());
+        final List<String> admittedMeanwhile = new ArrayList<String>();
+        registry.addListener(new RecordingListener() {
+            @Override
+            public void evicted(String applicationId, ResidentProjectInfo info) {
+                // another request admits an application while this one is being evicted
+                Thread request = new Thread() {
+                    @Override
+                    public void run() {
+                        registry.getResidentProjectInfo("AP9");
+                        admittedMeanwhile.add("AP9");
+                    }
+                };
+                request.start();
+                try {
+                    request.join(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        registry.getResidentProjectInfo("AP1");
+        registry.getResidentProjectInfo("AP2");
+        registry.awaitSweeps();
+        Assert.assertEquals(1, registry.evict(System.currentTimeMillis() + 2 * ProjectRegistry.MIN_IDLE_MILLIS));
+        Assert.assertEquals(Arrays.asList("AP9"), admittedMeanwhile);
+        registry.stop();
+    }
+}
@@ -0,0 +1,89 @@
+package org.restcomm.connect.rvd.health;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.rvd.TestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class HealthMonitorTest {
+
+    File workspaceDir;
+
+    @Before
+    public void before() {
+        workspaceDir = TestUtils.createTempWorkspace();
+    }
+
+    @After
+    public void after() {
+        TestUtils.removeTempWorkspace(workspaceDir.getPath());
+    }
+
+    @Test
+    public void workspaceProbeLeavesNoTrace() throws IOException {
+        HealthMonitor monitor = new HealthMonitor(workspaceDir, null);
+        Assert.assertTrue(monitor.probeWorkspace().isOk());
+        for (String name: workspaceDir.list())
+            Assert.assertFalse(name.startsWith(HealthMonitor.WORKSPACE_PROBE_PREFIX));
+        // a workspace that can't be written to fails the probe
+        File notADirectory = new File(workspaceDir, "plain-file");
+        FileUtils.writeStringToFile(notADirectory, "x", "UTF-8");
+        ProbeResult result = new HealthMonitor(notADirectory, null).probeWorkspace();
+        Assert.assertFalse(result.isOk());
+        Assert.assertNotNull(result.getError());
+    }
+
+    @Test
+    public void concurrentWorkspaceProbesDontInterfere() throws InterruptedException {
+        final HealthMonitor monitor = new HealthMonitor(workspaceDir, null);
+        final AtomicInteger failures = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 50; i++)
+                        if (!monitor.probeWorkspace().isOk())
+                            failures.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread thread: threads)
+            thread.start();
+        for (Thread thread: threads)
+            thread.join();
+        Assert.assertEquals(0, failures.get());
+        for (String name: workspaceDir.list())
+            Assert.assertFalse(name.startsWith(HealthMonitor.WORKSPACE_PROBE_PREFIX));
+    }
+
+    @Test
+    public void readyOnlyAfterAllPhasesSucceed() {
+        InitializationStatus status = new InitializationStatus();
+        status.enter(InitializationStatus.Phase.upgrade);
+        Assert.assertFalse(status.isReady());
+        Assert.assertNull(status.getCompletedAt());
+        status.enter(InitializationStatus.Phase.ready);
+        Assert.assertTrue(status.isReady());
+        Assert.assertNotNull(status.getCompletedAt());
+
+        InitializationStatus failed = new InitializationStatus();
+        failed.enter(InitializationStatus.Phase.upgrade);
+        failed.failed("disk full");
+        failed.failed("another");
+        failed.enter(InitializationStatus.Phase.ready);
+        Assert.assertFalse(failed.isReady());
+        Assert.assertEquals("upgrade: disk full", failed.getError());
+    }
+}
@@ -0,0 +1,84 @@
+package org.restcomm.connect.rvd.http;
+
+import com.sun.jersey.core.header.OutBoundHeaders;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+import junit.framework.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.restcomm.connect.rvd.ApplicationContext;
+import org.restcomm.connect.rvd.ApplicationContextBuilder;
+import org.restcomm.connect.rvd.stats.ApiOperationStats;
+import org.restcomm.connect.rvd.utils.CustomizableRvdConfiguration;
+
+import javax.servlet.ServletContext;
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class ApiStatsFilterFactoryTest {
+
+    @Test
+    public void requestIsRecordedOnceTheResponseIsWritten() throws Exception {
+        ApplicationContext applicationContext = new ApplicationContextBuilder().setConfiguration(new CustomizableRvdConfiguration()).build();
+        ApiStatsFilterFactory factory = new ApiStatsFilterFactory();
+        factory.servletContext = Mockito.mock(ServletContext.class);
+        Mockito.when(factory.servletContext.getAttribute(ApplicationContext.class.getName())).thenReturn(applicationContext);
+        ApiStatsFilterFactory.ApiStatsFilter filter = factory.new ApiStatsFilter("ProjectRestService.buildProject");
+
+        Map<String, Object> properties = new HashMap<String, Object>();
+        ContainerRequest request = Mockito.mock(ContainerRequest.class);
+        Mockito.when(request.getProperties()).thenReturn(properties);
+        Mockito.when(request.getHeaderValue("Content-Length")).thenReturn("120");
+        ContainerResponse response = Mockito.mock(ContainerResponse.class);
+        Mockito.when(response.getStatus()).thenReturn(500);
+        ContainerResponseWriter writer = Mockito.mock(ContainerResponseWriter.class);
+        Mockito.when(writer.writeStatusAndHeaders(Mockito.anyLong(), Mockito.any(ContainerResponse.class))).thenReturn(new ByteArrayOutputStream());
+        Mockito.when(response.getContainerResponseWriter()).thenReturn(writer);
+
+        filter.filter(request);
+        filter.filter(request, response);
+        ArgumentCaptor<ContainerResponseWriter> captor = ArgumentCaptor.forClass(ContainerResponseWriter.class);
+        Mockito.verify(response).setContainerResponseWriter(captor.capture());
+        // nothing is recorded until the response is finished
+        Assert.assertTrue(applicationContext.getApiStats().getOperations().isEmpty());
+        OutputStream out = captor.getValue().writeStatusAndHeaders(-1, response);
+        out.write(new byte[10]);
+        out.write(1);
+        captor.getValue().finish();
+
+        ApiOperationStats stats = applicationContext.getApiStats().getOperations().get("ProjectRestService.buildProject");
+        Assert.assertEquals(1, stats.getRequests());
+        Assert.assertEquals(1, stats.getServerErrors());
+        Assert.assertEquals(0, stats.getClientErrors());
+        Assert.assertEquals(1, stats.getResponseBytes().snapshot().getCount());
+        Assert.assertEquals(0.011, stats.getResponseBytes().snapshot().getMax()); // 11 bytes, reported in kilobytes
+        Assert.assertEquals(0.12, stats.getRequestBytes().snapshot().getMax());
+        Mockito.verify(writer).finish();
+    }
+
+    @Test
+    public void bodiesSentByTheContainerAreCounted() throws Exception {
+        ContainerResponse response = Mockito.mock(ContainerResponse.class);
+        MultivaluedMap<String, Object> headers = new OutBoundHeaders();
+        headers.putSingle("Content-Length", 2048L);
+        Mockito.when(response.getHttpHeaders()).thenReturn(headers);
+        Assert.assertEquals(2048, ApiStatsFilterFactory.CountingResponseWriter.containerSentLength(response));
+
+        ContainerRequest head = Mockito.mock(ContainerRequest.class);
+        Mockito.when(head.getMethod()).thenReturn("HEAD");
+        Mockito.when(response.getContainerRequest()).thenReturn(head);
+        Assert.assertEquals(0, ApiStatsFilterFactory.CountingResponseWriter.containerSentLength(response));
+
+        Mockito.when(response.getContainerRequest()).thenReturn(null);
+        Mockito.when(response.getEntity()).thenReturn("body"); // written through the writer and counted there
+        Assert.assertEquals(0, ApiStatsFilterFactory.CountingResponseWriter.containerSentLength(response));
+    }
+}
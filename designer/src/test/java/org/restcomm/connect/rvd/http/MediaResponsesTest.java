@@ -0,0 +1,198 @@
+package org.restcomm.connect.rvd.http;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.restcomm.connect.rvd.TestUtils;
+import org.restcomm.connect.rvd.storage.MediaMetadataCache;
+import org.restcomm.connect.rvd.storage.RequestStorageIo;
+import org.restcomm.connect.rvd.storage.StorageEntityType;
+import org.restcomm.connect.rvd.storage.StorageStats;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class MediaResponsesTest {
+
+    File workspaceDir;
+    File wav;
+    byte[] content = new byte[100];
+    MediaMetadataCache cache = new MediaMetadataCache();
+
+    @Before
+    public void before() throws IOException {
+        workspaceDir = TestUtils.createTempWorkspace();
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) i;
+        wav = new File(workspaceDir, "AP1/wavs/hello.wav");
+        FileUtils.writeByteArrayToFile(wav, content);
+    }
+
+    @After
+    public void after() {
+        TestUtils.removeTempWorkspace(workspaceDir.getPath());
+    }
+
+    HttpServletRequest request(String... headers) {
+        HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(request.getDateHeader(Mockito.anyString())).thenReturn(-1L);
+        for (int i = 0; i < headers.length; i += 2)
+            Mockito.when(request.getHeader(headers[i])).thenReturn(headers[i + 1]);
+        return request;
+    }
+
+    Response respond(HttpServletRequest request) throws IOException {
+        return MediaResponses.build(request, wav, cache, "audio/x-wav", "hello.wav", 60, null);
+    }
+
+    static byte[] body(Response response) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+        return output.toByteArray();
+    }
+
+    @Test
+    public void rangesAreParsed() {
+        Assert.assertNull(MediaResponses.parseRange(null, 100));
+        Assert.assertTrue(Arrays.equals(new long[] {10, 19}, MediaResponses.parseRange("bytes=10-19", 100)));
+        Assert.assertTrue(Arrays.equals(new long[] {90, 99}, MediaResponses.parseRange("bytes=90-", 100)));
+        Assert.assertTrue(Arrays.equals(new long[] {80, 99}, MediaResponses.parseRange("bytes=-20", 100)));
+        Assert.assertTrue(Arrays.equals(new long[] {0, 99}, MediaResponses.parseRange("bytes=-500", 100)));
+        Assert.assertTrue(Arrays.equals(new long[] {50, 99}, MediaResponses.parseRange("bytes=50-500", 100)));
+        Assert.assertSame(MediaResponses.UNSATISFIABLE, MediaResponses.parseRange("bytes=100-", 100));
+        Assert.assertNull(MediaResponses.parseRange("bytes=0-1,5-6", 100)); // multiple ranges get the whole file
+        Assert.assertNull(MediaResponses.parseRange("bytes=19-10", 100));
+        Assert.assertNull(MediaResponses.parseRange("lines=1-2", 100));
+    }
+
+    @Test
+    public void unchangedMediaAreNotSentAgain() throws IOException {
+        Response response = respond(request());
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals(100L, response.getMetadata().getFirst("Content-Length"));
+        Assert.assertEquals("max-age=60", response.getMetadata().getFirst("Cache-Control"));
+        Assert.assertTrue(Arrays.equals(content, body(response)));
+        String etag = (String) response.getMetadata().getFirst("ETag");
+
+        Assert.assertEquals(304, respond(request("If-None-Match", etag)).getStatus());
+        Assert.assertEquals(304, respond(request("If-None-Match", "\"other\", W/" + etag)).getStatus());
+        Assert.assertEquals(200, respond(request("If-None-Match", "\"other\"")).getStatus());
+        HttpServletRequest ifModifiedSince = request();
+        Mockito.when(ifModifiedSince.getDateHeader("If-Modified-Since")).thenReturn(wav.lastModified() + 1000);
+        Assert.assertEquals(304, respond(ifModifiedSince).getStatus());
+    }
+
+    @Test
+    public void rangesAreServed() throws IOException {
+        Response response = respond(request("Range", "bytes=10-19"));
+        Assert.assertEquals(206, response.getStatus());
+        Assert.assertEquals("bytes 10-19/100", response.getMetadata().getFirst("Content-Range"));
+        Assert.assertEquals(10L, response.getMetadata().getFirst("Content-Length"));
+        Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(content, 10, 20), body(response)));
+
+        String etag = cache.get(wav).getEtag();
+        Assert.assertEquals(206, respond(request("Range", "bytes=10-19", "If-Range", etag)).getStatus());
+        Assert.assertEquals(200, respond(request("Range", "bytes=10-19", "If-Range", "\"stale\"")).getStatus());
+        response = respond(request("Range", "bytes=200-"));
+        Assert.assertEquals(416, response.getStatus());
+        Assert.assertEquals("bytes */100", response.getMetadata().getFirst("Content-Range"));
+    }
+
+    @Test
+    public void containerSendsTheFileIfItCan() throws IOException {
+        HttpServletRequest request = request("Range", "bytes=-10");
+        Mockito.when(request.getAttribute(MediaResponses.SENDFILE_SUPPORT)).thenReturn(Boolean.TRUE);
+        Response response = respond(request);
+        Assert.assertEquals(206, response.getStatus());
+        Assert.assertNull(response.getEntity());
+        Mockito.verify(request).setAttribute(MediaResponses.SENDFILE_FILENAME, wav.getCanonicalPath());
+        Mockito.verify(request).setAttribute(MediaResponses.SENDFILE_START, 90L);
+        Mockito.verify(request).setAttribute(MediaResponses.SENDFILE_END, 100L);
+    }
+
+    @Test
+    public void metadataAreCachedUntilEvicted() throws IOException {
+        MediaMetadataCache.Metadata first = cache.get(wav);
+        Assert.assertEquals(100, first.getLength());
+        Assert.assertSame(first, cache.get(wav));
+        Assert.assertEquals(1, cache.getLoads());
+        Assert.assertEquals(1, cache.getHits());
+
+        FileUtils.writeByteArrayToFile(wav, new byte[10]);
+        wav.setLastModified(first.getLastModified() + 2000);
+        Assert.assertSame(first, cache.get(wav)); // not checked again yet
+        cache.evict(wav);
+        MediaMetadataCache.Metadata second = cache.get(wav);
+        Assert.assertEquals(10, second.getLength());
+        Assert.assertFalse(first.getEtag().equals(second.getEtag()));
+
+        Assert.assertNull(cache.get(new File(workspaceDir, "AP1/wavs/missing.wav")));
+        Assert.assertNull(cache.get(new File(workspaceDir, "AP1/wavs")));
+    }
+
+    @Test
+    public void bytesSentAreAccountedAsStorageReads() throws IOException {
+        StorageStats stats = new StorageStats();
+        RequestStorageIo io = RequestStorageIo.begin();
+        try {
+            Response response = MediaResponses.build(request("Range", "bytes=10-19"), wav, cache, "audio/x-wav", "hello.wav", 60, stats);
+            Assert.assertEquals(0, stats.entity(StorageEntityType.wavs).getReads()); // nothing is read until the body is written
+            body(response);
+            Assert.assertEquals(1, stats.entity(StorageEntityType.wavs).getReads());
+            Assert.assertEquals(10, stats.entity(StorageEntityType.wavs).getBytesRead());
+            Assert.assertEquals(1, stats.entity(StorageEntityType.wavs).getLatency().snapshot().getCount());
+
+            // sent by the container. Its bytes count but there is no latency to record.
+            HttpServletRequest sendfile = request();
+            Mockito.when(sendfile.getAttribute(MediaResponses.SENDFILE_SUPPORT)).thenReturn(Boolean.TRUE);
+            MediaResponses.build(sendfile, wav, cache, "audio/x-wav", "hello.wav", 60, stats);
+            Assert.assertEquals(2, stats.entity(StorageEntityType.wavs).getReads());
+            Assert.assertEquals(110, stats.entity(StorageEntityType.wavs).getBytesRead());
+            Assert.assertEquals(1, stats.entity(StorageEntityType.wavs).getLatency().snapshot().getCount());
+            Assert.assertEquals(2, io.getOperations(StorageEntityType.wavs));
+            Assert.assertEquals(110, io.getBytesRead());
+        } finally {
+            RequestStorageIo.end();
+        }
+    }
+
+    @Test
+    public void filesChangedSinceTheirMetadataWereCachedAreNotSentAsIs() throws IOException {
+        Assert.assertEquals(100, cache.get(wav).getLength());
+        Response response = respond(request());
+        FileUtils.writeByteArrayToFile(wav, new byte[50]); // within the revalidation period
+        try {
+            body(response);
+            Assert.fail("a body that doesn't match Content-Length should not be sent");
+        } catch (IOException e) {
+            // aborted
+        }
+        Assert.assertEquals(0, cache.size());
+
+        // the container is told the current length
+        cache.get(wav);
+        FileUtils.writeByteArrayToFile(wav, new byte[30]);
+        HttpServletRequest sendfile = request();
+        Mockito.when(sendfile.getAttribute(MediaResponses.SENDFILE_SUPPORT)).thenReturn(Boolean.TRUE);
+        response = MediaResponses.build(sendfile, wav, cache, "audio/x-wav", "hello.wav", 60, null);
+        Assert.assertEquals(30L, response.getMetadata().getFirst("Content-Length"));
+        Mockito.verify(sendfile).setAttribute(MediaResponses.SENDFILE_END, 30L);
+    }
+
+    @Test
+    public void missingFilesAreNotFound() throws IOException {
+        Response response = MediaResponses.build(request(), new File(workspaceDir, "AP1/wavs/missing.wav"), cache, "audio/x-wav", "missing.wav", 60, null);
+        Assert.assertEquals(404, response.getStatus());
+    }
+}
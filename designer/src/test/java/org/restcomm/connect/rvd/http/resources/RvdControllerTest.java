@@ -20,9 +20,32 @@
 
 package org.restcomm.connect.rvd.http.resources;
 
+import com.sun.jersey.core.util.MultivaluedMapImpl;
 import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
+import org.restcomm.connect.rvd.ApplicationContext;
+import org.restcomm.connect.rvd.ApplicationContextBuilder;
+import org.restcomm.connect.rvd.BuildService;
+import org.restcomm.connect.rvd.ProjectAwareRvdContext;
+import org.restcomm.connect.rvd.TestUtils;
+import org.restcomm.connect.rvd.concurrency.ProjectRegistry;
+import org.restcomm.connect.rvd.interpreter.StaticRcmlCache;
+import org.restcomm.connect.rvd.logging.system.LoggingContext;
+import org.restcomm.connect.rvd.model.project.Node;
+import org.restcomm.connect.rvd.model.project.ProjectState;
+import org.restcomm.connect.rvd.model.steps.say.SayStep;
+import org.restcomm.connect.rvd.storage.GenerationStamp;
+import org.restcomm.connect.rvd.storage.MemoryProjectDao;
+import org.restcomm.connect.rvd.utils.CustomizableRvdConfiguration;
 
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
 
@@ -31,6 +54,102 @@ import java.net.URISyntaxException;
  */
 public class RvdControllerTest {
 
+    static final String APP_SID = "AP1";
+    static final byte[] PLANTED = "<Response><Hangup/></Response>".getBytes();
+
+    File workspaceDir;
+    CustomizableRvdConfiguration configuration;
+    ApplicationContext applicationContext;
+    MemoryProjectDao dao;
+    HttpServletRequest request;
+
+    @Before
+    public void before() throws Exception {
+        workspaceDir = TestUtils.createTempWorkspace();
+        configuration = new CustomizableRvdConfiguration();
+        configuration.setWorkspaceBasePath(workspaceDir.getPath());
+        applicationContext = new ApplicationContextBuilder()
+                .setConfiguration(configuration)
+                .setProjectRegistry(new ProjectRegistry())
+                .build();
+        dao = new MemoryProjectDao();
+        new File(workspaceDir, APP_SID).mkdirs();
+        build();
+        request = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(request.getContextPath()).thenReturn("/visual-designer");
+    }
+
+    @After
+    public void after() {
+        TestUtils.removeTempWorkspace(workspaceDir.getPath());
+    }
+
+    // builds a project with a static 'start' module and a 'dynamic' one
+    void build() throws Exception {
+        ProjectState state = ProjectState.createEmptyVoice("orestis", configuration);
+        Node dynamicNode = Node.createDefault("voice", "dynamic", "Dynamic");
+        dynamicNode.getSteps().add(SayStep.createDefault("step2", "hello $name"));
+        state.getNodes().add(dynamicNode);
+        new BuildService(dao).buildProject(APP_SID, state);
+        GenerationStamp.bump(applicationContext.getWorkspace(), new File(workspaceDir, APP_SID)); // what the dao does when storing the build
+    }
+
+    // a controller the way one is set up for each incoming request
+    RvdController controller() throws Exception {
+        ProjectAwareRvdContext rvdContext = new ProjectAwareRvdContext(APP_SID, applicationContext.getProjectRegistry().getResidentProjectInfo(APP_SID),
+                request, Mockito.mock(ServletContext.class), configuration, applicationContext.getWorkspace(), new LoggingContext("[test]"), dao);
+        return new RvdController(applicationContext, rvdContext, dao);
+    }
+
+    String get(String target) throws Exception {
+        MultivaluedMap<String, String> params = new MultivaluedMapImpl();
+        params.putSingle("target", target);
+        Response response = controller().runInterpreter(APP_SID, request, params);
+        Object entity = response.getEntity();
+        return entity instanceof byte[] ? new String((byte[]) entity, "UTF-8") : (String) entity;
+    }
+
+    StaticRcmlCache rcmlCache() {
+        return applicationContext.getProjectRegistry().getResidentProjectInfo(APP_SID).getRcmlCache();
+    }
+
+    long generation() throws Exception {
+        return dao.loadProjectOptions(APP_SID).getBuildGeneration();
+    }
+
+    @Test
+    public void staticModulesAreServedFromTheCacheAfterTheFirstRequest() throws Exception {
+        String rendered = get("start");
+        Assert.assertEquals(rendered, new String(rcmlCache().get(generation(), "start"), "UTF-8"));
+        // whatever the cache holds is what the next request gets
+        rcmlCache().put(generation(), "start", PLANTED);
+        Assert.assertEquals(new String(PLANTED, "UTF-8"), get("start"));
+        Assert.assertEquals(1, rcmlCache().size());
+    }
+
+    @Test
+    public void rebuiltProjectsAreRenderedAgain() throws Exception {
+        String rendered = get("start");
+        long firstGeneration = generation();
+        rcmlCache().put(firstGeneration, "start", PLANTED);
+        build();
+        Assert.assertTrue(generation() != firstGeneration);
+        Assert.assertEquals(rendered, get("start"));
+        Assert.assertEquals(rendered, new String(rcmlCache().get(generation(), "start"), "UTF-8"));
+    }
+
+    @Test
+    public void dynamicModulesAndStepTargetsAreNotCached() throws Exception {
+        String rendered = get("dynamic");
+        Assert.assertTrue(rendered.contains("hello"));
+        Assert.assertEquals(0, rcmlCache().size());
+        get("start.step1");
+        Assert.assertEquals(0, rcmlCache().size());
+        // nor served from it
+        rcmlCache().put(generation(), "start", PLANTED);
+        Assert.assertTrue(!get("start.step1").equals(new String(PLANTED, "UTF-8")));
+    }
+
     @Test
     public void testAppIdExtraction() throws URISyntaxException {
         RvdController controller = new RvdController();
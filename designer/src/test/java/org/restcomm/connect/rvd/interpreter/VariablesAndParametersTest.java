@@ -9,6 +9,7 @@ import org.restcomm.connect.rvd.storage.exceptions.StorageException;
 import org.restcomm.connect.rvd.utils.CustomizableRvdConfiguration;
 
 import javax.ws.rs.core.MultivaluedMap;
+import java.util.HashMap;
 
 /**
  * @author otsakir@gmail.com - Orestis Tsakiridis
@@ -23,4 +24,41 @@ public class VariablesAndParametersTest extends StepTestBase {
         Assert.assertEquals("1234", interpreter.populateVariables("$core_From"));
     }
 
+    @Test
+    public void variablesAreResolvedInScopeOrder() throws StorageException {
+        MultivaluedMap<String,String> params = appendMultivaluedMap(null, "CallSid", "CA1234");
+        params = appendMultivaluedMap(params, "sticky_name", "sticky");
+        buildApplicationContext(new CustomizableRvdConfiguration());
+        Interpreter interpreter = buildInterpreter(params, null);
+        Assert.assertEquals("sticky", interpreter.populateVariables("$name"));
+        interpreter.putModuleVariable("name", "module");
+        Assert.assertEquals("module", interpreter.populateVariables("$name"));
+        interpreter.putVariable("name", "local");
+        Assert.assertEquals("local", interpreter.populateVariables("$name"));
+        // prefixed names go straight to their scope
+        Assert.assertEquals("module sticky CA1234", interpreter.populateVariables("$module_name $sticky_name $core_CallSid"));
+        Assert.assertEquals("CA1234", interpreter.getVariableStore().get(VariableStore.Scope.CORE, "CallSid"));
+    }
+
+    @Test
+    public void moduleVariablesAreClearedAndCarriedInActions() throws StorageException {
+        buildApplicationContext(new CustomizableRvdConfiguration());
+        Interpreter interpreter = buildInterpreter(appendMultivaluedMap(null, "From", "1234"), null);
+        interpreter.putModuleVariable("a", "1");
+        interpreter.putStickyVariable("b", "2");
+        String action = interpreter.buildAction(new HashMap<String, String>());
+        Assert.assertTrue(action.contains("module_a=1"));
+        Assert.assertTrue(action.contains("sticky_b=2"));
+        Assert.assertFalse(action.contains("core_From"));
+        // the map view sees variables by prefixed name
+        Assert.assertEquals("1", interpreter.getVariables().get("module_a"));
+        interpreter.getVariables().put("module_c", "3");
+        Assert.assertEquals("3", interpreter.getVariableStore().get(VariableStore.Scope.MODULE, "c"));
+
+        interpreter.clearModuleVariables();
+        Assert.assertNull(interpreter.getVariables().get("module_a"));
+        Assert.assertEquals("", interpreter.populateVariables("$a"));
+        Assert.assertEquals("2", interpreter.populateVariables("$b"));
+        Assert.assertEquals(2, interpreter.getVariables().size()); // core_From and sticky_b
+    }
 }
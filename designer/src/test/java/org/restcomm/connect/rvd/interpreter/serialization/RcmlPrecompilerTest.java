@@ -0,0 +1,75 @@
+package org.restcomm.connect.rvd.interpreter.serialization;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.restcomm.connect.rvd.interpreter.Interpreter;
+import org.restcomm.connect.rvd.model.StepMarshaler;
+import org.restcomm.connect.rvd.model.project.Step;
+import org.restcomm.connect.rvd.model.rcml.RcmlResponse;
+import org.restcomm.connect.rvd.model.steps.StepTestBase;
+import org.restcomm.connect.rvd.model.steps.hangup.HungupStep;
+import org.restcomm.connect.rvd.model.steps.pause.PauseStep;
+import org.restcomm.connect.rvd.model.steps.say.SayStep;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Precompiled steps should produce exactly the same RCML as rendered ones.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class RcmlPrecompilerTest extends StepTestBase {
+
+    @Test
+    public void precompiledStepsRenderLikeRenderedOnes() throws Exception {
+        Interpreter interpreter = buildInterpreter(appendMultivaluedMap(null, "From", "<alice & bob>"), null);
+        interpreter.putModuleVariable("greeting", "hi\r\nthere");
+
+        List<Step> steps = new ArrayList<Step>();
+        steps.add(new SayStep("$greeting \"$core_From\", it's 5 $ & <more>", "man", "en", 2));
+        steps.add(new SayStep("plain text", null, null, null));
+        PauseStep pause = new PauseStep();
+        pause.setLength(3);
+        steps.add(pause);
+        StepMarshaler marshaler = new StepMarshaler();
+        steps.add(marshaler.toModel("{\"kind\":\"play\",\"name\":\"step4\",\"playType\":\"local\",\"local\":{\"wavLocalFilename\":\"my file.wav\"}}", Step.class));
+        steps.add(marshaler.toModel("{\"kind\":\"play\",\"name\":\"step5\",\"playType\":\"remote\",\"remote\":{\"wavUrl\":\"http://host/$greeting.wav\"}}", Step.class));
+        steps.add(new HungupStep());
+
+        RcmlSerializer serializer = new RcmlSerializer();
+        RcmlPrecompiler precompiler = new RcmlPrecompiler("testapp");
+        RcmlResponse rendered = new RcmlResponse();
+        RcmlResponse precompiled = new RcmlResponse();
+        for (Step step: steps) {
+            rendered.steps.add(step.render(interpreter, null));
+            RcmlTemplate template = precompiler.precompile(step);
+            Assert.assertNotNull(template);
+            precompiled.steps.add(new RcmlFragment(interpreter.fillTemplate(template)));
+        }
+        Assert.assertEquals(serializer.serialize(rendered), serializer.serialize(precompiled));
+    }
+
+    @Test
+    public void localMediaUrlsEncodeTheContextPath() throws Exception {
+        HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(request.getContextPath()).thenReturn("/my rvd");
+        Interpreter interpreter = buildInterpreter(appendMultivaluedMap(null, "From", "alice"), null, request);
+        Step step = new StepMarshaler().toModel("{\"kind\":\"play\",\"name\":\"step1\",\"playType\":\"local\",\"local\":{\"wavLocalFilename\":\"my file.wav\"}}", Step.class);
+
+        String precompiled = interpreter.fillTemplate(new RcmlPrecompiler("testapp").precompile(step));
+        Assert.assertTrue(precompiled, precompiled.contains("/my%20rvd/services/projects/testapp/wavs/my%20file.wav"));
+        RcmlSerializer serializer = new RcmlSerializer();
+        Assert.assertEquals(serializer.serializeStep(step.render(interpreter, null)), precompiled);
+    }
+
+    @Test
+    public void constantStepsHaveNoHoles() throws StorageException {
+        RcmlPrecompiler precompiler = new RcmlPrecompiler("testapp");
+        Assert.assertTrue(precompiler.precompile(new SayStep("hello world", null, null, null)).isConstant());
+        Assert.assertFalse(precompiler.precompile(new SayStep("hello $name", null, null, null)).isConstant());
+    }
+}
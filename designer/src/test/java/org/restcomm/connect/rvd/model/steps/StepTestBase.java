@@ -74,10 +74,14 @@ public class StepTestBase {
     }
 
     protected Interpreter buildInterpreter(MultivaluedMap<String,String> params, ProjectDao dao) throws StorageException {
+        return buildInterpreter(params, dao, mockHttpServletRequest("http://localhost" + RvdConfiguration.CONTEXT_PATH + "/"));
+    }
+
+    protected Interpreter buildInterpreter(MultivaluedMap<String,String> params, ProjectDao dao, HttpServletRequest request) throws StorageException {
         // TODO init appContext ??
         Interpreter interpreter = new Interpreter(
                 "testapp",
-                mockHttpServletRequest("http://localhost" + RvdConfiguration.CONTEXT_PATH + "/"),
+                request,
                 params,
                 appContext,
                 new LoggingContext("log-prefix"),
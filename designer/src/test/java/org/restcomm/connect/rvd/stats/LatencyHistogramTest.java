@@ -0,0 +1,78 @@
+package org.restcomm.connect.rvd.stats;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverValuesWithBoundedError() {
+        for (long value = 0; value < 1000000; value += 7) {
+            int index = LatencyHistogram.bucketIndex(value);
+            long lower = LatencyHistogram.bucketLowerBound(index);
+            long upper = LatencyHistogram.bucketUpperBound(index);
+            Assert.assertTrue(value >= lower && value <= upper);
+            Assert.assertTrue("bucket too wide for " + value, upper - lower <= Math.max(1, lower / 8));
+        }
+        Assert.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesAreReportedInMillis() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i * 1000); // 1..100 ms
+        LatencySnapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(100, snapshot.getCount());
+        Assert.assertEquals(50.5, snapshot.getMean(), 0.001);
+        Assert.assertEquals(100.0, snapshot.getMax(), 0.001);
+        Assert.assertTrue(snapshot.getP50() >= 50 && snapshot.getP50() <= 50 * 1.125);
+        Assert.assertTrue(snapshot.getP99() >= 99 && snapshot.getP99() <= 100);
+        Assert.assertEquals(0, new LatencyHistogram().snapshot().getCount());
+    }
+
+    @Test
+    public void concurrentRecordingIsNotLost() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++)
+                        histogram.record(i);
+                }
+            }));
+        }
+        for (Thread thread: threads)
+            thread.start();
+        for (Thread thread: threads)
+            thread.join();
+        Assert.assertEquals(80000, histogram.snapshot().getCount());
+    }
+
+    @Test
+    public void stripesAreAllocatedOnlyOnContention() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long initial = histogram.estimateBytes();
+        Assert.assertTrue(initial < 8L * LatencyHistogram.STRIPE_LENGTH * 2);
+        for (int i = 0; i < 10000; i++)
+            histogram.record(i); // a single thread never collides with itself
+        Assert.assertEquals(initial, histogram.estimateBytes());
+    }
+
+    @Test
+    public void esHostsAreCapped() {
+        LatencyStats stats = new LatencyStats();
+        for (int i = 0; i < LatencyStats.MAX_ES_HOSTS + 10; i++)
+            StatsHelper.recordEsLatency(stats, "host" + i, 1000);
+        Assert.assertEquals(LatencyStats.MAX_ES_HOSTS + 1, stats.getEsHosts().size());
+        Assert.assertEquals(10, stats.getEsHosts().get(LatencyStats.OTHER_HOSTS).snapshot().getCount());
+    }
+}
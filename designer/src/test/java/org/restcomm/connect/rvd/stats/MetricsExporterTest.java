@@ -0,0 +1,122 @@
+package org.restcomm.connect.rvd.stats;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.restcomm.connect.rvd.ApplicationContext;
+import org.restcomm.connect.rvd.ApplicationContextBuilder;
+import org.restcomm.connect.rvd.commons.http.CustomHttpClientBuilder;
+import org.restcomm.connect.rvd.concurrency.ProjectRegistry;
+import org.restcomm.connect.rvd.concurrency.ResidentProjectInfo;
+import org.restcomm.connect.rvd.utils.CustomizableRvdConfiguration;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class MetricsExporterTest {
+
+    @Test
+    public void applicationsOverTheLimitAreSummedUp() throws IOException {
+        CustomizableRvdConfiguration configuration = new CustomizableRvdConfiguration();
+        configuration.setMetricsMaxApplications(1);
+        CustomHttpClientBuilder httpClientBuilder = new CustomHttpClientBuilder(configuration);
+        ApplicationContext applicationContext = new ApplicationContextBuilder()
+                .setConfiguration(configuration)
+                .setProjectRegistry(new ProjectRegistry())
+                .setHttpClientBuilder(httpClientBuilder)
+                .setExternalHttpClient(httpClientBuilder.buildExternalHttpClient())
+                .build();
+        StatsHelper.countRcmlRequestIncoming(applicationContext.getGlobalStats());
+        StatsHelper.countRcmlRequestIncoming(applicationContext.getProjectRegistry().getResidentProjectInfo("AP1").stats);
+        StatsHelper.countRcmlRequestIncoming(applicationContext.getProjectRegistry().getResidentProjectInfo("AP2").stats);
+        StatsHelper.countRcmlRequestIncoming(applicationContext.getProjectRegistry().getResidentProjectInfo("AP3").stats);
+
+        StringWriter writer = new StringWriter();
+        applicationContext.getMetricsExporter().write(applicationContext, writer);
+        String text = writer.toString();
+        Assert.assertTrue(text.contains("# TYPE rvd_rcml_requests_total counter\nrvd_rcml_requests_total 1\n"));
+        Assert.assertTrue(text.contains("rvd_app_rcml_requests_total{app_sid=\"other\"} 2\n"));
+        Assert.assertEquals(1, text.split("rvd_app_rcml_requests_total\\{app_sid=\"AP").length - 1);
+        Assert.assertTrue(text.contains("rvd_http_pool_leased{pool=\"external\"} 0\n"));
+        Assert.assertTrue(text.contains("jvm_threads_current "));
+
+        // labels are kept between scrapes
+        int start = text.indexOf("rvd_app_rcml_requests_total{app_sid=\"AP");
+        String labelled = text.substring(start, text.indexOf('\n', start));
+        writer = new StringWriter();
+        applicationContext.getMetricsExporter().write(applicationContext, writer);
+        Assert.assertTrue(writer.toString().contains(labelled));
+    }
+
+    @Test
+    public void countersOfEvictedApplicationsAreKept() throws IOException {
+        CustomizableRvdConfiguration configuration = new CustomizableRvdConfiguration();
+        configuration.setMetricsMaxApplications(1);
+        ProjectRegistry registry = new ProjectRegistry(0, 1, Collections.<String>emptyList()); // anything idle goes
+        ApplicationContext applicationContext = new ApplicationContextBuilder()
+                .setConfiguration(configuration)
+                .setProjectRegistry(registry)
+                .build();
+        MetricsExporter exporter = applicationContext.getMetricsExporter();
+        registry.addListener(exporter);
+        StatsHelper.countRcmlRequestIncoming(registry.getResidentProjectInfo("AP1").stats);
+        exporter.write(applicationContext, new StringWriter()); // AP1 gets the label
+        StatsHelper.countRcmlRequestIncoming(registry.getResidentProjectInfo("AP2").stats);
+        StatsHelper.countRcmlRequestIncoming(registry.getResidentProjectInfo("AP3").stats);
+
+        Assert.assertEquals(3, registry.evict(System.currentTimeMillis() + 3600 * 1000));
+        StringWriter writer = new StringWriter();
+        exporter.write(applicationContext, writer);
+        Assert.assertTrue(writer.toString().contains("rvd_app_rcml_requests_total{app_sid=\"AP1\"} 1\n"));
+        Assert.assertTrue(writer.toString().contains("rvd_app_rcml_requests_total{app_sid=\"other\"} 2\n"));
+
+        // back again. Counting goes on from where it was.
+        StatsHelper.countRcmlRequestIncoming(registry.getResidentProjectInfo("AP1").stats);
+        StatsHelper.countRcmlRequestIncoming(registry.getResidentProjectInfo("AP2").stats);
+        writer = new StringWriter();
+        exporter.write(applicationContext, writer);
+        Assert.assertTrue(writer.toString().contains("rvd_app_rcml_requests_total{app_sid=\"AP1\"} 2\n"));
+        Assert.assertTrue(writer.toString().contains("rvd_app_rcml_requests_total{app_sid=\"other\"} 3\n"));
+    }
+
+    @Test
+    public void countersGoOnAfterStatsAreReset() throws IOException {
+        ProjectRegistry registry = new ProjectRegistry();
+        ApplicationContext applicationContext = new ApplicationContextBuilder()
+                .setConfiguration(new CustomizableRvdConfiguration())
+                .setProjectRegistry(registry)
+                .build();
+        MetricsExporter exporter = applicationContext.getMetricsExporter();
+        registry.addListener(exporter);
+        ResidentProjectInfo info = registry.getResidentProjectInfo("AP1");
+        StatsHelper.countRcmlRequestIncoming(info.stats);
+        StatsHelper.countRcmlRequestIncoming(info.stats);
+        StringWriter writer = new StringWriter();
+        exporter.write(applicationContext, writer);
+        Assert.assertTrue(writer.toString().contains("rvd_app_rcml_requests_total{app_sid=\"AP1\"} 2\n"));
+
+        // DELETE stats/app/AP1
+        info.setStats(new AggregateStats());
+        StatsHelper.countRcmlRequestIncoming(info.stats);
+        writer = new StringWriter();
+        exporter.write(applicationContext, writer);
+        Assert.assertTrue(writer.toString().contains("rvd_app_rcml_requests_total{app_sid=\"AP1\"} 3\n"));
+        StatsHelper.countRcmlRequestIncoming(info.stats);
+        writer = new StringWriter();
+        exporter.write(applicationContext, writer);
+        Assert.assertTrue(writer.toString().contains("rvd_app_rcml_requests_total{app_sid=\"AP1\"} 4\n"));
+    }
+
+    @Test
+    public void labelValuesAreEscaped() throws IOException {
+        StringWriter writer = new StringWriter();
+        MetricsExporter.writeSample(writer, "metric", "label", "a\"b\\c\nd", 3);
+        Assert.assertEquals("metric{label=\"a\\\"b\\\\c\\nd\"} 3\n", writer.toString());
+        writer = new StringWriter();
+        MetricsExporter.writeSeconds(writer, "metric", null, null, 1005);
+        Assert.assertEquals("metric 1.005\n", writer.toString());
+    }
+}
@@ -0,0 +1,134 @@
+package org.restcomm.connect.rvd.stats;
+
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.rvd.ApplicationContext;
+import org.restcomm.connect.rvd.ApplicationContextBuilder;
+import org.restcomm.connect.rvd.TestUtils;
+import org.restcomm.connect.rvd.concurrency.ProjectRegistry;
+import org.restcomm.connect.rvd.concurrency.ResidentProjectInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class StatsSeriesStoreTest {
+
+    static final long T0 = 1500000000000L - 1500000000000L % StatsSeriesStore.DAY; // midnight UTC
+    File workspaceDir;
+    StatsSeriesStore store;
+    ApplicationContext applicationContext;
+    StatsRecorder recorder;
+
+    @Before
+    public void before() {
+        workspaceDir = TestUtils.createTempWorkspace();
+        store = new StatsSeriesStore(new File(workspaceDir, "@stats"), 48, 90);
+        applicationContext = new ApplicationContextBuilder().setProjectRegistry(new ProjectRegistry()).setStatsSeriesStore(store).build();
+        recorder = applicationContext.getStatsRecorder();
+    }
+
+    @After
+    public void after() {
+        TestUtils.removeTempWorkspace(workspaceDir.getPath());
+    }
+
+    void requests(ResidentProjectInfo projectInfo, int count, long micros) {
+        for (int i = 0; i < count; i++) {
+            StatsHelper.countRcmlRequestIncoming(projectInfo.stats);
+            StatsHelper.countRcmlRequestIncoming(applicationContext.getGlobalStats());
+            projectInfo.latency.getRcml().record(micros);
+        }
+    }
+
+    @Test
+    public void minuteSamplesHoldDeltasAndAreRolledUp() throws IOException {
+        ResidentProjectInfo projectInfo = applicationContext.getProjectRegistry().getResidentProjectInfo("AP1");
+        recorder.tick(T0);
+        requests(projectInfo, 3, 1000);
+        recorder.tick(T0 + StatsSeriesStore.MINUTE);
+        requests(projectInfo, 2, 100000);
+        recorder.tick(T0 + 2 * StatsSeriesStore.MINUTE);
+        // a reset is counted from zero
+        projectInfo.setStats(new AggregateStats());
+        requests(projectInfo, 1, 1000);
+        recorder.tick(T0 + 3 * StatsSeriesStore.MINUTE);
+
+        List<StatsSample> minutes = store.query("AP1", T0, T0 + 4 * StatsSeriesStore.MINUTE, StatsSeriesStore.MINUTE);
+        Assert.assertEquals(4, minutes.size());
+        Assert.assertEquals(3, minutes.get(0).getRcmlRequests());
+        Assert.assertEquals(2, minutes.get(1).getRcmlRequests());
+        Assert.assertEquals(2, minutes.get(1).getLatencySnapshot().getCount());
+        Assert.assertEquals(1, minutes.get(2).getRcmlRequests());
+        Assert.assertEquals(0, minutes.get(3).getRcmlRequests());
+        Assert.assertEquals(6, store.query(StatsSeriesStore.GLOBAL_SCOPE, T0, T0 + StatsSeriesStore.HOUR, 5 * StatsSeriesStore.MINUTE).get(0).getRcmlRequests());
+
+        // the hour is over
+        recorder.tick(T0 + StatsSeriesStore.HOUR + 1000);
+        List<StatsSample> hours = store.query("AP1", T0, T0 + 2 * StatsSeriesStore.HOUR, StatsSeriesStore.HOUR);
+        Assert.assertEquals(2, hours.size());
+        Assert.assertEquals(6, hours.get(0).getRcmlRequests());
+        LatencySnapshot latency = hours.get(0).getLatencySnapshot();
+        Assert.assertEquals(6, latency.getCount());
+        Assert.assertTrue(latency.getMax() >= 100 && latency.getP50() < 2);
+        Assert.assertEquals(0, hours.get(1).getRcmlRequests());
+    }
+
+    @Test
+    public void rollupCatchesUpAndExpiredFilesArePurged() throws IOException {
+        ResidentProjectInfo projectInfo = applicationContext.getProjectRegistry().getResidentProjectInfo("AP1");
+        recorder.tick(T0);
+        requests(projectInfo, 1, 1000);
+        recorder.tick(T0 + StatsSeriesStore.MINUTE);
+
+        // a new store, as if RVD was restarted two hours later
+        StatsSeriesStore restarted = new StatsSeriesStore(store.getDirectory(), 48, 90);
+        restarted.rollup(T0 + 2 * StatsSeriesStore.HOUR);
+        restarted.rollup(T0 + 2 * StatsSeriesStore.HOUR); // nothing is rolled up twice
+        Assert.assertEquals(1, restarted.query("AP1", T0, T0 + StatsSeriesStore.DAY, 24 * StatsSeriesStore.HOUR).get(0).getRcmlRequests());
+
+        // three days later minute samples are gone but hourly ones are still there
+        restarted.purge(T0 + 3 * StatsSeriesStore.DAY);
+        Assert.assertEquals(0, restarted.query("AP1", T0, T0 + StatsSeriesStore.HOUR, StatsSeriesStore.HOUR / 2).get(0).getRcmlRequests());
+        Assert.assertEquals(1, restarted.query("AP1", T0, T0 + StatsSeriesStore.HOUR, StatsSeriesStore.HOUR).get(0).getRcmlRequests());
+        restarted.purge(T0 + 200 * StatsSeriesStore.DAY);
+        Assert.assertFalse(new File(store.getDirectory(), "AP1").exists());
+    }
+
+    @Test
+    public void evictedApplicationsKeepTheirStats() throws IOException {
+        ProjectRegistry registry = new ProjectRegistry(1, 0, Arrays.asList("AP2"));
+        applicationContext = new ApplicationContextBuilder().setProjectRegistry(registry).setStatsSeriesStore(store).build();
+        recorder = applicationContext.getStatsRecorder();
+        registry.addListener(recorder);
+        ResidentProjectInfo projectInfo = registry.getResidentProjectInfo("AP1");
+        recorder.tick(T0);
+        requests(projectInfo, 3, 1000);
+        recorder.tick(T0 + StatsSeriesStore.MINUTE);
+        requests(projectInfo, 2, 1000);
+        registry.getResidentProjectInfo("AP2");
+        Assert.assertEquals(1, registry.evict(System.currentTimeMillis() + StatsSeriesStore.HOUR));
+        Assert.assertFalse(registry.getResidentProjects().containsKey("AP1"));
+        // activity before the eviction goes with the next sample
+        recorder.tick(T0 + 2 * StatsSeriesStore.MINUTE);
+
+        ResidentProjectInfo readmitted = registry.getResidentProjectInfo("AP1");
+        Assert.assertNotSame(projectInfo, readmitted);
+        Assert.assertEquals(5, readmitted.stats.rcmlRequestsTotal.get());
+        Assert.assertEquals(projectInfo.stats.startTime.get(), readmitted.stats.startTime.get());
+        requests(readmitted, 1, 1000);
+        recorder.tick(T0 + 3 * StatsSeriesStore.MINUTE);
+
+        List<StatsSample> minutes = store.query("AP1", T0, T0 + 3 * StatsSeriesStore.MINUTE, StatsSeriesStore.MINUTE);
+        Assert.assertEquals(3, minutes.get(0).getRcmlRequests());
+        Assert.assertEquals(2, minutes.get(1).getRcmlRequests());
+        Assert.assertEquals(2, minutes.get(1).getLatencySnapshot().getCount());
+        Assert.assertEquals(1, minutes.get(2).getRcmlRequests()); // not counted again
+    }
+}
@@ -0,0 +1,102 @@
+package org.restcomm.connect.rvd.storage;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.rvd.BuildService;
+import org.restcomm.connect.rvd.TestUtils;
+import org.restcomm.connect.rvd.model.project.Node;
+import org.restcomm.connect.rvd.model.project.ProjectState;
+import org.restcomm.connect.rvd.model.steps.say.SayStep;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+import org.restcomm.connect.rvd.utils.CustomizableRvdConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class CompiledProjectTest extends FsDaoTestBase {
+
+    static final String PROJECT_NAME = "project1";
+    File projectDir;
+    ProjectState state;
+
+    @Before
+    public void before() throws IOException {
+        CustomizableRvdConfiguration configuration = new CustomizableRvdConfiguration();
+        projectDir = TestUtils.createDefaultProject(PROJECT_NAME, "orestis", workspaceDir, marshaler, configuration);
+        state = ProjectState.createEmptyVoice("orestis", configuration);
+        Node node = Node.createDefault("voice", "greeting", "Greeting");
+        node.getSteps().add(SayStep.createDefault("step2", "hello $name"));
+        state.getNodes().add(node);
+    }
+
+    @Test
+    public void builtModulesAreLoadedFromCompiledProject() throws StorageException, IOException {
+        CompiledProjectCache cache = new CompiledProjectCache();
+        FsProjectDao dao = new FsProjectDao(storage, cache);
+        new BuildService(dao).buildProject(PROJECT_NAME, state);
+        File artifact = new File(projectDir, "data/" + CompiledProject.ENTITY_NAME);
+        Assert.assertTrue(artifact.exists());
+
+        CompiledProject compiled = CompiledProject.open(artifact);
+        Assert.assertEquals(dao.loadProjectOptions(PROJECT_NAME).getBuildGeneration().longValue(), compiled.getBuildGeneration());
+        Assert.assertTrue(compiled.getModuleNames().contains("greeting"));
+
+        Node node = dao.loadNode("greeting", PROJECT_NAME);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals("Greeting", node.getLabel());
+        SayStep say = (SayStep) node.getSteps().get(0);
+        Assert.assertEquals("hello $name", say.getPhrase());
+        Assert.assertNotNull("templates should survive the round-trip", node.getRcmlTemplate("step2"));
+        // the JSON modules are still there
+        Assert.assertTrue(new File(projectDir, "data/greeting.mod").exists());
+    }
+
+    @Test
+    public void staleCompiledProjectIsRebuilt() throws StorageException, IOException {
+        FsProjectDao dao = new FsProjectDao(storage, new CompiledProjectCache());
+        new BuildService(dao).buildProject(PROJECT_NAME, state);
+        File artifact = new File(projectDir, "data/" + CompiledProject.ENTITY_NAME);
+        // pretend it was written by a different format version
+        RandomAccessFile file = new RandomAccessFile(artifact, "rw");
+        try {
+            file.seek(4);
+            file.writeInt(CompiledProject.FORMAT_VERSION + 1);
+        } finally {
+            file.close();
+        }
+        Node node = dao.loadNode("greeting", PROJECT_NAME);
+        Assert.assertEquals("greeting", node.getName());
+        CompiledProject.open(artifact); // throws if still stale
+
+        // projects built before compiled projects existed get one on first access
+        FileUtils.deleteQuietly(artifact);
+        Assert.assertNotNull(dao.loadNode("start", PROJECT_NAME));
+        Assert.assertTrue(artifact.exists());
+    }
+
+    @Test
+    public void artifactOfAnEarlierBuildIsRebuilt() throws StorageException, IOException {
+        FsProjectDao dao = new FsProjectDao(storage, new CompiledProjectCache());
+        new BuildService(dao).buildProject(PROJECT_NAME, state);
+        File artifact = new File(projectDir, "data/" + CompiledProject.ENTITY_NAME);
+        File earlier = new File(workspaceDir, "earlier.rvdc");
+        FileUtils.copyFile(artifact, earlier);
+        new BuildService(dao).buildProject(PROJECT_NAME, state);
+        long generation = dao.loadProjectOptions(PROJECT_NAME).getBuildGeneration();
+        Assert.assertTrue(CompiledProject.open(earlier).getBuildGeneration() != generation);
+
+        // the process died after the second build was committed but before its artifact was written
+        FileUtils.copyFile(earlier, artifact);
+        dao = new FsProjectDao(storage, new CompiledProjectCache());
+        Assert.assertEquals("greeting", dao.loadNode("greeting", PROJECT_NAME).getName());
+        Assert.assertEquals(generation, CompiledProject.open(artifact).getBuildGeneration());
+        for (String name: new File(projectDir, "data").list())
+            Assert.assertFalse("temporary files should not be left behind: " + name, name.endsWith(".tmp"));
+    }
+}
@@ -0,0 +1,90 @@
+package org.restcomm.connect.rvd.storage;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.restcomm.connect.rvd.TestUtils;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares disk usage and read latency of project states stored plain, compressed and compressed with a trained
+ * dictionary. Not part of the regular test run. Run with:
+ *
+ *   mvn test -Dtest=EntityCompressionBenchmark
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class EntityCompressionBenchmark {
+
+    static final int PROJECTS = 300;
+    static final int ROUNDS = 20;
+
+    @Test
+    public void compareModes() throws IOException, StorageException {
+        List<String> states = new ArrayList<String>();
+        Random random = new Random(1);
+        for (int i = 0; i < PROJECTS; i++) {
+            // mostly small projects with a few big ones, like a real workspace
+            int nodes = random.nextInt(10) == 0 ? 50 + random.nextInt(150) : 1 + random.nextInt(8);
+            states.add(EntityCompressionTest.buildState(nodes, "user" + random.nextInt(50) + "@telestax.com"));
+        }
+        System.out.println(String.format("%-12s %12s %8s %12s %12s", "mode", "bytes", "ratio", "mean(us)", "p99(us)"));
+        long plainBytes = run("plain", states, null, false, 0);
+        run("deflate", states, Arrays.asList(StorageEntityType.state), false, plainBytes);
+        run("dictionary", states, Arrays.asList(StorageEntityType.state), true, plainBytes);
+    }
+
+    long run(String mode, List<String> states, List<StorageEntityType> types, boolean dictionary, long plainBytes) throws IOException, StorageException {
+        File workspaceDir = TestUtils.createTempWorkspace();
+        Workspace workspace = new Workspace(workspaceDir);
+        EntityCompression compression = workspace.getCompression();
+        try {
+            FsWorkspaceStorage storage = new FsWorkspaceStorage(workspace);
+            if (dictionary) {
+                // trained out of the plain workspace, as on the first startup with a dictionary
+                for (int i = 0; i < states.size(); i++)
+                    FileUtils.writeStringToFile(new File(workspaceDir, "AP" + i + "/state"), states.get(i), "UTF-8");
+                compression.useDictionary(200);
+            }
+            if (types != null)
+                compression.setTypes(types);
+            long bytes = 0;
+            for (int i = 0; i < states.size(); i++) {
+                storage.storeEntityString(states.get(i), "state", "AP" + i);
+                bytes += new File(workspaceDir, "AP" + i + "/state").length();
+            }
+
+            List<Long> latencies = new ArrayList<Long>();
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int i = 0; i < states.size(); i++) {
+                    long started = System.nanoTime();
+                    String state = storage.loadEntityString("state", "AP" + i);
+                    long elapsed = System.nanoTime() - started;
+                    if (round >= ROUNDS / 4) // warm up first
+                        latencies.add(elapsed);
+                    Assert.assertEquals(states.get(i).length(), state.length());
+                }
+            }
+            Collections.sort(latencies);
+            long total = 0;
+            for (long latency: latencies)
+                total += latency;
+            double ratio = plainBytes == 0 ? 1.0 : (double) bytes / plainBytes;
+            System.out.println(String.format("%-12s %12d %8.3f %12.1f %12.1f", mode, bytes, ratio,
+                    total / 1000.0 / latencies.size(), latencies.get(latencies.size() * 99 / 100) / 1000.0));
+            return bytes;
+        } finally {
+            compression.setTypes(Collections.<StorageEntityType>emptySet());
+            compression.dropDictionary();
+            TestUtils.removeTempWorkspace(workspaceDir.getPath());
+        }
+    }
+}
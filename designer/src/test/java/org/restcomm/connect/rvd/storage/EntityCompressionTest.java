@@ -0,0 +1,107 @@
+package org.restcomm.connect.rvd.storage;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.rvd.TestUtils;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class EntityCompressionTest {
+
+    File workspaceDir;
+    FsWorkspaceStorage storage;
+    EntityCompression compression;
+
+    @Before
+    public void before() {
+        workspaceDir = TestUtils.createTempWorkspace();
+        storage = new FsWorkspaceStorage(new Workspace(workspaceDir));
+        compression = storage.getWorkspace().getCompression();
+        compression.setTypes(Arrays.asList(StorageEntityType.state));
+    }
+
+    @After
+    public void after() {
+        compression.setTypes(Collections.<StorageEntityType>emptySet());
+        compression.dropDictionary();
+        TestUtils.removeTempWorkspace(workspaceDir.getPath());
+    }
+
+    static String buildState(int nodes, String owner) {
+        StringBuilder buffer = new StringBuilder("{\"header\":{\"projectKind\":\"voice\",\"startNodeName\":\"start\",\"version\":\"1.15\",\"owner\":\"" + owner + "\"},\"nodes\":[");
+        for (int i = 0; i < nodes; i++) {
+            if (i > 0)
+                buffer.append(",");
+            buffer.append("{\"name\":\"module").append(i).append("\",\"label\":\"Module ").append(i).append("\",\"kind\":\"voice\",\"steps\":[")
+                  .append("{\"kind\":\"say\",\"label\":\"say\",\"title\":\"say\",\"phrase\":\"Press ").append(i).append(" for sales\",\"voice\":\"man\",\"language\":\"en\",\"loop\":1,\"name\":\"step").append(i).append("\"}]}");
+        }
+        return buffer.append("],\"lastStepId\":").append(nodes).append(",\"lastNodeId\":").append(nodes).append("}").toString();
+    }
+
+    @Test
+    public void compressedAndPlainEntitiesCoexist() throws StorageException, IOException {
+        String state = buildState(50, "orestis@telestax.com");
+        storage.storeEntityString(state, "state", "AP1");
+        byte[] stored = FileUtils.readFileToByteArray(new File(workspaceDir, "AP1/state"));
+        Assert.assertTrue(EntityCompression.isCompressed(stored));
+        Assert.assertTrue(stored.length < state.length() / 4);
+        Assert.assertEquals(state, storage.loadEntityString("state", "AP1"));
+        InputStream stream = storage.loadStream("state", "AP1");
+        Assert.assertEquals(state, IOUtils.toString(stream, "UTF-8"));
+        stream.close();
+
+        // written before compression was turned on
+        FileUtils.writeStringToFile(new File(workspaceDir, "AP2/state"), state, "UTF-8");
+        Assert.assertEquals(state, storage.loadEntityString("state", "AP2"));
+        // types not selected and tiny entities are left alone
+        storage.storeEntityString(state, "start.mod", "AP1/data");
+        Assert.assertEquals(state.length(), new File(workspaceDir, "AP1/data/start.mod").length());
+        storage.storeEntityString("{}", "state", "AP3");
+        Assert.assertEquals("{}", FileUtils.readFileToString(new File(workspaceDir, "AP3/state"), "UTF-8"));
+
+        // and compressed ones are still read once compression is off
+        compression.setTypes(Collections.<StorageEntityType>emptySet());
+        Assert.assertEquals(state, storage.loadEntityString("state", "AP1"));
+    }
+
+    @Test
+    public void dictionaryIsTrainedFromTheWorkspaceAndKeptForReads() throws StorageException, IOException {
+        for (int i = 0; i < 10; i++)
+            FileUtils.writeStringToFile(new File(workspaceDir, "AP" + i + "/state"), buildState(5 + i, "user" + i + "@telestax.com"), "UTF-8");
+        String small = buildState(2, "someone@telestax.com");
+        int withoutDictionary = compression.encode(small.getBytes("UTF-8"), StorageEntityType.state).length;
+
+        int id = compression.useDictionary(10);
+        Assert.assertTrue(id != 0);
+        Assert.assertTrue(new File(workspaceDir, EntityCompression.DIRECTORY_NAME + "/" + EntityCompression.dictionaryFilename(id)).exists());
+        storage.storeEntityString(small, "state", "AP100");
+        long withDictionary = new File(workspaceDir, "AP100/state").length();
+        Assert.assertTrue(withDictionary < withoutDictionary * 2 / 3);
+        // the same dictionary is picked up on restart
+        Assert.assertEquals(id, new Workspace(workspaceDir).getCompression().useDictionary(10));
+
+        // a node that does not compress with a dictionary can still read
+        EntityCompression reader = new Workspace(workspaceDir).getCompression();
+        byte[] stored = FileUtils.readFileToByteArray(new File(workspaceDir, "AP100/state"));
+        Assert.assertEquals(small, new String(reader.decode(stored), "UTF-8"));
+        FileUtils.deleteDirectory(new File(workspaceDir, EntityCompression.DIRECTORY_NAME));
+        try {
+            new Workspace(workspaceDir).getCompression().decode(stored);
+            Assert.fail();
+        } catch (IOException e) {
+            // the dictionary is gone
+        }
+    }
+}
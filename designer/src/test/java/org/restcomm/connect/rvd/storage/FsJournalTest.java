@@ -0,0 +1,125 @@
+package org.restcomm.connect.rvd.storage;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.rvd.TestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class FsJournalTest {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    File workspaceDir;
+    FsJournal journal;
+
+    @Before
+    public void before() {
+        workspaceDir = TestUtils.createTempWorkspace();
+        journal = new FsJournal(workspaceDir);
+    }
+
+    @After
+    public void after() {
+        TestUtils.removeTempWorkspace(workspaceDir.getPath());
+    }
+
+    @Test
+    public void writeReplacesFileAndLeavesNothingBehind() throws IOException {
+        File target = new File(workspaceDir, "AP1/state");
+        journal.write(target, "first".getBytes(UTF8));
+        journal.write(target, "second".getBytes(UTF8));
+        Assert.assertEquals("second", FileUtils.readFileToString(target, UTF8));
+        Assert.assertEquals(0, new File(workspaceDir, FsJournal.DIRECTORY_NAME).list().length);
+    }
+
+    @Test
+    public void committedTransactionIsCompletedOnRecovery() throws IOException {
+        File index = new File(workspaceDir, "AP1/data/project");
+        File module = new File(workspaceDir, "AP1/data/start.mod");
+        File stale = new File(workspaceDir, "AP1/data/old.mod");
+        FileUtils.writeStringToFile(index, "old index", UTF8);
+        FileUtils.writeStringToFile(stale, "old module", UTF8);
+        // crash after the commit point, before the files are moved in place
+        journal.begin().write(module, "new module".getBytes(UTF8)).write(index, "new index".getBytes(UTF8)).remove(stale).prepare();
+        Assert.assertEquals("old index", FileUtils.readFileToString(index, UTF8));
+
+        Assert.assertEquals(1, new FsJournal(workspaceDir).recover());
+        Assert.assertEquals("new index", FileUtils.readFileToString(index, UTF8));
+        Assert.assertEquals("new module", FileUtils.readFileToString(module, UTF8));
+        Assert.assertFalse(stale.exists());
+        Assert.assertEquals(0, new File(workspaceDir, FsJournal.DIRECTORY_NAME).list().length);
+    }
+
+    @Test
+    public void uncommittedWritesAreDroppedOnRecovery() throws IOException {
+        File index = new File(workspaceDir, "AP1/data/project");
+        FileUtils.writeStringToFile(index, "old index", UTF8);
+        // a transaction that never reached its commit record and an interrupted single write
+        File transactionDir = new File(workspaceDir, FsJournal.DIRECTORY_NAME + "/" + FsJournal.TRANSACTION_PREFIX + "1-1");
+        FileUtils.writeStringToFile(new File(transactionDir, "0"), "new index", UTF8);
+        FileUtils.writeStringToFile(new File(transactionDir, FsJournal.COMMIT_FILENAME + ".tmp"), "W\t0\tAP1/data/project\n", UTF8);
+        FileUtils.writeStringToFile(new File(workspaceDir, FsJournal.DIRECTORY_NAME + "/" + FsJournal.SINGLE_WRITE_PREFIX + "1-2"), "partial", UTF8);
+
+        Assert.assertEquals(0, journal.recover());
+        Assert.assertEquals("old index", FileUtils.readFileToString(index, UTF8));
+        Assert.assertEquals(0, new File(workspaceDir, FsJournal.DIRECTORY_NAME).list().length);
+    }
+
+    @Test
+    public void transactionsAreRecoveredInTheOrderTheyWereMade() throws IOException {
+        File state = new File(workspaceDir, "AP1/state");
+        // two transactions from the same millisecond, the later one has a longer sequence number
+        for (int sequence: new int[] {9, 10}) {
+            File transactionDir = new File(workspaceDir, FsJournal.DIRECTORY_NAME + "/" + FsJournal.TRANSACTION_PREFIX + "1500000000000-" + sequence);
+            FileUtils.writeStringToFile(new File(transactionDir, "0"), "state " + sequence, UTF8);
+            FileUtils.writeStringToFile(new File(transactionDir, FsJournal.COMMIT_FILENAME), "W\t0\tAP1/state\n", UTF8);
+        }
+
+        Assert.assertEquals(2, journal.recover());
+        Assert.assertEquals("state 10", FileUtils.readFileToString(state, UTF8));
+    }
+
+    @Test
+    public void concurrentWritesShareSyncBatches() throws Exception {
+        final int threadCount = 8;
+        final int writesPerThread = 25;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < threadCount; t++) {
+            final int id = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < writesPerThread; i++)
+                            journal.write(new File(workspaceDir, "AP" + id + "/state"), ("" + i).getBytes(UTF8));
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            });
+        }
+        for (Thread thread: threads)
+            thread.start();
+        for (Thread thread: threads)
+            thread.join();
+
+        Assert.assertNull(failure.get());
+        for (int t = 0; t < threadCount; t++)
+            Assert.assertEquals("" + (writesPerThread - 1), FileUtils.readFileToString(new File(workspaceDir, "AP" + t + "/state"), UTF8));
+        Assert.assertEquals(threadCount * writesPerThread * 2, journal.getSyncRequests());
+        Assert.assertTrue(journal.getSyncBatches() <= journal.getSyncRequests());
+    }
+}
@@ -0,0 +1,19 @@
+package org.restcomm.connect.rvd.storage;
+
+import java.io.File;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class FsWorkspaceConformanceTest extends WorkspaceConformanceTestBase {
+
+    @Override
+    WorkspaceStorage createWorkspaceStorage(File workspaceDir) {
+        return new FsWorkspaceStorage(workspaceDir.getPath());
+    }
+
+    @Override
+    ProjectDao createProjectDao(JsonModelStorage storage) {
+        return new FsProjectDao(storage);
+    }
+}
@@ -0,0 +1,100 @@
+package org.restcomm.connect.rvd.storage;
+
+import junit.framework.Assert;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.rvd.TestUtils;
+import org.restcomm.connect.rvd.model.StepMarshaler;
+import org.restcomm.connect.rvd.model.project.Node;
+import org.restcomm.connect.rvd.model.server.ProjectIndex;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class InstrumentedWorkspaceStorageTest {
+
+    File workspaceDir;
+    StorageStats stats;
+    WorkspaceStorage storage;
+
+    @Before
+    public void before() {
+        workspaceDir = TestUtils.createTempWorkspace();
+        stats = new StorageStats();
+        storage = InstrumentedWorkspaceStorage.wrap(new FsWorkspaceStorage(workspaceDir.getPath()), stats);
+    }
+
+    @After
+    public void after() {
+        RequestStorageIo.end();
+        TestUtils.removeTempWorkspace(workspaceDir.getPath());
+    }
+
+    @Test
+    public void ioIsAccountedByEntityTypeAndRequest() throws StorageException, IOException {
+        RequestStorageIo io = RequestStorageIo.begin();
+        storage.storeEntityString("{\"name\":\"caf\u00e9\"}", "state", "AP1234");
+        Assert.assertEquals("{\"name\":\"caf\u00e9\"}", storage.loadEntityString("state", "AP1234"));
+        storage.storeEntityString("{}", "greeting.mod", "AP1234/data");
+        storage.storeEntityString("RIFF", "hello.wav", "AP1234/wavs");
+        InputStream stream = storage.loadStream("hello.wav", "AP1234/wavs");
+        Assert.assertEquals("RIFF", IOUtils.toString(stream));
+        stream.close();
+        storage.listContents("AP1234/data", ".*\\.mod", false);
+        Assert.assertSame(io, RequestStorageIo.end());
+
+        StorageStats.EntityStats state = stats.entity(StorageEntityType.state);
+        Assert.assertEquals(1, state.getReads());
+        Assert.assertEquals(1, state.getWrites());
+        Assert.assertEquals(16, state.getBytesWritten()); // e-acute takes two bytes
+        Assert.assertEquals(16, state.getBytesRead());
+        Assert.assertEquals(1, stats.entity(StorageEntityType.mod).getWrites());
+        Assert.assertEquals(1, stats.entity(StorageEntityType.mod).getLookups());
+        Assert.assertEquals(4, stats.entity(StorageEntityType.wavs).getBytesRead());
+        Assert.assertEquals(2, state.getLatency().snapshot().getCount());
+
+        Assert.assertEquals(6, io.getOperations());
+        Assert.assertEquals(2, io.getOperations(StorageEntityType.wavs));
+        Assert.assertEquals(16 + 4, io.getBytesRead());
+        Assert.assertEquals(16 + 2 + 4, io.getBytesWritten());
+        // nothing is attributed outside a request
+        storage.loadEntityString("state", "AP1234");
+        Assert.assertEquals(6, io.getOperations());
+        Assert.assertEquals(2, state.getReads());
+    }
+
+    @Test
+    public void buildWritesAreAccountedPerEntity() throws StorageException {
+        FsProjectDao dao = new FsProjectDao(new JsonModelStorage(storage, new StepMarshaler()));
+        List<Node> nodes = new ArrayList<Node>();
+        nodes.add(Node.createDefault("voice", "start", "Welcome"));
+        nodes.add(Node.createDefault("voice", "menu", "Menu"));
+        ProjectIndex projectIndex = new ProjectIndex();
+        projectIndex.setBuildGeneration(1L);
+
+        RequestStorageIo io = RequestStorageIo.begin();
+        dao.storeBuiltProject("AP1234", nodes, projectIndex);
+        Assert.assertSame(io, RequestStorageIo.end());
+
+        Assert.assertEquals(2, stats.entity(StorageEntityType.mod).getWrites());
+        Assert.assertTrue(stats.entity(StorageEntityType.mod).getBytesWritten() > 0);
+        Assert.assertEquals(1, stats.entity(StorageEntityType.project).getWrites());
+        Assert.assertEquals(3, io.getOperations(StorageEntityType.mod) + io.getOperations(StorageEntityType.project));
+        Assert.assertEquals(stats.entity(StorageEntityType.mod).getBytesWritten() + stats.entity(StorageEntityType.project).getBytesWritten(), io.getBytesWritten());
+    }
+
+    @Test
+    public void storageIsNotWrappedWhenDisabled() {
+        WorkspaceStorage plain = new FsWorkspaceStorage(workspaceDir.getPath());
+        Assert.assertSame(plain, InstrumentedWorkspaceStorage.wrap(plain, null));
+    }
+}
@@ -12,6 +12,7 @@ import org.restcomm.connect.rvd.model.server.ProjectIndex;
 import org.restcomm.connect.rvd.storage.exceptions.StorageException;
 import org.restcomm.connect.rvd.storage.exceptions.WavItemDoesNotExist;
 
+import java.io.File;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
@@ -25,6 +26,8 @@ import java.util.Map;
 public class MemoryProjectDao implements ProjectDao {
 
     public Map<String, ProjectParameters> projectParameters = new HashMap<String, ProjectParameters>();
+    public Map<String, ProjectIndex> projectOptions = new HashMap<String, ProjectIndex>();
+    public Map<String, Node> nodes = new HashMap<String, Node>(); // by application id and module name, i.e. AP1/start
 
     @Override
     public ProjectState loadProject(String applicationId) throws StorageException {
@@ -43,22 +46,29 @@ public class MemoryProjectDao implements ProjectDao {
 
     @Override
     public ProjectIndex loadProjectOptions(String applicationId) throws StorageException {
-        return null;
+        return projectOptions.get(applicationId);
     }
 
     @Override
     public void storeProjectOptions(String applicationId, ProjectIndex projectOptions) throws StorageException {
-
+        this.projectOptions.put(applicationId, projectOptions);
     }
 
     @Override
     public Node loadNode(String moduleName, String applicationId) throws StorageException {
-        return null;
+        return nodes.get(applicationId + "/" + moduleName);
     }
 
     @Override
     public void storeNode(String applicationId, Node node) throws StorageException {
+        nodes.put(applicationId + "/" + node.getName(), node);
+    }
 
+    @Override
+    public void storeBuiltProject(String applicationId, List<Node> nodes, ProjectIndex projectIndex) throws StorageException {
+        for (Node node: nodes)
+            storeNode(applicationId, node);
+        storeProjectOptions(applicationId, projectIndex);
     }
 
     @Override
@@ -91,6 +101,11 @@ public class MemoryProjectDao implements ProjectDao {
         return null;
     }
 
+    @Override
+    public File getMediaFile(String projectName, String filename) {
+        return null;
+    }
+
     @Override
     public void storeMediaFromStream(String projectName, String wavname, InputStream wavStream, Integer maxSize) throws StorageException, StreamDoesNotFitInFile {
 
@@ -106,6 +121,10 @@ public class MemoryProjectDao implements ProjectDao {
         return null;
     }
 
+    @Override
+    public void updateProjectStateRaw(String applicationId, String state) throws StorageException {
+    }
+
     @Override
     public InputStream archiveProject(String projectName) throws StorageException {
         return null;
@@ -0,0 +1,146 @@
+package org.restcomm.connect.rvd.storage;
+
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.rvd.TestUtils;
+import org.restcomm.connect.rvd.model.ProjectSettings;
+import org.restcomm.connect.rvd.model.StepMarshaler;
+import org.restcomm.connect.rvd.model.project.ProjectState;
+import org.restcomm.connect.rvd.model.server.ProjectIndex;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+import org.restcomm.connect.rvd.utils.CustomizableRvdConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class ProjectMetadataIndexTest {
+
+    File workspaceDir;
+    Workspace workspace;
+    JsonModelStorage storage;
+    ProjectDao dao;
+    ProjectMetadataIndex index;
+
+    @Before
+    public void before() throws IOException, StorageException {
+        workspaceDir = TestUtils.createTempWorkspace();
+        TestUtils.createUsersDirectory(workspaceDir.getPath());
+        StepMarshaler marshaler = new StepMarshaler();
+        CustomizableRvdConfiguration config = new CustomizableRvdConfiguration();
+        workspace = new Workspace(workspaceDir);
+        storage = new JsonModelStorage(new FsWorkspaceStorage(workspace), marshaler);
+        dao = new FsProjectDao(storage);
+        // created behind the back of the index
+        for (int i = 0; i < 5; i++)
+            TestUtils.createDefaultProject("AP" + i, i < 3 ? "orestis" : "otsakir", workspaceDir, marshaler, config);
+        index = new ProjectMetadataIndex(workspace);
+        index.open(storage);
+    }
+
+    @After
+    public void after() throws IOException {
+        index.close();
+        TestUtils.removeTempWorkspace(workspaceDir.getPath());
+    }
+
+    @Test
+    public void indexIsBuiltAndQueriedInPages() {
+        ProjectMetadataIndex.Filter orestis = new ProjectMetadataIndex.Filter("orestis", "voice", null);
+        ProjectMetadataIndex.Page page = index.query(orestis, null, 2);
+        Assert.assertEquals(3, page.getTotal());
+        Assert.assertEquals(2, page.getItems().size());
+        Assert.assertEquals("AP0", page.getItems().get(0).getName());
+        Assert.assertEquals("AP1", page.getNext());
+        page = index.query(orestis, page.getNext(), 2);
+        Assert.assertEquals(3, page.getTotal());
+        Assert.assertEquals(1, page.getItems().size());
+        Assert.assertEquals("AP2", page.getItems().get(0).getName());
+        Assert.assertNull(page.getNext());
+
+        ProjectMetadata entry = page.getItems().get(0);
+        Assert.assertTrue(entry.getSize() > 0);
+        Assert.assertNull(entry.getLastBuilt());
+        Assert.assertEquals(40, entry.getContentHash().length());
+
+        List<ProjectMetadataIndex.Usage> usage = index.usageByOwner();
+        Assert.assertEquals(2, usage.size());
+        Assert.assertEquals("orestis", usage.get(0).getOwner());
+        Assert.assertEquals(3, usage.get(0).getProjects());
+    }
+
+    @Test
+    public void entriesFollowDaoChanges() throws StorageException, IOException, InterruptedException {
+        ProjectMetadata before = index.query(new ProjectMetadataIndex.Filter(null, null, null), null, 10).getItems().get(1);
+        Assert.assertEquals("AP1", before.getName());
+
+        dao.storeSettings(new ProjectSettings(true, false), "AP1");
+        dao.storeProjectOptions("AP1", new ProjectIndex());
+        ProjectState state = dao.loadProject("AP1");
+        state.getHeader().setOwner("otsakir");
+        dao.updateProjectState("AP1", state);
+        dao.removeProject("AP4");
+        dao.createProject("AP5", ProjectState.createEmptySms("orestis", new CustomizableRvdConfiguration()));
+        index.awaitRefreshes();
+
+        ProjectMetadata after = index.query(new ProjectMetadataIndex.Filter("otsakir", null, null), null, 10).getItems().get(0);
+        Assert.assertEquals("AP1", after.getName());
+        Assert.assertTrue(after.getSize() > before.getSize());
+        Assert.assertNotNull(after.getLastBuilt());
+        Assert.assertFalse(before.getContentHash().equals(after.getContentHash()));
+        Assert.assertEquals(5, index.size());
+        Assert.assertEquals(1, index.query(new ProjectMetadataIndex.Filter(null, "sms", null), null, 10).getTotal());
+
+        // a clean restart loads what was persisted without reading the projects
+        index.close();
+        workspace.getJournal().write(new File(workspaceDir, "AP0/state"), "{}".getBytes("UTF-8"));
+        index = new ProjectMetadataIndex(workspace);
+        index.open(storage);
+        Assert.assertEquals(5, index.size());
+        Assert.assertEquals("otsakir", index.query(new ProjectMetadataIndex.Filter(null, null, null), "AP0", 1).getItems().get(0).getOwner());
+        Assert.assertEquals("orestis", index.query(new ProjectMetadataIndex.Filter(null, null, null), null, 1).getItems().get(0).getOwner());
+    }
+
+    @Test
+    public void refreshesArePendingUntilTheIndexIsClosed() throws StorageException, IOException {
+        for (int i = 0; i < 20; i++)
+            dao.storeSettings(new ProjectSettings(i % 2 == 0, false), "AP3");
+        ProjectState state = dao.loadProject("AP3");
+        state.getHeader().setOwner("someone");
+        dao.updateProjectState("AP3", state);
+
+        // whatever was still pending is in the snapshot written on close
+        index.close();
+        Assert.assertFalse(new File(workspaceDir, ProjectMetadataIndex.DIRECTORY_NAME + "/" + ProjectMetadataIndex.CHANGES_FILENAME).exists());
+        index = new ProjectMetadataIndex(workspace);
+        index.open(storage);
+        ProjectMetadata ap3 = index.query(new ProjectMetadataIndex.Filter("someone", null, null), null, 10).getItems().get(0);
+        Assert.assertEquals("AP3", ap3.getName());
+        Assert.assertEquals(GenerationStamp.read(new File(workspaceDir, "AP3")).toString(), ap3.getStamp());
+    }
+
+    @Test
+    public void changesMissedByAnUncleanShutdownAreRecovered() throws StorageException, IOException, InterruptedException {
+        dao.storeSettings(new ProjectSettings(true, false), "AP0");
+        index.awaitRefreshes();
+        // as if RVD died: the index is not closed. Another node changes AP2 in the meantime.
+        ProjectMetadataIndex crashed = index;
+        index = new ProjectMetadataIndex(workspace);
+        ProjectState state = dao.loadProject("AP2");
+        state.getHeader().setOwner("someone");
+        storage.storeEntity(state, "state", "AP2");
+        GenerationStamp.bump(workspace, new File(workspaceDir, "AP2"));
+        crashed.remove("AP3"); // lost in the crash. AP3 is still there.
+
+        index.open(storage);
+        Assert.assertEquals(5, index.size());
+        Assert.assertEquals(1, index.query(new ProjectMetadataIndex.Filter("someone", null, null), null, 10).getTotal());
+        ProjectMetadata ap0 = index.query(new ProjectMetadataIndex.Filter(null, null, null), null, 1).getItems().get(0);
+        Assert.assertEquals(GenerationStamp.read(new File(workspaceDir, "AP0")).toString(), ap0.getStamp());
+    }
+}
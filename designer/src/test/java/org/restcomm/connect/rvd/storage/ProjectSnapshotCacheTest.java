@@ -0,0 +1,95 @@
+package org.restcomm.connect.rvd.storage;
+
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.rvd.TestUtils;
+import org.restcomm.connect.rvd.concurrency.ResidentProjectInfo;
+import org.restcomm.connect.rvd.model.ProjectSettings;
+import org.restcomm.connect.rvd.model.StepMarshaler;
+import org.restcomm.connect.rvd.model.server.ProjectIndex;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+import org.restcomm.connect.rvd.utils.CustomizableRvdConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Two nodes sharing a workspace directory. Each has its own storage, dao and resident project info, as separate
+ * RVD instances would.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class ProjectSnapshotCacheTest {
+
+    static final String PROJECT_NAME = "project1";
+
+    File workspaceDir;
+    File projectDir;
+    RvdNode node1;
+    RvdNode node2;
+
+    static class RvdNode {
+        final Workspace workspace; // each node has its own
+        final ProjectDao dao;
+        final ResidentProjectInfo residentInfo = new ResidentProjectInfo();
+
+        RvdNode(File workspaceDir) {
+            workspace = new Workspace(workspaceDir);
+            dao = new FsProjectDao(new JsonModelStorage(new FsWorkspaceStorage(workspace), new StepMarshaler()));
+        }
+
+        ProjectSnapshotCache.Snapshot snapshot() throws StorageException {
+            return residentInfo.getSnapshots().get(PROJECT_NAME, workspace, 0, dao);
+        }
+    }
+
+    @Before
+    public void before() throws IOException, StorageException {
+        workspaceDir = TestUtils.createTempWorkspace();
+        projectDir = TestUtils.createDefaultProject(PROJECT_NAME, "orestis", workspaceDir, new StepMarshaler(), new CustomizableRvdConfiguration());
+        node1 = new RvdNode(workspaceDir);
+        node2 = new RvdNode(workspaceDir);
+        node1.dao.storeProjectOptions(PROJECT_NAME, new ProjectIndex());
+    }
+
+    @After
+    public void after() {
+        TestUtils.removeTempWorkspace(workspaceDir.getPath());
+    }
+
+    @Test
+    public void changesOnOneNodeInvalidateCacheOfTheOther() throws StorageException, IOException {
+        ProjectSnapshotCache cache = node1.residentInfo.getSnapshots();
+        Assert.assertNull(node1.snapshot().getSettings());
+        node1.snapshot();
+        Assert.assertEquals(1, cache.getLoads());
+        Assert.assertEquals(1, cache.getHits());
+
+        GenerationStamp before = GenerationStamp.read(projectDir);
+        node2.dao.storeSettings(new ProjectSettings(true, false), PROJECT_NAME);
+        GenerationStamp after = GenerationStamp.read(projectDir);
+        Assert.assertEquals(before.getGeneration() + 1, after.getGeneration());
+
+        ProjectSnapshotCache.Snapshot snapshot = node1.snapshot();
+        Assert.assertEquals(Boolean.TRUE, snapshot.getSettings().getLogging());
+        Assert.assertEquals(after, snapshot.getStamp());
+        Assert.assertEquals(2, cache.getLoads());
+
+        node2.dao.removeProject(PROJECT_NAME);
+        Assert.assertNull(node1.snapshot().getOptions());
+    }
+
+    @Test
+    public void projectsWithoutStampGetStampedAndCached() throws StorageException {
+        GenerationStamp.file(projectDir).delete();
+        ProjectSnapshotCache cache = node1.residentInfo.getSnapshots();
+        node1.snapshot();
+        Assert.assertTrue(GenerationStamp.file(projectDir).exists());
+        node1.snapshot();
+        node1.snapshot();
+        Assert.assertEquals(2, cache.getLoads());
+        Assert.assertEquals(1, cache.getHits());
+    }
+}
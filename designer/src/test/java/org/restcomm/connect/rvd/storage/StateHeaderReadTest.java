@@ -0,0 +1,90 @@
+package org.restcomm.connect.rvd.storage;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.rvd.TestUtils;
+import org.restcomm.connect.rvd.model.StepMarshaler;
+import org.restcomm.connect.rvd.model.project.Node;
+import org.restcomm.connect.rvd.model.project.ProjectState;
+import org.restcomm.connect.rvd.model.project.StateHeader;
+import org.restcomm.connect.rvd.model.steps.say.SayStep;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+import org.restcomm.connect.rvd.utils.CustomizableRvdConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class StateHeaderReadTest {
+
+    File workspaceDir;
+    StorageStats stats;
+    JsonModelStorage storage;
+    FsProjectDao dao;
+    long stateSize;
+
+    @Before
+    public void before() throws StorageException {
+        workspaceDir = TestUtils.createTempWorkspace();
+        stats = new StorageStats();
+        storage = new JsonModelStorage(InstrumentedWorkspaceStorage.wrap(new FsWorkspaceStorage(workspaceDir.getPath()), stats), new StepMarshaler());
+        dao = new FsProjectDao(storage);
+
+        ProjectState state = ProjectState.createEmptyVoice("orestis", new CustomizableRvdConfiguration());
+        for (int i = 1; i < 500; i++) {
+            Node node = Node.createDefault("voice", "module" + i, "Module " + i);
+            for (int j = 0; j < 10; j++)
+                node.getSteps().add(SayStep.createDefault("step" + i + "_" + j, "Thank you for calling. Please hold the line."));
+            state.getNodes().add(node);
+        }
+        dao.createProject("AP1", state);
+        stateSize = new File(workspaceDir, "AP1/state").length();
+        Assert.assertTrue(stateSize > 500000);
+    }
+
+    @After
+    public void after() {
+        TestUtils.removeTempWorkspace(workspaceDir.getPath());
+    }
+
+    @Test
+    public void headerIsReadFromItsOwnEntity() throws StorageException {
+        StateHeader header = storage.loadStateHeader("AP1");
+        Assert.assertEquals("orestis", header.getOwner());
+        Assert.assertEquals(0, stats.entity(StorageEntityType.state).getBytesRead());
+        Assert.assertEquals(new File(workspaceDir, "AP1/header").length(), stats.entity(StorageEntityType.header).getBytesRead());
+        Assert.assertTrue(stats.entity(StorageEntityType.header).getBytesRead() < 1000);
+
+        // kept in sync with the state
+        ProjectState state = dao.loadProject("AP1");
+        state.getHeader().setOwner("otsakir");
+        dao.updateProjectState("AP1", state);
+        Assert.assertEquals("otsakir", storage.loadStateHeader("AP1").getOwner());
+    }
+
+    @Test
+    public void stateIsReadOnlyUpToTheHeaderWhenTheEntityIsMissing() throws StorageException {
+        FileUtils.deleteQuietly(new File(workspaceDir, "AP1/header"));
+        StateHeader header = storage.loadStateHeader("AP1");
+        Assert.assertEquals("orestis", header.getOwner());
+        // a buffer's worth at most, no matter how big the state is
+        long bytesRead = stats.entity(StorageEntityType.state).getBytesRead();
+        Assert.assertTrue(bytesRead > 0);
+        Assert.assertTrue(bytesRead < 64 * 1024);
+    }
+
+    @Test
+    public void headerIsFoundAfterOtherProperties() throws StorageException, IOException {
+        // older versions wrote it last
+        String state = "{\"lastStepId\":1,\"nodes\":[{\"name\":\"start\",\"steps\":[{\"header\":{}}]}],\"header\":{\"projectKind\":\"sms\",\"version\":\"1.6\",\"owner\":\"orestis\"}}";
+        StateHeader header = JsonModelStorage.readStateHeader(new StringReader(state), "AP2");
+        Assert.assertEquals("sms", header.getProjectKind());
+        Assert.assertEquals("1.6", header.getVersion());
+    }
+}
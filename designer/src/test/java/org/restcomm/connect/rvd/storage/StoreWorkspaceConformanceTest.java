@@ -0,0 +1,111 @@
+package org.restcomm.connect.rvd.storage;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.restcomm.connect.rvd.BuildService;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Runs the conformance tests against the workspace store. Adds tests for what only the store guarantees.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class StoreWorkspaceConformanceTest extends WorkspaceConformanceTestBase {
+
+    EmbeddedStore store;
+    StoreWorkspaceStorage storeStorage;
+
+    @Override
+    WorkspaceStorage createWorkspaceStorage(File workspaceDir) throws IOException {
+        store = EmbeddedStore.open(new File(workspaceDir, EmbeddedStore.FILENAME));
+        storeStorage = new StoreWorkspaceStorage(store, workspaceDir.getPath());
+        return storeStorage;
+    }
+
+    @Override
+    ProjectDao createProjectDao(JsonModelStorage storage) {
+        return new StoreProjectDao(storage, storeStorage);
+    }
+
+    @Override
+    void closeWorkspaceStorage() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void storeCanOnlyBeOpenOnce() throws IOException {
+        File file = new File(workspaceDir, EmbeddedStore.FILENAME);
+        try {
+            EmbeddedStore.open(file);
+            Assert.fail("a store that is already open should not be opened again");
+        } catch (IOException e) {
+            // expected
+        }
+        store.close();
+        store = EmbeddedStore.open(file);
+        Assert.assertTrue(EmbeddedStore.lockFile(file).exists());
+    }
+
+    @Test
+    public void incompleteTransactionIsDroppedOnReopen() throws StorageException, IOException {
+        createProject(APP_SID);
+        new BuildService(dao).buildProject(APP_SID, dao.loadProject(APP_SID));
+        long committedSize = store.getFileSize();
+        long generation = dao.loadProjectOptions(APP_SID).getBuildGeneration();
+        // a second build that crashes half way through writing
+        new BuildService(dao).buildProject(APP_SID, dao.loadProject(APP_SID));
+        store.close();
+        File file = new File(workspaceDir, EmbeddedStore.FILENAME);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(committedSize + (raf.length() - committedSize) / 2);
+        } finally {
+            raf.close();
+        }
+
+        store = EmbeddedStore.open(file);
+        storeStorage = new StoreWorkspaceStorage(store, workspaceDir.getPath());
+        storage = new JsonModelStorage(storeStorage, marshaler);
+        dao = createProjectDao(storage);
+        Assert.assertTrue(store.getDiscardedBytes() > 0);
+        Assert.assertEquals(committedSize, store.getFileSize());
+        // the first build is intact
+        Assert.assertEquals(generation, dao.loadProjectOptions(APP_SID).getBuildGeneration().longValue());
+        Assert.assertEquals("start", dao.loadNode("start", APP_SID).getName());
+    }
+
+    @Test
+    public void fileSystemWorkspaceIsMigrated() throws StorageException, IOException {
+        // lay out a project using the file system backend
+        Workspace workspace = new Workspace(workspaceDir);
+        JsonModelStorage fsStorage = new JsonModelStorage(new FsWorkspaceStorage(workspace), marshaler);
+        ProjectDao fsDao = new FsProjectDao(fsStorage);
+        ProjectDao storeDao = dao;
+        dao = fsDao;
+        createProject(APP_SID);
+        new BuildService(fsDao).buildProject(APP_SID, fsDao.loadProject(APP_SID));
+        fsStorage.storeEntityString("{\"version\":1}", "status", "");
+        FileUtils.writeByteArrayToFile(new File(workspaceDir, APP_SID + "/wavs/hello.wav"), new byte[] {1, 2, 3});
+
+        WorkspaceStoreMigrator migrator = new WorkspaceStoreMigrator(workspace, store);
+        Assert.assertFalse(migrator.isMigrated());
+        WorkspaceStoreMigrator.Report report = migrator.migrate();
+        Assert.assertTrue(migrator.isMigrated());
+        Assert.assertEquals(1, report.getProjects());
+        // media and compiled artifacts are not copied
+        Assert.assertFalse(store.contains(APP_SID + "/wavs/hello.wav"));
+        Assert.assertFalse(store.contains(APP_SID + "/data/" + CompiledProject.ENTITY_NAME));
+
+        Assert.assertEquals(fsDao.loadProjectStateRaw(APP_SID), storeDao.loadProjectStateRaw(APP_SID));
+        Assert.assertEquals(fsDao.loadProjectOptions(APP_SID).getBuildGeneration(), storeDao.loadProjectOptions(APP_SID).getBuildGeneration());
+        Assert.assertEquals(1, storeDao.listMedia(APP_SID).size());
+        Assert.assertEquals("{\"version\":1}", storage.loadEntityString("status", ""));
+        // running again skips what's there
+        Assert.assertEquals(1, migrator.migrate().getSkippedProjects());
+    }
+}
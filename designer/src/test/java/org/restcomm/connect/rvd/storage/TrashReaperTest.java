@@ -0,0 +1,77 @@
+package org.restcomm.connect.rvd.storage;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.rvd.TestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class TrashReaperTest {
+
+    File workspaceDir;
+    WorkspaceTrash trash;
+
+    @Before
+    public void before() throws IOException {
+        workspaceDir = TestUtils.createTempWorkspace();
+        trash = new WorkspaceTrash(workspaceDir);
+        for (int p = 1; p <= 2; p++) {
+            for (int i = 0; i < 10; i++)
+                FileUtils.writeStringToFile(new File(workspaceDir, "AP" + p + "/wavs/" + i + ".wav"), "RIFF", "UTF-8");
+            FileUtils.writeStringToFile(new File(workspaceDir, "AP" + p + "/state"), "{}", "UTF-8");
+        }
+    }
+
+    @After
+    public void after() {
+        TestUtils.removeTempWorkspace(workspaceDir.getPath());
+    }
+
+    @Test
+    public void projectsAreGoneAtOnceAndReapedInSteps() throws IOException {
+        File outside = new File(workspaceDir, "outside.wav");
+        FileUtils.writeStringToFile(outside, "RIFF", "UTF-8");
+        Files.createSymbolicLink(new File(workspaceDir, "AP1/wavs/link.wav").toPath(), outside.toPath());
+
+        File entry = trash.trash(new File(workspaceDir, "AP1"), "AP1");
+        Assert.assertFalse(new File(workspaceDir, "AP1").exists());
+        Assert.assertTrue(new File(entry, "state").exists());
+        Assert.assertNull(trash.trash(new File(workspaceDir, "AP1"), "AP1"));
+
+        TrashReaper reaper = new TrashReaper(trash);
+        Assert.assertEquals(0, reaper.tick(new WorkspaceTrash.Budget(5, Long.MAX_VALUE)));
+        Assert.assertTrue(entry.exists());
+        Assert.assertEquals(0, reaper.tick(new WorkspaceTrash.Budget(100, 10))); // 3 files worth of bytes
+        Assert.assertEquals(1, reaper.tick(new WorkspaceTrash.Budget(100, Long.MAX_VALUE)));
+        Assert.assertFalse(entry.exists());
+        Assert.assertEquals(0, reaper.getPending());
+        Assert.assertTrue(outside.exists()); // links are not followed
+    }
+
+    @Test
+    public void reapingResumesAfterRestart() throws IOException {
+        File first = trash.trash(new File(workspaceDir, "AP1"), "AP1");
+        new TrashReaper(trash).tick(new WorkspaceTrash.Budget(3, Long.MAX_VALUE));
+        Assert.assertTrue(first.exists());
+        trash.trash(new File(workspaceDir, "AP2"), "AP2");
+        // the project is created again before the old one is reaped
+        FileUtils.writeStringToFile(new File(workspaceDir, "AP1/state"), "{}", "UTF-8");
+        trash.trash(new File(workspaceDir, "AP1"), "AP1");
+
+        WorkspaceTrash restarted = new WorkspaceTrash(workspaceDir);
+        Assert.assertEquals(3, restarted.list().size());
+        Assert.assertEquals(first, restarted.list().get(0));
+        TrashReaper reaper = new TrashReaper(restarted);
+        Assert.assertEquals(3, reaper.tick(new WorkspaceTrash.Budget(100, Long.MAX_VALUE)));
+        Assert.assertEquals(0, restarted.list().size());
+        Assert.assertTrue(new File(workspaceDir, WorkspaceTrash.DIRECTORY_NAME).isDirectory());
+    }
+}
@@ -0,0 +1,106 @@
+package org.restcomm.connect.rvd.storage;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.rvd.TestUtils;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class WorkspaceBackupTest {
+
+    File workspaceDir;
+    Workspace workspace;
+    File backupDir;
+
+    @Before
+    public void before() throws IOException {
+        workspaceDir = TestUtils.createTempWorkspace();
+        workspace = new Workspace(workspaceDir);
+        backupDir = new File(workspaceDir.getParentFile(), workspaceDir.getName() + "-backup");
+        for (int p = 1; p <= 2; p++) {
+            FileUtils.writeStringToFile(new File(workspaceDir, "AP" + p + "/state"), "{\"version\":" + p + "}", "UTF-8");
+            FileUtils.writeStringToFile(new File(workspaceDir, "AP" + p + "/wavs/hello.wav"), "RIFF", "UTF-8");
+            FileUtils.writeStringToFile(new File(workspaceDir, "AP" + p + "/rvdapp.log"), "log", "UTF-8");
+        }
+        FileUtils.writeStringToFile(new File(workspaceDir, "@trash/AP3-1-1/state"), "{}", "UTF-8");
+    }
+
+    @After
+    public void after() throws IOException {
+        TestUtils.removeTempWorkspace(workspaceDir.getPath());
+        FileUtils.deleteDirectory(backupDir);
+    }
+
+    @Test
+    public void unchangedFilesAreLinkedToPreviousSnapshot() throws IOException, StorageException {
+        WorkspaceBackup backup = new WorkspaceBackup(workspace, backupDir, null, 5, false, 0);
+        WorkspaceBackup.Snapshot first = backup.take();
+        Assert.assertEquals(4, first.getFiles());
+        Assert.assertEquals(4, first.getCopied());
+        File firstDir = new File(backupDir, first.getName());
+        Assert.assertTrue(new File(firstDir, "AP1/wavs/hello.wav").isFile());
+        Assert.assertFalse(new File(firstDir, "AP1/rvdapp.log").exists()); // logs are excluded
+        Assert.assertFalse(new File(firstDir, WorkspaceTrash.DIRECTORY_NAME).exists());
+
+        File state = new File(workspaceDir, "AP2/state");
+        FileUtils.writeStringToFile(state, "{\"version\":22}", "UTF-8");
+        state.setLastModified(state.lastModified() + 2000);
+        WorkspaceBackup.Snapshot second = backup.take();
+        Assert.assertEquals(3, second.getLinked());
+        Assert.assertEquals(1, second.getCopied());
+        File secondDir = new File(backupDir, second.getName());
+        Assert.assertTrue(Files.isSameFile(new File(firstDir, "AP1/state").toPath(), new File(secondDir, "AP1/state").toPath()));
+        Assert.assertEquals("{\"version\":22}", FileUtils.readFileToString(new File(secondDir, "AP2/state"), "UTF-8"));
+        Assert.assertEquals("{\"version\":2}", FileUtils.readFileToString(new File(firstDir, "AP2/state"), "UTF-8"));
+        Assert.assertEquals(2, backup.list().size());
+    }
+
+    @Test
+    public void oldSnapshotsArePrunedAndPartialOnesRemoved() throws IOException, StorageException {
+        WorkspaceBackup backup = new WorkspaceBackup(workspace, backupDir, null, 2, true, 0);
+        File partial = new File(backupDir, WorkspaceBackup.SNAPSHOT_PREFIX + "20000101T000000Z" + WorkspaceBackup.PARTIAL_SUFFIX);
+        FileUtils.forceMkdir(partial);
+        String oldest = backup.take().getName();
+        Assert.assertFalse(partial.exists());
+        Assert.assertTrue(new File(backupDir, oldest + "/AP1/rvdapp.log").exists());
+        backup.take();
+        backup.take();
+        List<WorkspaceBackup.Snapshot> snapshots = backup.list();
+        Assert.assertEquals(2, snapshots.size());
+        Assert.assertFalse(new File(backupDir, oldest).exists());
+        Assert.assertTrue(snapshots.get(0).getName().compareTo(snapshots.get(1).getName()) < 0);
+    }
+
+    @Test
+    public void projectIsRestoredFromSnapshot() throws IOException, StorageException {
+        WorkspaceBackup backup = new WorkspaceBackup(workspace, backupDir, null, 5, false, 0);
+        String snapshot = backup.take().getName();
+        FileUtils.writeStringToFile(new File(workspaceDir, "AP1/state"), "{\"broken\":true}", "UTF-8");
+        FileUtils.writeStringToFile(new File(backupDir, snapshot + "/AP1/data/project"), "{}", "UTF-8");
+        FileUtils.writeStringToFile(new File(backupDir, snapshot + "/AP1/data/" + CompiledProject.ENTITY_NAME), "compiled", "UTF-8");
+        FileUtils.deleteQuietly(new File(workspaceDir, "AP1/wavs/hello.wav"));
+
+        Assert.assertFalse(backup.restoreProject(snapshot, "AP9", null));
+        Assert.assertFalse(backup.restoreProject("snapshot-missing", "AP1", null));
+        Assert.assertTrue(backup.restoreProject(snapshot, "AP1", null));
+        Assert.assertEquals("{\"version\":1}", FileUtils.readFileToString(new File(workspaceDir, "AP1/state"), "UTF-8"));
+        Assert.assertTrue(new File(workspaceDir, "AP1/wavs/hello.wav").isFile());
+        Assert.assertTrue(GenerationStamp.file(new File(workspaceDir, "AP1")).exists());
+        // the build comes back but its compiled artifact is left to be re-created
+        Assert.assertTrue(new File(workspaceDir, "AP1/data/project").isFile());
+        Assert.assertFalse(new File(workspaceDir, "AP1/data/" + CompiledProject.ENTITY_NAME).exists());
+        // the replaced project went to the trash along with the one already there
+        Assert.assertEquals(2, workspace.getTrash().list().size());
+        Assert.assertEquals("{\"version\":2}", FileUtils.readFileToString(new File(workspaceDir, "AP2/state"), "UTF-8"));
+    }
+}
@@ -0,0 +1,167 @@
+package org.restcomm.connect.rvd.storage;
+
+import junit.framework.Assert;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.rvd.BuildService;
+import org.restcomm.connect.rvd.TestUtils;
+import org.restcomm.connect.rvd.model.StepMarshaler;
+import org.restcomm.connect.rvd.model.project.Node;
+import org.restcomm.connect.rvd.model.project.ProjectState;
+import org.restcomm.connect.rvd.model.steps.say.SayStep;
+import org.restcomm.connect.rvd.storage.exceptions.ProjectAlreadyExists;
+import org.restcomm.connect.rvd.storage.exceptions.StorageEntityNotFound;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+import org.restcomm.connect.rvd.utils.CustomizableRvdConfiguration;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Behavior expected from every workspace backend. Subclasses provide the storage and project dao to test.
+ *
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public abstract class WorkspaceConformanceTestBase {
+
+    static final String APP_SID = "AP1234";
+
+    File workspaceDir;
+    StepMarshaler marshaler;
+    CustomizableRvdConfiguration configuration;
+    JsonModelStorage storage;
+    ProjectDao dao;
+
+    abstract WorkspaceStorage createWorkspaceStorage(File workspaceDir) throws IOException;
+
+    abstract ProjectDao createProjectDao(JsonModelStorage storage);
+
+    void closeWorkspaceStorage() throws IOException {
+    }
+
+    @Before
+    public void before() throws IOException {
+        workspaceDir = TestUtils.createTempWorkspace();
+        marshaler = new StepMarshaler();
+        configuration = new CustomizableRvdConfiguration();
+        configuration.setWorkspaceBasePath(workspaceDir.getPath());
+        storage = new JsonModelStorage(createWorkspaceStorage(workspaceDir), marshaler);
+        dao = createProjectDao(storage);
+    }
+
+    @After
+    public void after() throws IOException {
+        closeWorkspaceStorage();
+        TestUtils.removeTempWorkspace(workspaceDir.getPath());
+    }
+
+    ProjectState createProject(String applicationId) throws StorageException {
+        ProjectState state = ProjectState.createEmptyVoice("orestis", configuration);
+        Node node = Node.createDefault("voice", "start", "Welcome");
+        node.getSteps().add(SayStep.createDefault("step1", "hello"));
+        state.getNodes().add(node);
+        dao.createProject(applicationId, state);
+        return state;
+    }
+
+    @Test
+    public void entitiesAreStoredLoadedAndRemoved() throws StorageException, IOException {
+        storage.storeEntityString("{\"a\":1}", "settings", APP_SID);
+        Assert.assertTrue(storage.entityExists("settings", APP_SID));
+        Assert.assertEquals("{\"a\":1}", storage.loadEntityString("settings", APP_SID));
+        Assert.assertEquals("{\"a\":1}", IOUtils.toString(storage.loadStream("settings", APP_SID), "UTF-8"));
+        // overwrite
+        storage.storeEntityString("{\"a\":2}", "settings", APP_SID);
+        Assert.assertEquals("{\"a\":2}", storage.loadEntityString("settings", APP_SID));
+        // workspace root entities
+        storage.storeEntityString("{}", "status", "");
+        Assert.assertEquals("{}", storage.loadEntityString("status", ""));
+
+        storage.removeEntity("settings", APP_SID);
+        Assert.assertFalse(storage.entityExists("settings", APP_SID));
+        try {
+            storage.loadEntityString("settings", APP_SID);
+            Assert.fail("removed entity should not be found");
+        } catch (StorageEntityNotFound e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void listingReturnsProjectsAndModules() throws StorageException {
+        createProject(APP_SID);
+        createProject("AP5678");
+        new File(workspaceDir, "@templates").mkdir();
+        List<String> projects = storage.listContents(".", "[^@].+", true);
+        Assert.assertEquals(2, projects.size());
+        Assert.assertTrue(projects.contains(APP_SID));
+        Assert.assertTrue(projects.contains("AP5678"));
+
+        new BuildService(dao).buildProject(APP_SID, dao.loadProject(APP_SID));
+        Assert.assertEquals(1, storage.listContents(APP_SID + "/data", ".*\\.mod", false).size());
+        try {
+            storage.listContents("AP0000/data", ".*", false);
+            Assert.fail("listing a missing directory should fail");
+        } catch (StorageException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void projectLifecycle() throws StorageException, IOException {
+        createProject(APP_SID);
+        try {
+            createProject(APP_SID);
+            Assert.fail("an existing project should not be overwritten");
+        } catch (ProjectAlreadyExists e) {
+            // expected
+        }
+        Assert.assertNotNull(dao.loadProject(APP_SID));
+        Assert.assertNull(dao.loadProjectOptions(APP_SID));
+
+        // build
+        new BuildService(dao).buildProject(APP_SID, dao.loadProject(APP_SID));
+        Assert.assertNotNull(dao.loadProjectOptions(APP_SID).getBuildGeneration());
+        Assert.assertEquals("start", dao.loadNode("start", APP_SID).getName());
+
+        // media
+        dao.storeMediaFromStream(APP_SID, "hello.wav", new ByteArrayInputStream(new byte[] {1, 2, 3}), null);
+        Assert.assertEquals(1, dao.listMedia(APP_SID).size());
+        Assert.assertEquals(3, IOUtils.toByteArray(dao.getMediaAsStream(APP_SID, "hello.wav")).length);
+
+        // archive contains state and media
+        List<String> archived = new ArrayList<String>();
+        ZipInputStream zip = new ZipInputStream(dao.archiveProject(APP_SID));
+        try {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null)
+                archived.add(entry.getName().replaceFirst("^/", ""));
+        } finally {
+            zip.close();
+        }
+        Assert.assertTrue(archived.contains("state"));
+        Assert.assertTrue(archived.contains("wavs/hello.wav"));
+
+        dao.removeProject(APP_SID);
+        Assert.assertNull(dao.loadProject(APP_SID));
+        Assert.assertNull(dao.loadProjectOptions(APP_SID));
+        Assert.assertFalse(storage.listContents("", "[^@].+", true).contains(APP_SID));
+        InputStream media = null;
+        try {
+            media = dao.getMediaAsStream(APP_SID, "hello.wav");
+            Assert.fail("media of a removed project should be gone");
+        } catch (StorageException e) {
+            // expected
+        } finally {
+            IOUtils.closeQuietly(media);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.restcomm.connect.rvd.storage;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.rvd.TestUtils;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class WorkspaceLayoutTest {
+
+    File workspaceDir;
+    FsWorkspaceStorage storage;
+    WorkspaceLayout layout;
+
+    @Before
+    public void before() throws IOException, StorageException {
+        workspaceDir = TestUtils.createTempWorkspace();
+        TestUtils.createUsersDirectory(workspaceDir.getPath());
+        storage = new FsWorkspaceStorage(new Workspace(workspaceDir));
+        layout = WorkspaceLayout.forWorkspace(workspaceDir);
+        for (int i = 0; i < 20; i++)
+            storage.storeEntityString("{}", "state", "AP" + i);
+    }
+
+    @After
+    public void after() {
+        TestUtils.removeTempWorkspace(workspaceDir.getPath());
+    }
+
+    @Test
+    public void projectsAreMovedToShardsWhileStillBeingServed() throws IOException, StorageException {
+        List<String> before = storage.listContents("", "[^@].+", true);
+        Assert.assertEquals(20, before.size());
+
+        layout.enableSharding();
+        Assert.assertEquals(new File(workspaceDir, "AP3").getPath(), storage.resolveWorkspacePath("AP3"));
+        storage.storeEntityString("{}", "state", "AP100"); // new projects go straight to their shard
+        File newProjectDir = new File(workspaceDir, WorkspaceLayout.SHARDS_DIRECTORY_NAME + "/" + WorkspaceLayout.shardOf("AP100") + "/AP100");
+        Assert.assertTrue(new File(newProjectDir, "state").exists());
+
+        // half way through the migration
+        ShardMigrator migrator = new ShardMigrator(layout, storage.getWorkspace().getLocks());
+        for (int i = 0; i < 10; i++)
+            layout.migrate("AP" + i);
+        Set<String> during = new HashSet<String>(storage.listContents(".", "[^@].+", true));
+        Assert.assertEquals(21, during.size());
+        during.remove("AP100");
+        Assert.assertEquals(new HashSet<String>(before), during);
+        Assert.assertEquals("{}", storage.loadEntityString("state", "AP2"));
+        Assert.assertEquals("{}", storage.loadEntityString("state", "AP12"));
+        Assert.assertTrue(storage.listContents("", ".*", false).contains("@users"));
+
+        // a request that resolved the old path before the move still reaches the project
+        FileUtils.writeStringToFile(new File(workspaceDir, "AP2/settings"), "{\"logging\":true}", "UTF-8");
+        Assert.assertEquals("{\"logging\":true}", storage.loadEntityString("settings", "AP2"));
+
+        Assert.assertEquals(10, migrator.tick(System.currentTimeMillis()));
+        Assert.assertEquals(0, migrator.tick(System.currentTimeMillis()));
+        Assert.assertEquals(Collections.<String>emptyList(), layout.listUnmigrated(100));
+        layout.removeForwardingLinks();
+        for (String rootEntry: workspaceDir.list())
+            Assert.assertFalse(WorkspaceLayout.isProjectName(rootEntry)); // only @users, @shards etc. are left
+        Assert.assertEquals(21, storage.listContents("", "[^@].+", true).size());
+        Assert.assertEquals("{\"logging\":true}", storage.loadEntityString("settings", "AP2"));
+    }
+
+    @Test
+    public void projectRecreatedAtTheRootIsMerged() throws IOException, StorageException {
+        layout.enableSharding();
+        layout.migrate("AP1");
+        layout.removeForwardingLink("AP1");
+        // a request with a stale path writes after the link is gone
+        FileUtils.writeStringToFile(new File(workspaceDir, "AP1/data/project"), "{}", "UTF-8");
+        Assert.assertTrue(layout.listUnmigrated(100).contains("AP1"));
+
+        layout.migrate("AP1");
+        layout.removeForwardingLink("AP1");
+        Assert.assertFalse(new File(workspaceDir, "AP1").exists());
+        Assert.assertEquals("{}", storage.loadEntityString("project", "AP1/data"));
+        Assert.assertEquals("{}", storage.loadEntityString("state", "AP1"));
+    }
+
+    @Test
+    public void projectsBeingWrittenAreLeftForTheNextTick() throws Exception {
+        layout.enableSharding();
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Lock lock = storage.getWorkspace().getLocks().lock("AP0");
+                try {
+                    locked.countDown();
+                    release.await();
+                } catch (InterruptedException e) {
+                    // done
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+        writer.start();
+        locked.await();
+
+        ShardMigrator migrator = new ShardMigrator(layout, storage.getWorkspace().getLocks());
+        migrator.tick(System.currentTimeMillis());
+        Assert.assertTrue(layout.listUnmigrated(100).contains("AP0"));
+        Assert.assertTrue(new File(workspaceDir, "AP0/state").exists());
+
+        release.countDown();
+        writer.join();
+        migrator.tick(System.currentTimeMillis());
+        Assert.assertEquals(Collections.<String>emptyList(), layout.listUnmigrated(100));
+        Assert.assertEquals("{}", storage.loadEntityString("state", "AP0"));
+    }
+}
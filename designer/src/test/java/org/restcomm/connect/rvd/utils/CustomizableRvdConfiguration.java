@@ -3,10 +3,15 @@ package org.restcomm.connect.rvd.utils;
 import org.restcomm.connect.rvd.BaseRvdConfiguration;
 import org.restcomm.connect.rvd.RvdConfiguration;
 import org.restcomm.connect.rvd.commons.http.SslMode;
+import org.restcomm.connect.rvd.configuration.FlowCostLimits;
+import org.restcomm.connect.rvd.configuration.StatsRetention;
 import org.restcomm.connect.rvd.configuration.RvdMaxPerHost;
+import org.restcomm.connect.rvd.configuration.WorkspaceBackupPolicy;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * @author otsakir@gmail.com - Orestis Tsakiridis
@@ -14,6 +19,30 @@ import java.util.List;
 public class CustomizableRvdConfiguration extends BaseRvdConfiguration {
 
     Boolean videoSupport;
+    double trafficCaptureSampleRate = RvdConfiguration.DEFAULT_TRAFFIC_CAPTURE_SAMPLE_RATE;
+    int trafficCaptureMaxMegabytes = RvdConfiguration.DEFAULT_TRAFFIC_CAPTURE_MAX_MEGABYTES;
+    FlowCostLimits flowCostLimits;
+    int metricsMaxApplications = DEFAULT_METRICS_MAX_APPLICATIONS;
+    int callTraceBufferSize = DEFAULT_CALL_TRACE_BUFFER_SIZE;
+    int slowApiRequestMillis = DEFAULT_SLOW_API_REQUEST_MILLIS;
+    boolean storageInstrumentation = DEFAULT_STORAGE_INSTRUMENTATION;
+    String workspaceBackend = DEFAULT_WORKSPACE_BACKEND;
+    boolean sharedWorkspace = DEFAULT_SHARED_WORKSPACE;
+    int projectRevalidationMillis = DEFAULT_PROJECT_REVALIDATION_MILLIS;
+    boolean workspaceSharding = DEFAULT_WORKSPACE_SHARDING;
+    boolean projectMetadataIndex = DEFAULT_PROJECT_METADATA_INDEX;
+    List<String> workspaceCompression = new ArrayList<String>();
+    boolean workspaceCompressionDictionary = DEFAULT_WORKSPACE_COMPRESSION_DICTIONARY;
+    String workspaceBackupPath;
+    WorkspaceBackupPolicy workspaceBackup = new WorkspaceBackupPolicy(false, DEFAULT_WORKSPACE_BACKUP_INTERVAL_HOURS, DEFAULT_WORKSPACE_BACKUP_RETENTION, DEFAULT_WORKSPACE_BACKUP_MAX_MEGABYTES_PER_SECOND, false);
+    int projectRegistryMaxEntries = 0; // no limit in tests
+    int projectRegistryMaxMegabytes = 0;
+    List<String> pinnedApplications = new ArrayList<String>();
+    boolean cacheWarmup = DEFAULT_CACHE_WARMUP;
+    boolean trafficCapturePii = DEFAULT_TRAFFIC_CAPTURE_PII;
+    int hotSetSize = DEFAULT_HOT_SET_SIZE;
+    int mediaMaxAgeSeconds = DEFAULT_MEDIA_MAX_AGE_SECONDS;
+    StatsRetention statsRetention = new StatsRetention(true, DEFAULT_STATS_MINUTE_RETENTION_HOURS, DEFAULT_STATS_HOURLY_RETENTION_DAYS);
 
     public void setWorkspaceBasePath(String workspaceBasePath) {
         this.workspaceBasePath = workspaceBasePath;
@@ -152,5 +181,229 @@ public class CustomizableRvdConfiguration extends BaseRvdConfiguration {
         this.projectTemplatesWorkspacePath = projectTemplatesWorkspacePath;
     }
 
+    @Override
+    public double getTrafficCaptureSampleRate() {
+        return trafficCaptureSampleRate;
+    }
+
+    @Override
+    public String getTrafficCaptureFile() {
+        return getWorkspaceBasePath() + File.separator + CAPTURE_DIRECTORY_NAME + File.separator + DEFAULT_TRAFFIC_CAPTURE_FILENAME;
+    }
+
+    public void setTrafficCaptureSampleRate(double trafficCaptureSampleRate) {
+        this.trafficCaptureSampleRate = trafficCaptureSampleRate;
+    }
+
+    @Override
+    public int getTrafficCaptureMaxMegabytes() {
+        return trafficCaptureMaxMegabytes;
+    }
+
+    public void setTrafficCaptureMaxMegabytes(int trafficCaptureMaxMegabytes) {
+        this.trafficCaptureMaxMegabytes = trafficCaptureMaxMegabytes;
+    }
+
+    @Override
+    public boolean isTrafficCapturePii() {
+        return trafficCapturePii;
+    }
+
+    public void setTrafficCapturePii(boolean trafficCapturePii) {
+        this.trafficCapturePii = trafficCapturePii;
+    }
+
+    @Override
+    public FlowCostLimits getFlowCostLimits() {
+        return flowCostLimits;
+    }
+
+    public void setFlowCostLimits(FlowCostLimits flowCostLimits) {
+        this.flowCostLimits = flowCostLimits;
+    }
+
+    @Override
+    public StatsRetention getStatsRetention() {
+        return statsRetention;
+    }
+
+    public void setStatsRetention(StatsRetention statsRetention) {
+        this.statsRetention = statsRetention;
+    }
+
+    @Override
+    public int getMetricsMaxApplications() {
+        return metricsMaxApplications;
+    }
+
+    public void setMetricsMaxApplications(int metricsMaxApplications) {
+        this.metricsMaxApplications = metricsMaxApplications;
+    }
+
+    @Override
+    public int getCallTraceBufferSize() {
+        return callTraceBufferSize;
+    }
+
+    public void setCallTraceBufferSize(int callTraceBufferSize) {
+        this.callTraceBufferSize = callTraceBufferSize;
+    }
+
+    @Override
+    public Pattern getCallTraceRedactPattern() {
+        return Pattern.compile(DEFAULT_CALL_TRACE_REDACT);
+    }
+
+    @Override
+    public int getSlowApiRequestMillis() {
+        return slowApiRequestMillis;
+    }
+
+    public void setSlowApiRequestMillis(int slowApiRequestMillis) {
+        this.slowApiRequestMillis = slowApiRequestMillis;
+    }
+
+    @Override
+    public boolean isStorageInstrumentation() {
+        return storageInstrumentation;
+    }
+
+    public void setStorageInstrumentation(boolean storageInstrumentation) {
+        this.storageInstrumentation = storageInstrumentation;
+    }
+
+    @Override
+    public String getWorkspaceBackend() {
+        return workspaceBackend;
+    }
+
+    public void setWorkspaceBackend(String workspaceBackend) {
+        this.workspaceBackend = workspaceBackend;
+    }
+
+    @Override
+    public boolean isSharedWorkspace() {
+        return sharedWorkspace;
+    }
+
+    public void setSharedWorkspace(boolean sharedWorkspace) {
+        this.sharedWorkspace = sharedWorkspace;
+    }
+
+    @Override
+    public int getProjectRevalidationMillis() {
+        return projectRevalidationMillis;
+    }
+
+    public void setProjectRevalidationMillis(int projectRevalidationMillis) {
+        this.projectRevalidationMillis = projectRevalidationMillis;
+    }
+
+    @Override
+    public boolean isWorkspaceSharding() {
+        return workspaceSharding;
+    }
+
+    public void setWorkspaceSharding(boolean workspaceSharding) {
+        this.workspaceSharding = workspaceSharding;
+    }
+
+    @Override
+    public boolean isProjectMetadataIndex() {
+        return projectMetadataIndex;
+    }
+
+    public void setProjectMetadataIndex(boolean projectMetadataIndex) {
+        this.projectMetadataIndex = projectMetadataIndex;
+    }
+
+    @Override
+    public List<String> getWorkspaceCompression() {
+        return workspaceCompression;
+    }
+
+    public void setWorkspaceCompression(List<String> workspaceCompression) {
+        this.workspaceCompression = workspaceCompression;
+    }
+
+    @Override
+    public boolean isWorkspaceCompressionDictionary() {
+        return workspaceCompressionDictionary;
+    }
+
+    public void setWorkspaceCompressionDictionary(boolean workspaceCompressionDictionary) {
+        this.workspaceCompressionDictionary = workspaceCompressionDictionary;
+    }
+
+    @Override
+    public String getWorkspaceBackupPath() {
+        return workspaceBackupPath;
+    }
+
+    public void setWorkspaceBackupPath(String workspaceBackupPath) {
+        this.workspaceBackupPath = workspaceBackupPath;
+    }
+
+    @Override
+    public WorkspaceBackupPolicy getWorkspaceBackup() {
+        return workspaceBackup;
+    }
 
+    public void setWorkspaceBackup(WorkspaceBackupPolicy workspaceBackup) {
+        this.workspaceBackup = workspaceBackup;
+    }
+
+    @Override
+    public int getProjectRegistryMaxEntries() {
+        return projectRegistryMaxEntries;
+    }
+
+    public void setProjectRegistryMaxEntries(int projectRegistryMaxEntries) {
+        this.projectRegistryMaxEntries = projectRegistryMaxEntries;
+    }
+
+    @Override
+    public int getProjectRegistryMaxMegabytes() {
+        return projectRegistryMaxMegabytes;
+    }
+
+    public void setProjectRegistryMaxMegabytes(int projectRegistryMaxMegabytes) {
+        this.projectRegistryMaxMegabytes = projectRegistryMaxMegabytes;
+    }
+
+    @Override
+    public List<String> getPinnedApplications() {
+        return pinnedApplications;
+    }
+
+    public void setPinnedApplications(List<String> pinnedApplications) {
+        this.pinnedApplications = pinnedApplications;
+    }
+
+    @Override
+    public boolean isCacheWarmup() {
+        return cacheWarmup;
+    }
+
+    public void setCacheWarmup(boolean cacheWarmup) {
+        this.cacheWarmup = cacheWarmup;
+    }
+
+    @Override
+    public int getHotSetSize() {
+        return hotSetSize;
+    }
+
+    public void setHotSetSize(int hotSetSize) {
+        this.hotSetSize = hotSetSize;
+    }
+
+    @Override
+    public int getMediaMaxAgeSeconds() {
+        return mediaMaxAgeSeconds;
+    }
+
+    public void setMediaMaxAgeSeconds(int mediaMaxAgeSeconds) {
+        this.mediaMaxAgeSeconds = mediaMaxAgeSeconds;
+    }
 }
@@ -0,0 +1,109 @@
+package org.restcomm.connect.rvd.warmup;
+
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.restcomm.connect.rvd.ApplicationContext;
+import org.restcomm.connect.rvd.ApplicationContextBuilder;
+import org.restcomm.connect.rvd.BuildService;
+import org.restcomm.connect.rvd.TestUtils;
+import org.restcomm.connect.rvd.concurrency.ProjectRegistry;
+import org.restcomm.connect.rvd.concurrency.ResidentProjectInfo;
+import org.restcomm.connect.rvd.interpreter.Interpreter;
+import org.restcomm.connect.rvd.interpreter.serialization.RcmlSerializer;
+import org.restcomm.connect.rvd.logging.system.LoggingContext;
+import org.restcomm.connect.rvd.model.ProjectSettings;
+import org.restcomm.connect.rvd.model.project.Node;
+import org.restcomm.connect.rvd.model.project.ProjectState;
+import org.restcomm.connect.rvd.model.server.ProjectIndex;
+import org.restcomm.connect.rvd.model.steps.say.SayStep;
+import org.restcomm.connect.rvd.storage.MemoryProjectDao;
+import org.restcomm.connect.rvd.utils.CustomizableRvdConfiguration;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class CacheWarmerTest {
+
+    static final String CONTEXT_PATH = "/visual-designer";
+
+    File workspaceDir;
+    MemoryProjectDao dao;
+    ApplicationContext applicationContext;
+
+    @Before
+    public void before() throws Exception {
+        workspaceDir = TestUtils.createTempWorkspace();
+        CustomizableRvdConfiguration configuration = new CustomizableRvdConfiguration();
+        configuration.setWorkspaceBasePath(workspaceDir.getPath());
+        applicationContext = new ApplicationContextBuilder()
+                .setConfiguration(configuration)
+                .setProjectRegistry(new ProjectRegistry())
+                .build();
+        dao = new MemoryProjectDao();
+        ProjectState state = ProjectState.createEmptyVoice("orestis", configuration);
+        Node dynamicNode = Node.createDefault("voice", "dynamic", "Dynamic");
+        dynamicNode.getSteps().add(SayStep.createDefault("step2", "hello $name"));
+        state.getNodes().add(dynamicNode);
+        new BuildService(dao).buildProject("AP1", state);
+        new File(workspaceDir, "AP1").mkdirs();
+    }
+
+    @After
+    public void after() {
+        TestUtils.removeTempWorkspace(workspaceDir.getPath());
+    }
+
+    HotSet hotSet() {
+        return new HotSet(System.currentTimeMillis(), Arrays.asList(
+                new HotSet.Application("AP1", 10, Arrays.asList("start", "dynamic", "removed")),
+                new HotSet.Application("AP9", 5, Arrays.asList("start")))); // not in the workspace any more
+    }
+
+    // what RvdController renders for a request to a module
+    String render(String module) throws Exception {
+        HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(request.getContextPath()).thenReturn(CONTEXT_PATH);
+        MultivaluedMap<String, String> params = new MultivaluedMapImpl();
+        params.putSingle("target", module);
+        ProjectIndex options = dao.loadProjectOptions("AP1");
+        Interpreter interpreter = new Interpreter("AP1", request, params, applicationContext, new LoggingContext("[test]"), null,
+                ProjectSettings.createDefault(), options, dao, dao.loadProjectParameters("AP1"));
+        return new RcmlSerializer().serialize(interpreter.interpret());
+    }
+
+    @Test
+    public void hotApplicationsAreWarmedUp() throws Exception {
+        CacheWarmer.Report report = new CacheWarmer(applicationContext, dao, CONTEXT_PATH).warm(hotSet(), 60000);
+        Assert.assertEquals(1, report.getApplications());
+        Assert.assertEquals(1, report.getMissing());
+        Assert.assertEquals(0, report.getSkipped());
+        Assert.assertEquals(2, report.getModules()); // 'removed' is not in the project
+        Assert.assertEquals(1, report.getCachedRcml()); // only 'start' is static
+
+        ResidentProjectInfo info = applicationContext.getProjectRegistry().getResidentProjects().get("AP1");
+        long generation = dao.loadProjectOptions("AP1").getBuildGeneration();
+        byte[] cached = info.getRcmlCache().get(generation, "start");
+        Assert.assertNotNull(cached);
+        Assert.assertEquals(render("start"), new String(cached, "UTF-8"));
+        Assert.assertNull(info.getRcmlCache().get(generation, "dynamic"));
+    }
+
+    @Test
+    public void warmingUpStopsOnceTheBudgetIsSpent() {
+        CacheWarmer.Report report = new CacheWarmer(applicationContext, dao, CONTEXT_PATH).warm(hotSet(), 0);
+        Assert.assertEquals(0, report.getApplications());
+        Assert.assertEquals(0, report.getMissing());
+        Assert.assertEquals(2, report.getSkipped());
+        Assert.assertEquals(0, report.getModules());
+        Assert.assertNull(applicationContext.getProjectRegistry().getResidentProjects().get("AP1"));
+    }
+}
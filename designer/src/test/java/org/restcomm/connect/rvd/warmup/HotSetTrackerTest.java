@@ -0,0 +1,90 @@
+package org.restcomm.connect.rvd.warmup;
+
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.rvd.TestUtils;
+import org.restcomm.connect.rvd.concurrency.ProjectRegistry;
+import org.restcomm.connect.rvd.concurrency.ResidentProjectInfo;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * @author otsakir@gmail.com - Orestis Tsakiridis
+ */
+public class HotSetTrackerTest {
+
+    File workspaceDir;
+    ProjectRegistry registry;
+
+    @Before
+    public void before() {
+        workspaceDir = TestUtils.createTempWorkspace();
+        registry = new ProjectRegistry();
+    }
+
+    @After
+    public void after() {
+        TestUtils.removeTempWorkspace(workspaceDir.getPath());
+    }
+
+    void hit(String applicationId, String module, int times) {
+        ResidentProjectInfo info = registry.getResidentProjectInfo(applicationId);
+        for (int i = 0; i < times; i++)
+            info.countModule(module);
+    }
+
+    @Test
+    public void busiestApplicationsAndModulesMakeTheHotSet() {
+        HotSetTracker tracker = new HotSetTracker(registry, workspaceDir, 2);
+        hit("AP1", "start", 3);
+        hit("AP2", "start", 10);
+        hit("AP2", "menu", 20);
+        hit("AP3", "start", 1);
+        registry.getResidentProjectInfo("AP4"); // resident without requests
+
+        HotSet hotSet = tracker.update(1000);
+        Assert.assertEquals(2, hotSet.getApplications().size());
+        Assert.assertEquals("AP2", hotSet.getApplications().get(0).getApplicationId());
+        Assert.assertEquals(30.0, hotSet.getApplications().get(0).getScore());
+        Assert.assertEquals(Arrays.asList("menu", "start"), hotSet.getApplications().get(0).getModules());
+        Assert.assertEquals("AP1", hotSet.getApplications().get(1).getApplicationId());
+
+        // only requests since the last update count. AP2 cools down while AP3 gets busy.
+        hit("AP3", "start", 40);
+        hotSet = tracker.update(2000);
+        Assert.assertEquals("AP3", hotSet.getApplications().get(0).getApplicationId());
+        Assert.assertEquals(40.5, hotSet.getApplications().get(0).getScore());
+        Assert.assertEquals("AP2", hotSet.getApplications().get(1).getApplicationId());
+        Assert.assertEquals(15.0, hotSet.getApplications().get(1).getScore());
+
+        // idle applications fade out
+        for (int i = 0; i < 10; i++)
+            hotSet = tracker.update(3000 + i);
+        Assert.assertEquals(0, hotSet.getApplications().size());
+    }
+
+    @Test
+    public void hotSetSurvivesRestart() {
+        HotSetTracker tracker = new HotSetTracker(registry, workspaceDir, 10);
+        hit("AP1", "start", 8);
+        tracker.start();
+        tracker.stop(); // saves
+
+        HotSet saved = HotSet.load(workspaceDir);
+        Assert.assertNotNull(saved);
+        Assert.assertEquals(1, saved.getApplications().size());
+        Assert.assertEquals(Arrays.asList("start"), saved.getApplications().get(0).getModules());
+
+        HotSetTracker restarted = new HotSetTracker(new ProjectRegistry(), workspaceDir, 10);
+        restarted.resume(saved);
+        HotSet hotSet = restarted.update(1000);
+        Assert.assertEquals("AP1", hotSet.getApplications().get(0).getApplicationId());
+        Assert.assertEquals(4.0, hotSet.getApplications().get(0).getScore());
+        Assert.assertEquals(Arrays.asList("start"), hotSet.getApplications().get(0).getModules());
+
+        Assert.assertNull(HotSet.load(new File(workspaceDir, "missing")));
+    }
+}